@@ -0,0 +1,75 @@
+package com.mukhtar.UdaSecurity.Service;
+
+/**
+ * Concurrency limit that follows the latency of the calls it lets through. The typical latency is
+ * a slow running average; a call that completes within twice that while the limit is in use
+ * raises the limit by one per limit's worth of calls, and a slower call, a failure or a timeout
+ * cuts it by a fifth. The limit so settles just below the point where the backend starts
+ * queueing.
+ */
+final class AdaptiveConcurrencyLimit {
+
+    //weight of the newest sample in the typical latency
+    private static final double LATENCY_WEIGHT = 0.05;
+    private static final double LATENCY_TOLERANCE = 2.0;
+    private static final double BACKOFF = 0.8;
+
+    private final int minLimit;
+    private final int maxLimit;
+
+    //guarded by this
+    private double limit;
+    private int inFlight;
+    private double typicalLatencyNanos;
+
+    AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+    }
+
+    /**
+     * @return false if the limit is reached and the call should be shed
+     */
+    synchronized boolean tryAcquire() {
+        if (inFlight >= (int) limit) {
+            return false;
+        }
+        inFlight++;
+        return true;
+    }
+
+    synchronized void release() {
+        inFlight--;
+    }
+
+    synchronized void onSuccess(long latencyNanos) {
+        if (typicalLatencyNanos == 0) {
+            typicalLatencyNanos = latencyNanos;
+            return;
+        }
+        if (latencyNanos > typicalLatencyNanos * LATENCY_TOLERANCE) {
+            backOff();
+        } else if (inFlight + 1 >= limit / 2) {
+            //only grow while the limit is actually being used
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+        typicalLatencyNanos += LATENCY_WEIGHT * (latencyNanos - typicalLatencyNanos);
+    }
+
+    synchronized void onDropped() {
+        backOff();
+    }
+
+    synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    private void backOff() {
+        limit = Math.max(minLimit, limit * BACKOFF);
+    }
+}
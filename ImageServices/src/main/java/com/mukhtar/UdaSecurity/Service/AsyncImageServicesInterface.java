@@ -0,0 +1,26 @@
+package com.mukhtar.UdaSecurity.Service;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Image service that answers without blocking the calling thread.
+ */
+public interface AsyncImageServicesInterface {
+
+    /**
+     * Starts analysing the image. Cancelling the returned future tells the service the answer is
+     * no longer wanted, which lets it skip work that has not started yet.
+     */
+    CompletableFuture<Boolean> imageContainsCatAsync(BufferedImage image, float confidenceThreshhold);
+
+    /**
+     * Adapts a blocking image service by running each call on the given executor. Calls that are
+     * cancelled before the executor gets to them are never made.
+     */
+    static AsyncImageServicesInterface fromBlocking(ImageServicesInterface imageService, Executor executor) {
+        return (image, confidenceThreshhold) ->
+                CompletableFuture.supplyAsync(() -> imageService.imageContainsCat(image, confidenceThreshhold), executor);
+    }
+}
@@ -7,17 +7,17 @@ import software.amazon.awssdk.auth.credentials.AwsCredentials;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
 import software.amazon.awssdk.core.SdkBytes;
 import software.amazon.awssdk.regions.Region;
-import software.amazon.awssdk.services.rekognition.RekognitionClient;
+import software.amazon.awssdk.services.rekognition.RekognitionAsyncClient;
 import software.amazon.awssdk.services.rekognition.model.DetectLabelsRequest;
 import software.amazon.awssdk.services.rekognition.model.DetectLabelsResponse;
 import software.amazon.awssdk.services.rekognition.model.Image;
 
-import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.stream.Collectors;
 
 
@@ -33,13 +33,18 @@ import java.util.stream.Collectors;
  *      aws.id=[your access key id]
  *      aws.secret=[your Secret access key]
  *      aws.region=[an aws region of choice. For example: us-east-2]
+ *
+ * Requests go out on the asynchronous client, so wrap this service in a
+ * {@link MicroBatchingImageService} to share it between cameras without blocking a thread each.
  */
-public class AwsImageService implements ImageServicesInterface{
+public class AwsImageService implements ImageServicesInterface, AsyncImageServicesInterface {
 
     private Logger log = LoggerFactory.getLogger(AwsImageService.class);
 
-    //aws recommendation is to maintain only a single instance of client objects
-    private static RekognitionClient rekognitionClient;
+    //aws recommendation is to maintain only a single instance of client objects, so share this service
+    private RekognitionAsyncClient rekognitionClient;
+
+    private JpegFrameEncoder frameEncoder = new JpegFrameEncoder();
 
     public AwsImageService() {
         Properties props = new Properties();
@@ -53,14 +58,29 @@ public class AwsImageService implements ImageServicesInterface{
         String awsId = props.getProperty("aws.id");
         String awsSecret = props.getProperty("aws.secret");
         String awsRegion = props.getProperty("aws.region");
+        //optional, trades upload size and encode time against detail
+        String jpegQuality = props.getProperty("image.jpeg.quality");
+        String maxDimension = props.getProperty("image.maxDimension");
+        if (jpegQuality != null || maxDimension != null) {
+            frameEncoder = new JpegFrameEncoder(jpegQuality == null ? JpegFrameEncoder.DEFAULT_QUALITY : Float.parseFloat(jpegQuality),
+                    maxDimension == null ? JpegFrameEncoder.DEFAULT_MAX_DIMENSION : Integer.parseInt(maxDimension));
+        }
 
         AwsCredentials awsCredentials = AwsBasicCredentials.create(awsId, awsSecret);
-        rekognitionClient = RekognitionClient.builder()
+        rekognitionClient = RekognitionAsyncClient.builder()
                 .credentialsProvider(StaticCredentialsProvider.create(awsCredentials))
                 .region(Region.of(awsRegion))
                 .build();
     }
 
+    /**
+     * Uses the given client instead of one configured from config.properties, for example one
+     * pointed at another endpoint.
+     */
+    public AwsImageService(RekognitionAsyncClient rekognitionClient) {
+        this.rekognitionClient = rekognitionClient;
+    }
+
     /**
      * Returns true if the provided image contains a cat.
      * @param image Image to scan
@@ -69,18 +89,34 @@ public class AwsImageService implements ImageServicesInterface{
      */
     @Override
     public boolean imageContainsCat(BufferedImage image, float confidenceThreshhold) {
+        try {
+            return imageContainsCatAsync(image, confidenceThreshhold).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Encodes the image on the calling thread and sends it without waiting for the answer.
+     */
+    @Override
+    public CompletableFuture<Boolean> imageContainsCatAsync(BufferedImage image, float confidenceThreshhold) {
         Image awsImage = null;
-        try (ByteArrayOutputStream os = new ByteArrayOutputStream()) {
-            ImageIO.write(image, "jpg", os);
-            awsImage = Image.builder().bytes(SdkBytes.fromByteArray(os.toByteArray())).build();
+        try {
+            //the encoder hands over a fresh array, so the SDK can use it without another copy
+            awsImage = Image.builder().bytes(SdkBytes.fromByteArrayUnsafe(frameEncoder.encode(image))).build();
         } catch (IOException ioe) {
             log.error("Error building image byte array", ioe);
-            return false;
+            return CompletableFuture.completedFuture(false);
         }
         DetectLabelsRequest detectLabelsRequest = DetectLabelsRequest.builder().image(awsImage).minConfidence(confidenceThreshhold).build();
-        DetectLabelsResponse response = rekognitionClient.detectLabels(detectLabelsRequest);
-        logLabelsForFun(response);
-        return response.labels().stream().filter(l -> l.name().toLowerCase().contains("cat")).findFirst().isPresent();
+        return rekognitionClient.detectLabels(detectLabelsRequest).thenApply(response -> {
+            logLabelsForFun(response);
+            return response.labels().stream().filter(l -> l.name().toLowerCase().contains("cat")).findFirst().isPresent();
+        });
     }
 
     private void logLabelsForFun(DetectLabelsResponse response) {
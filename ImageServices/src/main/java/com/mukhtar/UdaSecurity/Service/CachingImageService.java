@@ -0,0 +1,184 @@
+package com.mukhtar.UdaSecurity.Service;
+
+import com.mukhtar.UdaSecurity.metrics.MetricsRegistry;
+
+import java.awt.image.BufferedImage;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decorator that remembers verdicts for frames that look the same. Each frame is reduced to a
+ * 64 bit difference hash (dHash), which stays the same across re-encoding, small noise and minor
+ * brightness changes, so a camera sending the same scene over and over only reaches the wrapped
+ * service once per time-to-live.
+ */
+public class CachingImageService implements ImageServicesInterface {
+
+    private static final int DEFAULT_MAX_ENTRIES = 1024;
+    private static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofSeconds(30);
+
+    //dHash compares each pixel with its right neighbour on a 9x8 thumbnail
+    private static final int HASH_WIDTH = 9;
+    private static final int HASH_HEIGHT = 8;
+    private static final int SAMPLES_PER_CELL = 8;
+
+    private final ImageServicesInterface imageService;
+    private final long timeToLiveNanos;
+    private final Map<CacheKey, CacheEntry> cache;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public CachingImageService(ImageServicesInterface imageService) {
+        this(imageService, DEFAULT_MAX_ENTRIES, DEFAULT_TIME_TO_LIVE);
+    }
+
+    /**
+     * @param imageService service asked about frames that are not in the cache
+     * @param maxEntries the least recently used verdict is dropped beyond this many
+     * @param timeToLive how long a verdict may be reused
+     */
+    public CachingImageService(ImageServicesInterface imageService, int maxEntries, Duration timeToLive) {
+        this.imageService = imageService;
+        this.timeToLiveNanos = timeToLive.toNanos();
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CacheKey, CacheEntry> eldest) {
+                if (size() > maxEntries) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    @Override
+    public boolean imageContainsCat(BufferedImage image, float confidenceThreshhold) {
+        CacheKey key = new CacheKey(differenceHash(image), confidenceThreshhold);
+        long now = System.nanoTime();
+        synchronized (cache) {
+            CacheEntry entry = cache.get(key);
+            if (entry != null && now - entry.createdNanos < timeToLiveNanos) {
+                hits.increment();
+                return entry.containsCat;
+            }
+        }
+        misses.increment();
+        boolean containsCat = imageService.imageContainsCat(image, confidenceThreshhold);
+        synchronized (cache) {
+            cache.put(key, new CacheEntry(containsCat, System.nanoTime()));
+        }
+        return containsCat;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return share of lookups answered from the cache, or 0 before the first lookup
+     */
+    public double getHitRate() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * Publishes the cache statistics to the registry.
+     */
+    public void bindTo(MetricsRegistry registry) {
+        String lookups = "catpoint_image_cache_lookups_total";
+        String lookupsHelp = "Image verdict cache lookups, by result";
+        registry.counter(lookups, lookupsHelp, this::getHitCount, "result", "hit");
+        registry.counter(lookups, lookupsHelp, this::getMissCount, "result", "miss");
+        registry.counter("catpoint_image_cache_evictions_total", "Verdicts dropped to make room", this::getEvictionCount);
+        registry.gauge("catpoint_image_cache_hit_ratio", "Share of lookups answered from the cache", this::getHitRate);
+        registry.gauge("catpoint_image_cache_entries", "Verdicts currently cached", this::size);
+    }
+
+    /**
+     * Computes the 64 bit difference hash of an image: shrink it to a 9x8 grayscale thumbnail and
+     * set one bit per pixel that is brighter than its right neighbour. Each thumbnail pixel averages
+     * a fixed grid of samples from its area, so the cost does not grow with the frame size.
+     */
+    static long differenceHash(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] luma = new int[HASH_WIDTH * HASH_HEIGHT];
+        for (int cellY = 0; cellY < HASH_HEIGHT; cellY++) {
+            for (int cellX = 0; cellX < HASH_WIDTH; cellX++) {
+                int sum = 0;
+                for (int sy = 0; sy < SAMPLES_PER_CELL; sy++) {
+                    int y = (int) (((long) cellY * SAMPLES_PER_CELL + sy) * height / (HASH_HEIGHT * SAMPLES_PER_CELL));
+                    for (int sx = 0; sx < SAMPLES_PER_CELL; sx++) {
+                        int x = (int) (((long) cellX * SAMPLES_PER_CELL + sx) * width / (HASH_WIDTH * SAMPLES_PER_CELL));
+                        int rgb = image.getRGB(x, y);
+                        //integer approximation of Rec. 601 luma
+                        sum += (((rgb >> 16) & 0xFF) * 77 + ((rgb >> 8) & 0xFF) * 150 + (rgb & 0xFF) * 29) >> 8;
+                    }
+                }
+                luma[cellY * HASH_WIDTH + cellX] = sum;
+            }
+        }
+        long hash = 0;
+        for (int y = 0; y < HASH_HEIGHT; y++) {
+            for (int x = 0; x < HASH_WIDTH - 1; x++) {
+                hash = (hash << 1) | (luma[y * HASH_WIDTH + x] > luma[y * HASH_WIDTH + x + 1] ? 1 : 0);
+            }
+        }
+        return hash;
+    }
+
+    private static final class CacheKey {
+        private final long hash;
+        private final float confidenceThreshhold;
+
+        CacheKey(long hash, float confidenceThreshhold) {
+            this.hash = hash;
+            this.confidenceThreshhold = confidenceThreshhold;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            CacheKey cacheKey = (CacheKey) o;
+            return hash == cacheKey.hash && Float.compare(confidenceThreshhold, cacheKey.confidenceThreshhold) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(hash, confidenceThreshhold);
+        }
+    }
+
+    private static final class CacheEntry {
+        private final boolean containsCat;
+        private final long createdNanos;
+
+        CacheEntry(boolean containsCat, long createdNanos) {
+            this.containsCat = containsCat;
+            this.createdNanos = createdNanos;
+        }
+    }
+}
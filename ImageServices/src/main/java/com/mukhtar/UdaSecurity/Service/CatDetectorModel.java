@@ -0,0 +1,74 @@
+package com.mukhtar.UdaSecurity.Service;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Weights of a linear classifier over {@link HogDescriptor} windows. A window's score is the dot
+ * product of its features with the weights plus the bias, and the logistic function of the score
+ * is the probability that the window shows a cat.
+ *
+ * The model is trained offline, for example with a linear SVM or logistic regression over
+ * {@link HogDescriptor#describe} of labelled images, and stored as a big-endian binary file:
+ * magic number, version, feature count, bias, then the weights.
+ */
+public final class CatDetectorModel {
+
+    private static final int MAGIC = 0x43415448; //"CATH"
+    private static final int VERSION = 1;
+
+    private final float[] weights;
+    private final float bias;
+
+    public CatDetectorModel(float[] weights, float bias) {
+        if (weights.length != HogDescriptor.FEATURE_COUNT) {
+            throw new IllegalArgumentException("Expected " + HogDescriptor.FEATURE_COUNT + " weights, got " + weights.length);
+        }
+        this.weights = weights.clone();
+        this.bias = bias;
+    }
+
+    public static CatDetectorModel read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a cat detector model");
+        }
+        int version = data.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported cat detector model version " + version);
+        }
+        int featureCount = data.readInt();
+        if (featureCount != HogDescriptor.FEATURE_COUNT) {
+            throw new IOException("Model has " + featureCount + " features, expected " + HogDescriptor.FEATURE_COUNT);
+        }
+        float bias = data.readFloat();
+        float[] weights = new float[featureCount];
+        for (int i = 0; i < featureCount; i++) {
+            weights[i] = data.readFloat();
+        }
+        return new CatDetectorModel(weights, bias);
+    }
+
+    public void write(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(weights.length);
+        data.writeFloat(bias);
+        for (float weight : weights) {
+            data.writeFloat(weight);
+        }
+        data.flush();
+    }
+
+    /**
+     * @return the confidence in percent that the window at the given cell shows a cat
+     */
+    float confidence(HogDescriptor descriptor, int cellX, int cellY) {
+        float score = descriptor.score(weights, cellX, cellY) + bias;
+        return (float) (100 / (1 + Math.exp(-score)));
+    }
+}
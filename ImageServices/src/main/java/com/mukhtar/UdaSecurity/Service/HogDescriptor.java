@@ -0,0 +1,196 @@
+package com.mukhtar.UdaSecurity.Service;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+
+/**
+ * Histogram of oriented gradients for a grayscale copy of an image. The image is split into 8x8
+ * pixel cells, each holding a 9 bin histogram of gradient directions weighted by gradient
+ * strength, and every 2x2 group of neighbouring cells is normalised into a block. A detection
+ * window of {@value #WINDOW_SIZE}x{@value #WINDOW_SIZE} pixels covers 7x7 overlapping blocks,
+ * which gives {@value #FEATURE_COUNT} features per window.
+ *
+ * Blocks are worked out once per image, so sliding the window over it only costs one dot product
+ * per position.
+ */
+public class HogDescriptor {
+
+    public static final int WINDOW_SIZE = 64;
+
+    static final int CELL_SIZE = 8;
+    static final int BINS = 9;
+    private static final int BLOCK_CELLS = 2;
+    private static final int BLOCK_LENGTH = BLOCK_CELLS * BLOCK_CELLS * BINS;
+    static final int WINDOW_BLOCKS = WINDOW_SIZE / CELL_SIZE - BLOCK_CELLS + 1;
+    private static final int WINDOW_ROW_LENGTH = WINDOW_BLOCKS * BLOCK_LENGTH;
+
+    public static final int FEATURE_COUNT = WINDOW_BLOCKS * WINDOW_ROW_LENGTH;
+
+    private static final float BIN_WIDTH = (float) (Math.PI / BINS);
+    //L2-Hys: components are clipped to this after the first normalisation
+    private static final float BLOCK_CLIP = 0.2f;
+    private static final float EPSILON = 1e-3f;
+
+    private final int blocksAcross;
+    //normalised blocks, row by row, each BLOCK_LENGTH long
+    private final float[] blocks;
+
+    private HogDescriptor(int blocksAcross, float[] blocks) {
+        this.blocksAcross = blocksAcross;
+        this.blocks = blocks;
+    }
+
+    /**
+     * Describes an image scaled to a square of the given size.
+     * @param size side length in pixels, a multiple of the cell size and at least one window
+     */
+    public static HogDescriptor of(BufferedImage image, int size) {
+        if (size < WINDOW_SIZE || size % CELL_SIZE != 0) {
+            throw new IllegalArgumentException("Unsupported size: " + size);
+        }
+        byte[] gray = toGray(image, size);
+        int cellsAcross = size / CELL_SIZE;
+        float[] cells = cellHistograms(gray, size, cellsAcross);
+        return new HogDescriptor(cellsAcross - BLOCK_CELLS + 1, normaliseBlocks(cells, cellsAcross));
+    }
+
+    /**
+     * @return the feature vector of a whole image scaled down to one window, in the order the
+     * weights of a {@link CatDetectorModel} use
+     */
+    public static float[] describe(BufferedImage image) {
+        return of(image, WINDOW_SIZE).windowFeatures(0, 0);
+    }
+
+    /**
+     * @return number of window positions along each side, one per cell
+     */
+    public int getWindowPositions() {
+        return blocksAcross - WINDOW_BLOCKS + 1;
+    }
+
+    /**
+     * @return the features of the window whose top left cell is the given one
+     */
+    public float[] windowFeatures(int cellX, int cellY) {
+        float[] features = new float[FEATURE_COUNT];
+        for (int row = 0; row < WINDOW_BLOCKS; row++) {
+            System.arraycopy(blocks, blockOffset(cellX, cellY + row), features, row * WINDOW_ROW_LENGTH,
+                    WINDOW_ROW_LENGTH);
+        }
+        return features;
+    }
+
+    /**
+     * @return the dot product of the weights with the features of the window whose top left cell
+     * is the given one
+     */
+    public float score(float[] weights, int cellX, int cellY) {
+        float sum = 0;
+        //the blocks of one window row lie next to each other, so each row is one contiguous run
+        for (int row = 0; row < WINDOW_BLOCKS; row++) {
+            sum += dot(blocks, blockOffset(cellX, cellY + row), weights, row * WINDOW_ROW_LENGTH, WINDOW_ROW_LENGTH);
+        }
+        return sum;
+    }
+
+    private int blockOffset(int blockX, int blockY) {
+        return (blockY * blocksAcross + blockX) * BLOCK_LENGTH;
+    }
+
+    /**
+     * Dot product with four independent sums, which lets the JIT keep several multiply-adds in
+     * flight instead of waiting on a single running total.
+     */
+    static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (; i + 3 < length; i += 4) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+            s1 += a[aOffset + i + 1] * b[bOffset + i + 1];
+            s2 += a[aOffset + i + 2] * b[bOffset + i + 2];
+            s3 += a[aOffset + i + 3] * b[bOffset + i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    private static byte[] toGray(BufferedImage image, int size) {
+        BufferedImage gray = new BufferedImage(size, size, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D g = gray.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(image, 0, 0, size, size, null);
+        } finally {
+            g.dispose();
+        }
+        return ((DataBufferByte) gray.getRaster().getDataBuffer()).getData();
+    }
+
+    /**
+     * Adds each pixel's gradient strength to the two direction bins nearest its direction, in the
+     * pixel's cell. Directions are unsigned, so a dark-to-light edge counts the same as a
+     * light-to-dark one.
+     */
+    private static float[] cellHistograms(byte[] gray, int size, int cellsAcross) {
+        float[] cells = new float[cellsAcross * cellsAcross * BINS];
+        for (int y = 0; y < size; y++) {
+            int up = (y == 0 ? y : y - 1) * size;
+            int down = (y == size - 1 ? y : y + 1) * size;
+            int cellRow = (y / CELL_SIZE) * cellsAcross;
+            for (int x = 0; x < size; x++) {
+                int left = x == 0 ? x : x - 1;
+                int right = x == size - 1 ? x : x + 1;
+                float gx = (gray[y * size + right] & 0xFF) - (gray[y * size + left] & 0xFF);
+                float gy = (gray[down + x] & 0xFF) - (gray[up + x] & 0xFF);
+                float magnitude = (float) Math.sqrt(gx * gx + gy * gy);
+                if (magnitude == 0) {
+                    continue;
+                }
+                float angle = (float) Math.atan2(gy, gx);
+                if (angle < 0) {
+                    angle += (float) Math.PI;
+                }
+                //bin centres sit at (bin + 0.5) * BIN_WIDTH, split the magnitude between the two nearest
+                float position = angle / BIN_WIDTH - 0.5f;
+                int lower = (int) Math.floor(position);
+                float upperShare = position - lower;
+                int cell = (cellRow + x / CELL_SIZE) * BINS;
+                cells[cell + Math.floorMod(lower, BINS)] += magnitude * (1 - upperShare);
+                cells[cell + Math.floorMod(lower + 1, BINS)] += magnitude * upperShare;
+            }
+        }
+        return cells;
+    }
+
+    private static float[] normaliseBlocks(float[] cells, int cellsAcross) {
+        int blocksAcross = cellsAcross - BLOCK_CELLS + 1;
+        float[] blocks = new float[blocksAcross * blocksAcross * BLOCK_LENGTH];
+        for (int blockY = 0; blockY < blocksAcross; blockY++) {
+            for (int blockX = 0; blockX < blocksAcross; blockX++) {
+                int offset = (blockY * blocksAcross + blockX) * BLOCK_LENGTH;
+                for (int cy = 0; cy < BLOCK_CELLS; cy++) {
+                    System.arraycopy(cells, ((blockY + cy) * cellsAcross + blockX) * BINS,
+                            blocks, offset + cy * BLOCK_CELLS * BINS, BLOCK_CELLS * BINS);
+                }
+                normalise(blocks, offset);
+                for (int i = offset; i < offset + BLOCK_LENGTH; i++) {
+                    blocks[i] = Math.min(blocks[i], BLOCK_CLIP);
+                }
+                normalise(blocks, offset);
+            }
+        }
+        return blocks;
+    }
+
+    private static void normalise(float[] values, int offset) {
+        float norm = (float) Math.sqrt(dot(values, offset, values, offset, BLOCK_LENGTH) + EPSILON * EPSILON);
+        for (int i = offset; i < offset + BLOCK_LENGTH; i++) {
+            values[i] /= norm;
+        }
+    }
+}
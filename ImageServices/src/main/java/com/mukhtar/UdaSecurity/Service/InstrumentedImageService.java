@@ -0,0 +1,51 @@
+package com.mukhtar.UdaSecurity.Service;
+
+import com.mukhtar.UdaSecurity.metrics.Counter;
+import com.mukhtar.UdaSecurity.metrics.MetricsRegistry;
+import com.mukhtar.UdaSecurity.metrics.Timer;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Decorator that times every detection call of the wrapped service and counts its verdicts and
+ * failures.
+ */
+public class InstrumentedImageService implements ImageServicesInterface {
+
+    private final ImageServicesInterface imageService;
+    private final Timer detectionTimer;
+    private final Counter cats;
+    private final Counter noCats;
+    private final Counter failures;
+
+    /**
+     * @param service label value telling this service apart from other instrumented ones, for
+     *                example "rekognition" or "cache"
+     */
+    public InstrumentedImageService(ImageServicesInterface imageService, MetricsRegistry registry, String service) {
+        this.imageService = imageService;
+        this.detectionTimer = registry.timer("catpoint_image_detection_seconds",
+                "Time taken to decide whether an image contains a cat", "service", service);
+        String verdicts = "catpoint_image_detections_total";
+        String verdictsHelp = "Images analysed, by outcome";
+        this.cats = registry.counter(verdicts, verdictsHelp, "service", service, "outcome", "cat");
+        this.noCats = registry.counter(verdicts, verdictsHelp, "service", service, "outcome", "no_cat");
+        this.failures = registry.counter(verdicts, verdictsHelp, "service", service, "outcome", "error");
+    }
+
+    @Override
+    public boolean imageContainsCat(BufferedImage image, float confidenceThreshhold) {
+        long start = System.nanoTime();
+        boolean containsCat;
+        try {
+            containsCat = imageService.imageContainsCat(image, confidenceThreshhold);
+        } catch (RuntimeException e) {
+            failures.increment();
+            throw e;
+        } finally {
+            detectionTimer.recordSince(start);
+        }
+        (containsCat ? cats : noCats).increment();
+        return containsCat;
+    }
+}
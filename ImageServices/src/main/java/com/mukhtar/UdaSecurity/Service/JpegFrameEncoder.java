@@ -0,0 +1,190 @@
+package com.mukhtar.UdaSecurity.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStreamImpl;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Encodes camera frames to JPEG with as little work and garbage per frame as possible. Each thread
+ * keeps its own JPEG writer, output buffer and conversion image, so a frame costs one encode into
+ * a buffer that is reused and one copy into the returned array. Frames larger than needed are
+ * scaled down first, which also makes the encode itself cheaper.
+ */
+public class JpegFrameEncoder {
+
+    public static final float DEFAULT_QUALITY = 0.8f;
+    //long edge that keeps plenty of detail for label detection
+    public static final int DEFAULT_MAX_DIMENSION = 1024;
+    //Rekognition rejects images smaller than this on either side
+    private static final int MIN_DIMENSION = 80;
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    private final int maxDimension;
+    private final ThreadLocal<EncoderState> state;
+
+    public JpegFrameEncoder() {
+        this(DEFAULT_QUALITY, DEFAULT_MAX_DIMENSION);
+    }
+
+    /**
+     * @param quality JPEG quality between 0 and 1
+     * @param maxDimension frames with a longer side than this are scaled down to it, 0 to never scale
+     */
+    public JpegFrameEncoder(float quality, int maxDimension) {
+        if (quality < 0 || quality > 1) {
+            throw new IllegalArgumentException("Quality must be between 0 and 1: " + quality);
+        }
+        if (maxDimension != 0 && maxDimension < MIN_DIMENSION) {
+            throw new IllegalArgumentException("Max dimension must be at least " + MIN_DIMENSION + ": " + maxDimension);
+        }
+        this.maxDimension = maxDimension;
+        this.state = ThreadLocal.withInitial(() -> new EncoderState(quality));
+    }
+
+    /**
+     * @return the JPEG bytes, in a new array the caller may keep
+     */
+    public byte[] encode(BufferedImage image) throws IOException {
+        EncoderState encoder = state.get();
+        BufferedImage frame = encoder.prepare(image, maxDimension);
+        encoder.output.clear();
+        try {
+            encoder.writer.setOutput(encoder.output);
+            encoder.writer.write(null, new IIOImage(frame, null, null), encoder.param);
+        } finally {
+            encoder.writer.setOutput(null);
+        }
+        return encoder.output.toByteArray();
+    }
+
+    private static final class EncoderState {
+        private final ImageWriter writer;
+        private final ImageWriteParam param;
+        private final ReusableImageOutputStream output = new ReusableImageOutputStream();
+        private BufferedImage converted;
+
+        EncoderState(float quality) {
+            Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+            if (!writers.hasNext()) {
+                throw new IllegalStateException("No JPEG writer available");
+            }
+            writer = writers.next();
+            param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+        }
+
+        /**
+         * @return the frame itself if the JPEG writer can take it as it is, otherwise a scaled
+         * or converted copy in an image that is reused for the next frame of the same size
+         */
+        BufferedImage prepare(BufferedImage image, int maxDimension) {
+            int width = image.getWidth();
+            int height = image.getHeight();
+            int longest = Math.max(width, height);
+            boolean scale = maxDimension != 0 && longest > maxDimension;
+            if (!scale && isJpegCompatible(image)) {
+                return image;
+            }
+            if (scale) {
+                width = Math.max(MIN_DIMENSION, (int) ((long) width * maxDimension / longest));
+                height = Math.max(MIN_DIMENSION, (int) ((long) height * maxDimension / longest));
+            }
+            if (converted == null || converted.getWidth() != width || converted.getHeight() != height) {
+                converted = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+            }
+            Graphics2D g = converted.createGraphics();
+            try {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.drawImage(image, 0, 0, width, height, null);
+            } finally {
+                g.dispose();
+            }
+            return converted;
+        }
+
+        private static boolean isJpegCompatible(BufferedImage image) {
+            int type = image.getType();
+            return type == BufferedImage.TYPE_3BYTE_BGR || type == BufferedImage.TYPE_INT_RGB
+                    || type == BufferedImage.TYPE_INT_BGR || type == BufferedImage.TYPE_BYTE_GRAY;
+        }
+    }
+
+    /**
+     * In-memory image output stream whose buffer is kept between frames.
+     */
+    private static final class ReusableImageOutputStream extends ImageOutputStreamImpl {
+        private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+        private int length;
+
+        void clear() {
+            streamPos = 0;
+            flushedPos = 0;
+            bitOffset = 0;
+            length = 0;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, length);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            flushBits();
+            ensureCapacity(streamPos + 1);
+            buffer[(int) streamPos++] = (byte) b;
+            length = Math.max(length, (int) streamPos);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            flushBits();
+            ensureCapacity(streamPos + len);
+            System.arraycopy(b, off, buffer, (int) streamPos, len);
+            streamPos += len;
+            length = Math.max(length, (int) streamPos);
+        }
+
+        @Override
+        public int read() throws IOException {
+            checkClosed();
+            bitOffset = 0;
+            return streamPos < length ? buffer[(int) streamPos++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            checkClosed();
+            bitOffset = 0;
+            if (streamPos >= length) {
+                return -1;
+            }
+            int count = Math.min(len, length - (int) streamPos);
+            System.arraycopy(buffer, (int) streamPos, b, off, count);
+            streamPos += count;
+            return count;
+        }
+
+        @Override
+        public long length() {
+            return length;
+        }
+
+        private void ensureCapacity(long capacity) throws IOException {
+            if (capacity > Integer.MAX_VALUE - 8) {
+                throw new IOException("Encoded frame too large");
+            }
+            if (capacity > buffer.length) {
+                buffer = Arrays.copyOf(buffer, (int) Math.max(capacity, buffer.length * 2L));
+            }
+        }
+    }
+}
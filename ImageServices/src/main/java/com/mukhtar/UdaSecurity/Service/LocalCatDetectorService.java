@@ -0,0 +1,92 @@
+package com.mukhtar.UdaSecurity.Service;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Image Recognition Service that runs entirely on this machine, with no network access and no
+ * per-call cost. Each frame is described with a {@link HogDescriptor} at a few scales and a
+ * {@link CatDetectorModel} is slid over it one cell at a time; the frame contains a cat if any
+ * window is confident enough.
+ *
+ * The work per frame is fixed by the scales, not by the frame size, so latency stays in the low
+ * milliseconds. Frames are squashed to squares, so the model should be trained on squashed images
+ * too.
+ */
+public class LocalCatDetectorService implements ImageServicesInterface {
+
+    /**
+     * Classpath resource the model is loaded from by {@link #fromClasspath()}.
+     */
+    public static final String MODEL_RESOURCE = "cat-detector.model";
+
+    //the whole frame as one window, then windows a quarter of the frame
+    private static final int[] DEFAULT_SCALES = {HogDescriptor.WINDOW_SIZE, HogDescriptor.WINDOW_SIZE * 2};
+
+    private final CatDetectorModel model;
+    private final int[] scales;
+
+    public LocalCatDetectorService(CatDetectorModel model) {
+        this(model, DEFAULT_SCALES);
+    }
+
+    /**
+     * @param scales side lengths the frame is scaled to before sliding the window over it, each a
+     *               multiple of 8 and at least {@value HogDescriptor#WINDOW_SIZE}
+     */
+    public LocalCatDetectorService(CatDetectorModel model, int... scales) {
+        this.model = model;
+        this.scales = scales.clone();
+    }
+
+    public static LocalCatDetectorService fromClasspath() {
+        try (InputStream is = LocalCatDetectorService.class.getClassLoader().getResourceAsStream(MODEL_RESOURCE)) {
+            if (is == null) {
+                throw new UncheckedIOException(new IOException("No " + MODEL_RESOURCE + " on the classpath"));
+            }
+            return new LocalCatDetectorService(CatDetectorModel.read(new BufferedInputStream(is)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static LocalCatDetectorService fromFile(Path modelFile) {
+        try (InputStream is = new BufferedInputStream(Files.newInputStream(modelFile))) {
+            return new LocalCatDetectorService(CatDetectorModel.read(is));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns true if the provided image contains a cat.
+     * @param image Image to scan
+     * @param confidenceThreshhold Minimum threshhold to consider for cat. For example, 90.0f would require 90% confidence minimum
+     */
+    @Override
+    public boolean imageContainsCat(BufferedImage image, float confidenceThreshhold) {
+        return catConfidence(image) >= confidenceThreshhold;
+    }
+
+    /**
+     * @return the highest confidence in percent of any window that it shows a cat
+     */
+    public float catConfidence(BufferedImage image) {
+        float best = 0;
+        for (int scale : scales) {
+            HogDescriptor descriptor = HogDescriptor.of(image, scale);
+            int positions = descriptor.getWindowPositions();
+            for (int cellY = 0; cellY < positions; cellY++) {
+                for (int cellX = 0; cellX < positions; cellX++) {
+                    best = Math.max(best, model.confidence(descriptor, cellX, cellY));
+                }
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,282 @@
+package com.mukhtar.UdaSecurity.Service;
+
+import com.mukhtar.UdaSecurity.metrics.MetricsRegistry;
+
+import java.awt.image.BufferedImage;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Collects frames from any number of callers into small batches and sends each batch to an
+ * asynchronous image service at once, with a cap on the requests in flight and on the requests
+ * started per second, so many cameras can share one client without going over its rate limit.
+ *
+ * A single batcher thread takes the first waiting frame and keeps collecting for a window that
+ * adapts to how often frames arrive: long enough to fill a batch at the current rate, but no
+ * longer than the maximum window, and not at all when the next frame is not expected within it.
+ * While the concurrency limit is reached, new frames wait in line and go out together once
+ * requests complete.
+ */
+public class MicroBatchingImageService implements ImageServicesInterface, AsyncImageServicesInterface, AutoCloseable {
+
+    private static final int DEFAULT_MAX_CONCURRENCY = 8;
+    private static final double DEFAULT_REQUESTS_PER_SECOND = 20;
+    private static final Duration DEFAULT_MAX_WINDOW = Duration.ofMillis(20);
+    private static final int DEFAULT_MAX_BATCH_SIZE = 16;
+    //weight of the newest gap in the running average of gaps between frames
+    private static final double GAP_WEIGHT = 0.2;
+    private static final long IDLE_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final AsyncImageServicesInterface imageService;
+    private final Semaphore inFlight;
+    private final int maxConcurrency;
+    private final long nanosPerRequest;
+    private final long maxWindowNanos;
+    private final int maxBatchSize;
+    private final BlockingQueue<Frame> waiting = new LinkedBlockingQueue<>();
+    private final Thread batcher;
+    private volatile boolean running = true;
+    private volatile long windowNanos;
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder frames = new LongAdder();
+
+    //only touched by the batcher thread
+    private double averageGapNanos = Double.MAX_VALUE;
+    private long lastArrivalNanos;
+    private long nextRequestNanos;
+
+    public MicroBatchingImageService(AsyncImageServicesInterface imageService) {
+        this(imageService, DEFAULT_MAX_CONCURRENCY, DEFAULT_REQUESTS_PER_SECOND, DEFAULT_MAX_WINDOW, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    /**
+     * @param imageService asked about each frame; its calls should return without waiting for the answer
+     * @param maxConcurrency requests that may be in flight at once
+     * @param requestsPerSecond requests that may be started per second, or 0 for no limit
+     * @param maxWindow longest time the first frame of a batch waits for others
+     * @param maxBatchSize frames sent together at most
+     */
+    public MicroBatchingImageService(AsyncImageServicesInterface imageService, int maxConcurrency,
+                                     double requestsPerSecond, Duration maxWindow, int maxBatchSize) {
+        if (maxConcurrency < 1 || maxBatchSize < 1 || requestsPerSecond < 0) {
+            throw new IllegalArgumentException("maxConcurrency and maxBatchSize must be positive, requestsPerSecond not negative");
+        }
+        this.imageService = imageService;
+        this.maxConcurrency = maxConcurrency;
+        this.inFlight = new Semaphore(maxConcurrency);
+        this.nanosPerRequest = requestsPerSecond == 0 ? 0 : (long) (TimeUnit.SECONDS.toNanos(1) / requestsPerSecond);
+        this.maxWindowNanos = maxWindow.toNanos();
+        this.maxBatchSize = maxBatchSize;
+        this.batcher = new Thread(this::run, "image-batcher");
+        this.batcher.setDaemon(true);
+        this.batcher.start();
+    }
+
+    /**
+     * Queues the frame for the next batch. Cancelling the returned future before its batch is
+     * sent keeps the frame from being sent at all.
+     */
+    @Override
+    public CompletableFuture<Boolean> imageContainsCatAsync(BufferedImage image, float confidenceThreshhold) {
+        if (!running) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Image batcher is closed"));
+        }
+        Frame frame = new Frame(image, confidenceThreshhold);
+        waiting.add(frame);
+        //close may have drained the queue just before the frame went in
+        if (!running && waiting.remove(frame)) {
+            frame.result.completeExceptionally(new RejectedExecutionException("Image batcher is closed"));
+        }
+        return frame.result;
+    }
+
+    @Override
+    public boolean imageContainsCat(BufferedImage image, float confidenceThreshhold) {
+        try {
+            return imageContainsCatAsync(image, confidenceThreshhold).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    public long getFrameCount() {
+        return frames.sum();
+    }
+
+    public int getInFlightCount() {
+        return maxConcurrency - inFlight.availablePermits();
+    }
+
+    /**
+     * @return how long the batcher currently waits for more frames after the first, in nanoseconds
+     */
+    public long getWindowNanos() {
+        return windowNanos;
+    }
+
+    /**
+     * Publishes the batch and frame counts, the requests in flight and the current window.
+     */
+    public void bindTo(MetricsRegistry registry) {
+        registry.counter("catpoint_image_batches_total", "Batches of frames sent for analysis", this::getBatchCount);
+        registry.counter("catpoint_image_batch_frames_total", "Frames sent for analysis in batches", this::getFrameCount);
+        registry.gauge("catpoint_image_requests_in_flight", "Image analysis requests awaiting an answer", this::getInFlightCount);
+        registry.gauge("catpoint_image_batch_window_seconds", "Time the batcher waits for more frames",
+                () -> getWindowNanos() / 1e9);
+    }
+
+    /**
+     * Stops the batcher. Frames still waiting fail with a {@link RejectedExecutionException};
+     * requests already sent are left to complete.
+     */
+    @Override
+    public void close() {
+        running = false;
+        batcher.interrupt();
+        try {
+            batcher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Frame frame;
+        while ((frame = waiting.poll()) != null) {
+            frame.result.completeExceptionally(new RejectedExecutionException("Image batcher is closed"));
+        }
+    }
+
+    private void run() {
+        List<Frame> batch = new ArrayList<>(maxBatchSize);
+        try {
+            while (running) {
+                batch.clear();
+                Frame first = waiting.poll(IDLE_POLL_NANOS, TimeUnit.NANOSECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(arrived(first));
+                long deadline = first.submittedNanos + windowNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    Frame next = remaining > 0 ? waiting.poll(remaining, TimeUnit.NANOSECONDS) : waiting.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(arrived(next));
+                }
+                send(batch);
+            }
+        } catch (InterruptedException e) {
+            //closed while the batch was collected or sent
+            for (Frame frame : batch) {
+                if (!frame.sent) {
+                    frame.result.completeExceptionally(new RejectedExecutionException("Image batcher is closed"));
+                }
+            }
+        }
+    }
+
+    /**
+     * Updates the average gap between frames and the window that follows from it.
+     */
+    private Frame arrived(Frame frame) {
+        if (lastArrivalNanos != 0) {
+            double gap = Math.max(0, frame.submittedNanos - lastArrivalNanos);
+            averageGapNanos = averageGapNanos == Double.MAX_VALUE ? gap
+                    : averageGapNanos + GAP_WEIGHT * (gap - averageGapNanos);
+        }
+        lastArrivalNanos = frame.submittedNanos;
+        windowNanos = averageGapNanos > maxWindowNanos ? 0
+                : (long) Math.min(maxWindowNanos, averageGapNanos * (maxBatchSize - 1));
+        return frame;
+    }
+
+    private void send(List<Frame> batch) throws InterruptedException {
+        batches.increment();
+        for (Frame frame : batch) {
+            if (frame.result.isDone()) {
+                continue;
+            }
+            inFlight.acquire();
+            pace();
+            //the caller may have given up while this frame waited for a permit
+            if (frame.result.isDone()) {
+                inFlight.release();
+                continue;
+            }
+            frames.increment();
+            frame.sent = true;
+            CompletableFuture<Boolean> request;
+            try {
+                request = imageService.imageContainsCatAsync(frame.image, frame.confidenceThreshhold);
+            } catch (RuntimeException e) {
+                inFlight.release();
+                frame.result.completeExceptionally(e);
+                continue;
+            }
+            request.whenComplete((cat, error) -> {
+                inFlight.release();
+                if (error != null) {
+                    frame.result.completeExceptionally(error);
+                } else {
+                    frame.result.complete(cat);
+                }
+            });
+            frame.result.whenComplete((cat, error) -> {
+                if (frame.result.isCancelled()) {
+                    request.cancel(true);
+                }
+            });
+        }
+    }
+
+    /**
+     * Waits until the next request may start under the rate limit.
+     */
+    private void pace() throws InterruptedException {
+        if (nanosPerRequest == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        //no credit builds up while idle, so a burst after a quiet spell is still spread out
+        long start = Math.max(now, nextRequestNanos);
+        nextRequestNanos = start + nanosPerRequest;
+        while ((now = System.nanoTime()) < start) {
+            LockSupport.parkNanos(start - now);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    private static final class Frame {
+        private final BufferedImage image;
+        private final float confidenceThreshhold;
+        private final long submittedNanos = System.nanoTime();
+        private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+        //only touched by the batcher thread
+        private boolean sent;
+
+        Frame(BufferedImage image, float confidenceThreshhold) {
+            this.image = image;
+            this.confidenceThreshhold = confidenceThreshhold;
+        }
+    }
+}
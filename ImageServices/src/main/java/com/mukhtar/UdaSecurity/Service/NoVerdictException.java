@@ -0,0 +1,12 @@
+package com.mukhtar.UdaSecurity.Service;
+
+/**
+ * Thrown by an image service that could not look at the image, to say it has no verdict rather
+ * than guess one. The camera's previous verdict should be left to stand.
+ */
+public class NoVerdictException extends RuntimeException {
+
+    public NoVerdictException(String message) {
+        super(message);
+    }
+}
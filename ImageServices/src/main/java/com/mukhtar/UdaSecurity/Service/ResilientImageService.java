@@ -0,0 +1,220 @@
+package com.mukhtar.UdaSecurity.Service;
+
+import com.mukhtar.UdaSecurity.metrics.MetricsRegistry;
+
+import java.awt.image.BufferedImage;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decorator that keeps answers coming when the wrapped service slows down or fails. Calls are
+ * shed beyond an {@link AdaptiveConcurrencyLimit} that follows the service's latency, each call
+ * gets a timeout, and a {@link CircuitBreaker} stops calling a service that keeps failing. A call
+ * that is shed, times out or fails is answered by the fallback service, or with a
+ * {@link NoVerdictException} if there is no fallback, since a verdict from some other image
+ * would most likely be another camera's.
+ *
+ * A call that timed out still counts against the limit until the wrapped service returns, so a
+ * hung backend cannot pile up threads.
+ */
+public class ResilientImageService implements ImageServicesInterface {
+
+    private static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(2);
+    private static final int DEFAULT_MAX_CONCURRENCY = 64;
+    private static final int INITIAL_CONCURRENCY = 4;
+    private static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    private static final Duration DEFAULT_OPEN_TIME = Duration.ofSeconds(30);
+
+    private final ImageServicesInterface imageService;
+    private final ImageServicesInterface fallback;
+    private final long timeoutNanos;
+    private final AdaptiveConcurrencyLimit limit;
+    private final CircuitBreaker circuitBreaker;
+    private final ExecutorService callers;
+
+    private final LongAdder shedByLimit = new LongAdder();
+    private final LongAdder shedByCircuit = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    /**
+     * @param fallback answers calls the wrapped service cannot, for example a
+     *                 {@link LocalCatDetectorService}; null to throw {@link NoVerdictException} instead
+     */
+    public ResilientImageService(ImageServicesInterface imageService, ImageServicesInterface fallback) {
+        this(imageService, fallback, DEFAULT_TIMEOUT, DEFAULT_MAX_CONCURRENCY, DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_TIME);
+    }
+
+    /**
+     * @param timeout longest wait for the wrapped service
+     * @param maxConcurrency highest the concurrency limit may grow
+     * @param failureThreshold failures and timeouts in a row that open the circuit breaker
+     * @param openTime how long an open circuit breaker refuses calls before trying again
+     */
+    public ResilientImageService(ImageServicesInterface imageService, ImageServicesInterface fallback,
+                                 Duration timeout, int maxConcurrency, int failureThreshold, Duration openTime) {
+        this.imageService = imageService;
+        this.fallback = fallback;
+        this.timeoutNanos = timeout.toNanos();
+        this.limit = new AdaptiveConcurrencyLimit(Math.min(INITIAL_CONCURRENCY, maxConcurrency), 1, maxConcurrency);
+        this.circuitBreaker = new CircuitBreaker(failureThreshold, openTime.toNanos());
+        AtomicInteger threadCount = new AtomicInteger();
+        this.callers = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "image-call-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @throws NoVerdictException if the wrapped service gave no answer and there is no fallback
+     */
+    @Override
+    public boolean imageContainsCat(BufferedImage image, float confidenceThreshhold) {
+        if (!circuitBreaker.tryAcquire()) {
+            shedByCircuit.increment();
+            return fallback(image, confidenceThreshhold);
+        }
+        if (!limit.tryAcquire()) {
+            circuitBreaker.abandon();
+            shedByLimit.increment();
+            return fallback(image, confidenceThreshhold);
+        }
+        long start = System.nanoTime();
+        Future<Boolean> call;
+        try {
+            call = start(image, confidenceThreshhold);
+        } catch (RuntimeException e) {
+            limit.release();
+            return failed(image, confidenceThreshhold);
+        }
+        try {
+            boolean cat = call.get(timeoutNanos, TimeUnit.NANOSECONDS);
+            limit.onSuccess(System.nanoTime() - start);
+            circuitBreaker.onSuccess();
+            return cat;
+        } catch (TimeoutException e) {
+            call.cancel(true);
+            timeouts.increment();
+            limit.onDropped();
+            circuitBreaker.onFailure();
+            return fallback(image, confidenceThreshhold);
+        } catch (ExecutionException e) {
+            limit.onDropped();
+            return failed(image, confidenceThreshhold);
+        } catch (InterruptedException e) {
+            call.cancel(true);
+            circuitBreaker.abandon();
+            Thread.currentThread().interrupt();
+            return fallback(image, confidenceThreshhold);
+        }
+    }
+
+    public long getShedCount() {
+        return shedByLimit.sum() + shedByCircuit.sum();
+    }
+
+    public long getTimeoutCount() {
+        return timeouts.sum();
+    }
+
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    public int getConcurrencyLimit() {
+        return limit.getLimit();
+    }
+
+    /**
+     * @return CLOSED, HALF_OPEN or OPEN
+     */
+    public String getCircuitState() {
+        return circuitBreaker.getState().name();
+    }
+
+    /**
+     * Publishes shed calls by reason, timeouts, failures, the concurrency limit and calls in
+     * flight, and the circuit breaker state as 0 closed, 1 half open or 2 open.
+     */
+    public void bindTo(MetricsRegistry registry) {
+        String shed = "catpoint_image_requests_shed_total";
+        String shedHelp = "Image detection calls answered by the fallback without trying, by reason";
+        registry.counter(shed, shedHelp, shedByLimit::sum, "reason", "concurrency_limit");
+        registry.counter(shed, shedHelp, shedByCircuit::sum, "reason", "circuit_open");
+        String failed = "catpoint_image_requests_failed_total";
+        String failedHelp = "Image detection calls answered by the fallback after trying, by reason";
+        registry.counter(failed, failedHelp, this::getTimeoutCount, "reason", "timeout");
+        registry.counter(failed, failedHelp, this::getFailureCount, "reason", "error");
+        registry.gauge("catpoint_image_concurrency_limit", "Image detection calls allowed in flight", limit::getLimit);
+        registry.gauge("catpoint_image_requests_active", "Image detection calls in flight", limit::getInFlight);
+        registry.gauge("catpoint_image_circuit_state", "Image detection circuit breaker, 0 closed, 1 half open, 2 open",
+                () -> circuitBreaker.getState().ordinal());
+    }
+
+    /**
+     * Starts the call without blocking. The concurrency permit is given back when the wrapped
+     * service returns, not when the caller stops waiting.
+     */
+    private Future<Boolean> start(BufferedImage image, float confidenceThreshhold) {
+        if (imageService instanceof AsyncImageServicesInterface) {
+            CompletableFuture<Boolean> call = ((AsyncImageServicesInterface) imageService)
+                    .imageContainsCatAsync(image, confidenceThreshhold);
+            call.whenComplete((cat, error) -> limit.release());
+            return call;
+        }
+        Permit permit = new Permit();
+        FutureTask<Boolean> call = new FutureTask<>(() -> {
+            permit.started = true;
+            try {
+                return imageService.imageContainsCat(image, confidenceThreshhold);
+            } finally {
+                permit.release();
+            }
+        }) {
+            @Override
+            protected void done() {
+                //cancelled before a thread picked it up, so the call above never runs
+                if (!permit.started) {
+                    permit.release();
+                }
+            }
+        };
+        callers.execute(call);
+        return call;
+    }
+
+    private boolean failed(BufferedImage image, float confidenceThreshhold) {
+        failures.increment();
+        circuitBreaker.onFailure();
+        return fallback(image, confidenceThreshhold);
+    }
+
+    private boolean fallback(BufferedImage image, float confidenceThreshhold) {
+        if (fallback == null) {
+            throw new NoVerdictException("Image detection is unavailable and there is no fallback");
+        }
+        return fallback.imageContainsCat(image, confidenceThreshhold);
+    }
+
+    private final class Permit {
+        private final AtomicBoolean released = new AtomicBoolean();
+        private volatile boolean started;
+
+        void release() {
+            if (released.compareAndSet(false, true)) {
+                limit.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.mukhtar.UdaSecurity.metrics;
+
+/**
+ * A count that only goes up.
+ */
+public interface Counter {
+
+    void increment();
+}
@@ -0,0 +1,117 @@
+package com.mukhtar.UdaSecurity.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram in the style of HdrHistogram: values are counted in buckets whose width grows
+ * with the value, 64 buckets per power of two, so every recorded value is known to within about
+ * 1.5% whether it is a microsecond or a minute. Recording is a few shifts and one atomic add, and
+ * the whole histogram is a fixed array of about 2400 counters.
+ *
+ * Values are nanoseconds; anything above {@link #MAX_VALUE} (about 73 minutes) counts as that.
+ */
+public final class LatencyHistogram implements Timer {
+
+    public static final long MAX_VALUE = (1L << 42) - 1;
+
+    //each power of two above 2^SUB_BUCKET_BITS is split into half that many buckets
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_HALF = 1 << (SUB_BUCKET_BITS - 1);
+
+    private final AtomicLongArray counts = new AtomicLongArray(index(MAX_VALUE) + 1);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    @Override
+    public void record(long durationNanos) {
+        long value = Math.max(0, Math.min(durationNanos, MAX_VALUE));
+        counts.incrementAndGet(index(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Copies the counts, so percentiles can be read from one consistent picture while recording
+     * goes on.
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[counts.length()];
+        long total = 0;
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = counts.get(i);
+            total += copy[i];
+        }
+        return new Snapshot(copy, total, sum.sum(), max.get());
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    static int index(long value) {
+        int shift = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1));
+        return (shift << (SUB_BUCKET_BITS - 1)) + (int) (value >>> shift);
+    }
+
+    /**
+     * @return the largest value that falls into the bucket
+     */
+    static long highestValue(int index) {
+        int shift = Math.max(0, (index >> (SUB_BUCKET_BITS - 1)) - 1);
+        long lowest = (long) (index - (shift << (SUB_BUCKET_BITS - 1))) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        private Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return the sum of all recorded values, in nanoseconds
+         */
+        public long getSum() {
+            return sum;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * @param quantile between 0 and 1, for example 0.99
+         * @return a value at least as large as that share of the recorded values, or 0 if nothing
+         * was recorded
+         */
+        public long getValueAtQuantile(double quantile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(highestValue(i), max);
+                }
+            }
+            return max;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.mukhtar.UdaSecurity.metrics;
+
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Hands out the instruments components record into. Components ask for their instruments once
+ * and keep them, so an implementation may do real work here but should keep
+ * {@link Timer#record} and {@link Counter#increment} cheap.
+ *
+ * Names follow the Prometheus conventions: snake case, a unit suffix, {@code _total} for counters.
+ * Labels are given as alternating names and values. Asking twice for the same name and labels
+ * returns the same instrument.
+ */
+public interface MetricsRegistry {
+
+    /**
+     * A registry that records nothing, for components that are not being watched.
+     */
+    MetricsRegistry NOOP = new MetricsRegistry() {
+        @Override
+        public Timer timer(String name, String help, String... labels) {
+            return durationNanos -> { };
+        }
+
+        @Override
+        public Counter counter(String name, String help, String... labels) {
+            return () -> { };
+        }
+
+        @Override
+        public void counter(String name, String help, LongSupplier count, String... labels) {
+        }
+
+        @Override
+        public void gauge(String name, String help, DoubleSupplier value, String... labels) {
+        }
+    };
+
+    Timer timer(String name, String help, String... labels);
+
+    Counter counter(String name, String help, String... labels);
+
+    /**
+     * Registers a counter that a component already keeps, read whenever the metrics are collected.
+     */
+    void counter(String name, String help, LongSupplier count, String... labels);
+
+    /**
+     * Registers a value that can go up and down, read whenever the metrics are collected.
+     */
+    void gauge(String name, String help, DoubleSupplier value, String... labels);
+}
@@ -0,0 +1,161 @@
+package com.mukhtar.UdaSecurity.metrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps every instrument in memory and writes them out in the Prometheus text format. Timers are
+ * {@link LatencyHistogram}s and are exported as summaries in seconds, with the median and the
+ * 90th, 99th and 99.9th percentiles since the start.
+ *
+ * Registering is synchronized; recording into an instrument takes no lock.
+ */
+public class SimpleMetricsRegistry implements MetricsRegistry {
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    //guarded by this, in registration order
+    private final Map<String, Family> families = new LinkedHashMap<>();
+
+    @Override
+    public synchronized Timer timer(String name, String help, String... labels) {
+        return (Timer) family(name, help, Type.SUMMARY).instruments.computeIfAbsent(key(labels),
+                key -> new LatencyHistogram());
+    }
+
+    @Override
+    public synchronized Counter counter(String name, String help, String... labels) {
+        return (Counter) family(name, help, Type.COUNTER).instruments.computeIfAbsent(key(labels),
+                key -> new AdderCounter());
+    }
+
+    @Override
+    public synchronized void counter(String name, String help, LongSupplier count, String... labels) {
+        family(name, help, Type.COUNTER).instruments.put(key(labels), count);
+    }
+
+    @Override
+    public synchronized void gauge(String name, String help, DoubleSupplier value, String... labels) {
+        family(name, help, Type.GAUGE).instruments.put(key(labels), value);
+    }
+
+    /**
+     * @return the current value of every instrument, in the Prometheus text exposition format
+     */
+    public String scrape() {
+        List<Family> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>();
+            for (Family family : families.values()) {
+                snapshot.add(family.copy());
+            }
+        }
+        StringBuilder out = new StringBuilder();
+        for (Family family : snapshot) {
+            out.append("# HELP ").append(family.name).append(' ').append(escapeHelp(family.help)).append('\n');
+            out.append("# TYPE ").append(family.name).append(' ').append(family.type.name().toLowerCase(Locale.ROOT)).append('\n');
+            family.instruments.forEach((labels, instrument) -> write(out, family.name, labels, instrument));
+        }
+        return out.toString();
+    }
+
+    private static List<String> key(String[] labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("labels must be name and value pairs: " + Arrays.toString(labels));
+        }
+        return List.of(labels);
+    }
+
+    private Family family(String name, String help, Type type) {
+        Family family = families.computeIfAbsent(name, key -> new Family(name, help, type));
+        if (family.type != type) {
+            throw new IllegalArgumentException(name + " is already registered as a " + family.type);
+        }
+        return family;
+    }
+
+    private static void write(StringBuilder out, String name, List<String> labels, Object instrument) {
+        if (instrument instanceof LatencyHistogram) {
+            LatencyHistogram.Snapshot snapshot = ((LatencyHistogram) instrument).snapshot();
+            for (double quantile : QUANTILES) {
+                sample(out, name, labels, "quantile", Double.toString(quantile),
+                        snapshot.getValueAtQuantile(quantile) / NANOS_PER_SECOND);
+            }
+            sample(out, name + "_sum", labels, null, null, snapshot.getSum() / NANOS_PER_SECOND);
+            sample(out, name + "_count", labels, null, null, snapshot.getCount());
+        } else if (instrument instanceof AdderCounter) {
+            sample(out, name, labels, null, null, ((AdderCounter) instrument).sum());
+        } else if (instrument instanceof LongSupplier) {
+            sample(out, name, labels, null, null, ((LongSupplier) instrument).getAsLong());
+        } else {
+            sample(out, name, labels, null, null, ((DoubleSupplier) instrument).getAsDouble());
+        }
+    }
+
+    private static void sample(StringBuilder out, String name, List<String> labels, String extraLabel,
+                               String extraValue, double value) {
+        out.append(name);
+        if (!labels.isEmpty() || extraLabel != null) {
+            out.append('{');
+            for (int i = 0; i + 1 < labels.size(); i += 2) {
+                out.append(labels.get(i)).append("=\"").append(escapeLabel(labels.get(i + 1))).append("\",");
+            }
+            if (extraLabel != null) {
+                out.append(extraLabel).append("=\"").append(extraValue).append("\",");
+            }
+            out.setCharAt(out.length() - 1, '}');
+        }
+        out.append(' ');
+        if (value == (long) value) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+
+    private static String escapeLabel(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static String escapeHelp(String help) {
+        return help.replace("\\", "\\\\").replace("\n", "\\n");
+    }
+
+    private enum Type {
+        COUNTER, GAUGE, SUMMARY
+    }
+
+    private static final class Family {
+        private final String name;
+        private final String help;
+        private final Type type;
+        private final Map<List<String>, Object> instruments;
+
+        private Family(String name, String help, Type type) {
+            this(name, help, type, new LinkedHashMap<>());
+        }
+
+        private Family(String name, String help, Type type, Map<List<String>, Object> instruments) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            this.instruments = instruments;
+        }
+
+        private Family copy() {
+            return new Family(name, help, type, new LinkedHashMap<>(instruments));
+        }
+    }
+
+    private static final class AdderCounter extends LongAdder implements Counter {
+    }
+}
@@ -0,0 +1,16 @@
+package com.mukhtar.UdaSecurity.metrics;
+
+/**
+ * Records how long something took.
+ */
+public interface Timer {
+
+    void record(long durationNanos);
+
+    /**
+     * Records the time from {@code startNanos}, a {@link System#nanoTime()} reading, until now.
+     */
+    default void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+}
@@ -3,7 +3,8 @@ module com.mukhtar.UdaSecurity.ImageServices{
     requires software.amazon.awssdk.auth;
     requires software.amazon.awssdk.core;
     requires software.amazon.awssdk.regions;
-    requires software.amazon.awssdk.services.rekognition;
+    requires transitive software.amazon.awssdk.services.rekognition;
     requires java.desktop;
     exports com.mukhtar.UdaSecurity.Service;
+    exports com.mukhtar.UdaSecurity.metrics;
 }
\ No newline at end of file
@@ -0,0 +1,209 @@
+package com.mukhtar.UdaSecurity.Services;
+
+import com.mukhtar.UdaSecurity.data.AlarmStatus;
+import com.mukhtar.UdaSecurity.data.ArmingStatus;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Works out the alarm status from a stream of {@link AlarmEvent}s with the same
+ * {@link AlarmTransitions} the {@link SecurityService} uses. It keeps only what those rules
+ * look at: the alarm and arming status, which cameras see a cat and which sensors are active.
+ * It does no I/O and reads no clock, so replaying a recorded stream rebuilds exactly the state
+ * the system was in, as fast as the events can be read.
+ *
+ * Not thread safe; feed it from one thread.
+ */
+public class AlarmEngine {
+
+    /**
+     * Hears about every alarm status change, for example to produce an audit trail while replaying.
+     */
+    @FunctionalInterface
+    public interface Listener {
+        /**
+         * @param sequence number of events applied so far, including the one causing the change
+         * @param timestampMillis when the event causing the change happened
+         */
+        void alarmStatusChanged(long sequence, long timestampMillis, AlarmStatus previous, AlarmStatus next);
+    }
+
+    private static final AlarmStatus[] ALARM_STATUSES = AlarmStatus.values();
+    private static final ArmingStatus[] ARMING_STATUSES = ArmingStatus.values();
+
+    private final Listener listener;
+    private final Set<UUID> activeSensors = new HashSet<>();
+    private final Set<String> camerasSeeingCat = new HashSet<>();
+    private AlarmStatus alarmStatus = AlarmStatus.NO_ALARM;
+    private ArmingStatus armingStatus = ArmingStatus.DISARMED;
+    private long sequence;
+
+    public AlarmEngine() {
+        this((sequence, timestampMillis, previous, next) -> {
+        });
+    }
+
+    public AlarmEngine(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @return the alarm status after the event
+     */
+    public AlarmStatus apply(AlarmEvent event) {
+        long timestamp = event.getTimestampMillis();
+        switch (event.getType()) {
+            case SENSOR_ADDED:
+                sensorAdded(timestamp, event.getSensorId(), event.isActive());
+                break;
+            case SENSOR_CHANGED:
+                sensorChanged(timestamp, event.getSensorId(), event.isActive());
+                break;
+            case SENSOR_REMOVED:
+                sensorRemoved(timestamp, event.getSensorId());
+                break;
+            case CAT_DETECTED:
+                catDetected(timestamp, event.getCamera(), event.isActive());
+                break;
+            case ARMING_CHANGED:
+                armingChanged(timestamp, event.getArmingStatus());
+                break;
+            case STATUS_RESTORED:
+                statusRestored(timestamp, event.getAlarmStatus(), event.getArmingStatus());
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown event type: " + event.getType());
+        }
+        return alarmStatus;
+    }
+
+    public AlarmStatus getAlarmStatus() {
+        return alarmStatus;
+    }
+
+    public ArmingStatus getArmingStatus() {
+        return armingStatus;
+    }
+
+    public boolean isCatDetected() {
+        return !camerasSeeingCat.isEmpty();
+    }
+
+    public int getActiveSensorCount() {
+        return activeSensors.size();
+    }
+
+    public Set<UUID> getActiveSensorIds() {
+        return Set.copyOf(activeSensors);
+    }
+
+    public Set<String> getCamerasSeeingCat() {
+        return Set.copyOf(camerasSeeingCat);
+    }
+
+    /**
+     * @return number of events applied since the engine started from scratch
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    void sensorAdded(long timestamp, UUID sensorId, boolean active) {
+        setActive(sensorId, active);
+        advance(timestamp, alarmStatus);
+    }
+
+    void sensorChanged(long timestamp, UUID sensorId, boolean active) {
+        boolean wasActive = activeSensors.contains(sensorId);
+        AlarmStatus next = AlarmTransitions.onSensorChanged(alarmStatus, armingStatus, wasActive, active);
+        setActive(sensorId, active);
+        advance(timestamp, next);
+    }
+
+    void sensorRemoved(long timestamp, UUID sensorId) {
+        activeSensors.remove(sensorId);
+        advance(timestamp, alarmStatus);
+    }
+
+    void catDetected(long timestamp, String camera, boolean cat) {
+        if (cat) {
+            camerasSeeingCat.add(camera);
+        } else {
+            camerasSeeingCat.remove(camera);
+        }
+        advance(timestamp, AlarmTransitions.onCatDetected(alarmStatus, armingStatus, isCatDetected(),
+                activeSensors::isEmpty));
+    }
+
+    void armingChanged(long timestamp, ArmingStatus arming) {
+        AlarmStatus next = AlarmTransitions.onArmingChanged(alarmStatus, arming, isCatDetected());
+        armingStatus = arming;
+        advance(timestamp, next);
+    }
+
+    void statusRestored(long timestamp, AlarmStatus alarm, ArmingStatus arming) {
+        armingStatus = arming;
+        advance(timestamp, alarm);
+    }
+
+    private void setActive(UUID sensorId, boolean active) {
+        if (active) {
+            activeSensors.add(sensorId);
+        } else {
+            activeSensors.remove(sensorId);
+        }
+    }
+
+    private void advance(long timestamp, AlarmStatus next) {
+        sequence++;
+        if (next != alarmStatus) {
+            AlarmStatus previous = alarmStatus;
+            alarmStatus = next;
+            listener.alarmStatusChanged(sequence, timestamp, previous, next);
+        }
+    }
+
+    void writeState(DataOutput out) throws IOException {
+        out.writeLong(sequence);
+        out.writeByte(alarmStatus.ordinal());
+        out.writeByte(armingStatus.ordinal());
+        out.writeInt(camerasSeeingCat.size());
+        for (String camera : camerasSeeingCat) {
+            out.writeUTF(camera);
+        }
+        out.writeInt(activeSensors.size());
+        for (UUID sensorId : activeSensors) {
+            out.writeLong(sensorId.getMostSignificantBits());
+            out.writeLong(sensorId.getLeastSignificantBits());
+        }
+    }
+
+    /**
+     * Replaces the whole state with one written by {@link #writeState}.
+     */
+    void readState(DataInput in) throws IOException {
+        long readSequence = in.readLong();
+        AlarmStatus readAlarmStatus = ALARM_STATUSES[in.readByte()];
+        ArmingStatus readArmingStatus = ARMING_STATUSES[in.readByte()];
+        Set<String> cameras = new HashSet<>();
+        for (int i = in.readInt(); i > 0; i--) {
+            cameras.add(in.readUTF());
+        }
+        Set<UUID> sensors = new HashSet<>();
+        for (int i = in.readInt(); i > 0; i--) {
+            sensors.add(new UUID(in.readLong(), in.readLong()));
+        }
+        sequence = readSequence;
+        alarmStatus = readAlarmStatus;
+        armingStatus = readArmingStatus;
+        camerasSeeingCat.clear();
+        camerasSeeingCat.addAll(cameras);
+        activeSensors.clear();
+        activeSensors.addAll(sensors);
+    }
+}
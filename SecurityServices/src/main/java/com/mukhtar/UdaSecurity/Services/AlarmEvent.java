@@ -0,0 +1,136 @@
+package com.mukhtar.UdaSecurity.Services;
+
+import com.mukhtar.UdaSecurity.data.AlarmStatus;
+import com.mukhtar.UdaSecurity.data.ArmingStatus;
+import com.mukhtar.UdaSecurity.data.Sensor;
+
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Something that happened to the security system and may move the alarm status. Feeding the same
+ * events to an {@link AlarmEngine} in the same order always ends in the same state.
+ */
+public final class AlarmEvent {
+
+    public enum Type {
+        SENSOR_ADDED,
+        SENSOR_CHANGED,
+        SENSOR_REMOVED,
+        CAT_DETECTED,
+        ARMING_CHANGED,
+        STATUS_RESTORED
+    }
+
+    private final Type type;
+    private final long timestampMillis;
+    private final UUID sensorId;
+    private final boolean active;
+    private final String camera;
+    private final ArmingStatus armingStatus;
+    private final AlarmStatus alarmStatus;
+
+    private AlarmEvent(Type type, long timestampMillis, UUID sensorId, boolean active, String camera,
+                       ArmingStatus armingStatus, AlarmStatus alarmStatus) {
+        this.type = type;
+        this.timestampMillis = timestampMillis;
+        this.sensorId = sensorId;
+        this.active = active;
+        this.camera = camera;
+        this.armingStatus = armingStatus;
+        this.alarmStatus = alarmStatus;
+    }
+
+    /**
+     * A sensor joined the system, already active or not. Does not move the alarm status.
+     */
+    public static AlarmEvent sensorAdded(Sensor sensor) {
+        return new AlarmEvent(Type.SENSOR_ADDED, System.currentTimeMillis(), sensor.getSensorId(),
+                Boolean.TRUE.equals(sensor.getActive()), null, null, null);
+    }
+
+    public static AlarmEvent sensorChanged(UUID sensorId, boolean active) {
+        return new AlarmEvent(Type.SENSOR_CHANGED, System.currentTimeMillis(), Objects.requireNonNull(sensorId),
+                active, null, null, null);
+    }
+
+    public static AlarmEvent sensorRemoved(UUID sensorId) {
+        return new AlarmEvent(Type.SENSOR_REMOVED, System.currentTimeMillis(), Objects.requireNonNull(sensorId),
+                false, null, null, null);
+    }
+
+    /**
+     * @param camera name of the camera, see {@link SecurityService#processImage(String, java.awt.image.BufferedImage)}
+     * @param cat whether the camera's latest image shows a cat
+     */
+    public static AlarmEvent catDetected(String camera, boolean cat) {
+        return new AlarmEvent(Type.CAT_DETECTED, System.currentTimeMillis(), null, cat,
+                Objects.requireNonNull(camera), null, null);
+    }
+
+    public static AlarmEvent armingChanged(ArmingStatus armingStatus) {
+        return new AlarmEvent(Type.ARMING_CHANGED, System.currentTimeMillis(), null, false, null,
+                Objects.requireNonNull(armingStatus), null);
+    }
+
+    /**
+     * The alarm and arming status were found to be these, for example when a log is started on a
+     * system that already has state. Sets both as they are rather than working them out.
+     */
+    public static AlarmEvent statusRestored(AlarmStatus alarmStatus, ArmingStatus armingStatus) {
+        return new AlarmEvent(Type.STATUS_RESTORED, System.currentTimeMillis(), null, false, null,
+                Objects.requireNonNull(armingStatus), Objects.requireNonNull(alarmStatus));
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    /**
+     * @return the sensor for sensor events, otherwise null
+     */
+    public UUID getSensorId() {
+        return sensorId;
+    }
+
+    /**
+     * @return whether the sensor is active for sensor events, or whether a cat is seen for
+     * {@link Type#CAT_DETECTED}
+     */
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * @return the camera for {@link Type#CAT_DETECTED}, otherwise null
+     */
+    public String getCamera() {
+        return camera;
+    }
+
+    /**
+     * @return the new arming status for {@link Type#ARMING_CHANGED} and {@link Type#STATUS_RESTORED},
+     * otherwise null
+     */
+    public ArmingStatus getArmingStatus() {
+        return armingStatus;
+    }
+
+    /**
+     * @return the alarm status for {@link Type#STATUS_RESTORED}, otherwise null
+     */
+    public AlarmStatus getAlarmStatus() {
+        return alarmStatus;
+    }
+
+    @Override
+    public String toString() {
+        return type + "@" + timestampMillis + (sensorId != null ? " " + sensorId : "")
+                + (camera != null ? " " + camera : "") + (alarmStatus != null ? " " + alarmStatus : "")
+                + (armingStatus != null ? " " + armingStatus : " " + active);
+    }
+}
@@ -0,0 +1,350 @@
+package com.mukhtar.UdaSecurity.Services;
+
+import com.mukhtar.UdaSecurity.data.AlarmStatus;
+import com.mukhtar.UdaSecurity.data.ArmingStatus;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only binary log of {@link AlarmEvent}s feeding an {@link AlarmEngine}. Every event is
+ * written before the engine applies it, framed as [int payload length][int crc32 of payload][payload]
+ * like the sensor write-ahead log, and reading stops at the first damaged record, so a write torn
+ * by a crash just cuts the log short.
+ *
+ * The log is never compacted, so it stays available for audits. Instead the engine state is
+ * written to a snapshot file every so many events, together with the log position it covers,
+ * and reopening the log only replays the events after the latest snapshot.
+ */
+public class AlarmEventLog implements Closeable {
+
+    private static final String LOG_FILE = "alarm-events.log";
+    private static final String SNAPSHOT_FILE = "alarm-state.snapshot";
+    private static final int DEFAULT_SNAPSHOT_INTERVAL = 100_000;
+
+    private static final int SNAPSHOT_MAGIC = 0x414C524D;
+    private static final byte SNAPSHOT_VERSION = 1;
+    private static final int HEADER_BYTES = Integer.BYTES * 2;
+    //type, timestamp, and at most a camera name of 64KB
+    private static final int MAX_EVENT_BYTES = 1 + Long.BYTES + 1 + Short.BYTES + 0xFFFF;
+    private static final int READ_BUFFER_BYTES = 1024 * 1024;
+
+    private static final AlarmEvent.Type[] TYPES = AlarmEvent.Type.values();
+    private static final AlarmStatus[] ALARM_STATUSES = AlarmStatus.values();
+    private static final ArmingStatus[] ARMING_STATUSES = ArmingStatus.values();
+
+    private final Path logFile;
+    private final Path snapshotFile;
+    private final AlarmEngine engine;
+    private final int snapshotInterval;
+    private final FileChannel channel;
+    private final CRC32 crc = new CRC32();
+    private ByteBuffer frame = ByteBuffer.allocate(256);
+    private int eventsSinceSnapshot;
+
+    /**
+     * Stores its files in the .udasecurity/events folder of the user's home directory.
+     */
+    public AlarmEventLog(AlarmEngine engine) {
+        this(Paths.get(System.getProperty("user.home"), ".udasecurity", "events"), engine);
+    }
+
+    public AlarmEventLog(Path directory, AlarmEngine engine) {
+        this(directory, engine, DEFAULT_SNAPSHOT_INTERVAL);
+    }
+
+    /**
+     * Opens the log in a directory and brings the engine up to date from the latest snapshot and
+     * the events logged after it.
+     * @param engine an engine that has not applied any events yet
+     * @param snapshotInterval number of events after which the engine state is written to a snapshot
+     */
+    public AlarmEventLog(Path directory, AlarmEngine engine, int snapshotInterval) {
+        if (engine.getSequence() != 0) {
+            throw new IllegalArgumentException("Engine has already applied events");
+        }
+        if (snapshotInterval <= 0) {
+            throw new IllegalArgumentException("Snapshot interval must be positive: " + snapshotInterval);
+        }
+        this.logFile = directory.resolve(LOG_FILE);
+        this.snapshotFile = directory.resolve(SNAPSHOT_FILE);
+        this.engine = engine;
+        this.snapshotInterval = snapshotInterval;
+        try {
+            Files.createDirectories(directory);
+            channel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Unable to open event log " + logFile, ioe);
+        }
+        try {
+            long offset = loadSnapshot();
+            if (offset > channel.size()) {
+                throw new IOException("Snapshot covers more events than the log holds");
+            }
+            long snapshotSequence = engine.getSequence();
+            long end = readEvents(channel, offset, engine);
+            //discard whatever a torn write left behind the last good record
+            channel.truncate(end);
+            channel.position(end);
+            eventsSinceSnapshot = (int) Math.min(Integer.MAX_VALUE, engine.getSequence() - snapshotSequence);
+        } catch (IOException ioe) {
+            closeQuietly();
+            throw new UncheckedIOException("Unable to load event log " + logFile, ioe);
+        }
+    }
+
+    /**
+     * Replays a whole log from its first event, ignoring any snapshot, for example to audit what
+     * the alarm did through an {@link AlarmEngine.Listener}.
+     * @param engine an engine that has not applied any events yet
+     * @return the number of events replayed
+     */
+    public static long replay(Path directory, AlarmEngine engine) {
+        Path file = directory.resolve(LOG_FILE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long before = engine.getSequence();
+            readEvents(channel, 0, engine);
+            return engine.getSequence() - before;
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Unable to replay event log " + file, ioe);
+        }
+    }
+
+    /**
+     * Logs the event, then applies it to the engine.
+     * @return the alarm status after the event
+     */
+    public synchronized AlarmStatus append(AlarmEvent event) {
+        ByteBuffer record = encode(event);
+        try {
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Unable to append to event log " + logFile, ioe);
+        }
+        AlarmStatus alarmStatus = engine.apply(event);
+        if (++eventsSinceSnapshot >= snapshotInterval) {
+            snapshot();
+        }
+        return alarmStatus;
+    }
+
+    /**
+     * Writes the engine state to the snapshot file, after making sure the events it covers are on disk.
+     */
+    public synchronized void snapshot() {
+        Path tmp = snapshotFile.resolveSibling(SNAPSHOT_FILE + ".tmp");
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeByte(SNAPSHOT_VERSION);
+            out.writeLong(channel.position());
+            engine.writeState(out);
+            byte[] payload = bytes.toByteArray();
+            crc.reset();
+            crc.update(payload);
+            ByteBuffer snapshot = ByteBuffer.allocate(HEADER_BYTES + payload.length)
+                    .putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+
+            channel.force(false);
+            try (FileChannel snapshotChannel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (snapshot.hasRemaining()) {
+                    snapshotChannel.write(snapshot);
+                }
+                snapshotChannel.force(true);
+            }
+            Files.move(tmp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Unable to write snapshot " + snapshotFile, ioe);
+        }
+        eventsSinceSnapshot = 0;
+    }
+
+    public AlarmEngine getEngine() {
+        return engine;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Loads the snapshot into the engine, unless it is missing or damaged.
+     * @return the log position the snapshot covers, or 0 to replay the whole log
+     */
+    private long loadSnapshot() throws IOException {
+        if (!Files.exists(snapshotFile)) {
+            return 0;
+        }
+        ByteBuffer snapshot = ByteBuffer.wrap(Files.readAllBytes(snapshotFile));
+        if (snapshot.remaining() < HEADER_BYTES) {
+            return 0;
+        }
+        int length = snapshot.getInt();
+        int checksum = snapshot.getInt();
+        if (length != snapshot.remaining()) {
+            return 0;
+        }
+        crc.reset();
+        crc.update(snapshot.array(), HEADER_BYTES, length);
+        if ((int) crc.getValue() != checksum) {
+            return 0;
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(snapshot.array(), HEADER_BYTES, length));
+        if (in.readInt() != SNAPSHOT_MAGIC || in.readByte() != SNAPSHOT_VERSION) {
+            return 0;
+        }
+        long offset = in.readLong();
+        engine.readState(in);
+        return offset;
+    }
+
+    /**
+     * Applies the events from a log position on until the end of the log or the first damaged record.
+     * @return the log position right after the last event applied
+     */
+    private static long readEvents(FileChannel channel, long offset, AlarmEngine engine) throws IOException {
+        CRC32 crc = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_BYTES);
+        buffer.limit(0);
+        long bufferStart = offset;
+        while (true) {
+            int remaining = buffer.remaining();
+            if (remaining >= HEADER_BYTES) {
+                int start = buffer.position();
+                int length = buffer.getInt(start);
+                if (length <= 0 || length > MAX_EVENT_BYTES) {
+                    break;
+                }
+                if (remaining >= HEADER_BYTES + length) {
+                    crc.reset();
+                    crc.update(buffer.array(), start + HEADER_BYTES, length);
+                    if ((int) crc.getValue() != buffer.getInt(start + Integer.BYTES)) {
+                        break;
+                    }
+                    buffer.position(start + HEADER_BYTES);
+                    decode(buffer, engine);
+                    buffer.position(start + HEADER_BYTES + length);
+                    continue;
+                }
+            }
+            //keep the partial record and read more behind it
+            bufferStart += buffer.position();
+            buffer.compact();
+            int read = channel.read(buffer, bufferStart + buffer.position());
+            buffer.flip();
+            if (read <= 0) {
+                break;
+            }
+        }
+        return bufferStart + buffer.position();
+    }
+
+    private static void decode(ByteBuffer payload, AlarmEngine engine) throws IOException {
+        int type = payload.get();
+        long timestamp = payload.getLong();
+        if (type < 0 || type >= TYPES.length) {
+            throw new IOException("Unknown event type " + type);
+        }
+        switch (TYPES[type]) {
+            case SENSOR_ADDED:
+                engine.sensorAdded(timestamp, new UUID(payload.getLong(), payload.getLong()), payload.get() != 0);
+                break;
+            case SENSOR_CHANGED:
+                engine.sensorChanged(timestamp, new UUID(payload.getLong(), payload.getLong()), payload.get() != 0);
+                break;
+            case SENSOR_REMOVED:
+                engine.sensorRemoved(timestamp, new UUID(payload.getLong(), payload.getLong()));
+                break;
+            case CAT_DETECTED:
+                boolean cat = payload.get() != 0;
+                byte[] camera = new byte[Short.toUnsignedInt(payload.getShort())];
+                payload.get(camera);
+                engine.catDetected(timestamp, new String(camera, StandardCharsets.UTF_8), cat);
+                break;
+            case ARMING_CHANGED:
+                engine.armingChanged(timestamp, ARMING_STATUSES[payload.get()]);
+                break;
+            case STATUS_RESTORED:
+                AlarmStatus alarmStatus = ALARM_STATUSES[payload.get()];
+                engine.statusRestored(timestamp, alarmStatus, ARMING_STATUSES[payload.get()]);
+                break;
+            default:
+                throw new IOException("Unknown event type " + type);
+        }
+    }
+
+    /**
+     * @return the framed event, in a buffer reused for the next event
+     */
+    private ByteBuffer encode(AlarmEvent event) {
+        byte[] camera = event.getCamera() == null ? null : event.getCamera().getBytes(StandardCharsets.UTF_8);
+        if (camera != null && camera.length > 0xFFFF) {
+            throw new IllegalArgumentException("Camera name too long: " + event.getCamera());
+        }
+        int capacity = HEADER_BYTES + 1 + Long.BYTES + 2 * Long.BYTES + 1 + (camera == null ? 0 : Short.BYTES + camera.length);
+        if (frame.capacity() < capacity) {
+            frame = ByteBuffer.allocate(capacity);
+        }
+        ByteBuffer payload = frame.clear().position(HEADER_BYTES);
+        payload.put((byte) event.getType().ordinal()).putLong(event.getTimestampMillis());
+        switch (event.getType()) {
+            case SENSOR_ADDED:
+            case SENSOR_CHANGED:
+                payload.putLong(event.getSensorId().getMostSignificantBits())
+                        .putLong(event.getSensorId().getLeastSignificantBits())
+                        .put((byte) (event.isActive() ? 1 : 0));
+                break;
+            case SENSOR_REMOVED:
+                payload.putLong(event.getSensorId().getMostSignificantBits())
+                        .putLong(event.getSensorId().getLeastSignificantBits());
+                break;
+            case CAT_DETECTED:
+                payload.put((byte) (event.isActive() ? 1 : 0)).putShort((short) camera.length).put(camera);
+                break;
+            case ARMING_CHANGED:
+                payload.put((byte) event.getArmingStatus().ordinal());
+                break;
+            case STATUS_RESTORED:
+                payload.put((byte) event.getAlarmStatus().ordinal()).put((byte) event.getArmingStatus().ordinal());
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown event type: " + event.getType());
+        }
+        int length = payload.position() - HEADER_BYTES;
+        crc.reset();
+        crc.update(frame.array(), HEADER_BYTES, length);
+        return frame.putInt(0, length).putInt(Integer.BYTES, (int) crc.getValue()).flip();
+    }
+
+    private void closeQuietly() {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            //already failing
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.mukhtar.UdaSecurity.Services;
+
+import com.mukhtar.UdaSecurity.data.AlarmStatus;
+import com.mukhtar.UdaSecurity.data.ArmingStatus;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * The rules for how sensor, camera and arming changes move the alarm status. They are kept free
+ * of side effects so the same decision can be folded over a batch of changes or retried by a
+ * compare-and-set loop.
+ */
+final class AlarmTransitions {
+
+    private AlarmTransitions() {
+    }
+
+    /**
+     * Works out the alarm status after a sensor changes activation status.
+     * @param alarm the alarm status before the change
+     * @param arming the current arming status
+     * @param wasActive whether the sensor was active before the change
+     * @param active whether the sensor is active after the change
+     * @return the new alarm status, which may be the same as before
+     */
+    static AlarmStatus onSensorChanged(AlarmStatus alarm, ArmingStatus arming, Boolean wasActive, Boolean active) {
+        if (alarm == AlarmStatus.ALARM) {
+            return alarm; //sensors can no longer affect an active alarm
+        }
+        if (active) {
+            return onSensorActivated(alarm, arming);
+        }
+        if (Boolean.TRUE.equals(wasActive)) {
+            return onSensorDeactivated(alarm);
+        }
+        return alarm;
+    }
+
+    static AlarmStatus onSensorActivated(AlarmStatus alarm, ArmingStatus arming) {
+        if (arming == ArmingStatus.DISARMED) {
+            return alarm; //no problem if the system is disarmed
+        }
+        if (alarm == AlarmStatus.NO_ALARM) {
+            return AlarmStatus.PENDING_ALARM;
+        }
+        if (alarm == AlarmStatus.PENDING_ALARM) {
+            return AlarmStatus.ALARM;
+        }
+        return alarm;
+    }
+
+    static AlarmStatus onSensorDeactivated(AlarmStatus alarm) {
+        if (alarm == AlarmStatus.PENDING_ALARM) {
+            return AlarmStatus.NO_ALARM;
+        }
+        if (alarm == AlarmStatus.ALARM) {
+            return AlarmStatus.PENDING_ALARM;
+        }
+        return alarm;
+    }
+
+    /**
+     * Works out the alarm status after the camera reports whether it sees a cat.
+     * @param allSensorsInactive only consulted when no cat is seen
+     */
+    static AlarmStatus onCatDetected(AlarmStatus alarm, ArmingStatus arming, boolean cat,
+                                     BooleanSupplier allSensorsInactive) {
+        if (cat && arming == ArmingStatus.ARMED_HOME) {
+            return AlarmStatus.ALARM;
+        }
+        if (!cat && allSensorsInactive.getAsBoolean()) {
+            return AlarmStatus.NO_ALARM;
+        }
+        return alarm;
+    }
+
+    /**
+     * Works out the alarm status after the system is armed or disarmed.
+     */
+    static AlarmStatus onArmingChanged(AlarmStatus alarm, ArmingStatus arming, boolean cat) {
+        if (arming == ArmingStatus.DISARMED) {
+            return AlarmStatus.NO_ALARM;
+        }
+        if (cat && arming == ArmingStatus.ARMED_HOME) {
+            return AlarmStatus.ALARM;
+        }
+        return alarm;
+    }
+}
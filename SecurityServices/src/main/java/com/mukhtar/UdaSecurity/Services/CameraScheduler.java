@@ -0,0 +1,230 @@
+package com.mukhtar.UdaSecurity.Services;
+
+import java.awt.image.BufferedImage;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Samples frames from any number of cameras, each at its own rate, and feeds them to
+ * {@link SecurityService#processImage(String, BufferedImage)} on a fixed pool of worker threads.
+ *
+ * A single dispatcher thread walks the cameras round-robin and hands the next camera that is due
+ * to the next idle worker, so when the workers cannot keep up every camera still gets its turn
+ * and none of them can starve the others. A camera whose previous frame is still being analysed
+ * is skipped rather than queued, and a camera that falls behind picks up at its normal rate
+ * instead of catching up on the frames it missed.
+ *
+ * Use a {@link ConcurrentSecurityService} when there is more than one worker.
+ */
+public class CameraScheduler implements AutoCloseable {
+
+    private static final int DEFAULT_WORKERS = 4;
+    //upper bound on how long the dispatcher sleeps, so it never misses a wake-up for long
+    private static final long MAX_PARK_NANOS = Duration.ofMillis(100).toNanos();
+
+    private final SecurityService securityService;
+    private final ExecutorService workers;
+    private final Semaphore idleWorkers;
+    private final Thread dispatcher;
+    private final Map<String, Camera> camerasByName = new ConcurrentHashMap<>();
+
+    private volatile Camera[] cameras = new Camera[0];
+    private volatile boolean running = true;
+
+    //only touched by the dispatcher thread
+    private int cursor;
+    private long earliestDueNanos;
+
+    public CameraScheduler(SecurityService securityService) {
+        this(securityService, DEFAULT_WORKERS);
+    }
+
+    /**
+     * @param workers number of frames that may be analysed at the same time
+     */
+    public CameraScheduler(SecurityService securityService, int workers) {
+        this.securityService = securityService;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "camera-worker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.idleWorkers = new Semaphore(workers);
+        this.dispatcher = new Thread(this::dispatch, "camera-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    /**
+     * Starts sampling a camera.
+     * @param samplingInterval time between two frames from this camera
+     * @throws IllegalArgumentException if a camera with the same name is already registered
+     */
+    public void register(CameraSource source, Duration samplingInterval) {
+        if (samplingInterval.isNegative() || samplingInterval.isZero()) {
+            throw new IllegalArgumentException("Sampling interval must be positive: " + samplingInterval);
+        }
+        Camera camera = new Camera(source, samplingInterval.toNanos());
+        synchronized (camerasByName) {
+            if (camerasByName.putIfAbsent(source.getName(), camera) != null) {
+                throw new IllegalArgumentException("Camera already registered: " + source.getName());
+            }
+            cameras = camerasByName.values().toArray(new Camera[0]);
+        }
+        LockSupport.unpark(dispatcher);
+    }
+
+    /**
+     * Stops sampling a camera and forgets whether it saw a cat.
+     * @return false if no camera with that name was registered
+     */
+    public boolean unregister(String name) {
+        Camera camera;
+        synchronized (camerasByName) {
+            camera = camerasByName.remove(name);
+            if (camera == null) {
+                return false;
+            }
+            cameras = camerasByName.values().toArray(new Camera[0]);
+        }
+        //wait for a frame in flight, so its verdict cannot land after the camera is forgotten
+        synchronized (camera) {
+            camera.removed = true;
+        }
+        securityService.forgetCamera(name);
+        return true;
+    }
+
+    /**
+     * @return number of frames from this camera that went through the image service, or -1 if
+     * no such camera is registered
+     */
+    public long getFramesAnalysed(String name) {
+        Camera camera = camerasByName.get(name);
+        return camera == null ? -1 : camera.framesAnalysed.sum();
+    }
+
+    /**
+     * @return number of sampling intervals for this camera that passed without a frame being taken
+     * because the workers were busy, or -1 if no such camera is registered
+     */
+    public long getFramesSkipped(String name) {
+        Camera camera = camerasByName.get(name);
+        return camera == null ? -1 : camera.framesSkipped.sum();
+    }
+
+    /**
+     * @return number of frames from this camera that could not be grabbed or analysed, or -1 if
+     * no such camera is registered
+     */
+    public long getFailures(String name) {
+        Camera camera = camerasByName.get(name);
+        return camera == null ? -1 : camera.failures.sum();
+    }
+
+    private void dispatch() {
+        while (running) {
+            try {
+                idleWorkers.acquire();
+            } catch (InterruptedException e) {
+                return;
+            }
+            long now = System.nanoTime();
+            Camera camera = nextDueCamera(now);
+            if (camera == null) {
+                idleWorkers.release();
+                LockSupport.parkNanos(this, Math.min(earliestDueNanos - now, MAX_PARK_NANOS));
+                continue;
+            }
+            long late = now - camera.nextDueNanos;
+            if (late >= camera.intervalNanos) {
+                camera.framesSkipped.add(late / camera.intervalNanos);
+            }
+            camera.nextDueNanos = now + camera.intervalNanos;
+            camera.busy = true;
+            try {
+                workers.execute(() -> analyse(camera));
+            } catch (RejectedExecutionException e) {
+                return; //closed
+            }
+        }
+    }
+
+    /**
+     * Finds the first camera after the cursor that is due and not busy, and moves the cursor past it.
+     * Otherwise leaves the time the next camera falls due in {@link #earliestDueNanos}.
+     */
+    private Camera nextDueCamera(long now) {
+        Camera[] snapshot = cameras;
+        earliestDueNanos = now + MAX_PARK_NANOS;
+        for (int i = 0; i < snapshot.length; i++) {
+            int index = (cursor + i) % snapshot.length;
+            Camera camera = snapshot[index];
+            if (camera.busy) {
+                continue;
+            }
+            if (camera.nextDueNanos - now <= 0) {
+                cursor = index + 1;
+                return camera;
+            }
+            if (camera.nextDueNanos - earliestDueNanos < 0) {
+                earliestDueNanos = camera.nextDueNanos;
+            }
+        }
+        return null;
+    }
+
+    private void analyse(Camera camera) {
+        try {
+            synchronized (camera) {
+                if (!camera.removed) {
+                    BufferedImage frame = camera.source.grabFrame();
+                    if (frame != null) {
+                        securityService.processImage(camera.source.getName(), frame);
+                        camera.framesAnalysed.increment();
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            camera.failures.increment();
+        } finally {
+            camera.busy = false;
+            idleWorkers.release();
+            LockSupport.unpark(dispatcher);
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        dispatcher.interrupt();
+        workers.shutdownNow();
+    }
+
+    private static final class Camera {
+        private final CameraSource source;
+        private final long intervalNanos;
+        private final LongAdder framesAnalysed = new LongAdder();
+        private final LongAdder framesSkipped = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+
+        //only the dispatcher thread writes nextDueNanos and sets busy, a worker clears busy
+        private long nextDueNanos = System.nanoTime();
+        private volatile boolean busy;
+        private boolean removed;
+
+        Camera(CameraSource source, long intervalNanos) {
+            this.source = source;
+            this.intervalNanos = intervalNanos;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.mukhtar.UdaSecurity.Services;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * A named camera that the {@link CameraScheduler} can sample frames from.
+ */
+public interface CameraSource {
+
+    /**
+     * @return a name that is unique among the cameras registered with one scheduler
+     */
+    String getName();
+
+    /**
+     * Grabs the camera's most recent frame. Called from a scheduler worker thread, never from two
+     * threads at once for the same camera.
+     * @return the frame, or null if the camera has nothing new to show
+     */
+    BufferedImage grabFrame();
+
+    /**
+     * Grabs the camera's most recent frame, decoding into a frame the caller is done with where the
+     * source can, so a steady stream of frames does not allocate a new image for each one.
+     * @param spare a frame the caller no longer uses, or null
+     * @return the frame, which may be the spare, or null if the camera has nothing new to show
+     */
+    default BufferedImage grabFrame(BufferedImage spare) {
+        return grabFrame();
+    }
+}
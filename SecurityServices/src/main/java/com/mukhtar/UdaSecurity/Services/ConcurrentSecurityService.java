@@ -0,0 +1,238 @@
+package com.mukhtar.UdaSecurity.Services;
+
+import com.mukhtar.UdaSecurity.Service.ImageServicesInterface;
+import com.mukhtar.UdaSecurity.data.AlarmStatus;
+import com.mukhtar.UdaSecurity.data.ArmingStatus;
+import com.mukhtar.UdaSecurity.data.SecurityRepository;
+import com.mukhtar.UdaSecurity.data.Sensor;
+
+import java.util.BitSet;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * SecurityService that can be called from many threads at once, for feeds that deliver sensor
+ * events off the Swing thread.
+ *
+ * The alarm status, arming status and cat flag live in a single packed word that only changes
+ * through compare-and-set, so every read-decide-write step is atomic. Each successful change also
+ * bumps a version in that word, and changes are written to the repository and announced to
+ * listeners strictly in version order, so nobody sees a transition twice or misses one. Sensor
+ * updates are serialized per sensor by a striped lock rather than one big lock.
+ *
+ * While an {@link AlarmEventLog} is attached, each event is recorded and applied under one lock,
+ * so the log holds events in the order their changes took effect and replays to the same state;
+ * recording therefore runs state changes one at a time.
+ *
+ * The repository must be safe for concurrent use, and listeners must not change the system
+ * state from inside a callback.
+ */
+public class ConcurrentSecurityService extends SecurityService {
+
+    private static final int DEFAULT_STRIPES = 64;
+
+    //layout of the state word: [version][cat detected: 1 bit][arming status: 2 bits][alarm status: 2 bits]
+    private static final int ARMING_SHIFT = 2;
+    private static final int CAT_SHIFT = 4;
+    private static final int VERSION_SHIFT = 5;
+    private static final long STATUS_MASK = 0b11;
+    private static final long CAT_BIT = 1L << CAT_SHIFT;
+
+    private static final AlarmStatus[] ALARM_STATUSES = AlarmStatus.values();
+    private static final ArmingStatus[] ARMING_STATUSES = ArmingStatus.values();
+
+    private final SecurityRepository securityRepository;
+    private final AtomicLong state;
+    private final ReentrantLock[] stripes;
+
+    private final ReentrantLock recordLock = new ReentrantLock();
+    private final Object publishLock = new Object();
+    private long publishedVersion;
+
+    public ConcurrentSecurityService(SecurityRepository securityRepository, ImageServicesInterface imageService) {
+        this(securityRepository, imageService, DEFAULT_STRIPES);
+    }
+
+    /**
+     * @param stripeCount number of sensor locks, rounded up to a power of two
+     */
+    public ConcurrentSecurityService(SecurityRepository securityRepository, ImageServicesInterface imageService,
+                                     int stripeCount) {
+        super(securityRepository, imageService);
+        this.securityRepository = securityRepository;
+        this.state = new AtomicLong(pack(securityRepository.getAlarmStatus(), securityRepository.getArmingStatus(), false));
+        int size = Integer.highestOneBit(Math.max(1, stripeCount - 1)) << 1;
+        this.stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    @Override
+    public AlarmStatus getAlarmStatus() {
+        return alarmOf(state.get());
+    }
+
+    @Override
+    public ArmingStatus getArmingStatus() {
+        return armingOf(state.get());
+    }
+
+    @Override
+    public boolean isCatDetected() {
+        return catOf(state.get());
+    }
+
+    @Override
+    public void setAlarmStatus(AlarmStatus status) {
+        transition(word -> pack(status, armingOf(word), catOf(word)));
+    }
+
+    @Override
+    protected void updateAlarmStatus(BiFunction<AlarmStatus, ArmingStatus, AlarmStatus> transition) {
+        transition(word -> pack(transition.apply(alarmOf(word), armingOf(word)), armingOf(word), catOf(word)));
+    }
+
+    @Override
+    protected void updateArmingStatus(ArmingStatus armingStatus) {
+        transition(word -> pack(AlarmTransitions.onArmingChanged(alarmOf(word), armingStatus, catOf(word)),
+                armingStatus, catOf(word)));
+    }
+
+    @Override
+    protected void updateCatDetection(boolean cat) {
+        transition(word -> pack(AlarmTransitions.onCatDetected(alarmOf(word), armingOf(word), cat,
+                () -> allSensorsByStatus(false)), armingOf(word), cat));
+    }
+
+    @Override
+    public void changeSensorActivationStatus(Sensor sensor, Boolean active) {
+        ReentrantLock lock = stripes[stripeOf(sensor)];
+        lock.lock();
+        try {
+            super.changeSensorActivationStatus(sensor, active);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void changeSensorActivationStatus(Sensor sensor) {
+        ReentrantLock lock = stripes[stripeOf(sensor)];
+        lock.lock();
+        try {
+            super.changeSensorActivationStatus(sensor);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    protected void applySensorActivationChanges(Map<Sensor, Boolean> changes) {
+        //always lock stripes in ascending order so two batches can never deadlock
+        BitSet needed = new BitSet(stripes.length);
+        changes.keySet().forEach(sensor -> needed.set(stripeOf(sensor)));
+        needed.stream().forEach(i -> stripes[i].lock());
+        try {
+            super.applySensorActivationChanges(changes);
+        } finally {
+            needed.stream().forEach(i -> stripes[i].unlock());
+        }
+    }
+
+    @Override
+    protected void runRecorded(Runnable step) {
+        if (!isRecording()) {
+            step.run();
+            return;
+        }
+        recordLock.lock();
+        try {
+            step.run();
+        } finally {
+            recordLock.unlock();
+        }
+    }
+
+    /**
+     * @return how many state changes have been made since this service was created
+     */
+    public long getStateVersion() {
+        return state.get() >>> VERSION_SHIFT;
+    }
+
+    /**
+     * Atomically replaces the status bits with the ones worked out from the current word,
+     * retrying if another thread got there first, then publishes the change.
+     * @param next returns the new status bits (without a version) for the current word
+     */
+    private void transition(LongUnaryOperator next) {
+        long current;
+        long updated;
+        do {
+            current = state.get();
+            long statusBits = next.applyAsLong(current);
+            if (statusBits == (current & ~(-1L << VERSION_SHIFT))) {
+                return;
+            }
+            updated = statusBits | (((current >>> VERSION_SHIFT) + 1) << VERSION_SHIFT);
+        } while (!state.compareAndSet(current, updated));
+        publish(current, updated);
+    }
+
+    /**
+     * Writes a won transition through to the repository and listeners, waiting for the
+     * transitions before it to be published first.
+     */
+    private void publish(long previous, long next) {
+        long version = next >>> VERSION_SHIFT;
+        synchronized (publishLock) {
+            boolean interrupted = false;
+            while (publishedVersion != version - 1) {
+                try {
+                    publishLock.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            try {
+                if (armingOf(previous) != armingOf(next)) {
+                    securityRepository.setArmingStatus(armingOf(next));
+                }
+                if (alarmOf(previous) != alarmOf(next)) {
+                    super.setAlarmStatus(alarmOf(next));
+                }
+            } finally {
+                publishedVersion = version;
+                publishLock.notifyAll();
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private int stripeOf(Sensor sensor) {
+        int h = sensor.getSensorId().hashCode();
+        return (h ^ (h >>> 16)) & (stripes.length - 1);
+    }
+
+    private static long pack(AlarmStatus alarmStatus, ArmingStatus armingStatus, boolean cat) {
+        return alarmStatus.ordinal() | ((long) armingStatus.ordinal() << ARMING_SHIFT) | (cat ? CAT_BIT : 0);
+    }
+
+    private static AlarmStatus alarmOf(long word) {
+        return ALARM_STATUSES[(int) (word & STATUS_MASK)];
+    }
+
+    private static ArmingStatus armingOf(long word) {
+        return ARMING_STATUSES[(int) ((word >>> ARMING_SHIFT) & STATUS_MASK)];
+    }
+
+    private static boolean catOf(long word) {
+        return (word & CAT_BIT) != 0;
+    }
+}
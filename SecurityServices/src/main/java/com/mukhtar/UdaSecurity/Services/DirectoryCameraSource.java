@@ -0,0 +1,103 @@
+package com.mukhtar.UdaSecurity.Services;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Locale;
+
+/**
+ * A camera that drops its pictures into a directory. Each grab shows the image written most
+ * recently since the last grab; images written in between are never decoded.
+ */
+public class DirectoryCameraSource implements CameraSource, AutoCloseable {
+
+    private final String name;
+    private final Path directory;
+    private final WatchService watcher;
+    private final FrameDecoder decoder = new FrameDecoder();
+    //newest image written and not yet shown
+    private Path newest;
+
+    /**
+     * Watches the directory under its own name.
+     */
+    public DirectoryCameraSource(Path directory) {
+        this(String.valueOf(directory.getFileName()), directory);
+    }
+
+    /**
+     * @throws UncheckedIOException if the directory cannot be watched
+     */
+    public DirectoryCameraSource(String name, Path directory) {
+        this.name = name;
+        this.directory = directory;
+        try {
+            this.watcher = directory.getFileSystem().newWatchService();
+            directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public BufferedImage grabFrame() {
+        return grabFrame(null);
+    }
+
+    @Override
+    public BufferedImage grabFrame(BufferedImage spare) {
+        try {
+            WatchKey key;
+            while ((key = watcher.poll()) != null) {
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.context() instanceof Path && isImage((Path) event.context())) {
+                        newest = directory.resolve((Path) event.context());
+                    }
+                }
+                key.reset();
+            }
+        } catch (ClosedWatchServiceException e) {
+            return null;
+        }
+        if (newest == null) {
+            return null;
+        }
+        Path file = newest;
+        newest = null;
+        try (ImageInputStream in = ImageIO.createImageInputStream(file.toFile())) {
+            return in == null ? null : decoder.decode(in, spare);
+        } catch (IOException e) {
+            //most likely still being written, and the rest of the write brings it back
+            return null;
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            watcher.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        decoder.close();
+    }
+
+    private static boolean isImage(Path file) {
+        String fileName = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        return fileName.endsWith(".jpg") || fileName.endsWith(".jpeg") || fileName.endsWith(".png")
+                || fileName.endsWith(".bmp") || fileName.endsWith(".gif");
+    }
+}
@@ -0,0 +1,63 @@
+package com.mukhtar.UdaSecurity.Services;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * Decodes the frames of one camera, keeping the image reader between frames and decoding into the
+ * spare frame when it has the right size and type. Not thread safe.
+ */
+final class FrameDecoder implements AutoCloseable {
+
+    private ImageReader reader;
+
+    /**
+     * @param spare frame to decode into if it fits, or null
+     * @return the decoded frame, which is the spare if it was used
+     */
+    BufferedImage decode(ImageInputStream in, BufferedImage spare) throws IOException {
+        //canDecodeInput only peeks, so a reader for the last format is kept as long as it fits
+        if (reader == null || !reader.getOriginatingProvider().canDecodeInput(in)) {
+            close();
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                throw new IOException("Not a supported image");
+            }
+            reader = readers.next();
+        }
+        reader.setInput(in, true, true);
+        ImageReadParam param = reader.getDefaultReadParam();
+        if (spare != null && fits(spare)) {
+            param.setDestination(spare);
+        }
+        return reader.read(0, param);
+    }
+
+    @Override
+    public void close() {
+        if (reader != null) {
+            reader.dispose();
+            reader = null;
+        }
+    }
+
+    private boolean fits(BufferedImage spare) throws IOException {
+        if (spare.getType() == BufferedImage.TYPE_CUSTOM
+                || spare.getWidth() != reader.getWidth(0) || spare.getHeight() != reader.getHeight(0)) {
+            return false;
+        }
+        Iterator<ImageTypeSpecifier> types = reader.getImageTypes(0);
+        while (types.hasNext()) {
+            if (types.next().getBufferedImageType() == spare.getType()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
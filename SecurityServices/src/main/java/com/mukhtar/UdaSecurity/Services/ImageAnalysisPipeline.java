@@ -0,0 +1,98 @@
+package com.mukhtar.UdaSecurity.Services;
+
+import com.mukhtar.UdaSecurity.Service.AsyncImageServicesInterface;
+import com.mukhtar.UdaSecurity.Service.ImageServicesInterface;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs image analysis off the calling thread. Blocking image services get a small pool of
+ * worker threads with a bounded queue; only a limited number of frames may be in flight at once,
+ * and frames submitted while that limit is reached are rejected instead of piling up. A newer
+ * frame makes the previous one stale, so the previous one is cancelled and, if it has not
+ * started yet, never analysed.
+ */
+public class ImageAnalysisPipeline implements AutoCloseable {
+
+    private static final int DEFAULT_WORKERS = 2;
+    private static final int DEFAULT_QUEUE_CAPACITY = 8;
+
+    private final AsyncImageServicesInterface imageService;
+    private final ThreadPoolExecutor executor;
+    private final Semaphore inFlight;
+    private final AtomicReference<CompletableFuture<Boolean>> latestFrame = new AtomicReference<>();
+
+    public ImageAnalysisPipeline(ImageServicesInterface imageService) {
+        this(imageService, DEFAULT_WORKERS, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * @param imageService used directly if it is already an {@link AsyncImageServicesInterface},
+     *                     otherwise run on this pipeline's worker threads
+     * @param workers number of worker threads for blocking image services
+     * @param queueCapacity number of frames that may wait for a worker
+     */
+    public ImageAnalysisPipeline(ImageServicesInterface imageService, int workers, int queueCapacity) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "image-analysis-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.imageService = imageService instanceof AsyncImageServicesInterface
+                ? (AsyncImageServicesInterface) imageService
+                : AsyncImageServicesInterface.fromBlocking(imageService, executor);
+        this.inFlight = new Semaphore(workers + queueCapacity);
+    }
+
+    /**
+     * Queues a frame for analysis and cancels the frame submitted before it.
+     * @return completes with the verdict, is cancelled if a newer frame arrives first, or fails
+     * with a {@link RejectedExecutionException} if the pipeline is saturated
+     */
+    public CompletableFuture<Boolean> submit(BufferedImage image, float confidenceThreshhold) {
+        //the frame in flight is stale now, and cancelling it first may free up room for this one
+        cancel(latestFrame.get());
+        if (!inFlight.tryAcquire()) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Image analysis is saturated"));
+        }
+        CompletableFuture<Boolean> frame;
+        try {
+            frame = imageService.imageContainsCatAsync(image, confidenceThreshhold);
+        } catch (RejectedExecutionException e) {
+            inFlight.release();
+            return CompletableFuture.failedFuture(e);
+        }
+        frame.whenComplete((cat, error) -> inFlight.release());
+        //another caller may have slipped a frame in since the cancel above
+        cancel(latestFrame.getAndSet(frame));
+        return frame;
+    }
+
+    private static void cancel(CompletableFuture<Boolean> frame) {
+        if (frame != null) {
+            frame.cancel(false);
+        }
+    }
+
+    /**
+     * @return number of frames waiting for a worker thread
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
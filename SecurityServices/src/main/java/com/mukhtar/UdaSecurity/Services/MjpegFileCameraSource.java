@@ -0,0 +1,236 @@
+package com.mukhtar.UdaSecurity.Services;
+
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Plays back a motion JPEG file, a plain run of JPEG images such as a webcam or ffmpeg writes with
+ * {@code -f mjpeg}. Each grab returns the next frame in the file; the caller sets the pace. Frames
+ * are cut by walking their segments, so markers inside a segment, such as an embedded thumbnail's,
+ * do not end a frame early.
+ */
+public class MjpegFileCameraSource implements CameraSource, AutoCloseable {
+
+    private static final int READ_SIZE = 64 * 1024;
+    private static final int MARKER = 0xFF;
+    private static final int START_OF_IMAGE = 0xD8;
+    private static final int END_OF_IMAGE = 0xD9;
+    private static final int TEMPORARY = 0x01;
+    private static final int RESTART_FIRST = 0xD0;
+    private static final int RESTART_LAST = 0xD7;
+
+    private final String name;
+    private final Path file;
+    private final boolean loop;
+    private final FrameDecoder decoder = new FrameDecoder();
+
+    private InputStream in;
+    private final byte[] chunk = new byte[READ_SIZE];
+    private int chunkPosition;
+    private int chunkLength;
+    private byte[] frame = new byte[READ_SIZE];
+    private int frameLength;
+    private long framesSinceOpen;
+
+    /**
+     * Plays the file over and over, under the file's name.
+     */
+    public MjpegFileCameraSource(Path file) {
+        this(file.getFileName().toString(), file, true);
+    }
+
+    /**
+     * @param loop whether to start over at the end of the file instead of running out of frames
+     */
+    public MjpegFileCameraSource(String name, Path file, boolean loop) {
+        this.name = name;
+        this.file = file;
+        this.loop = loop;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public BufferedImage grabFrame() {
+        return grabFrame(null);
+    }
+
+    /**
+     * @return the next frame, or null once the file has run out of frames and is not looped
+     * @throws UncheckedIOException if the file cannot be read or a frame cannot be decoded
+     */
+    @Override
+    public BufferedImage grabFrame(BufferedImage spare) {
+        try {
+            if (!nextFrame()) {
+                return null;
+            }
+            try (ImageInputStream image = new MemoryCacheImageInputStream(new ByteArrayInputStream(frame, 0, frameLength))) {
+                return decoder.decode(image, spare);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        closeFile();
+        decoder.close();
+    }
+
+    private boolean nextFrame() throws IOException {
+        while (true) {
+            if (in == null) {
+                in = Files.newInputStream(file);
+                framesSinceOpen = 0;
+            }
+            if (readFrame()) {
+                framesSinceOpen++;
+                return true;
+            }
+            //a pass over the file without a single frame would loop forever
+            boolean empty = framesSinceOpen == 0;
+            closeFile();
+            if (!loop || empty) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Copies the next whole frame into the frame buffer.
+     * @return false if the file ended first
+     */
+    private boolean readFrame() throws IOException {
+        frameLength = 0;
+        //skip anything between frames, such as multipart headers
+        int previous = -1;
+        while (true) {
+            int current = next();
+            if (current < 0) {
+                return false;
+            }
+            if (previous == MARKER && current == START_OF_IMAGE) {
+                break;
+            }
+            previous = current;
+        }
+        append(MARKER);
+        append(START_OF_IMAGE);
+        while (true) {
+            int marker = nextMarker();
+            if (marker < 0) {
+                return false;
+            }
+            if (marker == END_OF_IMAGE) {
+                return true;
+            }
+            if (marker == TEMPORARY) {
+                continue;
+            }
+            //every other segment says how long it is; its payload may hold anything, even a thumbnail
+            int high = next();
+            int low = next();
+            if (high < 0 || low < 0) {
+                return false;
+            }
+            append(high);
+            append(low);
+            int length = (high << 8 | low) - 2;
+            if (length < 0) {
+                throw new IOException("Corrupt segment in " + file);
+            }
+            if (!copy(length)) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Copies bytes up to and including the next marker, passing over the stuffed bytes and restart
+     * markers inside compressed image data.
+     * @return the marker's code, or -1 if the file ended first
+     */
+    private int nextMarker() throws IOException {
+        int previous = -1;
+        while (true) {
+            int current = next();
+            if (current < 0) {
+                return -1;
+            }
+            append(current);
+            if (previous == MARKER && current != MARKER) {
+                if (current != 0x00 && (current < RESTART_FIRST || current > RESTART_LAST)) {
+                    return current;
+                }
+                current = -1;
+            }
+            previous = current;
+        }
+    }
+
+    private int next() throws IOException {
+        if (chunkPosition == chunkLength && !fill()) {
+            return -1;
+        }
+        return chunk[chunkPosition++] & 0xFF;
+    }
+
+    private boolean copy(int count) throws IOException {
+        while (count > 0) {
+            if (chunkPosition == chunkLength && !fill()) {
+                return false;
+            }
+            int n = Math.min(count, chunkLength - chunkPosition);
+            ensureCapacity(frameLength + n);
+            System.arraycopy(chunk, chunkPosition, frame, frameLength, n);
+            chunkPosition += n;
+            frameLength += n;
+            count -= n;
+        }
+        return true;
+    }
+
+    private boolean fill() throws IOException {
+        chunkLength = Math.max(0, in.read(chunk));
+        chunkPosition = 0;
+        return chunkLength > 0;
+    }
+
+    private void append(int value) {
+        ensureCapacity(frameLength + 1);
+        frame[frameLength++] = (byte) value;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > frame.length) {
+            frame = Arrays.copyOf(frame, Math.max(capacity, frame.length * 2));
+        }
+    }
+
+    private void closeFile() {
+        if (in == null) {
+            return;
+        }
+        try {
+            in.close();
+        } catch (IOException e) {
+            //nothing left to read from it either way
+        }
+        in = null;
+        chunkPosition = 0;
+        chunkLength = 0;
+    }
+}
@@ -0,0 +1,253 @@
+package com.mukhtar.UdaSecurity.Services;
+
+import com.mukhtar.UdaSecurity.metrics.MetricsRegistry;
+
+import java.awt.Graphics2D;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lets a camera frame through to cat detection only if the scene has changed since the last frame
+ * that went through. Each frame is shrunk to a small grayscale thumbnail, read straight from the
+ * image's pixel array, and compared block by block with the camera's reference thumbnail; the
+ * frame passes if any block differs by more than the threshold on average.
+ *
+ * A frame that passes becomes the new reference, unless it is {@link #discard discarded} because
+ * detection gave no verdict for it. Every so many skipped frames one passes anyway,
+ * so a verdict never gets too old and a slow change of light settles into the reference.
+ */
+public class MotionGate {
+
+    private static final int THUMBNAIL_WIDTH = 32;
+    private static final int THUMBNAIL_HEIGHT = 24;
+    private static final int SAMPLES_PER_CELL = 4;
+    //thumbnail pixels along each side of a compared block
+    private static final int BLOCK_SIZE = 4;
+    private static final int DEFAULT_THRESHOLD = 8;
+    private static final int DEFAULT_MAX_SKIPPED_FRAMES = 50;
+
+    private final int threshold;
+    private final int maxSkippedFrames;
+    private final Map<String, Reference> references = new ConcurrentHashMap<>();
+    private final LongAdder forwarded = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+
+    public MotionGate() {
+        this(DEFAULT_THRESHOLD, DEFAULT_MAX_SKIPPED_FRAMES);
+    }
+
+    /**
+     * @param threshold mean difference in gray levels, out of 255, above which a block has changed
+     * @param maxSkippedFrames frames skipped in a row after which the next one passes regardless
+     */
+    public MotionGate(int threshold, int maxSkippedFrames) {
+        if (threshold < 0 || maxSkippedFrames < 0) {
+            throw new IllegalArgumentException("threshold and maxSkippedFrames must not be negative");
+        }
+        this.threshold = threshold;
+        this.maxSkippedFrames = maxSkippedFrames;
+    }
+
+    /**
+     * @param camera name of the camera that took the frame
+     * @return whether the frame should go on to cat detection
+     */
+    public boolean admit(String camera, BufferedImage frame) {
+        int[] thumbnail = thumbnail(frame);
+        Reference reference = references.computeIfAbsent(camera, name -> new Reference());
+        synchronized (reference) {
+            boolean changed = reference.thumbnail == null
+                    || reference.width != frame.getWidth()
+                    || reference.height != frame.getHeight()
+                    || reference.skipped >= maxSkippedFrames
+                    || changed(reference.thumbnail, thumbnail);
+            if (changed) {
+                reference.thumbnail = thumbnail;
+                reference.width = frame.getWidth();
+                reference.height = frame.getHeight();
+                reference.skipped = 0;
+                forwarded.increment();
+            } else {
+                reference.skipped++;
+                skipped.increment();
+            }
+            return changed;
+        }
+    }
+
+    /**
+     * Undoes the reference set by the last frame let through for a camera, when cat detection gave
+     * no verdict for it, so the next frame is analysed even if nothing moved.
+     */
+    public void discard(String camera) {
+        Reference reference = references.get(camera);
+        if (reference != null) {
+            synchronized (reference) {
+                reference.thumbnail = null;
+            }
+        }
+    }
+
+    /**
+     * Drops the reference of a camera that is taken out of service.
+     */
+    public void forget(String camera) {
+        references.remove(camera);
+    }
+
+    public long getForwardedCount() {
+        return forwarded.sum();
+    }
+
+    public long getSkippedCount() {
+        return skipped.sum();
+    }
+
+    /**
+     * Publishes how many frames were let through and how many were skipped.
+     */
+    public void bindTo(MetricsRegistry registry) {
+        String name = "catpoint_motion_gate_frames_total";
+        String help = "Camera frames seen by the motion gate, by outcome";
+        registry.counter(name, help, this::getForwardedCount, "outcome", "forwarded");
+        registry.counter(name, help, this::getSkippedCount, "outcome", "skipped");
+    }
+
+    private boolean changed(int[] reference, int[] thumbnail) {
+        for (int blockY = 0; blockY < THUMBNAIL_HEIGHT; blockY += BLOCK_SIZE) {
+            for (int blockX = 0; blockX < THUMBNAIL_WIDTH; blockX += BLOCK_SIZE) {
+                int difference = 0;
+                for (int y = blockY; y < blockY + BLOCK_SIZE; y++) {
+                    for (int x = blockX; x < blockX + BLOCK_SIZE; x++) {
+                        int i = y * THUMBNAIL_WIDTH + x;
+                        difference += Math.abs(reference[i] - thumbnail[i]);
+                    }
+                }
+                if (difference > threshold * BLOCK_SIZE * BLOCK_SIZE) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Shrinks a frame to a grayscale thumbnail. Each thumbnail pixel averages a fixed grid of
+     * samples from its area, so the cost does not grow with the frame size.
+     */
+    static int[] thumbnail(BufferedImage frame) {
+        LumaReader reader = reader(frame);
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        int[] thumbnail = new int[THUMBNAIL_WIDTH * THUMBNAIL_HEIGHT];
+        for (int cellY = 0; cellY < THUMBNAIL_HEIGHT; cellY++) {
+            for (int cellX = 0; cellX < THUMBNAIL_WIDTH; cellX++) {
+                int sum = 0;
+                for (int sy = 0; sy < SAMPLES_PER_CELL; sy++) {
+                    int y = (int) (((long) cellY * SAMPLES_PER_CELL + sy) * height / (THUMBNAIL_HEIGHT * SAMPLES_PER_CELL));
+                    for (int sx = 0; sx < SAMPLES_PER_CELL; sx++) {
+                        int x = (int) (((long) cellX * SAMPLES_PER_CELL + sx) * width / (THUMBNAIL_WIDTH * SAMPLES_PER_CELL));
+                        sum += reader.luma(x, y);
+                    }
+                }
+                thumbnail[cellY * THUMBNAIL_WIDTH + cellX] = sum / (SAMPLES_PER_CELL * SAMPLES_PER_CELL);
+            }
+        }
+        return thumbnail;
+    }
+
+    /**
+     * Reads 8 bit RGB or gray pixels straight from the raster's data array. Other layouts, such as
+     * indexed colour, are first drawn into an RGB image just large enough for the samples.
+     */
+    private static LumaReader reader(BufferedImage frame) {
+        WritableRaster raster = frame.getRaster();
+        SampleModel model = raster.getSampleModel();
+        DataBuffer buffer = raster.getDataBuffer();
+        int colorSpace = frame.getColorModel().getColorSpace().getType();
+        //raster coordinates start at 0 in a BufferedImage; sub-images are shifted in the shared array
+        int originX = -raster.getSampleModelTranslateX();
+        int originY = -raster.getSampleModelTranslateY();
+
+        if (buffer instanceof DataBufferInt && buffer.getNumBanks() == 1
+                && model instanceof SinglePixelPackedSampleModel && colorSpace == ColorSpace.TYPE_RGB) {
+            SinglePixelPackedSampleModel packed = (SinglePixelPackedSampleModel) model;
+            int[] masks = packed.getBitMasks();
+            if (masks.length >= 3 && Integer.bitCount(masks[0]) == 8 && Integer.bitCount(masks[1]) == 8
+                    && Integer.bitCount(masks[2]) == 8) {
+                int[] data = ((DataBufferInt) buffer).getData();
+                int[] shifts = packed.getBitOffsets();
+                int base = buffer.getOffset() + originY * packed.getScanlineStride() + originX;
+                int stride = packed.getScanlineStride();
+                int red = shifts[0];
+                int green = shifts[1];
+                int blue = shifts[2];
+                return (x, y) -> {
+                    int pixel = data[base + y * stride + x];
+                    return luma((pixel >>> red) & 0xFF, (pixel >>> green) & 0xFF, (pixel >>> blue) & 0xFF);
+                };
+            }
+        }
+
+        if (buffer instanceof DataBufferByte && buffer.getNumBanks() == 1 && model instanceof ComponentSampleModel) {
+            ComponentSampleModel component = (ComponentSampleModel) model;
+            byte[] data = ((DataBufferByte) buffer).getData();
+            int stride = component.getScanlineStride();
+            int pixelStride = component.getPixelStride();
+            int[] bandOffsets = component.getBandOffsets();
+            int base = buffer.getOffset() + originY * stride + originX * pixelStride;
+            if (model.getNumBands() == 1 && colorSpace == ColorSpace.TYPE_GRAY) {
+                int gray = bandOffsets[0];
+                return (x, y) -> data[base + y * stride + x * pixelStride + gray] & 0xFF;
+            }
+            if (model.getNumBands() >= 3 && colorSpace == ColorSpace.TYPE_RGB) {
+                int red = bandOffsets[0];
+                int green = bandOffsets[1];
+                int blue = bandOffsets[2];
+                return (x, y) -> {
+                    int i = base + y * stride + x * pixelStride;
+                    return luma(data[i + red] & 0xFF, data[i + green] & 0xFF, data[i + blue] & 0xFF);
+                };
+            }
+        }
+
+        BufferedImage rgb = new BufferedImage(THUMBNAIL_WIDTH * SAMPLES_PER_CELL,
+                THUMBNAIL_HEIGHT * SAMPLES_PER_CELL, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = rgb.createGraphics();
+        try {
+            g.drawImage(frame, 0, 0, rgb.getWidth(), rgb.getHeight(), null);
+        } finally {
+            g.dispose();
+        }
+        LumaReader scaled = reader(rgb);
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        return (x, y) -> scaled.luma((int) ((long) x * rgb.getWidth() / width), (int) ((long) y * rgb.getHeight() / height));
+    }
+
+    //integer approximation of Rec. 601 luma
+    private static int luma(int red, int green, int blue) {
+        return (red * 77 + green * 150 + blue * 29) >> 8;
+    }
+
+    private interface LumaReader {
+        int luma(int x, int y);
+    }
+
+    private static final class Reference {
+        private int[] thumbnail;
+        private int width;
+        private int height;
+        private int skipped;
+    }
+}
@@ -0,0 +1,58 @@
+package com.mukhtar.UdaSecurity.Services;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * A long counter padded on both sides so it has a cache line to itself, and threads updating it
+ * do not slow down threads reading whatever would otherwise share the line. The padding fields sit
+ * in superclasses and a subclass because the JVM keeps those in declaration order, which it does
+ * not promise for fields of a single class.
+ */
+final class PaddedSequence extends PaddedSequenceValue {
+    @SuppressWarnings("unused")
+    private long p9, p10, p11, p12, p13, p14, p15;
+
+    private static final VarHandle VALUE;
+
+    static {
+        try {
+            VALUE = MethodHandles.lookup().findVarHandle(PaddedSequenceValue.class, "value", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    PaddedSequence(long initialValue) {
+        value = initialValue;
+    }
+
+    long get() {
+        return value;
+    }
+
+    long getAcquire() {
+        return (long) VALUE.getAcquire(this);
+    }
+
+    void setRelease(long newValue) {
+        VALUE.setRelease(this, newValue);
+    }
+
+    boolean compareAndSet(long expected, long newValue) {
+        return VALUE.compareAndSet(this, expected, newValue);
+    }
+
+    long incrementAndGet() {
+        return (long) VALUE.getAndAdd(this, 1L) + 1;
+    }
+}
+
+abstract class PaddedSequenceLeft {
+    @SuppressWarnings("unused")
+    private long p1, p2, p3, p4, p5, p6, p7;
+}
+
+abstract class PaddedSequenceValue extends PaddedSequenceLeft {
+    volatile long value;
+}
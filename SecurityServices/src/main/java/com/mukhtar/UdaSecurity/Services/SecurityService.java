@@ -1,15 +1,28 @@
 package com.mukhtar.UdaSecurity.Services;
 
 import com.mukhtar.UdaSecurity.Service.ImageServicesInterface;
+import com.mukhtar.UdaSecurity.Service.NoVerdictException;
 import com.mukhtar.UdaSecurity.application.StatusListener;
 import com.mukhtar.UdaSecurity.data.Sensor;
 import  com.mukhtar.UdaSecurity.data.AlarmStatus;
 import com.mukhtar.UdaSecurity.data.ArmingStatus;
 import com.mukhtar.UdaSecurity.data.SecurityRepository;
+import com.mukhtar.UdaSecurity.data.SensorStatistics;
+import com.mukhtar.UdaSecurity.metrics.Counter;
+import com.mukhtar.UdaSecurity.metrics.MetricsRegistry;
+import com.mukhtar.UdaSecurity.metrics.Timer;
 import java.awt.image.BufferedImage;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
 
 
 
@@ -22,16 +35,34 @@ import java.util.concurrent.ConcurrentSkipListSet;
  */
 public class SecurityService {
 
+    private static final float CAT_CONFIDENCE_THRESHOLD = 50.0f;
+    //the camera shown in the ImagePanel
+    private static final String DEFAULT_CAMERA = "";
+
     private final ImageServicesInterface imageService;
     private final  SecurityRepository securityRepository;
-    private Boolean catDetection = false;
-    private final Set<StatusListener> statusListeners = new HashSet<>();
+    private volatile boolean catDetection = false;
+    private final Set<String> camerasSeeingCat = new HashSet<>();
+    private final Set<StatusListener> statusListeners = new CopyOnWriteArraySet<>();
+    private volatile ImageAnalysisPipeline imageAnalysisPipeline;
+    private volatile AlarmEventLog alarmEventLog;
+    private volatile MotionGate motionGate;
+    private volatile ServiceMetrics metrics = new ServiceMetrics(MetricsRegistry.NOOP, false);
 
     public SecurityService(SecurityRepository securityRepository, ImageServicesInterface imageService) {
         this.securityRepository = securityRepository;
         this.imageService = imageService;
     }
 
+    /**
+     * @param imageAnalysisPipeline runs the scans started by {@link #processImageAsync}
+     */
+    public SecurityService(SecurityRepository securityRepository, ImageServicesInterface imageService,
+                           ImageAnalysisPipeline imageAnalysisPipeline) {
+        this(securityRepository, imageService);
+        this.imageAnalysisPipeline = imageAnalysisPipeline;
+    }
+
 
 
     /**
@@ -39,39 +70,76 @@ public class SecurityService {
      * may update both the alarm status.
      */
     public void setArmingStatus(ArmingStatus armingStatus) {
-            if (catDetection && armingStatus == ArmingStatus.ARMED_HOME){
-                setAlarmStatus(AlarmStatus.ALARM);
-            }
-             if ( armingStatus == ArmingStatus.DISARMED){
-                setAlarmStatus(AlarmStatus.NO_ALARM);
-            }
-            else {
-                ConcurrentSkipListSet<Sensor> sensors = new ConcurrentSkipListSet<>(getSensors());
-                sensors.forEach(sensor -> changeSensorActivationStatus(sensor,false));
-            }
+        runRecorded(() -> {
+            record(() -> AlarmEvent.armingChanged(armingStatus));
+            updateArmingStatus(armingStatus);
+        });
+        statusListeners.forEach(sl -> sl.armingStatusChanged(armingStatus));
+        if (armingStatus != ArmingStatus.DISARMED) {
+            //only sensors that are still active need to change, and they are persisted together
+            Map<Sensor, Boolean> changes = new LinkedHashMap<>();
+            getSensors().stream()
+                    .filter(sensor -> !Boolean.FALSE.equals(sensor.getActive()))
+                    .forEach(sensor -> changes.put(sensor, false));
+            applySensorActivationChanges(changes);
+        }
+        statusListeners.forEach(st -> st.sensorStatusChanged());
+    }
 
+    /**
+     * Stores the new arming status along with the alarm status it implies.
+     */
+    protected void updateArmingStatus(ArmingStatus armingStatus) {
+        if (catDetection && armingStatus == ArmingStatus.ARMED_HOME){
+            setAlarmStatus(AlarmStatus.ALARM);
+        }
+        if ( armingStatus == ArmingStatus.DISARMED){
+            setAlarmStatus(AlarmStatus.NO_ALARM);
+        }
         securityRepository.setArmingStatus(armingStatus);
-        statusListeners.forEach(st -> st.sensorStatusChanged());
     }
+
+    /**
+     * Answered from the repository's sensor counts, so it costs the same however many sensors there are.
+     */
     public boolean allSensorsByStatus(boolean activeStatus){
-        return getSensors().stream().allMatch(sensor -> sensor.getActive()==activeStatus);
+        if (!activeStatus) {
+            return !securityRepository.anySensorActive();
+        }
+        return securityRepository.getActiveSensorCount() == securityRepository.getSensorCount();
     }
 
     /**
      * Internal method that handles alarm status changes based on whether
-     * the camera currently shows a cat.
+     * one of the cameras currently shows a cat.
+     * @param camera name of the camera the verdict is for
      * @param cat True if a cat is detected, otherwise false.
      */
-    private void catDetected(Boolean cat) {
-        catDetection =cat;
-        if(cat && getArmingStatus() == ArmingStatus.ARMED_HOME) {
-            setAlarmStatus(AlarmStatus.ALARM);
-        }
-        else if(!cat && allSensorsByStatus(false)){
-            setAlarmStatus(AlarmStatus.NO_ALARM);
+    private void catDetected(String camera, boolean cat) {
+        boolean anyCat;
+        //the cameras are folded into one flag, so the set and the flag have to change together
+        synchronized (camerasSeeingCat) {
+            if (cat) {
+                camerasSeeingCat.add(camera);
+            } else {
+                camerasSeeingCat.remove(camera);
+            }
+            anyCat = !camerasSeeingCat.isEmpty();
+            runRecorded(() -> {
+                record(() -> AlarmEvent.catDetected(camera, cat));
+                updateCatDetection(anyCat);
+            });
         }
+        statusListeners.forEach(sl -> sl.catDetected(anyCat));
+    }
 
-        statusListeners.forEach(sl -> sl.catDetected(cat));
+    /**
+     * Records whether the camera shows a cat along with the alarm status it implies.
+     */
+    protected void updateCatDetection(boolean cat) {
+        catDetection =cat;
+        updateAlarmStatus((alarmStatus, armingStatus) ->
+                AlarmTransitions.onCatDetected(alarmStatus, armingStatus, cat, () -> allSensorsByStatus(false)));
     }
 
     /**
@@ -91,30 +159,29 @@ public class SecurityService {
      * @param status
      */
     public void setAlarmStatus(AlarmStatus status) {
+        ServiceMetrics serviceMetrics = metrics;
+        if (serviceMetrics.alarmTransitions != null) {
+            //the repository still holds the status published before this one
+            AlarmStatus previous = securityRepository.getAlarmStatus();
+            if (previous != null && previous != status) {
+                serviceMetrics.alarmTransitions[previous.ordinal()][status.ordinal()].increment();
+            }
+        }
         securityRepository.setAlarmStatus(status);
         statusListeners.forEach(sl -> sl.notify(status));
     }
 
     /**
-     * Internal method for updating the alarm status when a sensor has been activated.
-     */
-    private void handleSensorActivated() {
-        if(securityRepository.getArmingStatus() == ArmingStatus.DISARMED) {
-            return; //no problem if the system is disarmed
-        }
-        switch(securityRepository.getAlarmStatus()) {
-            case NO_ALARM -> setAlarmStatus(AlarmStatus.PENDING_ALARM);
-            case PENDING_ALARM -> setAlarmStatus(AlarmStatus.ALARM);
-        }
-    }
-
-    /**
-     * Internal method for updating the alarm status when a sensor has been deactivated
+     * Moves the alarm status to whatever the transition works out from the current alarm and
+     * arming status. Every alarm decision goes through here, so a subclass can make the
+     * read-decide-write step atomic.
+     * @param transition receives the current alarm and arming status and returns the new alarm status
      */
-    private void handleSensorDeactivated() {
-        switch(securityRepository.getAlarmStatus()) {
-            case PENDING_ALARM -> setAlarmStatus(AlarmStatus.NO_ALARM);
-            case ALARM -> setAlarmStatus(AlarmStatus.PENDING_ALARM);
+    protected void updateAlarmStatus(BiFunction<AlarmStatus, ArmingStatus, AlarmStatus> transition) {
+        AlarmStatus currentAlarmStatus = securityRepository.getAlarmStatus();
+        AlarmStatus nextAlarmStatus = transition.apply(currentAlarmStatus, securityRepository.getArmingStatus());
+        if (nextAlarmStatus != currentAlarmStatus) {
+            setAlarmStatus(nextAlarmStatus);
         }
     }
 
@@ -124,16 +191,49 @@ public class SecurityService {
      * @param active
      */
     public void changeSensorActivationStatus(Sensor sensor, Boolean active) {
-        AlarmStatus currentAlarmStatus = securityRepository.getAlarmStatus();
-        if (currentAlarmStatus != AlarmStatus.ALARM){
-            if(active) {
-                handleSensorActivated();
-            } else if (sensor.getActive()) {
-                handleSensorDeactivated();
-            }
+        long start = System.nanoTime();
+        runRecorded(() -> {
+            record(() -> AlarmEvent.sensorChanged(sensor.getSensorId(), active));
+            updateAlarmStatus((alarmStatus, armingStatus) ->
+                    AlarmTransitions.onSensorChanged(alarmStatus, armingStatus, sensor.getActive(), active));
+            sensor.setActive(active);
+            securityRepository.updateSensor(sensor);
+        });
+        metrics.sensorChange.recordSince(start);
+    }
+
+    /**
+     * Change the activation status of several sensors as one transaction. The alarm status ends up
+     * where applying the changes one after another would leave it, but the repository is written
+     * once and listeners hear about the result once.
+     * @param changes the new activation status for each sensor, applied in iteration order
+     */
+    public void changeSensorActivationStatus(Map<Sensor, Boolean> changes) {
+        long start = System.nanoTime();
+        applySensorActivationChanges(changes);
+        statusListeners.forEach(sl -> sl.sensorStatusChanged());
+        metrics.sensorBatch.recordSince(start);
+    }
+
+    protected void applySensorActivationChanges(Map<Sensor, Boolean> changes) {
+        if (changes.isEmpty()) {
+            return;
         }
-        sensor.setActive(active);
-        securityRepository.updateSensor(sensor);
+        runRecorded(() -> {
+            updateAlarmStatus((alarmStatus, armingStatus) -> {
+                AlarmStatus nextAlarmStatus = alarmStatus;
+                for (Map.Entry<Sensor, Boolean> change : changes.entrySet()) {
+                    nextAlarmStatus = AlarmTransitions.onSensorChanged(nextAlarmStatus, armingStatus,
+                            change.getKey().getActive(), change.getValue());
+                }
+                return nextAlarmStatus;
+            });
+            changes.forEach((sensor, active) -> {
+                record(() -> AlarmEvent.sensorChanged(sensor.getSensorId(), active));
+                sensor.setActive(active);
+            });
+            securityRepository.updateSensors(changes.keySet());
+        });
     }
     /**
      * Change the activation status for the specified sensor if no active status is passed
@@ -142,15 +242,15 @@ public class SecurityService {
      *
      */
     public void changeSensorActivationStatus(Sensor sensor) {
-        AlarmStatus currentAlarmStatus = this.getAlarmStatus();
-        ArmingStatus currentArmingStatus= this.getArmingStatus();
-        if (currentAlarmStatus == AlarmStatus.PENDING_ALARM && !sensor.getActive()){
-            handleSensorDeactivated();
-        }
-        else if (currentAlarmStatus == AlarmStatus.ALARM && currentArmingStatus== ArmingStatus.DISARMED){
-            handleSensorDeactivated();
-        }
-
+        updateAlarmStatus((currentAlarmStatus, currentArmingStatus) -> {
+            if (currentAlarmStatus == AlarmStatus.PENDING_ALARM && !sensor.getActive()){
+                return AlarmTransitions.onSensorDeactivated(currentAlarmStatus);
+            }
+            else if (currentAlarmStatus == AlarmStatus.ALARM && currentArmingStatus== ArmingStatus.DISARMED){
+                return AlarmTransitions.onSensorDeactivated(currentAlarmStatus);
+            }
+            return currentAlarmStatus;
+        });
 
         securityRepository.updateSensor(sensor);
     }
@@ -161,7 +261,212 @@ public class SecurityService {
      * @param currentCameraImage
      */
     public void processImage(BufferedImage currentCameraImage) {
-        catDetected(imageService.imageContainsCat(currentCameraImage, 50.0f));
+        processImage(DEFAULT_CAMERA, currentCameraImage);
+    }
+
+    /**
+     * Process an image from one of several cameras. A cat seen by any camera counts as a cat
+     * detected until that same camera sends an image without one. If the image service has no
+     * verdict, the camera keeps its last one.
+     * @param camera name of the camera that took the image
+     * @param cameraImage
+     */
+    public void processImage(String camera, BufferedImage cameraImage) {
+        MotionGate gate = motionGate;
+        if (gate != null && !gate.admit(camera, cameraImage)) {
+            //nothing moved, so the camera's last verdict still stands
+            return;
+        }
+        long start = System.nanoTime();
+        boolean cat;
+        try {
+            cat = imageService.imageContainsCat(cameraImage, CAT_CONFIDENCE_THRESHOLD);
+        } catch (NoVerdictException e) {
+            discardFrame(gate, camera);
+            metrics.imageProcessing.recordSince(start);
+            return;
+        } catch (RuntimeException e) {
+            discardFrame(gate, camera);
+            throw e;
+        }
+        catDetected(camera, cat);
+        metrics.imageProcessing.recordSince(start);
+    }
+
+    /**
+     * Drops whatever a camera last reported, for cameras that are taken out of service.
+     */
+    public void forgetCamera(String camera) {
+        MotionGate gate = motionGate;
+        if (gate != null) {
+            gate.forget(camera);
+        }
+        synchronized (camerasSeeingCat) {
+            if (!camerasSeeingCat.contains(camera)) {
+                return;
+            }
+        }
+        catDetected(camera, false);
+    }
+
+    /**
+     * Send an image for processing without waiting for the result. The scan runs on the image analysis
+     * pipeline, and a newer image cancels a scan that has not finished yet.
+     * @param currentCameraImage
+     * @param callbackExecutor the alarm status is updated and listeners are notified on this executor,
+     *                         for example {@code SwingUtilities::invokeLater}
+     * @return completes with whether the image contains a cat once the alarm status has been
+     * updated, or with the camera's last verdict if the image service has none
+     */
+    public CompletableFuture<Boolean> processImageAsync(BufferedImage currentCameraImage, Executor callbackExecutor) {
+        MotionGate gate = motionGate;
+        if (gate != null && !gate.admit(DEFAULT_CAMERA, currentCameraImage)) {
+            return CompletableFuture.completedFuture(seesCat(DEFAULT_CAMERA));
+        }
+        return getImageAnalysisPipeline().submit(currentCameraImage, CAT_CONFIDENCE_THRESHOLD)
+                .handleAsync((cat, error) -> {
+                    if (error == null) {
+                        catDetected(DEFAULT_CAMERA, cat);
+                        return cat;
+                    }
+                    discardFrame(gate, DEFAULT_CAMERA);
+                    Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                    if (cause instanceof NoVerdictException) {
+                        return seesCat(DEFAULT_CAMERA);
+                    }
+                    throw error instanceof CompletionException ? (CompletionException) error : new CompletionException(error);
+                }, callbackExecutor);
+    }
+
+    /**
+     * Records every arming change, sensor change and camera verdict from now on, so the alarm
+     * decisions can be replayed and audited with an {@link AlarmEngine}. Alarm status set directly
+     * through {@link #setAlarmStatus} or {@link #changeSensorActivationStatus(Sensor)} is not an
+     * event and is not replayed. Set the log before the service is shared between threads.
+     *
+     * A new log first records the sensors, camera verdicts and status the system already has, and
+     * a reopened log records whatever changed while it was not attached, so replaying it always
+     * ends in the state the repository is in.
+     * @param alarmEventLog the log to record to, or null to stop recording
+     */
+    public void setAlarmEventLog(AlarmEventLog alarmEventLog) {
+        if (alarmEventLog != null) {
+            catchUp(alarmEventLog);
+        }
+        this.alarmEventLog = alarmEventLog;
+    }
+
+    /**
+     * Skips cat detection for camera images in which nothing has moved since the last image that
+     * was analysed; the camera keeps its last verdict.
+     * @param motionGate the gate to check images with, or null to analyse every image
+     */
+    public void setMotionGate(MotionGate motionGate) {
+        this.motionGate = motionGate;
+    }
+
+    /**
+     * Records how long sensor changes and image processing take and counts every alarm status
+     * transition from now on, and publishes the image analysis queue depth.
+     */
+    public void setMetricsRegistry(MetricsRegistry registry) {
+        registry.gauge("catpoint_image_pipeline_queue_depth", "Frames waiting for an image analysis worker", () -> {
+            ImageAnalysisPipeline pipeline = imageAnalysisPipeline;
+            return pipeline == null ? 0 : pipeline.getQueueDepth();
+        });
+        metrics = new ServiceMetrics(registry, true);
+    }
+
+    /**
+     * Runs a step that records an event and applies the change it describes. The log must list
+     * events in the order their changes were applied, or replaying it decides differently, so a
+     * subclass that runs steps on several threads at once must not let them interleave while
+     * {@link #isRecording() recording}.
+     */
+    protected void runRecorded(Runnable step) {
+        step.run();
+    }
+
+    /**
+     * @return whether events are being recorded to an {@link AlarmEventLog}
+     */
+    protected boolean isRecording() {
+        return alarmEventLog != null;
+    }
+
+    private void record(Supplier<AlarmEvent> event) {
+        AlarmEventLog log = alarmEventLog;
+        if (log != null) {
+            log.append(event.get());
+        }
+    }
+
+    private void catchUp(AlarmEventLog log) {
+        AlarmEngine engine = log.getEngine();
+        boolean fresh = engine.getSequence() == 0;
+        Set<UUID> engineActive = engine.getActiveSensorIds();
+        Set<UUID> sensorIds = new HashSet<>();
+        for (Sensor sensor : securityRepository.getSensors()) {
+            sensorIds.add(sensor.getSensorId());
+            if (fresh || Boolean.TRUE.equals(sensor.getActive()) != engineActive.contains(sensor.getSensorId())) {
+                log.append(AlarmEvent.sensorAdded(sensor));
+            }
+        }
+        for (UUID sensorId : engineActive) {
+            if (!sensorIds.contains(sensorId)) {
+                log.append(AlarmEvent.sensorRemoved(sensorId));
+            }
+        }
+
+        Set<String> cameras;
+        synchronized (camerasSeeingCat) {
+            cameras = new HashSet<>(camerasSeeingCat);
+        }
+        Set<String> engineCameras = engine.getCamerasSeeingCat();
+        for (String camera : engineCameras) {
+            if (!cameras.contains(camera)) {
+                log.append(AlarmEvent.catDetected(camera, false));
+            }
+        }
+        for (String camera : cameras) {
+            if (!engineCameras.contains(camera)) {
+                log.append(AlarmEvent.catDetected(camera, true));
+            }
+        }
+
+        //last, since the verdicts above may have moved the engine's alarm status
+        AlarmStatus alarmStatus = securityRepository.getAlarmStatus();
+        ArmingStatus armingStatus = securityRepository.getArmingStatus();
+        if (fresh || alarmStatus != engine.getAlarmStatus() || armingStatus != engine.getArmingStatus()) {
+            log.append(AlarmEvent.statusRestored(alarmStatus, armingStatus));
+        }
+    }
+
+    //the frame got no verdict, so the gate must not skip the next one for looking the same
+    private static void discardFrame(MotionGate gate, String camera) {
+        if (gate != null) {
+            gate.discard(camera);
+        }
+    }
+
+    private boolean seesCat(String camera) {
+        synchronized (camerasSeeingCat) {
+            return camerasSeeingCat.contains(camera);
+        }
+    }
+
+    private ImageAnalysisPipeline getImageAnalysisPipeline() {
+        ImageAnalysisPipeline pipeline = imageAnalysisPipeline;
+        if (pipeline == null) {
+            synchronized (this) {
+                pipeline = imageAnalysisPipeline;
+                if (pipeline == null) {
+                    pipeline = new ImageAnalysisPipeline(imageService);
+                    imageAnalysisPipeline = pipeline;
+                }
+            }
+        }
+        return pipeline;
     }
 
     public AlarmStatus getAlarmStatus() {
@@ -171,16 +476,74 @@ public class SecurityService {
         return securityRepository.getSensors();
     }
 
+    /**
+     * @return the sensor with the given id, or null if there is none
+     */
+    public Sensor getSensor(UUID sensorId) {
+        return securityRepository.getSensor(sensorId);
+    }
+
+    public SensorStatistics getSensorStatistics() {
+        return securityRepository.getSensorStatistics();
+    }
+
     public void addSensor(Sensor sensor) {
-        securityRepository.addSensor(sensor);
+        runRecorded(() -> {
+            record(() -> AlarmEvent.sensorAdded(sensor));
+            securityRepository.addSensor(sensor);
+        });
     }
 
     public void removeSensor(Sensor sensor) {
-        securityRepository.removeSensor(sensor);
+        runRecorded(() -> {
+            record(() -> AlarmEvent.sensorRemoved(sensor.getSensorId()));
+            securityRepository.removeSensor(sensor);
+        });
+    }
+
+    /**
+     * @return whether any camera currently shows a cat
+     */
+    public boolean isCatDetected() {
+        return catDetection;
     }
 
     public ArmingStatus getArmingStatus() {
         return securityRepository.getArmingStatus();
     }
 
+
+    /**
+     * The instruments, swapped as a whole so a reader never sees half of them.
+     */
+    private static final class ServiceMetrics {
+        private final Timer sensorChange;
+        private final Timer sensorBatch;
+        private final Timer imageProcessing;
+        //by previous and next status, or null when transitions are not counted
+        private final Counter[][] alarmTransitions;
+
+        private ServiceMetrics(MetricsRegistry registry, boolean countTransitions) {
+            String sensorChanges = "catpoint_sensor_change_seconds";
+            String sensorChangesHelp = "Time taken to apply sensor activation changes";
+            this.sensorChange = registry.timer(sensorChanges, sensorChangesHelp, "kind", "single");
+            this.sensorBatch = registry.timer(sensorChanges, sensorChangesHelp, "kind", "batch");
+            this.imageProcessing = registry.timer("catpoint_image_processing_seconds",
+                    "Time taken to process a camera image, detection included");
+            if (!countTransitions) {
+                this.alarmTransitions = null;
+                return;
+            }
+            AlarmStatus[] statuses = AlarmStatus.values();
+            this.alarmTransitions = new Counter[statuses.length][statuses.length];
+            for (AlarmStatus from : statuses) {
+                for (AlarmStatus to : statuses) {
+                    if (from != to) {
+                        alarmTransitions[from.ordinal()][to.ordinal()] = registry.counter("catpoint_alarm_transitions_total",
+                                "Alarm status changes", "from", from.name(), "to", to.name());
+                    }
+                }
+            }
+        }
+    }
 }
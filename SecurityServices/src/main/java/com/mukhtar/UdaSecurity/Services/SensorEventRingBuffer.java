@@ -0,0 +1,266 @@
+package com.mukhtar.UdaSecurity.Services;
+
+import com.mukhtar.UdaSecurity.data.Sensor;
+import com.mukhtar.UdaSecurity.metrics.MetricsRegistry;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Ingestion stage in front of a {@link SecurityService} for sensor feeds that fire in bursts.
+ * Any number of threads publish activation changes into a pre-allocated ring, and a single
+ * consumer thread hands everything that has arrived since its last pass to
+ * {@link SecurityService#changeSensorActivationStatus(Map)} as one batch. Publishing allocates
+ * nothing and never touches the repository or the listeners, so producers only contend on the
+ * claim counter.
+ *
+ * Producers claim a slot by bumping the claim sequence, fill it and mark it published with the
+ * round of the ring it belongs to, so the consumer can tell a freshly published slot from a stale
+ * one without a lock. The sequences are padded to a cache line each. When the ring is full,
+ * {@link #publish} waits for the consumer to free a slot.
+ *
+ * Changes are applied in the order they were claimed. A batch is cut short when a sensor shows up
+ * a second time, so each change still sees the state left by the one before it. Listeners are
+ * called on the consumer thread.
+ */
+public class SensorEventRingBuffer implements AutoCloseable {
+
+    private static final int DEFAULT_CAPACITY = 4096;
+    private static final int MAX_BATCH = 1024;
+    private static final VarHandle PUBLISHED_ROUNDS = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private final SecurityService securityService;
+    private final WaitStrategy waitStrategy;
+    private final int mask;
+    private final int roundShift;
+
+    //the slots, written by the producer that claimed them and read by the consumer
+    private final Sensor[] sensors;
+    private final boolean[] actives;
+    //for each slot, the round of the ring its latest event was published in
+    private final int[] publishedRounds;
+
+    //highest sequence claimed by a producer
+    private final PaddedSequence claimed = new PaddedSequence(-1);
+    //highest sequence the consumer is done with
+    private final PaddedSequence consumed = new PaddedSequence(-1);
+
+    private final Thread consumer;
+    private volatile boolean running = true;
+    private volatile boolean consumerIdle;
+
+    //only touched by the consumer thread
+    private final Map<Sensor, Boolean> batch = new LinkedHashMap<>();
+    private volatile long eventCount;
+    private volatile long batchCount;
+    private volatile long failureCount;
+
+    public SensorEventRingBuffer(SecurityService securityService) {
+        this(securityService, DEFAULT_CAPACITY, WaitStrategy.BLOCKING);
+    }
+
+    /**
+     * @param capacity number of slots, rounded up to a power of two
+     */
+    public SensorEventRingBuffer(SecurityService securityService, int capacity, WaitStrategy waitStrategy) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.securityService = securityService;
+        this.waitStrategy = waitStrategy;
+        this.mask = size - 1;
+        this.roundShift = Integer.numberOfTrailingZeros(size);
+        this.sensors = new Sensor[size];
+        this.actives = new boolean[size];
+        this.publishedRounds = new int[size];
+        for (int i = 0; i < size; i++) {
+            publishedRounds[i] = -1;
+        }
+        this.consumer = new Thread(this::consume, "sensor-event-consumer");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    /**
+     * Queues a change of a sensor's activation status, waiting for room if the ring is full.
+     * @throws IllegalStateException if the ring buffer is closed
+     */
+    public void publish(Sensor sensor, boolean active) {
+        checkRunning();
+        long sequence = claimed.incrementAndGet();
+        int attempt = 0;
+        while (sequence - consumed.getAcquire() > sensors.length) {
+            //a full ring means the consumer is behind, give it the CPU
+            WaitStrategy.YIELDING.idle(attempt++);
+            if (!running && !consumer.isAlive()) {
+                throw new IllegalStateException("Ring buffer closed");
+            }
+        }
+        write(sequence, sensor, active);
+    }
+
+    /**
+     * Queues a change of a sensor's activation status if there is room.
+     * @return false if the ring is full
+     * @throws IllegalStateException if the ring buffer is closed
+     */
+    public boolean tryPublish(Sensor sensor, boolean active) {
+        checkRunning();
+        long sequence;
+        do {
+            sequence = claimed.get() + 1;
+            if (sequence - consumed.getAcquire() > sensors.length) {
+                return false;
+            }
+        } while (!claimed.compareAndSet(sequence - 1, sequence));
+        write(sequence, sensor, active);
+        return true;
+    }
+
+    /**
+     * @return number of changes handed to the security service
+     */
+    public long getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * @return number of batches the changes were handed over in
+     */
+    public long getBatchCount() {
+        return batchCount;
+    }
+
+    /**
+     * @return number of batches the security service failed on
+     */
+    public long getFailureCount() {
+        return failureCount;
+    }
+
+    /**
+     * @return number of changes claimed by producers that the consumer has not handed over yet
+     */
+    public long getBacklog() {
+        return Math.max(0, claimed.getAcquire() - consumed.getAcquire());
+    }
+
+    /**
+     * Publishes the backlog and hand-over counts to the registry.
+     */
+    public void bindTo(MetricsRegistry registry) {
+        registry.gauge("catpoint_sensor_ring_buffer_backlog", "Sensor changes waiting for the consumer", this::getBacklog);
+        registry.counter("catpoint_sensor_ring_buffer_events_total", "Sensor changes handed to the service", this::getEventCount);
+        registry.counter("catpoint_sensor_ring_buffer_batches_total", "Batches the changes were handed over in", this::getBatchCount);
+        registry.counter("catpoint_sensor_ring_buffer_failures_total", "Batches the service failed on", this::getFailureCount);
+    }
+
+    /**
+     * Stops accepting changes, waits for the consumer to apply the ones already published and stops
+     * it. A change published by another thread while this runs may be dropped.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(consumer);
+        boolean interrupted = false;
+        while (consumer.isAlive()) {
+            try {
+                consumer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void checkRunning() {
+        if (!running) {
+            throw new IllegalStateException("Ring buffer closed");
+        }
+    }
+
+    private void write(long sequence, Sensor sensor, boolean active) {
+        int index = (int) sequence & mask;
+        sensors[index] = sensor;
+        actives[index] = active;
+        int round = (int) (sequence >>> roundShift);
+        if (waitStrategy.wakesConsumer()) {
+            //pairs with the consumer announcing it is idle and then checking again, so one of the two
+            //always sees the other
+            PUBLISHED_ROUNDS.setVolatile(publishedRounds, index, round);
+            if (consumerIdle) {
+                LockSupport.unpark(consumer);
+            }
+        } else {
+            //release, so the consumer sees the slot contents once it sees the round
+            PUBLISHED_ROUNDS.setRelease(publishedRounds, index, round);
+        }
+    }
+
+    private boolean isPublished(long sequence) {
+        int index = (int) sequence & mask;
+        return (int) PUBLISHED_ROUNDS.getAcquire(publishedRounds, index) == (int) (sequence >>> roundShift);
+    }
+
+    private boolean isPublishedVolatile(long sequence) {
+        int index = (int) sequence & mask;
+        return (int) PUBLISHED_ROUNDS.getVolatile(publishedRounds, index) == (int) (sequence >>> roundShift);
+    }
+
+    private void consume() {
+        long next = consumed.get() + 1;
+        int attempt = 0;
+        while (true) {
+            if (!isPublished(next)) {
+                //stop once closed and every claimed slot has been published and applied
+                if (!running && claimed.getAcquire() < next) {
+                    return;
+                }
+                if (waitStrategy.wakesConsumer()) {
+                    consumerIdle = true;
+                    if (!isPublishedVolatile(next)) {
+                        waitStrategy.idle(attempt++);
+                    }
+                    consumerIdle = false;
+                } else {
+                    waitStrategy.idle(attempt++);
+                }
+                continue;
+            }
+            attempt = 0;
+            long last = next;
+            while (last - next < MAX_BATCH && isPublished(last)) {
+                int index = (int) last & mask;
+                Sensor sensor = sensors[index];
+                if (batch.containsKey(sensor)) {
+                    break; //the second change of a sensor has to see the first one applied
+                }
+                batch.put(sensor, actives[index]);
+                sensors[index] = null;
+                last++;
+            }
+            apply();
+            consumed.setRelease(last - 1);
+            next = last;
+        }
+    }
+
+    private void apply() {
+        try {
+            securityService.changeSensorActivationStatus(batch);
+        } catch (RuntimeException e) {
+            failureCount++;
+        } finally {
+            eventCount += batch.size();
+            batchCount++;
+            batch.clear();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.mukhtar.UdaSecurity.Services;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * How the consumer of a {@link SensorEventRingBuffer} waits for the next event, trading CPU time
+ * for latency.
+ */
+public enum WaitStrategy {
+    /**
+     * Spins on the CPU. Lowest latency, but keeps a core busy even when nothing happens.
+     */
+    BUSY_SPIN {
+        @Override
+        void idle(int attempt) {
+            Thread.onSpinWait();
+        }
+    },
+    /**
+     * Spins for a while, then yields the CPU to other threads between checks.
+     */
+    YIELDING {
+        @Override
+        void idle(int attempt) {
+            if (attempt < SPIN_TRIES) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+    },
+    /**
+     * Spins, then yields, then sleeps briefly between checks. Little CPU use when idle at the
+     * cost of up to a fraction of a millisecond of latency.
+     */
+    SLEEPING {
+        @Override
+        void idle(int attempt) {
+            if (attempt < SPIN_TRIES) {
+                Thread.onSpinWait();
+            } else if (attempt < SPIN_TRIES + YIELD_TRIES) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(SLEEP_NANOS);
+            }
+        }
+    },
+    /**
+     * Parks until a producer wakes the consumer. No CPU use when idle, but every publish to an
+     * idle consumer pays for a wake-up.
+     */
+    BLOCKING {
+        @Override
+        void idle(int attempt) {
+            if (attempt < SPIN_TRIES) {
+                Thread.onSpinWait();
+            } else {
+                //the timeout only guards against a lost wake-up
+                LockSupport.parkNanos(BLOCKING_TIMEOUT_NANOS);
+            }
+        }
+
+        @Override
+        boolean wakesConsumer() {
+            return true;
+        }
+    };
+
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 100;
+    private static final long SLEEP_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final long BLOCKING_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    /**
+     * Called by the consumer each time it finds nothing new.
+     * @param attempt how many times in a row it found nothing, starting at 0
+     */
+    abstract void idle(int attempt);
+
+    /**
+     * @return whether producers have to unpark the consumer after publishing
+     */
+    boolean wakesConsumer() {
+        return false;
+    }
+}
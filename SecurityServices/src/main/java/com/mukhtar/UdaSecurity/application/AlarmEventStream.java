@@ -0,0 +1,269 @@
+package com.mukhtar.UdaSecurity.application;
+
+import com.google.gson.JsonObject;
+import com.mukhtar.UdaSecurity.Services.SecurityService;
+import com.mukhtar.UdaSecurity.data.AlarmStatus;
+import com.mukhtar.UdaSecurity.data.ArmingStatus;
+import com.mukhtar.UdaSecurity.data.SensorStatistics;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fans the status updates of a {@link SecurityService} out to any number of subscribers, each
+ * reading at its own pace from its own bounded buffer. Every update is turned into JSON once, and
+ * handing it to a subscriber is a queue insert, so a slow or stuck subscriber never holds up the
+ * service or the other subscribers.
+ *
+ * A new subscriber first receives the latest event of each kind, so it starts from the current
+ * state rather than waiting for the next change. Event ids increase across the whole stream.
+ */
+public final class AlarmEventStream implements StatusListener, AutoCloseable {
+
+    public enum Kind {
+        ALARM("alarm"),
+        ARMING("arming"),
+        CAT("cat"),
+        SENSORS("sensors");
+
+        private final String eventName;
+
+        Kind(String eventName) {
+            this.eventName = eventName;
+        }
+
+        public String getEventName() {
+            return eventName;
+        }
+    }
+
+    /**
+     * What a subscriber's buffer does with a new event when it is full.
+     */
+    public enum OverflowPolicy {
+        /** Discard the oldest buffered event. */
+        DROP_OLDEST,
+        /**
+         * Keep only the newest buffered event of each kind. Every event describes the current state
+         * of its kind, so a subscriber that catches up still ends on the right state.
+         */
+        COALESCE
+    }
+
+    private final SecurityService securityService;
+    private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+
+    //guarded by this
+    private final Event[] latest = new Event[Kind.values().length];
+    private long lastId;
+    private boolean closed;
+
+    /**
+     * Registers the stream with the service.
+     */
+    public AlarmEventStream(SecurityService securityService) {
+        this.securityService = securityService;
+        notify(securityService.getAlarmStatus());
+        armingStatusChanged(securityService.getArmingStatus());
+        catDetected(securityService.isCatDetected());
+        sensorStatusChanged();
+        securityService.addStatusListener(this);
+    }
+
+    /**
+     * @param capacity how many events the subscriber may fall behind by, at least one per kind
+     */
+    public synchronized Subscription subscribe(int capacity, OverflowPolicy overflowPolicy) {
+        if (capacity < Kind.values().length) {
+            throw new IllegalArgumentException("capacity must be at least " + Kind.values().length);
+        }
+        Subscription subscription = new Subscription(capacity, overflowPolicy);
+        if (closed) {
+            subscription.close();
+            return subscription;
+        }
+        for (Event event : latest) {
+            subscription.offer(event);
+        }
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    @Override
+    public void notify(AlarmStatus status) {
+        JsonObject data = new JsonObject();
+        data.addProperty("alarmStatus", status.name());
+        publish(Kind.ALARM, data);
+    }
+
+    @Override
+    public void armingStatusChanged(ArmingStatus armingStatus) {
+        JsonObject data = new JsonObject();
+        data.addProperty("armingStatus", armingStatus.name());
+        publish(Kind.ARMING, data);
+    }
+
+    @Override
+    public void catDetected(boolean catDetected) {
+        JsonObject data = new JsonObject();
+        data.addProperty("catDetected", catDetected);
+        publish(Kind.CAT, data);
+    }
+
+    @Override
+    public void sensorStatusChanged() {
+        SensorStatistics statistics = securityService.getSensorStatistics();
+        JsonObject data = new JsonObject();
+        data.addProperty("sensorCount", statistics.getSensorCount());
+        data.addProperty("activeSensorCount", statistics.getActiveCount());
+        publish(Kind.SENSORS, data);
+    }
+
+    /**
+     * Unregisters from the service and ends every subscription.
+     */
+    @Override
+    public void close() {
+        securityService.removeStatusListener(this);
+        synchronized (this) {
+            closed = true;
+        }
+        subscriptions.forEach(Subscription::close);
+    }
+
+    private synchronized void publish(Kind kind, JsonObject data) {
+        if (closed) {
+            return;
+        }
+        Event event = new Event(++lastId, kind, data.toString());
+        latest[kind.ordinal()] = event;
+        for (Subscription subscription : subscriptions) {
+            subscription.offer(event);
+        }
+    }
+
+    public static final class Event {
+        private final long id;
+        private final Kind kind;
+        private final String data;
+
+        private Event(long id, Kind kind, String data) {
+            this.id = id;
+            this.kind = kind;
+            this.data = data;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * @return the event as a single line of JSON
+         */
+        public String getData() {
+            return data;
+        }
+    }
+
+    public final class Subscription implements AutoCloseable {
+        private final int capacity;
+        private final OverflowPolicy overflowPolicy;
+
+        //guarded by this
+        private final ArrayDeque<Event> buffer;
+        private long droppedCount;
+        private boolean closed;
+
+        private Subscription(int capacity, OverflowPolicy overflowPolicy) {
+            this.capacity = capacity;
+            this.overflowPolicy = overflowPolicy;
+            this.buffer = new ArrayDeque<>(capacity);
+        }
+
+        /**
+         * Waits for the next event.
+         * @return the event, or null if none arrived in time or the subscription is closed
+         */
+        public synchronized Event poll(long timeout, TimeUnit unit) throws InterruptedException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            while (buffer.isEmpty() && !closed) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return null;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            return buffer.poll();
+        }
+
+        public synchronized boolean isClosed() {
+            return closed;
+        }
+
+        /**
+         * @return how many events were dropped or coalesced away because this subscriber fell behind
+         */
+        public synchronized long getDroppedCount() {
+            return droppedCount;
+        }
+
+        @Override
+        public void close() {
+            synchronized (this) {
+                closed = true;
+                buffer.clear();
+                notifyAll();
+            }
+            subscriptions.remove(this);
+        }
+
+        private synchronized void offer(Event event) {
+            if (closed) {
+                return;
+            }
+            if (buffer.size() == capacity) {
+                if (overflowPolicy == OverflowPolicy.DROP_OLDEST) {
+                    buffer.poll();
+                    droppedCount++;
+                } else {
+                    coalesce();
+                    if (buffer.size() == capacity) {
+                        //one event of each kind is left, and the new one replaces its own kind
+                        buffer.removeIf(buffered -> buffered.kind == event.kind);
+                        droppedCount++;
+                    }
+                }
+            }
+            buffer.add(event);
+            notifyAll();
+        }
+
+        /**
+         * Drops every buffered event that a later buffered event of the same kind supersedes.
+         */
+        private void coalesce() {
+            boolean[] seen = new boolean[Kind.values().length];
+            Iterator<Event> newestFirst = buffer.descendingIterator();
+            while (newestFirst.hasNext()) {
+                Kind kind = newestFirst.next().kind;
+                if (seen[kind.ordinal()]) {
+                    newestFirst.remove();
+                    droppedCount++;
+                } else {
+                    seen[kind.ordinal()] = true;
+                }
+            }
+        }
+    }
+}
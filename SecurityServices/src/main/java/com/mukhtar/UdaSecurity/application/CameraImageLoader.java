@@ -0,0 +1,179 @@
+package com.mukhtar.UdaSecurity.application;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.SoftReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Loads pictures for the camera panel on a background thread. Thumbnails are decoded with
+ * subsampling, so a large photo is read at a fraction of its size instead of being decoded in
+ * full and scaled down, and the last few are cached by file, size and modification time.
+ *
+ * The full-resolution picture is only decoded when it is asked for, for analysis, and is then
+ * held softly so the garbage collector may drop it again.
+ */
+public final class CameraImageLoader implements AutoCloseable {
+
+    private static final int MAX_CACHED_THUMBNAILS = 32;
+
+    private final int width;
+    private final int height;
+    private final ExecutorService executor;
+
+    //guarded by itself, least recently used first
+    private final Map<Key, BufferedImage> thumbnails = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, BufferedImage> eldest) {
+            return size() > MAX_CACHED_THUMBNAILS;
+        }
+    };
+
+    //guarded by this
+    private Key fullResolutionKey;
+    private SoftReference<BufferedImage> fullResolution = new SoftReference<>(null);
+
+    /**
+     * @param width width of the thumbnails
+     * @param height height of the thumbnails
+     */
+    public CameraImageLoader(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "image-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return completes with the picture scaled to the thumbnail size, or fails with an
+     * {@link UncheckedIOException} if the file is not a readable image
+     */
+    public CompletableFuture<BufferedImage> loadThumbnail(File file) {
+        return CompletableFuture.supplyAsync(() -> {
+            Key key = new Key(file);
+            synchronized (thumbnails) {
+                BufferedImage cached = thumbnails.get(key);
+                if (cached != null) {
+                    return cached;
+                }
+            }
+            BufferedImage thumbnail = scale(decode(file, width, height), width, height);
+            synchronized (thumbnails) {
+                thumbnails.put(key, thumbnail);
+            }
+            return thumbnail;
+        }, executor);
+    }
+
+    /**
+     * @return completes with the picture at full resolution, or fails with an
+     * {@link UncheckedIOException} if the file is not a readable image
+     */
+    public CompletableFuture<BufferedImage> loadFullResolution(File file) {
+        return CompletableFuture.supplyAsync(() -> {
+            Key key = new Key(file);
+            synchronized (this) {
+                BufferedImage cached = fullResolution.get();
+                if (cached != null && key.equals(fullResolutionKey)) {
+                    return cached;
+                }
+            }
+            BufferedImage image = decode(file, 0, 0);
+            synchronized (this) {
+                fullResolutionKey = key;
+                fullResolution = new SoftReference<>(image);
+            }
+            return image;
+        }, executor);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Decodes the first image in the file, skipping rows and columns so that it comes out no
+     * smaller than the given size.
+     * @param minWidth smallest width needed, or 0 for the full resolution
+     */
+    static BufferedImage decode(File file, int minWidth, int minHeight) {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+            if (in == null) {
+                throw new IOException("Unable to open " + file);
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                throw new IOException("Not a supported image: " + file);
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                ImageReadParam param = reader.getDefaultReadParam();
+                if (minWidth > 0 && minHeight > 0) {
+                    int step = Math.max(1, Math.min(reader.getWidth(0) / minWidth, reader.getHeight(0) / minHeight));
+                    param.setSourceSubsampling(step, step, 0, 0);
+                }
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static BufferedImage scale(BufferedImage image, int width, int height) {
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = scaled.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return scaled;
+    }
+
+    private static final class Key {
+        private final String path;
+        private final long length;
+        private final long lastModified;
+
+        Key(File file) {
+            this.path = file.getAbsolutePath();
+            this.length = file.length();
+            this.lastModified = file.lastModified();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return length == key.length && lastModified == key.lastModified && path.equals(key.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, length, lastModified);
+        }
+    }
+}
@@ -1,11 +1,135 @@
 package com.mukhtar.UdaSecurity.application;
 
+import com.mukhtar.UdaSecurity.Service.AwsImageService;
+import com.mukhtar.UdaSecurity.Service.CachingImageService;
+import com.mukhtar.UdaSecurity.Service.FakeImageService;
+import com.mukhtar.UdaSecurity.Service.ImageServicesInterface;
+import com.mukhtar.UdaSecurity.Service.InstrumentedImageService;
+import com.mukhtar.UdaSecurity.Service.LocalCatDetectorService;
+import com.mukhtar.UdaSecurity.Service.MicroBatchingImageService;
+import com.mukhtar.UdaSecurity.Service.ResilientImageService;
+import com.mukhtar.UdaSecurity.Services.AlarmEngine;
+import com.mukhtar.UdaSecurity.Services.AlarmEventLog;
+import com.mukhtar.UdaSecurity.Services.ConcurrentSecurityService;
+import com.mukhtar.UdaSecurity.Services.MotionGate;
+import com.mukhtar.UdaSecurity.data.InstrumentedSecurityRepository;
+import com.mukhtar.UdaSecurity.data.JdbcSecurityRepositoryImpl;
+import com.mukhtar.UdaSecurity.data.PretendDatabaseSecurityRepositoryImpl;
+import com.mukhtar.UdaSecurity.data.SecurityRepository;
+import com.mukhtar.UdaSecurity.data.WriteAheadLogSecurityRepositoryImpl;
+import com.mukhtar.UdaSecurity.metrics.SimpleMetricsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+
 /**
  * This is the main class that launches the com.mukhtar.UdaSecurity.application.
+ *
+ * With {@code --headless} it serves the HTTP API of {@link CatpointServer} instead of opening a
+ * window. {@code --port=N} picks the port (8080 by default) and {@code --fake-images} uses the fake
+ * image service instead of AWS Rekognition. Camera images in which nothing moved since the last
+ * analysed one skip cat detection. Metrics are served at {@code /metrics}.
+ * The state is kept in a write-ahead log under ~/.udasecurity, which the request threads can share;
+ * {@code --database=URL} keeps it in that JDBC database instead, and {@code --database} alone uses
+ * an embedded H2 file. Either copies what earlier versions saved in the user preferences the first
+ * time. Every alarm decision is recorded in an {@link AlarmEventLog} under ~/.udasecurity/events.
+ * When Rekognition is slow or failing, frames are answered by the local detector given with
+ * {@code --fallback-model=FILE}, or else each camera keeps its last verdict.
  */
 public class CatpointApp {
+
+    private static final int DEFAULT_PORT = 8080;
+
+    private static final Logger log = LoggerFactory.getLogger(CatpointApp.class);
+
     public static void main(String[] args) {
-        CatpointGui gui = new CatpointGui();
-        gui.setVisible(true);
+        boolean headless = false;
+        boolean fakeImages = false;
+        int port = DEFAULT_PORT;
+        String databaseUrl = null;
+        Path fallbackModel = null;
+        for (String arg : args) {
+            if (arg.equals("--headless")) {
+                headless = true;
+            } else if (arg.equals("--fake-images")) {
+                fakeImages = true;
+            } else if (arg.startsWith("--port=")) {
+                port = Integer.parseInt(arg.substring("--port=".length()));
+            } else if (arg.equals("--database")) {
+                databaseUrl = JdbcSecurityRepositoryImpl.DEFAULT_URL;
+            } else if (arg.startsWith("--database=")) {
+                databaseUrl = arg.substring("--database=".length());
+            } else if (arg.startsWith("--fallback-model=")) {
+                fallbackModel = Path.of(arg.substring("--fallback-model=".length()));
+            } else {
+                throw new IllegalArgumentException("unknown option " + arg);
+            }
+        }
+
+        if (!headless) {
+            CatpointGui gui = new CatpointGui();
+            gui.setVisible(true);
+            return;
+        }
+
+        SimpleMetricsRegistry metrics = new SimpleMetricsRegistry();
+        ImageServicesInterface imageService;
+        if (fakeImages) {
+            imageService = new InstrumentedImageService(new FakeImageService(), metrics, "fake");
+        } else {
+            MicroBatchingImageService rekognition = new MicroBatchingImageService(new AwsImageService());
+            rekognition.bindTo(metrics);
+            CachingImageService cachingImageService = new CachingImageService(
+                    new InstrumentedImageService(rekognition, metrics, "rekognition"));
+            cachingImageService.bindTo(metrics);
+            ResilientImageService resilientImageService = new ResilientImageService(
+                    new InstrumentedImageService(cachingImageService, metrics, "cache"),
+                    fallbackModel == null ? null : LocalCatDetectorService.fromFile(fallbackModel));
+            resilientImageService.bindTo(metrics);
+            imageService = resilientImageService;
+        }
+        //the preferences repository is neither safe for concurrent requests nor able to hold many sensors
+        SecurityRepository repository;
+        if (databaseUrl == null) {
+            WriteAheadLogSecurityRepositoryImpl logRepository = new WriteAheadLogSecurityRepositoryImpl();
+            if (logRepository.migrateFrom(new PretendDatabaseSecurityRepositoryImpl())) {
+                log.info("Copied the saved sensors into the write-ahead log");
+            }
+            repository = logRepository;
+        } else {
+            JdbcSecurityRepositoryImpl jdbcRepository = new JdbcSecurityRepositoryImpl(databaseUrl);
+            if (jdbcRepository.migrateFrom(new PretendDatabaseSecurityRepositoryImpl())) {
+                log.info("Copied the saved sensors into {}", databaseUrl);
+            }
+            repository = jdbcRepository;
+        }
+        ConcurrentSecurityService securityService = new ConcurrentSecurityService(
+                new InstrumentedSecurityRepository(repository, metrics), imageService);
+        securityService.setMetricsRegistry(metrics);
+        AlarmEventLog alarmEventLog = new AlarmEventLog(new AlarmEngine());
+        securityService.setAlarmEventLog(alarmEventLog);
+        MotionGate motionGate = new MotionGate();
+        motionGate.bindTo(metrics);
+        securityService.setMotionGate(motionGate);
+        CatpointServer server = new CatpointServer(securityService, new InetSocketAddress(port), metrics);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            try {
+                ((Closeable) repository).close();
+            } catch (IOException e) {
+                log.warn("Unable to close the repository", e);
+            }
+            try {
+                alarmEventLog.close();
+            } catch (IOException e) {
+                log.warn("Unable to close the alarm event log", e);
+            }
+        }, "catpoint-server-shutdown"));
+        server.start();
+        log.info("Serving on port {}", server.getAddress().getPort());
     }
 }
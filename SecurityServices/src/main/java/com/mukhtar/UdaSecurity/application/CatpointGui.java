@@ -1,32 +1,44 @@
 package com.mukhtar.UdaSecurity.application;
 
 import com.mukhtar.UdaSecurity.Service.AwsImageService;
+import com.mukhtar.UdaSecurity.Service.CachingImageService;
 import com.mukhtar.UdaSecurity.data.PretendDatabaseSecurityRepositoryImpl;
-import com.mukhtar.UdaSecurity.data.SecurityRepository;
+import com.mukhtar.UdaSecurity.data.WriteAheadLogSecurityRepositoryImpl;
 import net.miginfocom.swing.MigLayout;
+import com.mukhtar.UdaSecurity.Services.AlarmEngine;
+import com.mukhtar.UdaSecurity.Services.AlarmEventLog;
 import com.mukhtar.UdaSecurity.Services.SecurityService;
 
 import javax.swing.*;
+import java.io.IOException;
 
 /**
  * This is the primary JFrame for the com.mukhtar.UdaSecurity.application that contains all the top-level JPanels.
  *
  * We're not using any dependency injection framework, so this class also handles constructing
  * all our dependencies and providing them to other classes as necessary.
+ *
+ * The state is kept in a {@link WriteAheadLogSecurityRepositoryImpl} under ~/.udasecurity, which
+ * holds any number of sensors; what earlier versions saved in the user preferences is copied over
+ * the first time. Every alarm decision is recorded in an {@link AlarmEventLog} under
+ * ~/.udasecurity/events.
  */
 public class CatpointGui extends JFrame {
-  private SecurityRepository securityRepository = new PretendDatabaseSecurityRepositoryImpl();
+    private WriteAheadLogSecurityRepositoryImpl securityRepository = openRepository();
     private AwsImageService awsImageService = new AwsImageService();
-    private SecurityService securityService = new SecurityService(securityRepository, awsImageService);
-    private DisplayPanel displayPanel = new DisplayPanel(securityService);
+    private SecurityService securityService = new SecurityService(securityRepository, new CachingImageService(awsImageService));
+    private AlarmEventLog alarmEventLog = new AlarmEventLog(new AlarmEngine());
+    private StatusDispatcher statusDispatcher = new StatusDispatcher(securityService);
+    private DisplayPanel displayPanel = new DisplayPanel(securityService, statusDispatcher);
     private ControlPanel controlPanel = new ControlPanel(securityService);
-    private SensorPanel sensorPanel = new SensorPanel(securityService);
-    private ImagePanel imagePanel = new ImagePanel(securityService);
+    private SensorPanel sensorPanel = new SensorPanel(securityService, statusDispatcher);
+    private ImagePanel imagePanel = new ImagePanel(securityService, statusDispatcher);
 
     public CatpointGui() {
         setLocation(100, 100);
         setSize(600, 850);
         setTitle("Very Secure App");
+        securityService.setAlarmEventLog(alarmEventLog);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 
         JPanel mainPanel = new JPanel();
@@ -38,5 +50,24 @@ public class CatpointGui extends JFrame {
 
         getContentPane().add(mainPanel);
 
+        //the log is memory mapped, so this only pushes the last changes out to disk
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                securityRepository.close();
+            } catch (IOException e) {
+                //nothing more can be done while exiting
+            }
+            try {
+                alarmEventLog.close();
+            } catch (IOException e) {
+                //nothing more can be done while exiting
+            }
+        }, "catpoint-gui-shutdown"));
+    }
+
+    private static WriteAheadLogSecurityRepositoryImpl openRepository() {
+        WriteAheadLogSecurityRepositoryImpl repository = new WriteAheadLogSecurityRepositoryImpl();
+        repository.migrateFrom(new PretendDatabaseSecurityRepositoryImpl());
+        return repository;
     }
 }
@@ -0,0 +1,473 @@
+package com.mukhtar.UdaSecurity.application;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.mukhtar.UdaSecurity.Services.SecurityService;
+import com.mukhtar.UdaSecurity.data.ArmingStatus;
+import com.mukhtar.UdaSecurity.data.Sensor;
+import com.mukhtar.UdaSecurity.data.SensorStatistics;
+import com.mukhtar.UdaSecurity.data.SensorType;
+import com.mukhtar.UdaSecurity.metrics.MetricsRegistry;
+import com.mukhtar.UdaSecurity.metrics.SimpleMetricsRegistry;
+import com.mukhtar.UdaSecurity.metrics.Timer;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the security system without a display, exposing the {@link SecurityService} as a small
+ * JSON API on the JDK's built-in HTTP server:
+ *
+ * <pre>
+ * GET    /status                  alarm and arming status and sensor counts
+ * PUT    /arming                  {"armingStatus": "ARMED_HOME"}
+ * GET    /sensors                 all sensors
+ * POST   /sensors                 {"name": "Front door", "sensorType": "DOOR"}
+ * GET    /sensors/{id}            one sensor
+ * PUT    /sensors/{id}/active     {"active": true}
+ * DELETE /sensors/{id}            remove the sensor
+ * POST   /images?camera={name}    image bytes in any format ImageIO reads; camera is optional
+ * GET    /events?overflow={policy} server-sent events for alarm, arming, cat and sensor changes
+ * GET    /metrics                 Prometheus metrics, when the server was given a registry
+ * </pre>
+ *
+ * An event stream subscriber that falls behind by more than {@value #EVENT_BUFFER} events loses
+ * the superseded ones ({@code overflow=coalesce}, the default) or the oldest ones
+ * ({@code overflow=drop_oldest}); see {@link AlarmEventStream}.
+ *
+ * Each request runs on its own virtual thread when the JVM has them, otherwise on a fixed pool of
+ * platform threads. Handlers call the service directly from many threads at once, so the service
+ * and its repository must be safe for concurrent use, as {@code ConcurrentSecurityService} is.
+ *
+ * An event stream holds a thread for as long as its client stays connected, so streams are handed
+ * off the request threads to threads of their own, and the other endpoints keep answering however
+ * many dashboards are open. Past {@code maxEventSubscribers} open streams a new one is refused with
+ * 503.
+ */
+public class CatpointServer implements AutoCloseable {
+
+    private static final Gson gson = new Gson();
+    private static final String JSON = "application/json; charset=utf-8";
+    private static final String PROMETHEUS = "text/plain; version=0.0.4; charset=utf-8";
+    private static final int EVENT_BUFFER = 256;
+    //comment lines sent to idle event streams, so dead connections are noticed and proxies keep them open
+    private static final long KEEPALIVE_SECONDS = 15;
+    private static final int DEFAULT_MAX_EVENT_SUBSCRIBERS = 4096;
+    //an event thread only waits and writes short lines, so it needs far less than the default stack
+    private static final long EVENT_THREAD_STACK_SIZE = 256 * 1024;
+
+    private final SecurityService securityService;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ExecutorService eventExecutor;
+    private final AlarmEventStream eventStream;
+    private final Semaphore eventSlots;
+
+    /**
+     * Binds the server without a metrics endpoint; call {@link #start()} to begin serving.
+     * @param address the address to listen on, with port 0 for any free port
+     */
+    public CatpointServer(SecurityService securityService, InetSocketAddress address) {
+        this(securityService, address, null);
+    }
+
+    /**
+     * Binds the server; call {@link #start()} to begin serving.
+     * @param address the address to listen on, with port 0 for any free port
+     * @param metrics request timings and event stream figures are recorded here, and it is served
+     *                at {@code GET /metrics}; null for neither
+     */
+    public CatpointServer(SecurityService securityService, InetSocketAddress address, SimpleMetricsRegistry metrics) {
+        this(securityService, address, metrics, DEFAULT_MAX_EVENT_SUBSCRIBERS);
+    }
+
+    /**
+     * Binds the server; call {@link #start()} to begin serving.
+     * @param maxEventSubscribers event streams that may be open at once
+     */
+    public CatpointServer(SecurityService securityService, InetSocketAddress address, SimpleMetricsRegistry metrics,
+                          int maxEventSubscribers) {
+        if (maxEventSubscribers < 1) {
+            throw new IllegalArgumentException("maxEventSubscribers must be positive: " + maxEventSubscribers);
+        }
+        this.securityService = securityService;
+        try {
+            this.server = HttpServer.create(address, 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.executor = newRequestExecutor();
+        this.eventExecutor = newEventExecutor();
+        this.eventSlots = new Semaphore(maxEventSubscribers);
+        this.eventStream = new AlarmEventStream(securityService);
+        server.setExecutor(executor);
+        MetricsRegistry registry = metrics == null ? MetricsRegistry.NOOP : metrics;
+        server.createContext("/status", handler(this::status, registry, "status"));
+        server.createContext("/arming", handler(this::arming, registry, "arming"));
+        server.createContext("/sensors", handler(this::sensors, registry, "sensors"));
+        server.createContext("/images", handler(this::images, registry, "images"));
+        server.createContext("/events", this::events);
+        if (metrics != null) {
+            registry.gauge("catpoint_event_stream_subscribers", "Clients following the event stream",
+                    eventStream::getSubscriberCount);
+            server.createContext("/metrics", handler(exchange -> metrics(exchange, metrics), registry, "metrics"));
+        }
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * @return the address the server listens on, with the actual port if it was bound to port 0
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /**
+     * Stops accepting requests and gives the ones in progress a second to finish.
+     */
+    @Override
+    public void close() {
+        eventStream.close();
+        server.stop(1);
+        executor.shutdownNow();
+        eventExecutor.shutdownNow();
+    }
+
+    private Response status(HttpExchange exchange) {
+        requireMethod(exchange, "GET");
+        return Response.ok(statusJson());
+    }
+
+    private Response arming(HttpExchange exchange) {
+        requireMethod(exchange, "PUT");
+        ArmingStatus armingStatus = enumValue(ArmingStatus.class, requireField(readJson(exchange), "armingStatus"));
+        securityService.setArmingStatus(armingStatus);
+        return Response.ok(statusJson());
+    }
+
+    private Response sensors(HttpExchange exchange) {
+        //  /sensors, /sensors/{id} or /sensors/{id}/active
+        String[] path = exchange.getRequestURI().getPath().split("/");
+        String method = exchange.getRequestMethod();
+        if (path.length == 2) {
+            if (method.equals("POST")) {
+                JsonObject body = readJson(exchange);
+                Sensor sensor = new Sensor(requireField(body, "name").getAsString(),
+                        enumValue(SensorType.class, requireField(body, "sensorType")));
+                securityService.addSensor(sensor);
+                return new Response(201, gson.toJsonTree(sensor));
+            }
+            requireMethod(exchange, "GET");
+            return Response.ok(gson.toJsonTree(securityService.getSensors()));
+        }
+        Sensor sensor = findSensor(path[2]);
+        if (path.length == 3) {
+            if (method.equals("DELETE")) {
+                securityService.removeSensor(sensor);
+                return new Response(204, null);
+            }
+            requireMethod(exchange, "GET");
+            return Response.ok(gson.toJsonTree(sensor));
+        }
+        if (path.length == 4 && path[3].equals("active")) {
+            requireMethod(exchange, "PUT");
+            JsonElement active = requireField(readJson(exchange), "active");
+            securityService.changeSensorActivationStatus(Map.of(sensor, active.getAsBoolean()));
+            return Response.ok(gson.toJsonTree(sensor));
+        }
+        throw new RequestException(404, "no such resource");
+    }
+
+    private Response images(HttpExchange exchange) {
+        requireMethod(exchange, "POST");
+        BufferedImage image;
+        try (InputStream body = exchange.getRequestBody()) {
+            image = ImageIO.read(new ByteArrayInputStream(body.readAllBytes()));
+        } catch (IOException e) {
+            throw new RequestException(400, "unreadable image");
+        }
+        if (image == null) {
+            throw new RequestException(400, "unsupported image format");
+        }
+        String camera = queryParameter(exchange, "camera");
+        if (camera == null) {
+            securityService.processImage(image);
+        } else {
+            securityService.processImage(camera, image);
+        }
+        return Response.ok(statusJson());
+    }
+
+    /**
+     * Answers the request and hands the stream to an event thread, which sends events until the
+     * client goes away or the server is closed, parked on the subscriber's buffer in between.
+     */
+    private void events(HttpExchange exchange) throws IOException {
+        AlarmEventStream.OverflowPolicy overflowPolicy;
+        try {
+            requireMethod(exchange, "GET");
+            String overflow = queryParameter(exchange, "overflow");
+            overflowPolicy = overflow == null ? AlarmEventStream.OverflowPolicy.COALESCE
+                    : AlarmEventStream.OverflowPolicy.valueOf(overflow.toUpperCase(Locale.ROOT));
+        } catch (RequestException e) {
+            Response.error(e.status, e.getMessage()).send(exchange);
+            return;
+        } catch (IllegalArgumentException e) {
+            Response.error(400, "unknown overflow policy").send(exchange);
+            return;
+        }
+
+        if (!eventSlots.tryAcquire()) {
+            Response.error(503, "too many event streams").send(exchange);
+            return;
+        }
+        AlarmEventStream.Subscription subscription = null;
+        try {
+            exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            exchange.sendResponseHeaders(200, 0);
+            subscription = eventStream.subscribe(EVENT_BUFFER, overflowPolicy);
+            AlarmEventStream.Subscription subscribed = subscription;
+            eventExecutor.execute(() -> stream(exchange, subscribed));
+        } catch (IOException | RuntimeException e) {
+            //the client went away, or the server is closing
+            if (subscription != null) {
+                subscription.close();
+            }
+            eventSlots.release();
+            exchange.close();
+        }
+    }
+
+    private void stream(HttpExchange exchange, AlarmEventStream.Subscription subscription) {
+        try (subscription; OutputStream out = exchange.getResponseBody()) {
+            while (true) {
+                AlarmEventStream.Event event = subscription.poll(KEEPALIVE_SECONDS, TimeUnit.SECONDS);
+                if (event == null && subscription.isClosed()) {
+                    break;
+                }
+                String text = event == null ? ":\n\n"
+                        : "id: " + event.getId() + "\nevent: " + event.getKind().getEventName() + "\ndata: " + event.getData() + "\n\n";
+                out.write(text.getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            }
+        } catch (IOException e) {
+            //the client went away
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+            eventSlots.release();
+        }
+    }
+
+    private static Response metrics(HttpExchange exchange, SimpleMetricsRegistry metrics) {
+        requireMethod(exchange, "GET");
+        return new Response(200, PROMETHEUS, metrics.scrape().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private JsonObject statusJson() {
+        JsonObject status = new JsonObject();
+        status.addProperty("alarmStatus", securityService.getAlarmStatus().name());
+        status.addProperty("armingStatus", securityService.getArmingStatus().name());
+        SensorStatistics statistics = securityService.getSensorStatistics();
+        status.addProperty("sensorCount", statistics.getSensorCount());
+        status.addProperty("activeSensorCount", statistics.getActiveCount());
+        return status;
+    }
+
+    private Sensor findSensor(String id) {
+        Sensor sensor;
+        try {
+            sensor = securityService.getSensor(UUID.fromString(id));
+        } catch (IllegalArgumentException e) {
+            throw new RequestException(404, "no such sensor");
+        }
+        if (sensor == null) {
+            throw new RequestException(404, "no such sensor");
+        }
+        return sensor;
+    }
+
+    private static HttpHandler handler(RequestHandler requestHandler, MetricsRegistry registry, String resource) {
+        Timer timer = registry.timer("catpoint_http_request_seconds", "Time taken to answer API requests",
+                "resource", resource);
+        return exchange -> {
+            long start = System.nanoTime();
+            Response response;
+            try {
+                response = requestHandler.handle(exchange);
+            } catch (RequestException e) {
+                response = Response.error(e.status, e.getMessage());
+            } catch (RuntimeException e) {
+                Thread thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+                response = Response.error(500, "internal error");
+            }
+            response.send(exchange);
+            timer.recordSince(start);
+        };
+    }
+
+    private static void requireMethod(HttpExchange exchange, String method) {
+        if (!exchange.getRequestMethod().equals(method)) {
+            throw new RequestException(405, "method not allowed");
+        }
+    }
+
+    private static JsonObject readJson(HttpExchange exchange) {
+        try (InputStream body = exchange.getRequestBody()) {
+            JsonElement json = JsonParser.parseString(new String(body.readAllBytes(), StandardCharsets.UTF_8));
+            if (!json.isJsonObject()) {
+                throw new RequestException(400, "expected a JSON object");
+            }
+            return json.getAsJsonObject();
+        } catch (IOException | JsonParseException e) {
+            throw new RequestException(400, "malformed JSON");
+        }
+    }
+
+    private static JsonElement requireField(JsonObject json, String field) {
+        JsonElement value = json.get(field);
+        if (value == null || !value.isJsonPrimitive()) {
+            throw new RequestException(400, "missing " + field);
+        }
+        return value;
+    }
+
+    private static <E extends Enum<E>> E enumValue(Class<E> type, JsonElement value) {
+        try {
+            return Enum.valueOf(type, value.getAsString());
+        } catch (IllegalArgumentException e) {
+            throw new RequestException(400, "unknown " + type.getSimpleName() + " " + value.getAsString());
+        }
+    }
+
+    private static String queryParameter(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return null;
+        }
+        for (String parameter : query.split("&")) {
+            int equals = parameter.indexOf('=');
+            if (equals > 0 && parameter.substring(0, equals).equals(name)) {
+                return URLDecoder.decode(parameter.substring(equals + 1), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Virtual threads arrived as a final feature in Java 21, after the release this module targets,
+     * so they are looked up reflectively.
+     */
+    private static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            AtomicInteger threads = new AtomicInteger();
+            return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * 4, runnable -> {
+                Thread thread = new Thread(runnable, "catpoint-http-" + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Event streams mostly wait, so each gets a virtual thread when the JVM has them, otherwise a
+     * platform thread of its own; the subscriber limit bounds how many there are.
+     */
+    private static ExecutorService newEventExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            AtomicInteger threads = new AtomicInteger();
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(null, runnable, "catpoint-events-" + threads.incrementAndGet(), EVENT_THREAD_STACK_SIZE);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private interface RequestHandler {
+        Response handle(HttpExchange exchange);
+    }
+
+    private static final class Response {
+        private final int status;
+        private final String contentType;
+        private final byte[] body;
+
+        private Response(int status, JsonElement json) {
+            this(status, JSON, json == null ? null : gson.toJson(json).getBytes(StandardCharsets.UTF_8));
+        }
+
+        private Response(int status, String contentType, byte[] body) {
+            this.status = status;
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        private static Response ok(JsonElement body) {
+            return new Response(200, body);
+        }
+
+        private static Response error(int status, String message) {
+            JsonObject error = new JsonObject();
+            error.addProperty("error", message);
+            return new Response(status, error);
+        }
+
+        private void send(HttpExchange exchange) throws IOException {
+            try {
+                if (body == null) {
+                    exchange.sendResponseHeaders(status, -1);
+                    return;
+                }
+                exchange.getResponseHeaders().set("Content-Type", contentType);
+                exchange.sendResponseHeaders(status, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+
+    private static final class RequestException extends RuntimeException {
+        private final int status;
+
+        private RequestException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.mukhtar.UdaSecurity.application;
+
+import javax.swing.JComponent;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Shows camera frames handed over from any thread. There is room for one frame waiting to be
+ * painted: a frame that arrives before the last one was painted replaces it and the old one is
+ * dropped, so a slow screen shows the newest frame instead of falling further behind, and only
+ * one repaint is ever queued.
+ *
+ * Frames the view is done with are handed back through {@link #takeSpare()} for the next frame to
+ * be decoded into. Each new frame is scaled once into a {@link VolatileImage} kept from paint to
+ * paint, so repainting without a new frame only copies that image to the screen.
+ */
+public class FrameView extends JComponent {
+
+    private final Object lock = new Object();
+    //guarded by lock
+    private BufferedImage pending;
+    private boolean pendingReusable;
+    private BufferedImage showing;
+    private boolean showingReusable;
+    private BufferedImage spare;
+    private boolean repaintQueued;
+
+    //touched on the event dispatch thread only
+    private long showingGeneration;
+    private long renderedGeneration = -1;
+    private VolatileImage buffer;
+
+    private final LongAdder framesShown = new LongAdder();
+    private final LongAdder framesDropped = new LongAdder();
+
+    public FrameView(int width, int height) {
+        setPreferredSize(new Dimension(width, height));
+        setBackground(Color.WHITE);
+        setOpaque(true);
+    }
+
+    /**
+     * Hands over the next frame of a feed. The view keeps the frame until it is handed back by
+     * {@link #takeSpare()}, and it must not be changed until then.
+     */
+    public void offer(BufferedImage frame) {
+        post(frame, true);
+    }
+
+    /**
+     * Shows a picture that is never handed back by {@link #takeSpare()}, such as a cached
+     * thumbnail.
+     */
+    public void showStill(BufferedImage image) {
+        post(image, false);
+    }
+
+    /**
+     * @return a frame offered earlier that is no longer shown, to decode the next frame into, or
+     * null if there is none
+     */
+    public BufferedImage takeSpare() {
+        synchronized (lock) {
+            BufferedImage taken = spare;
+            spare = null;
+            return taken;
+        }
+    }
+
+    /**
+     * Copies the frame on screen, so it can be analysed while the feed goes on. Call on the event
+     * dispatch thread.
+     * @return the copy, or null if nothing has been shown yet
+     */
+    public BufferedImage copyOfShownFrame() {
+        BufferedImage frame;
+        synchronized (lock) {
+            frame = showing;
+        }
+        if (frame == null) {
+            return null;
+        }
+        BufferedImage copy = new BufferedImage(frame.getWidth(), frame.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = copy.createGraphics();
+        try {
+            g.drawImage(frame, 0, 0, null);
+        } finally {
+            g.dispose();
+        }
+        return copy;
+    }
+
+    /**
+     * @return frames that made it to the screen
+     */
+    public long getFramesShown() {
+        return framesShown.sum();
+    }
+
+    /**
+     * @return frames replaced by a newer one before they could be painted
+     */
+    public long getFramesDropped() {
+        return framesDropped.sum();
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        BufferedImage frame;
+        synchronized (lock) {
+            repaintQueued = false;
+            if (pending != null) {
+                if (showingReusable) {
+                    spare = showing;
+                }
+                showing = pending;
+                showingReusable = pendingReusable;
+                pending = null;
+                showingGeneration++;
+                framesShown.increment();
+            }
+            frame = showing;
+        }
+        g.setColor(getBackground());
+        g.fillRect(0, 0, getWidth(), getHeight());
+        if (frame != null) {
+            render(g, frame);
+        }
+    }
+
+    private void post(BufferedImage frame, boolean reusable) {
+        boolean queueRepaint;
+        synchronized (lock) {
+            if (pending != null) {
+                framesDropped.increment();
+                if (pendingReusable) {
+                    spare = pending;
+                }
+            }
+            pending = frame;
+            pendingReusable = reusable;
+            queueRepaint = !repaintQueued;
+            repaintQueued = true;
+        }
+        if (queueRepaint) {
+            repaint();
+        }
+    }
+
+    /**
+     * Copies the frame to the screen through the volatile image, scaling it into the image first
+     * if it is new or the image lost its contents.
+     */
+    private void render(Graphics g, BufferedImage frame) {
+        int width = getWidth();
+        int height = getHeight();
+        do {
+            int status = buffer == null ? VolatileImage.IMAGE_INCOMPATIBLE : buffer.validate(getGraphicsConfiguration());
+            if (status == VolatileImage.IMAGE_INCOMPATIBLE || buffer.getWidth() != width || buffer.getHeight() != height) {
+                if (buffer != null) {
+                    buffer.flush();
+                }
+                buffer = width > 0 && height > 0 ? createVolatileImage(width, height) : null;
+                if (buffer == null) {
+                    //not on screen yet, or headless
+                    drawScaled(g, frame, width, height);
+                    return;
+                }
+                renderedGeneration = -1;
+            } else if (status == VolatileImage.IMAGE_RESTORED) {
+                renderedGeneration = -1;
+            }
+            if (renderedGeneration != showingGeneration) {
+                Graphics2D bufferGraphics = buffer.createGraphics();
+                try {
+                    drawScaled(bufferGraphics, frame, width, height);
+                } finally {
+                    bufferGraphics.dispose();
+                }
+                renderedGeneration = showingGeneration;
+            }
+            g.drawImage(buffer, 0, 0, null);
+        } while (buffer.contentsLost());
+    }
+
+    private static void drawScaled(Graphics g, BufferedImage frame, int width, int height) {
+        if (g instanceof Graphics2D) {
+            ((Graphics2D) g).setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        }
+        g.drawImage(frame, 0, 0, width, height, null);
+    }
+}
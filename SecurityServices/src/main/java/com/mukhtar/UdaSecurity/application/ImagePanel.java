@@ -1,43 +1,61 @@
 package com.mukhtar.UdaSecurity.application;
 
 import com.mukhtar.UdaSecurity.data.AlarmStatus;
+import com.mukhtar.UdaSecurity.Services.CameraSource;
+import com.mukhtar.UdaSecurity.Services.DirectoryCameraSource;
+import com.mukhtar.UdaSecurity.Services.MjpegFileCameraSource;
 import com.mukhtar.UdaSecurity.Services.SecurityService;
 import com.mukhtar.UdaSecurity.Services.StyleService;
 import net.miginfocom.swing.MigLayout;
 
-import javax.imageio.ImageIO;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
-import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 
 /** Panel containing the 'camera' output. Allows users to 'refresh' the camera
  * by uploading their own picture, and 'scan' the picture, sending it for image analysis
+ *
+ * Pictures are decoded and scaled by a {@link CameraImageLoader} off the event dispatch thread;
+ * the panel keeps only the file and its thumbnail, and the full picture is decoded when it is scanned.
+ *
+ * The camera can also be a live feed from a directory a camera writes pictures to, or from a
+ * motion JPEG file, streamed into the {@link FrameView} by a {@link LiveFeed}. Scanning during a
+ * live feed analyses the frame on screen.
  */
 public class ImagePanel extends JPanel implements StatusListener {
     private SecurityService securityService;
 
     private JLabel cameraHeader;
-    private JLabel cameraLabel;
-    private BufferedImage currentCameraImage;
+    private FrameView cameraView;
+    private File currentCameraFile;
+    //counts pictures chosen, so a slow load cannot replace a newer picture
+    private int cameraFileGeneration;
+    private LiveFeed liveFeed;
 
     private int IMAGE_WIDTH = 300;
     private int IMAGE_HEIGHT = 225;
 
-    public ImagePanel(SecurityService securityService) {
+    private final CameraImageLoader imageLoader = new CameraImageLoader(IMAGE_WIDTH, IMAGE_HEIGHT);
+
+    public ImagePanel(SecurityService securityService, StatusDispatcher statusDispatcher) {
         super();
         setLayout(new MigLayout());
         this.securityService = securityService;
-        securityService.addStatusListener(this);
+        statusDispatcher.addSwingListener(this);
 
         cameraHeader = new JLabel("Camera Feed");
         cameraHeader.setFont(StyleService.HEADING_FONT);
 
-        cameraLabel = new JLabel();
-        cameraLabel.setBackground(Color.WHITE);
-        cameraLabel.setPreferredSize(new Dimension(IMAGE_WIDTH, IMAGE_HEIGHT));
-        cameraLabel.setBorder(BorderFactory.createLineBorder(Color.DARK_GRAY));
+        cameraView = new FrameView(IMAGE_WIDTH, IMAGE_HEIGHT);
+        cameraView.setBorder(BorderFactory.createLineBorder(Color.DARK_GRAY));
+
+        JButton liveFeedButton = new JButton("Live Feed");
 
         //button allowing users to select a file to be the current camera image
         JButton addPictureButton = new JButton("Refresh Camera");
@@ -49,28 +67,101 @@ public class ImagePanel extends JPanel implements StatusListener {
             if(chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
                 return;
             }
+            stopLiveFeed(liveFeedButton);
+            File selected = chooser.getSelectedFile();
+            int generation = ++cameraFileGeneration;
+            imageLoader.loadThumbnail(selected).whenComplete((thumbnail, error) -> SwingUtilities.invokeLater(() -> {
+                if (generation != cameraFileGeneration) {
+                    return;
+                }
+                if (error != null) {
+                    JOptionPane.showMessageDialog(null, "Invalid image selected.");
+                    return;
+                }
+                currentCameraFile = selected;
+                cameraView.showStill(thumbnail);
+            }));
+        });
+
+        //button that streams a directory of camera pictures or a motion JPEG file, or stops the stream
+        liveFeedButton.addActionListener(e -> {
+            if (liveFeed != null) {
+                stopLiveFeed(liveFeedButton);
+                return;
+            }
+            JFileChooser chooser = new JFileChooser();
+            chooser.setCurrentDirectory(new File("."));
+            chooser.setDialogTitle("Select Camera Directory or MJPEG File");
+            chooser.setFileSelectionMode(JFileChooser.FILES_AND_DIRECTORIES);
+            if(chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+                return;
+            }
+            Path selected = chooser.getSelectedFile().toPath();
+            CameraSource source;
             try {
-                currentCameraImage = ImageIO.read(chooser.getSelectedFile());
-                Image tmp = new ImageIcon(currentCameraImage).getImage();
-                cameraLabel.setIcon(new ImageIcon(tmp.getScaledInstance(IMAGE_WIDTH, IMAGE_HEIGHT, Image.SCALE_SMOOTH)));
-            } catch (IOException |NullPointerException ioe) {
-                JOptionPane.showMessageDialog(null, "Invalid image selected.");
+                source = Files.isDirectory(selected)
+                        ? new DirectoryCameraSource(selected)
+                        : new MjpegFileCameraSource(selected);
+            } catch (UncheckedIOException error) {
+                JOptionPane.showMessageDialog(null, "Unable to open camera feed.");
+                return;
             }
-            repaint();
+            //a picture still loading must not replace the feed
+            cameraFileGeneration++;
+            currentCameraFile = null;
+            liveFeed = new LiveFeed(source, cameraView, LiveFeed.DEFAULT_FRAMES_PER_SECOND);
+            liveFeedButton.setText("Stop Feed");
         });
 
         //button that sends the image to the image com.mukhtar.UdaSecurity.service
         JButton scanPictureButton = new JButton("Scan Picture");
         scanPictureButton.addActionListener(e -> {
-            securityService.processImage(currentCameraImage);
+            if (liveFeed != null) {
+                BufferedImage frame = cameraView.copyOfShownFrame();
+                if (frame == null) {
+                    JOptionPane.showMessageDialog(null, "Unable to scan picture.");
+                    return;
+                }
+                scan(CompletableFuture.completedFuture(frame));
+                return;
+            }
+            if (currentCameraFile == null) {
+                JOptionPane.showMessageDialog(null, "Unable to scan picture.");
+                return;
+            }
+            scan(imageLoader.loadFullResolution(currentCameraFile));
         });
 
         add(cameraHeader, "span 3, wrap");
-        add(cameraLabel, "span 3, wrap");
+        add(cameraView, "span 3, wrap");
         add(addPictureButton);
+        add(liveFeedButton);
         add(scanPictureButton);
     }
 
+    /**
+     * Scans the picture in the background; results come back on the EDT so listeners can touch the UI.
+     */
+    private void scan(CompletableFuture<BufferedImage> picture) {
+        picture.thenCompose(image -> securityService.processImageAsync(image, SwingUtilities::invokeLater))
+                .exceptionally(error -> {
+                    if (!(error.getCause() instanceof CancellationException)) {
+                        SwingUtilities.invokeLater(() ->
+                                JOptionPane.showMessageDialog(null, "Unable to scan picture."));
+                    }
+                    return null;
+                });
+    }
+
+    private void stopLiveFeed(JButton liveFeedButton) {
+        if (liveFeed == null) {
+            return;
+        }
+        liveFeed.close();
+        liveFeed = null;
+        liveFeedButton.setText("Live Feed");
+    }
+
     @Override
     public void notify(AlarmStatus status) {
         //no behavior necessary
@@ -0,0 +1,116 @@
+package com.mukhtar.UdaSecurity.application;
+
+import com.mukhtar.UdaSecurity.Services.CameraSource;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Streams frames from a camera to a {@link FrameView} on a thread of its own, at a steady frame
+ * rate. Frames are decoded into the view's spare frames, and a tick missed because a frame was
+ * slow to grab is skipped rather than made up in a burst.
+ */
+public final class LiveFeed implements AutoCloseable {
+
+    public static final int DEFAULT_FRAMES_PER_SECOND = 25;
+    private static final int MAX_FRAMES_PER_SECOND = 60;
+
+    private final CameraSource source;
+    private final FrameView view;
+    private final long periodNanos;
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    private final LongAdder framesGrabbed = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    /**
+     * Starts streaming. The feed owns the source from now on and closes it, if it can be closed,
+     * when the feed is closed.
+     */
+    public LiveFeed(CameraSource source, FrameView view, int framesPerSecond) {
+        if (framesPerSecond < 1 || framesPerSecond > MAX_FRAMES_PER_SECOND) {
+            throw new IllegalArgumentException("Frames per second must be between 1 and " + MAX_FRAMES_PER_SECOND
+                    + ": " + framesPerSecond);
+        }
+        this.source = source;
+        this.view = view;
+        this.periodNanos = TimeUnit.SECONDS.toNanos(1) / framesPerSecond;
+        this.thread = new Thread(this::stream, "live-feed");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return frames taken from the camera and handed to the view
+     */
+    public long getFramesGrabbed() {
+        return framesGrabbed.sum();
+    }
+
+    /**
+     * @return frames the camera failed to deliver
+     */
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    /**
+     * Stops streaming, waits for a frame being grabbed and closes the source.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(thread);
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (source instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) source).close();
+            } catch (Exception e) {
+                //the camera is let go either way
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void stream() {
+        BufferedImage spare = null;
+        long nextFrame = System.nanoTime();
+        while (running) {
+            if (spare == null) {
+                spare = view.takeSpare();
+            }
+            try {
+                BufferedImage frame = source.grabFrame(spare);
+                if (frame != null) {
+                    //a spare that did not fit is left for the garbage collector
+                    spare = null;
+                    framesGrabbed.increment();
+                    view.offer(frame);
+                }
+            } catch (RuntimeException e) {
+                failures.increment();
+            }
+            nextFrame += periodNanos;
+            long now = System.nanoTime();
+            if (nextFrame - now < 0) {
+                nextFrame = now;
+            }
+            long wait;
+            while (running && (wait = nextFrame - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(this, wait);
+            }
+        }
+    }
+}
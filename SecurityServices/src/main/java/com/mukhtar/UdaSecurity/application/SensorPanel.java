@@ -8,6 +8,11 @@ import com.mukhtar.UdaSecurity.Services.StyleService;
 import net.miginfocom.swing.MigLayout;
 
 import javax.swing.*;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 /**
  * Panel that allows users to add sensors to their system. Sensors may be
@@ -24,14 +29,19 @@ public class SensorPanel extends JPanel implements StatusListener {
     private JComboBox newSensorTypeDropdown = new JComboBox(SensorType.values());
     private JButton addNewSensorButton = new JButton("Add New Sensor");
 
+    private SensorTableModel sensorTableModel = new SensorTableModel();
+    private JTable sensorTable = new JTable(sensorTableModel);
+    private JButton sensorToggleButton = new JButton("Activate");
+    private JButton sensorRemoveButton = new JButton("Remove Sensor");
+
     private JPanel sensorListPanel;
     private JPanel newSensorPanel;
 
-    public SensorPanel(SecurityService securityService) {
+    public SensorPanel(SecurityService securityService, StatusDispatcher statusDispatcher) {
         super();
         setLayout(new MigLayout());
         this.securityService = securityService;
-        securityService.addStatusListener(this);
+        statusDispatcher.addSwingListener(this);
 
         panelLabel.setFont(StyleService.HEADING_FONT);
         addNewSensorButton.addActionListener(e ->
@@ -39,10 +49,9 @@ public class SensorPanel extends JPanel implements StatusListener {
                         SensorType.valueOf(newSensorTypeDropdown.getSelectedItem().toString()))));
 
         newSensorPanel = buildAddSensorPanel();
-        sensorListPanel = new JPanel();
-        sensorListPanel.setLayout(new MigLayout());
+        sensorListPanel = buildSensorListPanel();
 
-        updateSensorList(sensorListPanel);
+        updateSensorList();
 
         add(panelLabel, "wrap");
         add(newSensorPanel, "span");
@@ -75,65 +84,99 @@ public class SensorPanel extends JPanel implements StatusListener {
 
     @Override
    public void sensorStatusChanged(){
-        updateSensorList(sensorListPanel);
+        updateSensorList();
 
    }
 
+    /**
+     * Builds the scrolling sensor table and the buttons that act on the selected sensors. The table
+     * only paints the rows in view, so the cost of a repaint does not grow with the number of sensors.
+     */
+    private JPanel buildSensorListPanel() {
+        JPanel p = new JPanel();
+        p.setLayout(new MigLayout());
+
+        sensorTable.setFillsViewportHeight(true);
+        sensorTable.getTableHeader().setReorderingAllowed(false);
+        sensorTable.getSelectionModel().addListSelectionListener(e -> updateButtons());
+        //hard code some sizes, tsk tsk
+        sensorTable.getColumnModel().getColumn(SensorTableModel.NAME_COLUMN).setPreferredWidth(200);
+
+        sensorToggleButton.addActionListener(e -> toggleSelectedSensors());
+        sensorRemoveButton.addActionListener(e -> removeSelectedSensors());
+        updateButtons();
+
+        p.add(new JScrollPane(sensorTable), "span, width 500:500:500, height 150:200:400, wrap");
+        p.add(sensorToggleButton, "width 100:100:100");
+        p.add(sensorRemoveButton);
+        return p;
+    }
+
+    /**
+     * Requests the current list of sensors and applies the differences to the table. Sensors
+     * display in name order.
+     */
+    private void updateSensorList() {
+        sensorTableModel.refresh(securityService.getSensors());
+        updateButtons();
+    }
 
     /**
-     * Requests the current list of sensors and updates the provided panel to display them. Sensors
-     * will display in the order that they are created.
-     * @param p The Panel to populate with the current list of sensors
+     * The toggle button activates the selection unless every selected sensor is already active.
      */
-    private void updateSensorList(JPanel p) {
-        p.removeAll();
-        securityService.getSensors().stream().sorted().forEach(s -> {
-            JLabel sensorLabel = new JLabel(String.format("%s(%s): %s", s.getName(),  s.getSensorType().toString(),(s.getActive() ? "Active" : "Inactive")));
-            JButton sensorToggleButton = new JButton((s.getActive() ? "Deactivate" : "Activate"));
-            JButton sensorRemoveButton = new JButton("Remove Sensor");
-
-            sensorToggleButton.addActionListener(e -> setSensorActivity(s, !s.getActive()) );
-            sensorRemoveButton.addActionListener(e -> removeSensor(s));
-
-            //hard code some sizes, tsk tsk
-            p.add(sensorLabel, "width 300:300:300");
-            p.add(sensorToggleButton, "width 100:100:100");
-            p.add(sensorRemoveButton, "wrap");
-        });
-
-        repaint();
-        revalidate();
+    private void updateButtons() {
+        List<Sensor> selected = getSelectedSensors();
+        sensorToggleButton.setEnabled(!selected.isEmpty());
+        sensorRemoveButton.setEnabled(!selected.isEmpty());
+        sensorToggleButton.setText(!selected.isEmpty() && allActive(selected) ? "Deactivate" : "Activate");
+    }
+
+    private List<Sensor> getSelectedSensors() {
+        return Arrays.stream(sensorTable.getSelectedRows())
+                .mapToObj(sensorTableModel::getSensor)
+                .collect(Collectors.toList());
+    }
+
+    private static boolean allActive(List<Sensor> sensors) {
+        return sensors.stream().allMatch(s -> Boolean.TRUE.equals(s.getActive()));
     }
 
     /**
-     * Asks the securityService to change a sensor activation status and then rebuilds the current sensor list
-     * @param sensor The sensor to update
-     * @param isActive The sensor's activation status
+     * Asks the securityService to switch the selected sensors together and then updates the sensor list
      */
-    private void setSensorActivity(Sensor sensor, Boolean isActive) {
-        securityService.changeSensorActivationStatus(sensor, isActive);
-        updateSensorList(sensorListPanel);
+    private void toggleSelectedSensors() {
+        List<Sensor> selected = getSelectedSensors();
+        boolean isActive = !allActive(selected);
+        Map<Sensor, Boolean> changes = new LinkedHashMap<>();
+        selected.forEach(s -> changes.put(s, isActive));
+        securityService.changeSensorActivationStatus(changes);
+        updateSensorList();
     }
 
     /**
-     * Adds a sensor to the securityService and then rebuilds the sensor list
+     * Adds a sensor to the securityService and then updates the sensor list. If the repository
+     * cannot store the sensor it is taken back out, so the list only shows what was saved.
      * @param sensor The sensor to add
      */
     private void addSensor(Sensor sensor) {
-        if(securityService.getSensors().size() < 4) {
+        try {
             securityService.addSensor(sensor);
-            updateSensorList(sensorListPanel);
-        } else {
-            JOptionPane.showMessageDialog(null, "To add more than 4 sensors, please subscribe to our Premium Membership!");
+        } catch (RuntimeException e) {
+            try {
+                securityService.removeSensor(sensor);
+            } catch (RuntimeException ignored) {
+                //the list below still shows whatever the repository holds
+            }
+            JOptionPane.showMessageDialog(this, "Unable to save the sensor.");
         }
+        updateSensorList();
     }
 
     /**
-     * Remove a sensor from the securityService and then rebuild the sensor list
-     * @param sensor The sensor to remove
+     * Removes the selected sensors from the securityService and then updates the sensor list
      */
-    private void removeSensor(Sensor sensor) {
-        securityService.removeSensor(sensor);
-        updateSensorList(sensorListPanel);
+    private void removeSelectedSensors() {
+        getSelectedSensors().forEach(securityService::removeSensor);
+        updateSensorList();
     }
 }
@@ -0,0 +1,148 @@
+package com.mukhtar.UdaSecurity.application;
+
+import com.mukhtar.UdaSecurity.data.Sensor;
+
+import javax.swing.table.AbstractTableModel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Table model behind the sensor list. Each {@link #refresh(Collection)} compares the new sensors
+ * with the rows on screen and fires an event only for the rows that were added, removed or switched
+ * on or off, so the table repaints just those instead of rebuilding the whole list.
+ *
+ * Rows keep the activation state they were last shown with, because some repositories hand out
+ * the live sensor objects and change them in place.
+ */
+public final class SensorTableModel extends AbstractTableModel {
+
+    public static final int NAME_COLUMN = 0;
+    public static final int TYPE_COLUMN = 1;
+    public static final int STATUS_COLUMN = 2;
+
+    private static final String[] COLUMN_NAMES = {"Name", "Type", "Status"};
+
+    //past this many added or removed rows one full reload is cheaper than shifting the list per row
+    private static final int MAX_ROW_EVENTS = 64;
+
+    private final List<Row> rows = new ArrayList<>();
+
+    /**
+     * Brings the rows in line with the given sensors. Must be called on the event dispatch thread.
+     */
+    public void refresh(Collection<Sensor> sensors) {
+        Sensor[] sorted = sensors.toArray(new Sensor[0]);
+        //the repositories already hand sensors out in order, which makes this a single pass
+        Arrays.sort(sorted);
+
+        if (countInsertsAndDeletes(sorted) > MAX_ROW_EVENTS) {
+            rows.clear();
+            for (Sensor sensor : sorted) {
+                rows.add(new Row(sensor));
+            }
+            fireTableDataChanged();
+            return;
+        }
+
+        int row = 0;
+        for (Sensor sensor : sorted) {
+            while (row < rows.size() && rows.get(row).sensor.compareTo(sensor) < 0) {
+                rows.remove(row);
+                fireTableRowsDeleted(row, row);
+            }
+            if (row < rows.size() && rows.get(row).sensor.compareTo(sensor) == 0) {
+                Row current = rows.get(row);
+                if (current.active != isActive(sensor)) {
+                    rows.set(row, new Row(sensor));
+                    fireTableRowsUpdated(row, row);
+                } else {
+                    current.sensor = sensor;
+                }
+            } else {
+                rows.add(row, new Row(sensor));
+                fireTableRowsInserted(row, row);
+            }
+            row++;
+        }
+        if (row < rows.size()) {
+            int last = rows.size() - 1;
+            rows.subList(row, rows.size()).clear();
+            fireTableRowsDeleted(row, last);
+        }
+    }
+
+    public Sensor getSensor(int row) {
+        return rows.get(row).sensor;
+    }
+
+    @Override
+    public int getRowCount() {
+        return rows.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMN_NAMES[column];
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        Row row = rows.get(rowIndex);
+        switch (columnIndex) {
+            case NAME_COLUMN:
+                return row.sensor.getName();
+            case TYPE_COLUMN:
+                return row.sensor.getSensorType();
+            case STATUS_COLUMN:
+                return row.active ? "Active" : "Inactive";
+            default:
+                throw new IndexOutOfBoundsException("column " + columnIndex);
+        }
+    }
+
+    /**
+     * Merges the sorted sensors against the current rows without changing anything, and counts the
+     * rows that would have to be added or removed.
+     */
+    private int countInsertsAndDeletes(Sensor[] sorted) {
+        int changes = 0;
+        int row = 0;
+        int i = 0;
+        while (row < rows.size() && i < sorted.length) {
+            int comparison = rows.get(row).sensor.compareTo(sorted[i]);
+            if (comparison == 0) {
+                row++;
+                i++;
+            } else {
+                changes++;
+                if (comparison < 0) {
+                    row++;
+                } else {
+                    i++;
+                }
+            }
+        }
+        return changes + (rows.size() - row) + (sorted.length - i);
+    }
+
+    private static boolean isActive(Sensor sensor) {
+        return Boolean.TRUE.equals(sensor.getActive());
+    }
+
+    private static final class Row {
+        private Sensor sensor;
+        private final boolean active;
+
+        private Row(Sensor sensor) {
+            this.sensor = sensor;
+            this.active = isActive(sensor);
+        }
+    }
+}
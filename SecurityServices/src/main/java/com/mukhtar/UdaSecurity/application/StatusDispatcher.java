@@ -0,0 +1,174 @@
+package com.mukhtar.UdaSecurity.application;
+
+import com.mukhtar.UdaSecurity.Services.SecurityService;
+import com.mukhtar.UdaSecurity.data.AlarmStatus;
+import com.mukhtar.UdaSecurity.data.ArmingStatus;
+
+import javax.swing.SwingUtilities;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Passes status updates from a {@link SecurityService} on to listeners without making the service
+ * wait for them. The service only records what changed; a dispatcher thread delivers it at most
+ * once per frame, and Swing listeners get it on the event dispatch thread.
+ *
+ * Updates that arrive within the same frame are coalesced: listeners hear the latest arming
+ * status, alarm status and cat verdict, and a single {@link StatusListener#sensorStatusChanged()} however many
+ * sensor changes there were. Listeners that must see every intermediate alarm status should
+ * register with the service directly.
+ */
+public class StatusDispatcher implements StatusListener, AutoCloseable {
+
+    //roughly one screen refresh
+    private static final Duration DEFAULT_FRAME = Duration.ofMillis(16);
+
+    private final ScheduledExecutorService executor;
+    private final long frameNanos;
+    private final Set<StatusListener> listeners = new CopyOnWriteArraySet<>();
+    private final Set<StatusListener> swingListeners = new CopyOnWriteArraySet<>();
+
+    //updates not delivered yet, guarded by this
+    private AlarmStatus pendingAlarmStatus;
+    private ArmingStatus pendingArmingStatus;
+    private Boolean pendingCatDetected;
+    private boolean pendingSensorStatusChanged;
+    private boolean scheduled;
+    private long lastDeliveryNanos;
+
+    public StatusDispatcher(SecurityService securityService) {
+        this(securityService, DEFAULT_FRAME);
+    }
+
+    /**
+     * Registers the dispatcher with the service.
+     * @param frame minimum time between two deliveries
+     */
+    public StatusDispatcher(SecurityService securityService, Duration frame) {
+        this.frameNanos = frame.toNanos();
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "status-dispatcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.lastDeliveryNanos = System.nanoTime() - frameNanos;
+        securityService.addStatusListener(this);
+    }
+
+    /**
+     * Registers a listener that is called on the dispatcher thread.
+     */
+    public void addStatusListener(StatusListener statusListener) {
+        listeners.add(statusListener);
+    }
+
+    /**
+     * Registers a listener that is called on the Swing event dispatch thread.
+     */
+    public void addSwingListener(StatusListener statusListener) {
+        swingListeners.add(statusListener);
+    }
+
+    public void removeStatusListener(StatusListener statusListener) {
+        listeners.remove(statusListener);
+        swingListeners.remove(statusListener);
+    }
+
+    @Override
+    public synchronized void notify(AlarmStatus status) {
+        pendingAlarmStatus = status;
+        schedule();
+    }
+
+    @Override
+    public synchronized void armingStatusChanged(ArmingStatus armingStatus) {
+        pendingArmingStatus = armingStatus;
+        schedule();
+    }
+
+    @Override
+    public synchronized void catDetected(boolean catDetected) {
+        pendingCatDetected = catDetected;
+        schedule();
+    }
+
+    @Override
+    public synchronized void sensorStatusChanged() {
+        pendingSensorStatusChanged = true;
+        schedule();
+    }
+
+    /**
+     * Stops delivering updates. Updates that have not been delivered yet are dropped.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private void schedule() {
+        if (scheduled) {
+            return;
+        }
+        long delay = Math.max(0, lastDeliveryNanos + frameNanos - System.nanoTime());
+        try {
+            executor.schedule(this::deliverPending, delay, TimeUnit.NANOSECONDS);
+            scheduled = true;
+        } catch (RejectedExecutionException e) {
+            //closed
+        }
+    }
+
+    private void deliverPending() {
+        AlarmStatus alarmStatus;
+        ArmingStatus armingStatus;
+        Boolean catDetected;
+        boolean sensorStatusChanged;
+        synchronized (this) {
+            alarmStatus = pendingAlarmStatus;
+            armingStatus = pendingArmingStatus;
+            catDetected = pendingCatDetected;
+            sensorStatusChanged = pendingSensorStatusChanged;
+            pendingAlarmStatus = null;
+            pendingArmingStatus = null;
+            pendingCatDetected = null;
+            pendingSensorStatusChanged = false;
+            scheduled = false;
+            lastDeliveryNanos = System.nanoTime();
+        }
+        deliver(listeners, alarmStatus, armingStatus, catDetected, sensorStatusChanged);
+        if (!swingListeners.isEmpty()) {
+            SwingUtilities.invokeLater(() -> deliver(swingListeners, alarmStatus, armingStatus, catDetected,
+                    sensorStatusChanged));
+        }
+    }
+
+    private static void deliver(Set<StatusListener> targets, AlarmStatus alarmStatus, ArmingStatus armingStatus,
+                                Boolean catDetected, boolean sensorStatusChanged) {
+        for (StatusListener listener : targets) {
+            try {
+                if (armingStatus != null) {
+                    listener.armingStatusChanged(armingStatus);
+                }
+                if (alarmStatus != null) {
+                    listener.notify(alarmStatus);
+                }
+                if (catDetected != null) {
+                    listener.catDetected(catDetected);
+                }
+                if (sensorStatusChanged) {
+                    listener.sensorStatusChanged();
+                }
+            } catch (RuntimeException e) {
+                //one broken listener must not keep the update from the others
+                Thread thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+            }
+        }
+    }
+}
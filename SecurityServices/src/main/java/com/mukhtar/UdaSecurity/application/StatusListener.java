@@ -1,6 +1,7 @@
 package com.mukhtar.UdaSecurity.application;
 
 import com.mukhtar.UdaSecurity.data.AlarmStatus;
+import com.mukhtar.UdaSecurity.data.ArmingStatus;
 
 /**
  * Identifies a component that should be notified whenever the system status changes
@@ -9,4 +10,10 @@ public interface StatusListener {
     void notify(AlarmStatus status);
     void catDetected(boolean catDetected);
     void sensorStatusChanged();
+
+    /**
+     * Called after the arming status is set, before any sensors it resets are reported.
+     */
+    default void armingStatusChanged(ArmingStatus armingStatus) {
+    }
 }
@@ -0,0 +1,112 @@
+package com.mukhtar.UdaSecurity.data;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * In-memory repository for sites with a very large number of sensors. Sensors are kept in a
+ * {@link SensorTable}, a few tens of bytes each instead of an object graph, and sensor counts
+ * are worked out from the activation bits a word at a time.
+ *
+ * The sensors handed out by {@link #getSensors()} are copies of the table rows: changes to them
+ * only reach the repository through {@link #updateSensor(Sensor)}. The sorted copies are kept
+ * until the next change, so reading the sensors repeatedly between changes costs nothing.
+ */
+public class ColumnarSecurityRepositoryImpl implements SecurityRepository {
+
+    private final SensorTable sensors = new SensorTable();
+    private AlarmStatus alarmStatus = AlarmStatus.NO_ALARM;
+    private ArmingStatus armingStatus = ArmingStatus.DISARMED;
+    private SensorStore.SortedView sortedView;
+
+    public ColumnarSecurityRepositoryImpl() {
+    }
+
+    public ColumnarSecurityRepositoryImpl(Collection<Sensor> sensors) {
+        sensors.forEach(this.sensors::put);
+    }
+
+    @Override
+    public synchronized void addSensor(Sensor sensor) {
+        sensors.put(sensor);
+        sortedView = null;
+    }
+
+    @Override
+    public synchronized void removeSensor(Sensor sensor) {
+        if (sensors.remove(sensor.getSensorId())) {
+            sortedView = null;
+        }
+    }
+
+    @Override
+    public synchronized void updateSensor(Sensor sensor) {
+        sensors.put(sensor);
+        sortedView = null;
+    }
+
+    @Override
+    public synchronized void updateSensors(Collection<Sensor> changed) {
+        changed.forEach(sensors::put);
+        sortedView = null;
+    }
+
+    @Override
+    public synchronized void setAlarmStatus(AlarmStatus alarmStatus) {
+        this.alarmStatus = alarmStatus;
+    }
+
+    @Override
+    public synchronized void setArmingStatus(ArmingStatus armingStatus) {
+        this.armingStatus = armingStatus;
+    }
+
+    @Override
+    public synchronized Set<Sensor> getSensors() {
+        if (sortedView == null) {
+            Sensor[] copies = new Sensor[sensors.size()];
+            for (int row = 0; row < copies.length; row++) {
+                copies[row] = sensors.sensor(row);
+            }
+            sortedView = new SensorStore.SortedView(copies);
+        }
+        return sortedView;
+    }
+
+    @Override
+    public synchronized Sensor getSensor(UUID sensorId) {
+        int row = sensors.row(sensorId);
+        return row < 0 ? null : sensors.sensor(row);
+    }
+
+    @Override
+    public synchronized int getSensorCount() {
+        return sensors.size();
+    }
+
+    @Override
+    public synchronized int getActiveSensorCount() {
+        return sensors.activeCount();
+    }
+
+    @Override
+    public synchronized boolean anySensorActive() {
+        return sensors.anyActive();
+    }
+
+    @Override
+    public synchronized SensorStatistics getSensorStatistics() {
+        return sensors.statistics();
+    }
+
+    @Override
+    public synchronized AlarmStatus getAlarmStatus() {
+        return alarmStatus;
+    }
+
+    @Override
+    public synchronized ArmingStatus getArmingStatus() {
+        return armingStatus;
+    }
+}
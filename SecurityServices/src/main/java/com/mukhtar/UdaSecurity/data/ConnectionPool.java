@@ -0,0 +1,96 @@
+package com.mukhtar.UdaSecurity.data;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A fixed number of JDBC connections, opened on first use and handed out again and again. Callers
+ * wait for a free connection for a limited time and must give every connection back.
+ */
+final class ConnectionPool implements Closeable {
+
+    private static final long BORROW_TIMEOUT_SECONDS = 10;
+
+    private final String url;
+    private final Semaphore permits;
+    private final BlockingQueue<Connection> idle;
+    private volatile boolean closed;
+
+    ConnectionPool(String url, int size) {
+        this.url = url;
+        this.permits = new Semaphore(size, true);
+        this.idle = new ArrayBlockingQueue<>(size);
+    }
+
+    Connection borrow() throws SQLException {
+        try {
+            if (!permits.tryAcquire(BORROW_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                throw new SQLTransientConnectionException("Timed out waiting for a database connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Interrupted waiting for a database connection", e);
+        }
+        try {
+            if (closed) {
+                throw new SQLTransientConnectionException("Connection pool is closed");
+            }
+            Connection connection;
+            while ((connection = idle.poll()) != null) {
+                if (!connection.isClosed()) {
+                    return connection;
+                }
+            }
+            return DriverManager.getConnection(url);
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Takes a connection back. A connection left inside a transaction is rolled back first, and one
+     * that fails to reset is closed rather than reused.
+     */
+    void release(Connection connection) {
+        try {
+            if (closed) {
+                connection.close();
+                return;
+            }
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            idle.add(connection);
+        } catch (SQLException e) {
+            closeQuietly(connection);
+        } finally {
+            permits.release();
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        Connection connection;
+        while ((connection = idle.poll()) != null) {
+            closeQuietly(connection);
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            //already broken, nothing more to do
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.mukhtar.UdaSecurity.data;
+
+import com.mukhtar.UdaSecurity.metrics.MetricsRegistry;
+import com.mukhtar.UdaSecurity.metrics.Timer;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Decorator that times every write to the wrapped repository, labelled by operation. Reads are
+ * passed straight through, including the counting shortcuts the wrapped repository may have.
+ */
+public class InstrumentedSecurityRepository implements SecurityRepository {
+
+    private static final String NAME = "catpoint_repository_write_seconds";
+    private static final String HELP = "Time taken by repository writes";
+
+    private final SecurityRepository securityRepository;
+    private final Timer addSensor;
+    private final Timer removeSensor;
+    private final Timer updateSensor;
+    private final Timer updateSensors;
+    private final Timer setAlarmStatus;
+    private final Timer setArmingStatus;
+
+    public InstrumentedSecurityRepository(SecurityRepository securityRepository, MetricsRegistry registry) {
+        this.securityRepository = securityRepository;
+        this.addSensor = registry.timer(NAME, HELP, "operation", "addSensor");
+        this.removeSensor = registry.timer(NAME, HELP, "operation", "removeSensor");
+        this.updateSensor = registry.timer(NAME, HELP, "operation", "updateSensor");
+        this.updateSensors = registry.timer(NAME, HELP, "operation", "updateSensors");
+        this.setAlarmStatus = registry.timer(NAME, HELP, "operation", "setAlarmStatus");
+        this.setArmingStatus = registry.timer(NAME, HELP, "operation", "setArmingStatus");
+    }
+
+    @Override
+    public void addSensor(Sensor sensor) {
+        long start = System.nanoTime();
+        try {
+            securityRepository.addSensor(sensor);
+        } finally {
+            addSensor.recordSince(start);
+        }
+    }
+
+    @Override
+    public void removeSensor(Sensor sensor) {
+        long start = System.nanoTime();
+        try {
+            securityRepository.removeSensor(sensor);
+        } finally {
+            removeSensor.recordSince(start);
+        }
+    }
+
+    @Override
+    public void updateSensor(Sensor sensor) {
+        long start = System.nanoTime();
+        try {
+            securityRepository.updateSensor(sensor);
+        } finally {
+            updateSensor.recordSince(start);
+        }
+    }
+
+    @Override
+    public void updateSensors(Collection<Sensor> sensors) {
+        long start = System.nanoTime();
+        try {
+            securityRepository.updateSensors(sensors);
+        } finally {
+            updateSensors.recordSince(start);
+        }
+    }
+
+    @Override
+    public void setAlarmStatus(AlarmStatus alarmStatus) {
+        long start = System.nanoTime();
+        try {
+            securityRepository.setAlarmStatus(alarmStatus);
+        } finally {
+            setAlarmStatus.recordSince(start);
+        }
+    }
+
+    @Override
+    public void setArmingStatus(ArmingStatus armingStatus) {
+        long start = System.nanoTime();
+        try {
+            securityRepository.setArmingStatus(armingStatus);
+        } finally {
+            setArmingStatus.recordSince(start);
+        }
+    }
+
+    @Override
+    public Set<Sensor> getSensors() {
+        return securityRepository.getSensors();
+    }
+
+    @Override
+    public AlarmStatus getAlarmStatus() {
+        return securityRepository.getAlarmStatus();
+    }
+
+    @Override
+    public ArmingStatus getArmingStatus() {
+        return securityRepository.getArmingStatus();
+    }
+
+    @Override
+    public int getSensorCount() {
+        return securityRepository.getSensorCount();
+    }
+
+    @Override
+    public int getActiveSensorCount() {
+        return securityRepository.getActiveSensorCount();
+    }
+
+    @Override
+    public boolean anySensorActive() {
+        return securityRepository.anySensorActive();
+    }
+
+    @Override
+    public SensorStatistics getSensorStatistics() {
+        return securityRepository.getSensorStatistics();
+    }
+
+    @Override
+    public Sensor getSensor(UUID sensorId) {
+        return securityRepository.getSensor(sensorId);
+    }
+}
@@ -0,0 +1,381 @@
+package com.mukhtar.UdaSecurity.data;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Repository kept in a SQL database through JDBC, by default an embedded H2 file in the user's
+ * home directory. Each sensor is one row of the {@code sensors} table, indexed by activation and
+ * by type and activation, so counts and statistics are answered by the database from the indexes.
+ * Changed sensors are written as one batch in one transaction.
+ *
+ * The schema is created and upgraded on start from the numbered migrations below; the version
+ * reached is kept in the {@code schema_version} table. {@link #migrateFrom(SecurityRepository)}
+ * copies the state of the preferences-backed repository into a new database.
+ *
+ * This repository expects to be the only writer to its database: the sorted sensors handed out by
+ * {@link #getSensors()} and the alarm and arming status are kept in memory between changes.
+ */
+public class JdbcSecurityRepositoryImpl implements SecurityRepository, Closeable {
+
+    public static final String DEFAULT_URL = "jdbc:h2:~/.udasecurity/catpoint";
+
+    private static final int POOL_SIZE = 4;
+    private static final int STATUS_ROW = 1;
+
+    //migration n brings the schema to version n + 1
+    private static final String[][] MIGRATIONS = {
+            {
+                    "CREATE TABLE sensors (id CHAR(36) PRIMARY KEY, name VARCHAR(255),"
+                            + " sensor_type VARCHAR(16), active BOOLEAN NOT NULL)",
+                    "CREATE INDEX sensors_active ON sensors (active)",
+                    "CREATE INDEX sensors_type_active ON sensors (sensor_type, active)",
+                    "CREATE TABLE system_status (id INT PRIMARY KEY, alarm_status VARCHAR(16) NOT NULL,"
+                            + " arming_status VARCHAR(16) NOT NULL)"
+            }
+    };
+
+    private static final String SELECT_SENSORS = "SELECT id, name, sensor_type, active FROM sensors";
+    private static final String UPDATE_SENSOR = "UPDATE sensors SET name = ?, sensor_type = ?, active = ? WHERE id = ?";
+    private static final String INSERT_SENSOR = "INSERT INTO sensors (name, sensor_type, active, id) VALUES (?, ?, ?, ?)";
+
+    private final ConnectionPool pool;
+    private volatile AlarmStatus alarmStatus = AlarmStatus.NO_ALARM;
+    private volatile ArmingStatus armingStatus = ArmingStatus.DISARMED;
+    private boolean statusStored;
+    private SensorStore.SortedView sortedView;
+
+    public JdbcSecurityRepositoryImpl() {
+        this(DEFAULT_URL);
+    }
+
+    /**
+     * @param url JDBC URL of the database, created if the driver supports it
+     */
+    public JdbcSecurityRepositoryImpl(String url) {
+        pool = new ConnectionPool(url, POOL_SIZE);
+        try {
+            inTransaction(this::migrate);
+            withConnection(this::loadStatus);
+        } catch (RuntimeException e) {
+            pool.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Copies the sensors and status of another repository, such as
+     * {@link PretendDatabaseSecurityRepositoryImpl}, if this database holds no state yet.
+     * @return whether anything was copied
+     */
+    public synchronized boolean migrateFrom(SecurityRepository legacy) {
+        if (statusStored || getSensorCount() > 0) {
+            return false;
+        }
+        AlarmStatus legacyAlarmStatus = legacy.getAlarmStatus();
+        ArmingStatus legacyArmingStatus = legacy.getArmingStatus();
+        inTransaction(connection -> {
+            upsert(connection, legacy.getSensors());
+            writeStatus(connection, legacyAlarmStatus, legacyArmingStatus);
+        });
+        alarmStatus = legacyAlarmStatus;
+        armingStatus = legacyArmingStatus;
+        statusStored = true;
+        sortedView = null;
+        return true;
+    }
+
+    @Override
+    public synchronized void addSensor(Sensor sensor) {
+        updateSensors(List.of(sensor));
+    }
+
+    @Override
+    public synchronized void removeSensor(Sensor sensor) {
+        int removed = withConnection(connection -> {
+            try (PreparedStatement delete = connection.prepareStatement("DELETE FROM sensors WHERE id = ?")) {
+                delete.setString(1, sensor.getSensorId().toString());
+                return delete.executeUpdate();
+            }
+        });
+        if (removed > 0) {
+            sortedView = null;
+        }
+    }
+
+    @Override
+    public synchronized void updateSensor(Sensor sensor) {
+        updateSensors(List.of(sensor));
+    }
+
+    @Override
+    public synchronized void updateSensors(Collection<Sensor> sensors) {
+        inTransaction(connection -> upsert(connection, sensors));
+        sortedView = null;
+    }
+
+    @Override
+    public synchronized void setAlarmStatus(AlarmStatus alarmStatus) {
+        inTransaction(connection -> writeStatus(connection, alarmStatus, armingStatus));
+        this.alarmStatus = alarmStatus;
+        statusStored = true;
+    }
+
+    @Override
+    public synchronized void setArmingStatus(ArmingStatus armingStatus) {
+        inTransaction(connection -> writeStatus(connection, alarmStatus, armingStatus));
+        this.armingStatus = armingStatus;
+        statusStored = true;
+    }
+
+    @Override
+    public synchronized Set<Sensor> getSensors() {
+        if (sortedView == null) {
+            sortedView = new SensorStore.SortedView(withConnection(connection -> {
+                List<Sensor> sensors = new ArrayList<>();
+                try (Statement select = connection.createStatement();
+                     ResultSet rows = select.executeQuery(SELECT_SENSORS)) {
+                    while (rows.next()) {
+                        sensors.add(sensor(rows));
+                    }
+                }
+                return sensors.toArray(new Sensor[0]);
+            }));
+        }
+        return sortedView;
+    }
+
+    @Override
+    public Sensor getSensor(UUID sensorId) {
+        return withConnection(connection -> {
+            try (PreparedStatement select = connection.prepareStatement(SELECT_SENSORS + " WHERE id = ?")) {
+                select.setString(1, sensorId.toString());
+                try (ResultSet rows = select.executeQuery()) {
+                    return rows.next() ? sensor(rows) : null;
+                }
+            }
+        });
+    }
+
+    @Override
+    public AlarmStatus getAlarmStatus() {
+        return alarmStatus;
+    }
+
+    @Override
+    public ArmingStatus getArmingStatus() {
+        return armingStatus;
+    }
+
+    @Override
+    public int getSensorCount() {
+        return count("SELECT COUNT(*) FROM sensors");
+    }
+
+    @Override
+    public int getActiveSensorCount() {
+        return count("SELECT COUNT(*) FROM sensors WHERE active = ?", true);
+    }
+
+    @Override
+    public boolean anySensorActive() {
+        return withConnection(connection -> {
+            try (PreparedStatement select = connection.prepareStatement("SELECT id FROM sensors WHERE active = ?")) {
+                select.setBoolean(1, true);
+                select.setMaxRows(1);
+                try (ResultSet rows = select.executeQuery()) {
+                    return rows.next();
+                }
+            }
+        });
+    }
+
+    @Override
+    public SensorStatistics getSensorStatistics() {
+        return withConnection(connection -> {
+            int sensorCount = 0;
+            int activeCount = 0;
+            int[] sensorCountByType = new int[SensorType.values().length];
+            int[] activeCountByType = new int[SensorType.values().length];
+            try (Statement select = connection.createStatement();
+                 ResultSet rows = select.executeQuery("SELECT sensor_type, active, COUNT(*) FROM sensors"
+                         + " GROUP BY sensor_type, active")) {
+                while (rows.next()) {
+                    String sensorType = rows.getString(1);
+                    boolean active = rows.getBoolean(2);
+                    int count = rows.getInt(3);
+                    sensorCount += count;
+                    activeCount += active ? count : 0;
+                    if (sensorType != null) {
+                        int ordinal = SensorType.valueOf(sensorType).ordinal();
+                        sensorCountByType[ordinal] += count;
+                        activeCountByType[ordinal] += active ? count : 0;
+                    }
+                }
+            }
+            return new SensorStatistics(sensorCount, activeCount, sensorCountByType, activeCountByType);
+        });
+    }
+
+    @Override
+    public void close() {
+        pool.close();
+    }
+
+    private void migrate(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS schema_version (version INT PRIMARY KEY)");
+            int version;
+            try (ResultSet rows = statement.executeQuery("SELECT MAX(version) FROM schema_version")) {
+                version = rows.next() ? rows.getInt(1) : 0;
+            }
+            for (; version < MIGRATIONS.length; version++) {
+                for (String sql : MIGRATIONS[version]) {
+                    statement.executeUpdate(sql);
+                }
+                statement.executeUpdate("INSERT INTO schema_version (version) VALUES (" + (version + 1) + ")");
+            }
+        }
+    }
+
+    private Void loadStatus(Connection connection) throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement(
+                "SELECT alarm_status, arming_status FROM system_status WHERE id = ?")) {
+            select.setInt(1, STATUS_ROW);
+            try (ResultSet rows = select.executeQuery()) {
+                if (rows.next()) {
+                    alarmStatus = AlarmStatus.valueOf(rows.getString(1));
+                    armingStatus = ArmingStatus.valueOf(rows.getString(2));
+                    statusStored = true;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static void writeStatus(Connection connection, AlarmStatus alarmStatus, ArmingStatus armingStatus)
+            throws SQLException {
+        try (PreparedStatement update = connection.prepareStatement(
+                "UPDATE system_status SET alarm_status = ?, arming_status = ? WHERE id = ?")) {
+            update.setString(1, alarmStatus.name());
+            update.setString(2, armingStatus.name());
+            update.setInt(3, STATUS_ROW);
+            if (update.executeUpdate() > 0) {
+                return;
+            }
+        }
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO system_status (alarm_status, arming_status, id) VALUES (?, ?, ?)")) {
+            insert.setString(1, alarmStatus.name());
+            insert.setString(2, armingStatus.name());
+            insert.setInt(3, STATUS_ROW);
+            insert.executeUpdate();
+        }
+    }
+
+    /**
+     * Updates the given sensors in one batch, then inserts the ones the update found no row for in
+     * a second batch. Plain UPDATE and INSERT work the same on every database, unlike MERGE.
+     */
+    private static void upsert(Connection connection, Collection<Sensor> sensors) throws SQLException {
+        if (sensors.isEmpty()) {
+            return;
+        }
+        List<Sensor> batch = new ArrayList<>(sensors);
+        int[] updated;
+        try (PreparedStatement update = connection.prepareStatement(UPDATE_SENSOR)) {
+            for (Sensor sensor : batch) {
+                bind(update, sensor);
+                update.addBatch();
+            }
+            updated = update.executeBatch();
+        }
+        try (PreparedStatement insert = connection.prepareStatement(INSERT_SENSOR)) {
+            boolean anyMissing = false;
+            for (int i = 0; i < batch.size(); i++) {
+                if (updated[i] == 0) {
+                    bind(insert, batch.get(i));
+                    insert.addBatch();
+                    anyMissing = true;
+                }
+            }
+            if (anyMissing) {
+                insert.executeBatch();
+            }
+        }
+    }
+
+    //same parameter order for UPDATE_SENSOR and INSERT_SENSOR
+    private static void bind(PreparedStatement statement, Sensor sensor) throws SQLException {
+        statement.setString(1, sensor.getName());
+        statement.setString(2, sensor.getSensorType() == null ? null : sensor.getSensorType().name());
+        statement.setBoolean(3, Boolean.TRUE.equals(sensor.getActive()));
+        statement.setString(4, sensor.getSensorId().toString());
+    }
+
+    private static Sensor sensor(ResultSet rows) throws SQLException {
+        Sensor sensor = new Sensor();
+        sensor.setSensorId(UUID.fromString(rows.getString(1).trim()));
+        sensor.setName(rows.getString(2));
+        String sensorType = rows.getString(3);
+        sensor.setSensorType(sensorType == null ? null : SensorType.valueOf(sensorType));
+        sensor.setActive(rows.getBoolean(4));
+        return sensor;
+    }
+
+    private int count(String sql, Object... parameters) {
+        return withConnection(connection -> {
+            try (PreparedStatement select = connection.prepareStatement(sql)) {
+                for (int i = 0; i < parameters.length; i++) {
+                    select.setObject(i + 1, parameters[i]);
+                }
+                try (ResultSet rows = select.executeQuery()) {
+                    rows.next();
+                    return rows.getInt(1);
+                }
+            }
+        });
+    }
+
+    private <T> T withConnection(SqlWork<T> work) {
+        Connection connection = null;
+        try {
+            connection = pool.borrow();
+            return work.apply(connection);
+        } catch (SQLException e) {
+            throw new UncheckedIOException("Database access failed", new IOException(e));
+        } finally {
+            if (connection != null) {
+                pool.release(connection);
+            }
+        }
+    }
+
+    private void inTransaction(SqlTask task) {
+        withConnection(connection -> {
+            connection.setAutoCommit(false);
+            task.run(connection);
+            connection.commit();
+            return null;
+        });
+    }
+
+    private interface SqlWork<T> {
+        T apply(Connection connection) throws SQLException;
+    }
+
+    private interface SqlTask {
+        void run(Connection connection) throws SQLException;
+    }
+}
@@ -3,8 +3,9 @@ package com.mukhtar.UdaSecurity.data;
 import com.google.common.reflect.TypeToken;
 import com.google.gson.Gson;
 import java.lang.reflect.Type;
+import java.util.Collection;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.UUID;
 import java.util.prefs.Preferences;
 
 /**
@@ -14,9 +15,10 @@ import java.util.prefs.Preferences;
  */
 public class PretendDatabaseSecurityRepositoryImpl implements SecurityRepository{
 
-    private Set<Sensor> sensors;
+    private final SensorStore sensors = new SensorStore();
     private AlarmStatus alarmStatus;
     private ArmingStatus armingStatus;
+    private final SensorCounter sensorCounter = new SensorCounter();
 
     //preference keys
     private static final String SENSORS = "SENSORS";
@@ -25,6 +27,8 @@ public class PretendDatabaseSecurityRepositoryImpl implements SecurityRepository
 
     private static final Preferences prefs = Preferences.userNodeForPackage(PretendDatabaseSecurityRepositoryImpl.class);
     private static final Gson gson = new Gson(); //used to serialize objects into JSON
+    private static final Type SENSOR_SET = new TypeToken<Set<Sensor>>() {
+    }.getType();
 
 
     public PretendDatabaseSecurityRepositoryImpl() {
@@ -34,32 +38,43 @@ public class PretendDatabaseSecurityRepositoryImpl implements SecurityRepository
         //we've serialized our sensor objects for storage, which should be a good warning sign that
         // this is likely an impractical solution for a real system
         String sensorString = prefs.get(SENSORS, null);
-        if(sensorString == null) {
-            sensors = new TreeSet<>();
-        } else {
-            Type type = new TypeToken<Set<Sensor>>() {
-            }.getType();
-            sensors = gson.fromJson(sensorString, type);
+        if(sensorString != null) {
+            Set<Sensor> stored = gson.fromJson(sensorString, SENSOR_SET);
+            stored.forEach(sensor -> {
+                sensors.put(sensor);
+                sensorCounter.put(sensor);
+            });
         }
     }
 
     @Override
     public void addSensor(Sensor sensor) {
-        sensors.add(sensor);
-        prefs.put(SENSORS, gson.toJson(sensors));
+        sensors.put(sensor);
+        sensorCounter.put(sensor);
+        saveSensors();
     }
 
     @Override
     public void removeSensor(Sensor sensor) {
-        sensors.remove(sensor);
-        prefs.put(SENSORS, gson.toJson(sensors));
+        sensors.remove(sensor.getSensorId());
+        sensorCounter.remove(sensor.getSensorId());
+        saveSensors();
     }
 
     @Override
     public void updateSensor(Sensor sensor) {
-        sensors.remove(sensor);
-        sensors.add(sensor);
-        prefs.put(SENSORS, gson.toJson(sensors));
+        sensors.put(sensor);
+        sensorCounter.put(sensor);
+        saveSensors();
+    }
+
+    @Override
+    public void updateSensors(Collection<Sensor> changed) {
+        changed.forEach(sensor -> {
+            sensors.put(sensor);
+            sensorCounter.put(sensor);
+        });
+        saveSensors();
     }
 
     @Override
@@ -76,7 +91,27 @@ public class PretendDatabaseSecurityRepositoryImpl implements SecurityRepository
 
     @Override
     public Set<Sensor> getSensors() {
-        return sensors;
+        return sensors.sorted();
+    }
+
+    @Override
+    public Sensor getSensor(UUID sensorId) {
+        return sensors.get(sensorId);
+    }
+
+    @Override
+    public int getSensorCount() {
+        return sensorCounter.getSensorCount();
+    }
+
+    @Override
+    public int getActiveSensorCount() {
+        return sensorCounter.getActiveSensorCount();
+    }
+
+    @Override
+    public SensorStatistics getSensorStatistics() {
+        return sensorCounter.snapshot();
     }
 
     @Override
@@ -88,4 +123,8 @@ public class PretendDatabaseSecurityRepositoryImpl implements SecurityRepository
     public ArmingStatus getArmingStatus() {
         return armingStatus;
     }
+
+    private void saveSensors() {
+        prefs.put(SENSORS, gson.toJson(sensors.sorted(), SENSOR_SET));
+    }
 }
@@ -1,6 +1,8 @@
 package com.mukhtar.UdaSecurity.data;
 
+import java.util.Collection;
 import java.util.Set;
+import java.util.UUID;
 
 /**
  * Interface showing the methods our security repository will need to support
@@ -15,5 +17,38 @@ public interface SecurityRepository {
     AlarmStatus getAlarmStatus();
     ArmingStatus getArmingStatus();
 
+    /**
+     * Group commit for several changed sensors. Implementations should persist them
+     * together rather than once per sensor.
+     */
+    default void updateSensors(Collection<Sensor> sensors) {
+        sensors.forEach(this::updateSensor);
+    }
 
+    /**
+     * Implementations that keep running totals should answer this without looking at every sensor.
+     */
+    default int getSensorCount() {
+        return getSensors().size();
+    }
+
+    default int getActiveSensorCount() {
+        return (int) getSensors().stream().filter(sensor -> Boolean.TRUE.equals(sensor.getActive())).count();
+    }
+
+    default boolean anySensorActive() {
+        return getActiveSensorCount() > 0;
+    }
+
+    default SensorStatistics getSensorStatistics() {
+        return SensorStatistics.of(getSensors());
+    }
+
+    /**
+     * Implementations that index sensors by id should look the sensor up rather than scan.
+     * @return the sensor with the given id, or null if there is none
+     */
+    default Sensor getSensor(UUID sensorId) {
+        return getSensors().stream().filter(sensor -> sensorId.equals(sensor.getSensorId())).findFirst().orElse(null);
+    }
 }
@@ -0,0 +1,79 @@
+package com.mukhtar.UdaSecurity.data;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Running totals of sensors and active sensors per type, kept up to date as sensors are stored
+ * and removed so repositories can answer count queries without scanning.
+ *
+ * Sensors are changed in place before they are stored, so the counter remembers what it last
+ * counted for each sensor in order to know what to take back out.
+ */
+final class SensorCounter {
+
+    private static final int ACTIVE_BIT = 1;
+    //type ordinal + 1 in the bits above the active bit, 0 for sensors without a type
+    private static final int TYPE_SHIFT = 1;
+
+    private final Map<UUID, Byte> counted = new HashMap<>();
+    private final int[] sensorCountByType = new int[SensorType.values().length];
+    private final int[] activeCountByType = new int[SensorType.values().length];
+    private int sensorCount;
+    private int activeCount;
+
+    /**
+     * Counts a sensor that was added or changed.
+     */
+    synchronized void put(Sensor sensor) {
+        byte state = stateOf(sensor);
+        Byte previous = counted.put(sensor.getSensorId(), state);
+        if (previous != null) {
+            if (previous == state) {
+                return;
+            }
+            count(previous, -1);
+        }
+        count(state, 1);
+    }
+
+    synchronized void remove(UUID sensorId) {
+        Byte previous = counted.remove(sensorId);
+        if (previous != null) {
+            count(previous, -1);
+        }
+    }
+
+    synchronized int getSensorCount() {
+        return sensorCount;
+    }
+
+    synchronized int getActiveSensorCount() {
+        return activeCount;
+    }
+
+    synchronized SensorStatistics snapshot() {
+        return new SensorStatistics(sensorCount, activeCount, sensorCountByType, activeCountByType);
+    }
+
+    private void count(byte state, int delta) {
+        boolean active = (state & ACTIVE_BIT) != 0;
+        int type = (state >> TYPE_SHIFT) - 1;
+        sensorCount += delta;
+        if (active) {
+            activeCount += delta;
+        }
+        if (type >= 0) {
+            sensorCountByType[type] += delta;
+            if (active) {
+                activeCountByType[type] += delta;
+            }
+        }
+    }
+
+    private static byte stateOf(Sensor sensor) {
+        int type = sensor.getSensorType() == null ? 0 : sensor.getSensorType().ordinal() + 1;
+        return (byte) ((type << TYPE_SHIFT) | (Boolean.TRUE.equals(sensor.getActive()) ? ACTIVE_BIT : 0));
+    }
+}
@@ -0,0 +1,75 @@
+package com.mukhtar.UdaSecurity.data;
+
+import java.util.Arrays;
+
+/**
+ * Snapshot of how many sensors there are and how many of them are active, overall and per
+ * sensor type.
+ */
+public final class SensorStatistics {
+
+    private static final SensorType[] SENSOR_TYPES = SensorType.values();
+
+    private final int sensorCount;
+    private final int activeCount;
+    private final int[] sensorCountByType;
+    private final int[] activeCountByType;
+
+    /**
+     * @param sensorCountByType sensor count for each {@link SensorType} ordinal
+     * @param activeCountByType active sensor count for each {@link SensorType} ordinal
+     */
+    public SensorStatistics(int sensorCount, int activeCount, int[] sensorCountByType, int[] activeCountByType) {
+        this.sensorCount = sensorCount;
+        this.activeCount = activeCount;
+        this.sensorCountByType = Arrays.copyOf(sensorCountByType, SENSOR_TYPES.length);
+        this.activeCountByType = Arrays.copyOf(activeCountByType, SENSOR_TYPES.length);
+    }
+
+    /**
+     * Counts the given sensors one by one, for repositories that do not keep running totals.
+     */
+    public static SensorStatistics of(Iterable<Sensor> sensors) {
+        int sensorCount = 0;
+        int activeCount = 0;
+        int[] sensorCountByType = new int[SENSOR_TYPES.length];
+        int[] activeCountByType = new int[SENSOR_TYPES.length];
+        for (Sensor sensor : sensors) {
+            boolean active = Boolean.TRUE.equals(sensor.getActive());
+            sensorCount++;
+            activeCount += active ? 1 : 0;
+            if (sensor.getSensorType() != null) {
+                sensorCountByType[sensor.getSensorType().ordinal()]++;
+                activeCountByType[sensor.getSensorType().ordinal()] += active ? 1 : 0;
+            }
+        }
+        return new SensorStatistics(sensorCount, activeCount, sensorCountByType, activeCountByType);
+    }
+
+    public int getSensorCount() {
+        return sensorCount;
+    }
+
+    public int getActiveCount() {
+        return activeCount;
+    }
+
+    public int getSensorCount(SensorType sensorType) {
+        return sensorCountByType[sensorType.ordinal()];
+    }
+
+    public int getActiveCount(SensorType sensorType) {
+        return activeCountByType[sensorType.ordinal()];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder()
+                .append(activeCount).append('/').append(sensorCount).append(" active");
+        for (SensorType sensorType : SENSOR_TYPES) {
+            text.append(", ").append(sensorType).append(' ')
+                    .append(getActiveCount(sensorType)).append('/').append(getSensorCount(sensorType));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,218 @@
+package com.mukhtar.UdaSecurity.data;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.UUID;
+
+/**
+ * Sensors indexed by id in an open-addressing hash table keyed directly on the two halves of the
+ * UUID, so finding, updating and replacing a sensor never compares names or allocates. The sorted
+ * order used for display is kept separately as an immutable snapshot, rebuilt on the first read
+ * after a sensor is added, removed, renamed or retyped; turning sensors on and off leaves it alone.
+ *
+ * All methods are thread safe. Reading the sorted view while it is up to date takes no lock.
+ */
+final class SensorStore {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final long GOLDEN_RATIO = 0x9E3779B97F4A7C15L;
+
+    //parallel arrays, a null sensor marks a free slot
+    private long[] mostSignificantBits;
+    private long[] leastSignificantBits;
+    private Sensor[] sensors;
+    //what the sorted view was built from, to notice renames of sensors that are changed in place
+    private String[] names;
+    private SensorType[] types;
+    private int size;
+    private int shift;
+
+    private volatile SortedView sortedView;
+
+    SensorStore() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Adds a sensor or replaces the one with the same id.
+     * @return the sensor that was replaced, or null
+     */
+    synchronized Sensor put(Sensor sensor) {
+        long msb = sensor.getSensorId().getMostSignificantBits();
+        long lsb = sensor.getSensorId().getLeastSignificantBits();
+        int slot = find(msb, lsb);
+        Sensor previous = sensors[slot];
+        if (previous == null) {
+            if (size + 1 > sensors.length * 3 / 4) {
+                rehash(sensors.length * 2);
+                slot = find(msb, lsb);
+            }
+            mostSignificantBits[slot] = msb;
+            leastSignificantBits[slot] = lsb;
+            size++;
+        }
+        sensors[slot] = sensor;
+        //a new instance or a new name or type moves the sensor in the sorted order
+        if (previous != sensor || !Objects.equals(names[slot], sensor.getName()) || types[slot] != sensor.getSensorType()) {
+            names[slot] = sensor.getName();
+            types[slot] = sensor.getSensorType();
+            sortedView = null;
+        }
+        return previous;
+    }
+
+    synchronized Sensor get(UUID sensorId) {
+        return sensors[find(sensorId.getMostSignificantBits(), sensorId.getLeastSignificantBits())];
+    }
+
+    /**
+     * @return the sensor that was removed, or null
+     */
+    synchronized Sensor remove(UUID sensorId) {
+        int slot = find(sensorId.getMostSignificantBits(), sensorId.getLeastSignificantBits());
+        Sensor previous = sensors[slot];
+        if (previous == null) {
+            return null;
+        }
+        size--;
+        sortedView = null;
+        //shift later members of the probe run back, so lookups never have to step over holes
+        int mask = sensors.length - 1;
+        int hole = slot;
+        for (int next = (hole + 1) & mask; sensors[next] != null; next = (next + 1) & mask) {
+            int home = home(mostSignificantBits[next], leastSignificantBits[next]);
+            //move the entry if its home slot is not between the hole and where it sits now
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                move(next, hole);
+                hole = next;
+            }
+        }
+        clear(hole);
+        return previous;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return the sensors in their natural order, as they were when this was called; sensors added
+     * or removed later show up in the next view
+     */
+    Set<Sensor> sorted() {
+        SortedView view = sortedView;
+        if (view == null) {
+            synchronized (this) {
+                view = sortedView;
+                if (view == null) {
+                    Sensor[] snapshot = new Sensor[size];
+                    int i = 0;
+                    for (Sensor sensor : sensors) {
+                        if (sensor != null) {
+                            snapshot[i++] = sensor;
+                        }
+                    }
+                    view = new SortedView(snapshot);
+                    sortedView = view;
+                }
+            }
+        }
+        return view;
+    }
+
+    /**
+     * @return the slot holding the id, or the free slot where it would go
+     */
+    private int find(long msb, long lsb) {
+        int mask = sensors.length - 1;
+        int slot = home(msb, lsb);
+        while (sensors[slot] != null
+                && (mostSignificantBits[slot] != msb || leastSignificantBits[slot] != lsb)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private int home(long msb, long lsb) {
+        return (int) (((msb ^ lsb) * GOLDEN_RATIO) >>> shift);
+    }
+
+    private void move(int from, int to) {
+        mostSignificantBits[to] = mostSignificantBits[from];
+        leastSignificantBits[to] = leastSignificantBits[from];
+        sensors[to] = sensors[from];
+        names[to] = names[from];
+        types[to] = types[from];
+    }
+
+    private void clear(int slot) {
+        sensors[slot] = null;
+        names[slot] = null;
+        types[slot] = null;
+    }
+
+    private void allocate(int capacity) {
+        mostSignificantBits = new long[capacity];
+        leastSignificantBits = new long[capacity];
+        sensors = new Sensor[capacity];
+        names = new String[capacity];
+        types = new SensorType[capacity];
+        shift = Long.numberOfLeadingZeros(capacity - 1);
+    }
+
+    private void rehash(int capacity) {
+        long[] oldMsb = mostSignificantBits;
+        long[] oldLsb = leastSignificantBits;
+        Sensor[] oldSensors = sensors;
+        String[] oldNames = names;
+        SensorType[] oldTypes = types;
+        allocate(capacity);
+        for (int i = 0; i < oldSensors.length; i++) {
+            if (oldSensors[i] != null) {
+                int slot = find(oldMsb[i], oldLsb[i]);
+                mostSignificantBits[slot] = oldMsb[i];
+                leastSignificantBits[slot] = oldLsb[i];
+                sensors[slot] = oldSensors[i];
+                names[slot] = oldNames[i];
+                types[slot] = oldTypes[i];
+            }
+        }
+    }
+
+    /**
+     * Read-only sorted snapshot. Its spliterator reports the natural order, so sorting a stream
+     * of it again costs nothing.
+     */
+    static final class SortedView extends AbstractSet<Sensor> {
+        private final Sensor[] sensors;
+
+        /**
+         * @param sensors distinct sensors, sorted here in place
+         */
+        SortedView(Sensor[] sensors) {
+            Arrays.sort(sensors);
+            this.sensors = sensors;
+        }
+
+        @Override
+        public Iterator<Sensor> iterator() {
+            return Arrays.asList(sensors).iterator();
+        }
+
+        @Override
+        public Spliterator<Sensor> spliterator() {
+            return Spliterators.spliterator(sensors, Spliterator.DISTINCT | Spliterator.SORTED
+                    | Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE);
+        }
+
+        @Override
+        public int size() {
+            return sensors.length;
+        }
+    }
+}
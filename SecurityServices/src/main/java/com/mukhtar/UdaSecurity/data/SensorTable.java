@@ -0,0 +1,206 @@
+package com.mukhtar.UdaSecurity.data;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Sensors stored column by column rather than as objects: ids as two long arrays, the type as a
+ * byte, the activation status as one bit in a row of long words, and only the name as an object.
+ * A sensor costs a few tens of bytes plus its name, and counting active sensors is a population
+ * count over the words, 64 sensors at a time.
+ *
+ * Rows are kept dense: removing a sensor moves the last row into its place. An open-addressing
+ * index maps ids to rows. Not thread safe.
+ */
+final class SensorTable {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final long GOLDEN_RATIO = 0x9E3779B97F4A7C15L;
+    private static final SensorType[] SENSOR_TYPES = SensorType.values();
+    private static final byte NO_TYPE = -1;
+
+    private long[] mostSignificantBits = new long[INITIAL_CAPACITY];
+    private long[] leastSignificantBits = new long[INITIAL_CAPACITY];
+    private String[] names = new String[INITIAL_CAPACITY];
+    private byte[] types = new byte[INITIAL_CAPACITY];
+    private long[] activeWords = new long[wordCount(INITIAL_CAPACITY)];
+    private int size;
+
+    //row + 1 for each id, 0 marks a free slot; kept at most half full
+    private int[] index = new int[INITIAL_CAPACITY * 2];
+    private int shift = Long.numberOfLeadingZeros(index.length - 1);
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Adds a sensor or overwrites the row with the same id.
+     * @return true if the sensor was not in the table yet
+     */
+    boolean put(Sensor sensor) {
+        long msb = sensor.getSensorId().getMostSignificantBits();
+        long lsb = sensor.getSensorId().getLeastSignificantBits();
+        int slot = find(msb, lsb);
+        boolean added = index[slot] == 0;
+        int row;
+        if (added) {
+            if (size == names.length) {
+                grow();
+                slot = find(msb, lsb);
+            }
+            row = size++;
+            mostSignificantBits[row] = msb;
+            leastSignificantBits[row] = lsb;
+            index[slot] = row + 1;
+        } else {
+            row = index[slot] - 1;
+        }
+        names[row] = sensor.getName();
+        types[row] = sensor.getSensorType() == null ? NO_TYPE : (byte) sensor.getSensorType().ordinal();
+        setActive(row, Boolean.TRUE.equals(sensor.getActive()));
+        return added;
+    }
+
+    /**
+     * @return true if the sensor was in the table
+     */
+    boolean remove(UUID sensorId) {
+        int slot = find(sensorId.getMostSignificantBits(), sensorId.getLeastSignificantBits());
+        if (index[slot] == 0) {
+            return false;
+        }
+        int row = index[slot] - 1;
+        removeFromIndex(slot);
+        int last = --size;
+        if (row != last) {
+            mostSignificantBits[row] = mostSignificantBits[last];
+            leastSignificantBits[row] = leastSignificantBits[last];
+            names[row] = names[last];
+            types[row] = types[last];
+            setActive(row, isActive(last));
+            index[find(mostSignificantBits[row], leastSignificantBits[row])] = row + 1;
+        }
+        names[last] = null;
+        setActive(last, false);
+        return true;
+    }
+
+    /**
+     * @return the row holding the id, or -1
+     */
+    int row(UUID sensorId) {
+        return index[find(sensorId.getMostSignificantBits(), sensorId.getLeastSignificantBits())] - 1;
+    }
+
+    int activeCount() {
+        int count = 0;
+        for (int i = 0, words = wordCount(size); i < words; i++) {
+            count += Long.bitCount(activeWords[i]);
+        }
+        return count;
+    }
+
+    boolean anyActive() {
+        for (int i = 0, words = wordCount(size); i < words; i++) {
+            if (activeWords[i] != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    SensorStatistics statistics() {
+        int[] sensorCountByType = new int[SENSOR_TYPES.length];
+        int[] activeCountByType = new int[SENSOR_TYPES.length];
+        for (int row = 0; row < size; row++) {
+            if (types[row] != NO_TYPE) {
+                sensorCountByType[types[row]]++;
+                if (isActive(row)) {
+                    activeCountByType[types[row]]++;
+                }
+            }
+        }
+        return new SensorStatistics(size, activeCount(), sensorCountByType, activeCountByType);
+    }
+
+    /**
+     * @return a new sensor object holding the row's values; changing it does not change the table
+     */
+    Sensor sensor(int row) {
+        Sensor sensor = new Sensor();
+        sensor.setSensorId(new UUID(mostSignificantBits[row], leastSignificantBits[row]));
+        sensor.setName(names[row]);
+        sensor.setSensorType(types[row] == NO_TYPE ? null : SENSOR_TYPES[types[row]]);
+        sensor.setActive(isActive(row));
+        return sensor;
+    }
+
+    private boolean isActive(int row) {
+        return (activeWords[row >>> 6] & (1L << row)) != 0;
+    }
+
+    private void setActive(int row, boolean active) {
+        if (active) {
+            activeWords[row >>> 6] |= 1L << row;
+        } else {
+            activeWords[row >>> 6] &= ~(1L << row);
+        }
+    }
+
+    /**
+     * @return the index slot holding the id, or the free slot where it would go
+     */
+    private int find(long msb, long lsb) {
+        int mask = index.length - 1;
+        int slot = home(msb, lsb);
+        while (index[slot] != 0) {
+            int row = index[slot] - 1;
+            if (mostSignificantBits[row] == msb && leastSignificantBits[row] == lsb) {
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private int home(long msb, long lsb) {
+        return (int) (((msb ^ lsb) * GOLDEN_RATIO) >>> shift);
+    }
+
+    /**
+     * Frees an index slot, shifting later members of its probe run back so lookups never have to
+     * step over holes.
+     */
+    private void removeFromIndex(int slot) {
+        int mask = index.length - 1;
+        int hole = slot;
+        for (int next = (hole + 1) & mask; index[next] != 0; next = (next + 1) & mask) {
+            int row = index[next] - 1;
+            int home = home(mostSignificantBits[row], leastSignificantBits[row]);
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                index[hole] = index[next];
+                hole = next;
+            }
+        }
+        index[hole] = 0;
+    }
+
+    private void grow() {
+        int capacity = names.length * 2;
+        mostSignificantBits = Arrays.copyOf(mostSignificantBits, capacity);
+        leastSignificantBits = Arrays.copyOf(leastSignificantBits, capacity);
+        names = Arrays.copyOf(names, capacity);
+        types = Arrays.copyOf(types, capacity);
+        activeWords = Arrays.copyOf(activeWords, wordCount(capacity));
+        index = new int[capacity * 2];
+        shift = Long.numberOfLeadingZeros(index.length - 1);
+        for (int row = 0; row < size; row++) {
+            index[find(mostSignificantBits[row], leastSignificantBits[row])] = row + 1;
+        }
+    }
+
+    private static int wordCount(int bits) {
+        return (bits + 63) >>> 6;
+    }
+}
@@ -0,0 +1,138 @@
+package com.mukhtar.UdaSecurity.data;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Fixed size, memory-mapped log segment. Every record is framed as
+ * [int payload length][int crc32 of payload][payload], and a zero length marks the end of the log.
+ * Reading stops at the first record whose checksum does not match, so a write torn by a crash
+ * simply truncates the log at the last complete record.
+ */
+class WriteAheadLog implements Closeable {
+
+    static final int HEADER_BYTES = Integer.BYTES * 2;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private int recordCount;
+
+    WriteAheadLog(Path file, int capacity) {
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Unable to map log segment " + file, ioe);
+        }
+    }
+
+    /**
+     * Passes every valid record payload to the handler, in order, and positions the log
+     * for appending right after the last valid record.
+     */
+    void replay(Consumer<ByteBuffer> handler) {
+        buffer.clear();
+        recordCount = readRecords(buffer, handler);
+        if (buffer.remaining() >= Integer.BYTES && buffer.getInt(buffer.position()) != 0) {
+            //discard whatever a torn write left behind the last good record
+            zero(buffer.position(), buffer.capacity());
+        }
+    }
+
+    /**
+     * Appends one record.
+     * @param payload bytes between position and limit are written
+     * @return false if the segment does not have room left for the record
+     */
+    boolean append(ByteBuffer payload) {
+        if (!writeRecord(buffer, payload)) {
+            return false;
+        }
+        recordCount++;
+        return true;
+    }
+
+    /**
+     * Empties the segment. Only call this once its contents are covered by a snapshot.
+     */
+    void reset() {
+        zero(0, buffer.position());
+        buffer.clear();
+        recordCount = 0;
+    }
+
+    int getRecordCount() {
+        return recordCount;
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    private void zero(int from, int to) {
+        for (int i = from; i < to; i++) {
+            buffer.put(i, (byte) 0);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    /**
+     * Frames the payload into the target buffer at its current position.
+     * @return false, leaving the target untouched, if there is not enough room
+     */
+    static boolean writeRecord(ByteBuffer target, ByteBuffer payload) {
+        int length = payload.remaining();
+        if (length == 0 || target.remaining() < HEADER_BYTES + length) {
+            return false;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        int start = target.position();
+        target.position(start + HEADER_BYTES);
+        target.put(payload);
+        target.putInt(start + Integer.BYTES, (int) crc.getValue());
+        //length goes in last so a half written record is never mistaken for a complete one
+        target.putInt(start, length);
+        return true;
+    }
+
+    /**
+     * Reads framed records from the source buffer's position until the end marker or the first
+     * damaged record, leaving the position right after the last valid record.
+     * @return the number of records passed to the handler
+     */
+    static int readRecords(ByteBuffer source, Consumer<ByteBuffer> handler) {
+        CRC32 crc = new CRC32();
+        int count = 0;
+        while (source.remaining() >= HEADER_BYTES) {
+            int start = source.position();
+            int length = source.getInt(start);
+            if (length <= 0 || length > source.remaining() - HEADER_BYTES) {
+                break;
+            }
+            ByteBuffer payload = source.slice(start + HEADER_BYTES, length).asReadOnlyBuffer();
+            crc.reset();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != source.getInt(start + Integer.BYTES)) {
+                break;
+            }
+            handler.accept(payload);
+            source.position(start + HEADER_BYTES + length);
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,358 @@
+package com.mukhtar.UdaSecurity.data;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Repository that persists every change as a small delta appended to a memory-mapped log,
+ * instead of rewriting the whole sensor set like {@link PretendDatabaseSecurityRepositoryImpl}.
+ * Once the log fills up (or grows past a record limit) the current state is written to a
+ * snapshot file and the log starts over. Loading replays the snapshot and then the log tail.
+ *
+ * Every snapshot is numbered with an epoch, and the log opens with the epoch of the snapshot it
+ * builds on. A crash after a new snapshot is in place but before the log is emptied leaves a log
+ * of the previous epoch, whose changes the snapshot already holds, and loading skips it rather
+ * than replaying older values over newer ones.
+ *
+ * Writes are serialized and reads never block, so it can back a {@code ConcurrentSecurityService}.
+ */
+public class WriteAheadLogSecurityRepositoryImpl implements SecurityRepository, Closeable {
+
+    private static final String SNAPSHOT_FILE = "sensors.snapshot";
+    private static final String LOG_FILE = "sensors.log";
+    private static final int DEFAULT_SEGMENT_BYTES = 4 * 1024 * 1024;
+    private static final int DEFAULT_COMPACTION_RECORDS = 100_000;
+
+    //record types
+    private static final byte PUT_SENSOR = 1;
+    private static final byte REMOVE_SENSOR = 2;
+    private static final byte ALARM_STATUS = 3;
+    private static final byte ARMING_STATUS = 4;
+    private static final byte BATCH = 5;
+    private static final byte EPOCH = 6;
+
+    private final SensorStore sensors = new SensorStore();
+    private final SensorCounter sensorCounter = new SensorCounter();
+    private volatile AlarmStatus alarmStatus = AlarmStatus.NO_ALARM;
+    private volatile ArmingStatus armingStatus = ArmingStatus.DISARMED;
+    //epoch of the snapshot the log builds on, 0 before the first snapshot
+    private long epoch;
+
+    private final Path snapshotFile;
+    private final WriteAheadLog log;
+    private final int compactionRecords;
+    private ByteBuffer scratch = ByteBuffer.allocate(256);
+
+    /**
+     * Stores its files in the .udasecurity folder of the user's home directory.
+     */
+    public WriteAheadLogSecurityRepositoryImpl() {
+        this(Paths.get(System.getProperty("user.home"), ".udasecurity"));
+    }
+
+    public WriteAheadLogSecurityRepositoryImpl(Path directory) {
+        this(directory, DEFAULT_SEGMENT_BYTES, DEFAULT_COMPACTION_RECORDS);
+    }
+
+    /**
+     * @param directory folder holding the snapshot and log files, created if missing
+     * @param segmentBytes size of the memory-mapped log segment
+     * @param compactionRecords number of logged deltas after which a snapshot is taken
+     */
+    public WriteAheadLogSecurityRepositoryImpl(Path directory, int segmentBytes, int compactionRecords) {
+        this.compactionRecords = compactionRecords;
+        this.snapshotFile = directory.resolve(SNAPSHOT_FILE);
+        try {
+            Files.createDirectories(directory);
+            if (Files.exists(snapshotFile)) {
+                WriteAheadLog.readRecords(ByteBuffer.wrap(Files.readAllBytes(snapshotFile)), this::apply);
+            }
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Unable to load snapshot " + snapshotFile, ioe);
+        }
+        log = new WriteAheadLog(directory.resolve(LOG_FILE), segmentBytes);
+        LogReplay replay = new LogReplay();
+        log.replay(replay);
+        if (replay.logEpoch != epoch) {
+            //left over from before the last snapshot, which already holds all of it
+            log.reset();
+            startLog();
+        }
+    }
+
+    @Override
+    public synchronized void addSensor(Sensor sensor) {
+        putSensor(sensor);
+        append(encodeSensor(sensor));
+    }
+
+    @Override
+    public synchronized void removeSensor(Sensor sensor) {
+        sensors.remove(sensor.getSensorId());
+        sensorCounter.remove(sensor.getSensorId());
+        scratch.clear();
+        scratch.put(REMOVE_SENSOR)
+                .putLong(sensor.getSensorId().getMostSignificantBits())
+                .putLong(sensor.getSensorId().getLeastSignificantBits());
+        append(scratch.flip());
+    }
+
+    @Override
+    public synchronized void updateSensor(Sensor sensor) {
+        putSensor(sensor);
+        append(encodeSensor(sensor));
+    }
+
+    /**
+     * Logs all changed sensors as a single record, so the whole group is replayed or none of it is.
+     */
+    @Override
+    public synchronized void updateSensors(Collection<Sensor> changed) {
+        if (changed.isEmpty()) {
+            return;
+        }
+        ByteBuffer batch = ByteBuffer.allocate(changed.size() * 64);
+        batch.put(BATCH);
+        for (Sensor sensor : changed) {
+            putSensor(sensor);
+            ByteBuffer record = encodeSensor(sensor);
+            if (batch.remaining() < Integer.BYTES + record.remaining()) {
+                ByteBuffer larger = ByteBuffer.allocate(batch.capacity() * 2 + record.remaining());
+                batch = larger.put(batch.flip());
+            }
+            batch.putInt(record.remaining()).put(record);
+        }
+        append(batch.flip());
+    }
+
+    @Override
+    public synchronized void setAlarmStatus(AlarmStatus alarmStatus) {
+        this.alarmStatus = alarmStatus;
+        scratch.clear();
+        append(scratch.put(ALARM_STATUS).put((byte) alarmStatus.ordinal()).flip());
+    }
+
+    @Override
+    public synchronized void setArmingStatus(ArmingStatus armingStatus) {
+        this.armingStatus = armingStatus;
+        scratch.clear();
+        append(scratch.put(ARMING_STATUS).put((byte) armingStatus.ordinal()).flip());
+    }
+
+    @Override
+    public Set<Sensor> getSensors() {
+        return sensors.sorted();
+    }
+
+    @Override
+    public Sensor getSensor(UUID sensorId) {
+        return sensors.get(sensorId);
+    }
+
+    @Override
+    public int getSensorCount() {
+        return sensorCounter.getSensorCount();
+    }
+
+    @Override
+    public int getActiveSensorCount() {
+        return sensorCounter.getActiveSensorCount();
+    }
+
+    @Override
+    public SensorStatistics getSensorStatistics() {
+        return sensorCounter.snapshot();
+    }
+
+    @Override
+    public AlarmStatus getAlarmStatus() {
+        return alarmStatus;
+    }
+
+    @Override
+    public ArmingStatus getArmingStatus() {
+        return armingStatus;
+    }
+
+    /**
+     * Copies the sensors and statuses of another repository, such as the one kept in the user
+     * preferences, into this one if nothing was ever written to it.
+     * @return false, copying nothing, if this repository already holds state
+     */
+    public synchronized boolean migrateFrom(SecurityRepository legacy) {
+        if (epoch != 0 || log.getRecordCount() > 0) {
+            return false;
+        }
+        legacy.getSensors().forEach(this::putSensor);
+        alarmStatus = legacy.getAlarmStatus();
+        armingStatus = legacy.getArmingStatus();
+        compact();
+        return true;
+    }
+
+    /**
+     * Writes the current state to the snapshot file and empties the log.
+     */
+    public synchronized void compact() {
+        long nextEpoch = epoch + 1;
+        ByteBuffer snapshot = ByteBuffer.allocate(Math.max(1024, sensors.size() * 64));
+        snapshot = writeSnapshotRecord(snapshot, scratch.clear().put(EPOCH).putLong(nextEpoch).flip());
+        snapshot = writeSnapshotRecord(snapshot, scratch.clear().put(ALARM_STATUS).put((byte) alarmStatus.ordinal()).flip());
+        snapshot = writeSnapshotRecord(snapshot, scratch.clear().put(ARMING_STATUS).put((byte) armingStatus.ordinal()).flip());
+        for (Sensor sensor : sensors.sorted()) {
+            snapshot = writeSnapshotRecord(snapshot, encodeSensor(sensor));
+        }
+        snapshot.flip();
+
+        Path tmp = snapshotFile.resolveSibling(SNAPSHOT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (snapshot.hasRemaining()) {
+                channel.write(snapshot);
+            }
+            channel.force(true);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Unable to write snapshot " + tmp, ioe);
+        }
+        try {
+            Files.move(tmp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Unable to replace snapshot " + snapshotFile, ioe);
+        }
+        epoch = nextEpoch;
+        //a crash before the log starts over leaves it on the previous epoch, and loading skips it
+        log.reset();
+        startLog();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        log.close();
+    }
+
+    /**
+     * Logs a delta that has already been applied in memory. If the log is full the in-memory
+     * state, including this delta, goes to a new snapshot instead.
+     */
+    private void append(ByteBuffer payload) {
+        if (log.getRecordCount() >= compactionRecords || !log.append(payload)) {
+            compact();
+        }
+    }
+
+    /**
+     * Opens the emptied log with the current epoch, and makes sure that header is on disk before
+     * any change is logged after it.
+     */
+    private void startLog() {
+        scratch.clear();
+        log.append(scratch.put(EPOCH).putLong(epoch).flip());
+        log.force();
+    }
+
+    private void putSensor(Sensor sensor) {
+        sensorCounter.put(sensor);
+        sensors.put(sensor);
+    }
+
+    private ByteBuffer encodeSensor(Sensor sensor) {
+        byte[] name = sensor.getName() == null ? null : sensor.getName().getBytes(StandardCharsets.UTF_8);
+        int size = 1 + Long.BYTES * 2 + 2 + Integer.BYTES + (name == null ? 0 : name.length);
+        if (scratch.capacity() < size) {
+            scratch = ByteBuffer.allocate(size);
+        }
+        scratch.clear();
+        scratch.put(PUT_SENSOR)
+                .putLong(sensor.getSensorId().getMostSignificantBits())
+                .putLong(sensor.getSensorId().getLeastSignificantBits())
+                .put((byte) (Boolean.TRUE.equals(sensor.getActive()) ? 1 : 0))
+                .put((byte) (sensor.getSensorType() == null ? -1 : sensor.getSensorType().ordinal()))
+                .putInt(name == null ? -1 : name.length);
+        if (name != null) {
+            scratch.put(name);
+        }
+        return scratch.flip();
+    }
+
+    /**
+     * Applies one logged delta to the in-memory state.
+     */
+    private void apply(ByteBuffer record) {
+        switch (record.get()) {
+            case PUT_SENSOR -> {
+                Sensor sensor = new Sensor();
+                sensor.setSensorId(new UUID(record.getLong(), record.getLong()));
+                sensor.setActive(record.get() == 1);
+                byte type = record.get();
+                sensor.setSensorType(type < 0 ? null : SensorType.values()[type]);
+                int nameLength = record.getInt();
+                if (nameLength >= 0) {
+                    byte[] name = new byte[nameLength];
+                    record.get(name);
+                    sensor.setName(new String(name, StandardCharsets.UTF_8));
+                }
+                putSensor(sensor);
+            }
+            case REMOVE_SENSOR -> {
+                UUID sensorId = new UUID(record.getLong(), record.getLong());
+                sensorCounter.remove(sensorId);
+                sensors.remove(sensorId);
+            }
+            case ALARM_STATUS -> alarmStatus = AlarmStatus.values()[record.get()];
+            case ARMING_STATUS -> armingStatus = ArmingStatus.values()[record.get()];
+            case EPOCH -> epoch = record.getLong();
+            case BATCH -> {
+                while (record.hasRemaining()) {
+                    int length = record.getInt();
+                    ByteBuffer nested = record.slice(record.position(), length);
+                    record.position(record.position() + length);
+                    apply(nested);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the epoch the log opens with, and replays the rest only if it builds on the snapshot
+     * that was loaded. A log without an epoch predates snapshot epochs and counts as epoch 0.
+     */
+    private final class LogReplay implements Consumer<ByteBuffer> {
+        private boolean first = true;
+        private long logEpoch;
+
+        @Override
+        public void accept(ByteBuffer record) {
+            if (first) {
+                first = false;
+                if (record.get(record.position()) == EPOCH) {
+                    logEpoch = record.getLong(record.position() + 1);
+                    return;
+                }
+            }
+            if (logEpoch == epoch) {
+                apply(record);
+            }
+        }
+    }
+
+    private static ByteBuffer writeSnapshotRecord(ByteBuffer snapshot, ByteBuffer payload) {
+        while (!WriteAheadLog.writeRecord(snapshot, payload)) {
+            ByteBuffer larger = ByteBuffer.allocate(snapshot.capacity() * 2 + payload.remaining());
+            snapshot = larger.put(snapshot.flip());
+        }
+        return snapshot;
+    }
+}
@@ -6,5 +6,8 @@ module com.mukhtar.UdaSecurity.SecurityServices{
     requires com.google.common;
     requires com.google.gson;
     requires java.prefs;
+    requires java.sql;
+    requires jdk.httpserver;
+    requires org.slf4j;
     opens com.mukhtar.UdaSecurity.data to com.google.gson;
 }
\ No newline at end of file
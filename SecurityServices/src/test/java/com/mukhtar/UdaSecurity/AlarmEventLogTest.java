@@ -0,0 +1,153 @@
+package com.mukhtar.UdaSecurity;
+
+import com.mukhtar.UdaSecurity.Services.AlarmEngine;
+import com.mukhtar.UdaSecurity.Services.AlarmEvent;
+import com.mukhtar.UdaSecurity.Services.AlarmEventLog;
+import com.mukhtar.UdaSecurity.Services.SecurityService;
+import com.mukhtar.UdaSecurity.data.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AlarmEventLogTest {
+
+    @TempDir
+    Path directory;
+
+    /**
+     * The engine fed from the recorded events must agree with the service after every step, and
+     * so must an engine rebuilt from the snapshots or from the whole log.
+     */
+    @Test
+    void recordedEvents_reproduceServiceDecisions() throws IOException {
+        Random random = new Random(3);
+        boolean[] cat = new boolean[1];
+        BufferedImage image = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+        List<Sensor> sensors = new ArrayList<>();
+        List<AlarmStatus> transitions = new ArrayList<>();
+        AlarmStatus finalAlarmStatus;
+        ArmingStatus finalArmingStatus;
+
+        try (WriteAheadLogSecurityRepositoryImpl repository = new WriteAheadLogSecurityRepositoryImpl(directory.resolve("repository"));
+             AlarmEventLog log = new AlarmEventLog(directory.resolve("events"), new AlarmEngine(), 50)) {
+            SecurityService securityService = new SecurityService(repository, (img, threshold) -> cat[0]);
+            securityService.setAlarmEventLog(log);
+            for (int i = 0; i < 2_000; i++) {
+                int action = random.nextInt(10);
+                if (action == 0 || sensors.isEmpty()) {
+                    Sensor sensor = new Sensor("sensor " + i, SensorType.values()[random.nextInt(3)]);
+                    sensors.add(sensor);
+                    securityService.addSensor(sensor);
+                } else if (action == 1) {
+                    securityService.removeSensor(sensors.remove(random.nextInt(sensors.size())));
+                } else if (action == 2) {
+                    securityService.setArmingStatus(ArmingStatus.values()[random.nextInt(3)]);
+                } else if (action == 3) {
+                    cat[0] = random.nextBoolean();
+                    securityService.processImage("camera " + random.nextInt(2), image);
+                } else {
+                    Sensor sensor = sensors.get(random.nextInt(sensors.size()));
+                    securityService.changeSensorActivationStatus(sensor, random.nextBoolean());
+                }
+                assertEquals(securityService.getAlarmStatus(), log.getEngine().getAlarmStatus());
+                assertEquals(securityService.getArmingStatus(), log.getEngine().getArmingStatus());
+            }
+            finalAlarmStatus = securityService.getAlarmStatus();
+            finalArmingStatus = securityService.getArmingStatus();
+        }
+
+        AlarmEngine restored = new AlarmEngine();
+        try (AlarmEventLog reopened = new AlarmEventLog(directory.resolve("events"), restored, 50)) {
+            assertEquals(finalAlarmStatus, restored.getAlarmStatus());
+            assertEquals(finalArmingStatus, restored.getArmingStatus());
+        }
+
+        AlarmEngine replayed = new AlarmEngine((sequence, timestamp, previous, next) -> transitions.add(next));
+        assertEquals(restored.getSequence(), AlarmEventLog.replay(directory.resolve("events"), replayed));
+        assertEquals(finalAlarmStatus, replayed.getAlarmStatus());
+        assertEquals(restored.getActiveSensorCount(), replayed.getActiveSensorCount());
+        assertFalse(transitions.isEmpty());
+    }
+
+    /**
+     * A log attached to a system that already has sensors and a status must start from them, and
+     * one reopened after changes made without it must take them in before recording more.
+     */
+    @Test
+    void attachedLog_startsFromRepositoryState() throws IOException {
+        Sensor door = new Sensor("front door", SensorType.DOOR);
+        Sensor window = new Sensor("back window", SensorType.WINDOW);
+        Sensor motion = new Sensor("hall", SensorType.MOTION);
+        try (WriteAheadLogSecurityRepositoryImpl repository = new WriteAheadLogSecurityRepositoryImpl(directory.resolve("repository"))) {
+            SecurityService securityService = new SecurityService(repository, (img, threshold) -> false);
+            securityService.addSensor(door);
+            securityService.addSensor(window);
+            securityService.setArmingStatus(ArmingStatus.ARMED_HOME);
+            securityService.changeSensorActivationStatus(door, true);
+            assertEquals(AlarmStatus.PENDING_ALARM, securityService.getAlarmStatus());
+
+            try (AlarmEventLog log = new AlarmEventLog(directory.resolve("events"), new AlarmEngine())) {
+                securityService.setAlarmEventLog(log);
+                assertEquals(AlarmStatus.PENDING_ALARM, log.getEngine().getAlarmStatus());
+                assertEquals(ArmingStatus.ARMED_HOME, log.getEngine().getArmingStatus());
+                assertEquals(1, log.getEngine().getActiveSensorCount());
+
+                securityService.changeSensorActivationStatus(window, true);
+                assertEquals(AlarmStatus.ALARM, securityService.getAlarmStatus());
+                assertEquals(AlarmStatus.ALARM, log.getEngine().getAlarmStatus());
+            }
+
+            //changed while nothing was recording
+            securityService.setAlarmEventLog(null);
+            securityService.removeSensor(door);
+            securityService.addSensor(motion);
+            securityService.setArmingStatus(ArmingStatus.DISARMED);
+            securityService.setArmingStatus(ArmingStatus.ARMED_AWAY);
+            securityService.changeSensorActivationStatus(motion, true);
+
+            try (AlarmEventLog log = new AlarmEventLog(directory.resolve("events"), new AlarmEngine())) {
+                assertEquals(AlarmStatus.ALARM, log.getEngine().getAlarmStatus());
+                securityService.setAlarmEventLog(log);
+                assertEquals(AlarmStatus.PENDING_ALARM, log.getEngine().getAlarmStatus());
+                assertEquals(ArmingStatus.ARMED_AWAY, log.getEngine().getArmingStatus());
+                assertEquals(Set.of(motion.getSensorId()), log.getEngine().getActiveSensorIds());
+
+                securityService.changeSensorActivationStatus(window, true);
+                assertEquals(AlarmStatus.ALARM, securityService.getAlarmStatus());
+                assertEquals(AlarmStatus.ALARM, log.getEngine().getAlarmStatus());
+            }
+        }
+    }
+
+    @Test
+    void tornRecord_isDroppedOnReopen() throws IOException {
+        Sensor sensor = new Sensor("front door", SensorType.DOOR);
+        try (AlarmEventLog log = new AlarmEventLog(directory, new AlarmEngine())) {
+            log.append(AlarmEvent.armingChanged(ArmingStatus.ARMED_AWAY));
+            log.append(AlarmEvent.sensorAdded(sensor));
+            assertEquals(AlarmStatus.PENDING_ALARM, log.append(AlarmEvent.sensorChanged(sensor.getSensorId(), true)));
+        }
+        //a record cut off after its length
+        Files.write(directory.resolve("alarm-events.log"), new byte[]{0, 0, 0, 26, 1, 2},
+                StandardOpenOption.APPEND);
+
+        try (AlarmEventLog log = new AlarmEventLog(directory, new AlarmEngine())) {
+            assertEquals(3, log.getEngine().getSequence());
+            assertEquals(AlarmStatus.PENDING_ALARM, log.getEngine().getAlarmStatus());
+            assertEquals(AlarmStatus.PENDING_ALARM, log.append(AlarmEvent.catDetected("garden", false)));
+            assertEquals(AlarmStatus.ALARM, log.append(AlarmEvent.sensorChanged(sensor.getSensorId(), true)));
+        }
+        assertEquals(5, AlarmEventLog.replay(directory, new AlarmEngine()));
+    }
+}
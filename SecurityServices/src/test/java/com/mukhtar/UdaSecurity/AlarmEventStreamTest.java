@@ -0,0 +1,115 @@
+package com.mukhtar.UdaSecurity;
+
+import com.mukhtar.UdaSecurity.Service.FakeImageService;
+import com.mukhtar.UdaSecurity.Services.SecurityService;
+import com.mukhtar.UdaSecurity.application.AlarmEventStream;
+import com.mukhtar.UdaSecurity.application.AlarmEventStream.Event;
+import com.mukhtar.UdaSecurity.application.AlarmEventStream.Kind;
+import com.mukhtar.UdaSecurity.application.AlarmEventStream.OverflowPolicy;
+import com.mukhtar.UdaSecurity.application.AlarmEventStream.Subscription;
+import com.mukhtar.UdaSecurity.data.*;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AlarmEventStreamTest {
+
+    @Test
+    void subscribe_startsFromCurrentStateThenFollowsChanges() throws InterruptedException {
+        SecurityService securityService = new SecurityService(new ColumnarSecurityRepositoryImpl(), new FakeImageService());
+        securityService.setArmingStatus(ArmingStatus.ARMED_HOME);
+        try (AlarmEventStream stream = new AlarmEventStream(securityService)) {
+            Subscription subscription = stream.subscribe(16, OverflowPolicy.COALESCE);
+            List<Event> initial = drain(subscription);
+            assertEquals(Kind.values().length, initial.size());
+            assertTrue(initial.stream().anyMatch(e -> e.getData().contains("ARMED_HOME")));
+
+            securityService.setAlarmStatus(AlarmStatus.PENDING_ALARM);
+            Event event = subscription.poll(1, TimeUnit.SECONDS);
+            assertEquals(Kind.ALARM, event.getKind());
+            assertEquals("{\"alarmStatus\":\"PENDING_ALARM\"}", event.getData());
+            assertTrue(event.getId() > initial.get(initial.size() - 1).getId());
+        }
+    }
+
+    @Test
+    void subscribe_startsFromCatAlreadyDetected() throws InterruptedException {
+        SecurityService securityService = new SecurityService(new ColumnarSecurityRepositoryImpl(),
+                (image, confidenceThreshhold) -> true);
+        securityService.processImage(new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB));
+        try (AlarmEventStream stream = new AlarmEventStream(securityService)) {
+            Event cat = lastOfKind(drain(stream.subscribe(16, OverflowPolicy.COALESCE)), Kind.CAT);
+            assertEquals("{\"catDetected\":true}", cat.getData());
+        }
+    }
+
+    /**
+     * A subscriber that reads nothing while thousands of changes go by must stay within its buffer,
+     * and after catching up must still know the latest state of everything.
+     */
+    @Test
+    void slowSubscriber_coalescesToLatestState() throws InterruptedException {
+        SecurityService securityService = new SecurityService(new ColumnarSecurityRepositoryImpl(), new FakeImageService());
+        Sensor sensor = new Sensor("window", SensorType.WINDOW);
+        securityService.addSensor(sensor);
+        try (AlarmEventStream stream = new AlarmEventStream(securityService)) {
+            Subscription coalescing = stream.subscribe(8, OverflowPolicy.COALESCE);
+            Subscription dropping = stream.subscribe(8, OverflowPolicy.DROP_OLDEST);
+            for (int i = 0; i < 5_000; i++) {
+                securityService.setArmingStatus(i % 2 == 0 ? ArmingStatus.ARMED_AWAY : ArmingStatus.ARMED_HOME);
+                securityService.changeSensorActivationStatus(sensor, i % 3 == 0);
+            }
+            securityService.setArmingStatus(ArmingStatus.DISARMED);
+
+            List<Event> coalesced = drain(coalescing);
+            assertTrue(coalesced.size() <= 8);
+            assertTrue(coalescing.getDroppedCount() > 0);
+            assertEquals("{\"armingStatus\":\"DISARMED\"}", lastOfKind(coalesced, Kind.ARMING).getData());
+            assertEquals("{\"alarmStatus\":\"NO_ALARM\"}", lastOfKind(coalesced, Kind.ALARM).getData());
+            for (int i = 1; i < coalesced.size(); i++) {
+                assertTrue(coalesced.get(i - 1).getId() < coalesced.get(i).getId());
+            }
+
+            List<Event> dropped = drain(dropping);
+            assertEquals(8, dropped.size());
+            assertTrue(dropping.getDroppedCount() > 0);
+            assertTrue(dropped.stream().anyMatch(e -> e.getData().contains("DISARMED")));
+        }
+    }
+
+    @Test
+    void close_endsSubscriptions() throws InterruptedException {
+        SecurityService securityService = new SecurityService(new ColumnarSecurityRepositoryImpl(), new FakeImageService());
+        AlarmEventStream stream = new AlarmEventStream(securityService);
+        Subscription subscription = stream.subscribe(8, OverflowPolicy.COALESCE);
+        drain(subscription);
+        stream.close();
+        assertTrue(subscription.isClosed());
+        assertNull(subscription.poll(1, TimeUnit.SECONDS));
+        assertEquals(0, stream.getSubscriberCount());
+    }
+
+    private static List<Event> drain(Subscription subscription) throws InterruptedException {
+        List<Event> events = new ArrayList<>();
+        Event event;
+        while ((event = subscription.poll(0, TimeUnit.SECONDS)) != null) {
+            events.add(event);
+        }
+        return events;
+    }
+
+    private static Event lastOfKind(List<Event> events, Kind kind) {
+        Event last = null;
+        for (Event event : events) {
+            if (event.getKind() == kind) {
+                last = event;
+            }
+        }
+        return last;
+    }
+}
@@ -0,0 +1,69 @@
+package com.mukhtar.UdaSecurity;
+
+import com.mukhtar.UdaSecurity.Service.CachingImageService;
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachingImageServiceTest {
+
+    private final AtomicInteger calls = new AtomicInteger();
+    private final CachingImageService cachingImageService = new CachingImageService((image, threshold) -> {
+        calls.incrementAndGet();
+        return true;
+    }, 2, Duration.ofMinutes(1));
+
+    @Test
+    void nearIdenticalFrames_reachWrappedServiceOnce() {
+        BufferedImage frame = scene(0);
+        BufferedImage noisyFrame = scene(0);
+        noisyFrame.setRGB(10, 10, Color.WHITE.getRGB());
+
+        assertTrue(cachingImageService.imageContainsCat(frame, 50.0f));
+        assertTrue(cachingImageService.imageContainsCat(noisyFrame, 50.0f));
+
+        assertEquals(1, calls.get());
+        assertEquals(1, cachingImageService.getHitCount());
+        assertEquals(0.5, cachingImageService.getHitRate());
+    }
+
+    @Test
+    void differentThreshold_isNotAHit() {
+        BufferedImage frame = scene(0);
+        cachingImageService.imageContainsCat(frame, 50.0f);
+        cachingImageService.imageContainsCat(frame, 90.0f);
+
+        assertEquals(2, calls.get());
+        assertEquals(0, cachingImageService.getHitCount());
+    }
+
+    @Test
+    void leastRecentlyUsedVerdict_isEvicted() {
+        cachingImageService.imageContainsCat(scene(0), 50.0f);
+        cachingImageService.imageContainsCat(scene(1), 50.0f);
+        cachingImageService.imageContainsCat(scene(2), 50.0f);
+
+        assertEquals(2, cachingImageService.size());
+        assertEquals(1, cachingImageService.getEvictionCount());
+    }
+
+    /**
+     * Draws a gradient with a dark bar whose position depends on the variant, so different
+     * variants hash differently.
+     */
+    private static BufferedImage scene(int variant) {
+        BufferedImage image = new BufferedImage(320, 240, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setPaint(new GradientPaint(0, 0, Color.BLACK, 320, 0, Color.LIGHT_GRAY));
+        g.fillRect(0, 0, 320, 240);
+        g.setColor(Color.DARK_GRAY);
+        g.fillRect(40 + variant * 90, 0, 40, 240);
+        g.dispose();
+        return image;
+    }
+}
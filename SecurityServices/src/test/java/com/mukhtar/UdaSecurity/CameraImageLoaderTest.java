@@ -0,0 +1,76 @@
+package com.mukhtar.UdaSecurity;
+
+import com.mukhtar.UdaSecurity.application.CameraImageLoader;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CameraImageLoaderTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void thumbnail_scaledAndCached() throws Exception {
+        File photo = photo("photo.png", 3000, 2000, Color.RED);
+        try (CameraImageLoader loader = new CameraImageLoader(300, 225)) {
+            BufferedImage thumbnail = loader.loadThumbnail(photo).get(10, TimeUnit.SECONDS);
+            assertEquals(300, thumbnail.getWidth());
+            assertEquals(225, thumbnail.getHeight());
+            assertEquals(Color.RED.getRGB(), thumbnail.getRGB(150, 112));
+            assertSame(thumbnail, loader.loadThumbnail(photo).get(10, TimeUnit.SECONDS));
+
+            //a changed file must not be answered from the cache
+            photo("photo.png", 1200, 900, Color.BLUE);
+            assertTrue(photo.setLastModified(photo.lastModified() + 2_000));
+            BufferedImage changed = loader.loadThumbnail(photo).get(10, TimeUnit.SECONDS);
+            assertEquals(Color.BLUE.getRGB(), changed.getRGB(150, 112));
+        }
+    }
+
+    @Test
+    void fullResolution_decodedOnlyWhenAskedFor() throws Exception {
+        File photo = photo("large.png", 3000, 2000, Color.GREEN);
+        try (CameraImageLoader loader = new CameraImageLoader(300, 225)) {
+            loader.loadThumbnail(photo).get(10, TimeUnit.SECONDS);
+            BufferedImage full = loader.loadFullResolution(photo).get(10, TimeUnit.SECONDS);
+            assertEquals(3000, full.getWidth());
+            assertEquals(2000, full.getHeight());
+        }
+    }
+
+    @Test
+    void invalidFile_failsWithIOException() throws IOException {
+        File notAnImage = directory.resolve("notes.png").toFile();
+        Files.writeString(notAnImage.toPath(), "not an image");
+        try (CameraImageLoader loader = new CameraImageLoader(300, 225)) {
+            ExecutionException error = assertThrows(ExecutionException.class,
+                    () -> loader.loadThumbnail(notAnImage).get(10, TimeUnit.SECONDS));
+            assertTrue(error.getCause() instanceof UncheckedIOException);
+        }
+    }
+
+    private File photo(String name, int width, int height, Color color) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(color);
+        g.fillRect(0, 0, width, height);
+        g.dispose();
+        File file = directory.resolve(name).toFile();
+        ImageIO.write(image, "png", file);
+        return file;
+    }
+}
@@ -0,0 +1,103 @@
+package com.mukhtar.UdaSecurity;
+
+import com.mukhtar.UdaSecurity.Services.CameraScheduler;
+import com.mukhtar.UdaSecurity.Services.CameraSource;
+import com.mukhtar.UdaSecurity.Services.ConcurrentSecurityService;
+import com.mukhtar.UdaSecurity.data.AlarmStatus;
+import com.mukhtar.UdaSecurity.data.ArmingStatus;
+import com.mukhtar.UdaSecurity.data.WriteAheadLogSecurityRepositoryImpl;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.image.BufferedImage;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CameraSchedulerTest {
+
+    //frames of this width contain a cat as far as the test image service is concerned
+    private static final int CAT_WIDTH = 2;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void saturatedWorker_servesCamerasRoundRobin() throws Exception {
+        try (WriteAheadLogSecurityRepositoryImpl repository = new WriteAheadLogSecurityRepositoryImpl(directory);
+             CameraScheduler scheduler = new CameraScheduler(new ConcurrentSecurityService(repository, (image, threshold) -> {
+                 sleep(1);
+                 return false;
+             }), 1)) {
+            for (int i = 0; i < 3; i++) {
+                scheduler.register(camera("camera " + i, false), Duration.ofNanos(1));
+            }
+            //compare progress from a common starting point, as the cameras were registered one by one
+            long[] start = new long[3];
+            for (int i = 0; i < 3; i++) {
+                start[i] = scheduler.getFramesAnalysed("camera " + i);
+            }
+            awaitTrue(() -> scheduler.getFramesAnalysed("camera 0") >= start[0] + 50);
+            scheduler.close();
+            long first = scheduler.getFramesAnalysed("camera 0") - start[0];
+            for (int i = 1; i < 3; i++) {
+                long frames = scheduler.getFramesAnalysed("camera " + i) - start[i];
+                assertTrue(Math.abs(frames - first) <= 2, "camera " + i + ": " + frames + " vs " + first);
+            }
+        }
+    }
+
+    @Test
+    void catOnAnyCamera_keepsCatDetectedUntilThatCameraIsForgotten() throws Exception {
+        try (WriteAheadLogSecurityRepositoryImpl repository = new WriteAheadLogSecurityRepositoryImpl(directory)) {
+            ConcurrentSecurityService securityService = new ConcurrentSecurityService(repository,
+                    (image, threshold) -> image.getWidth() == CAT_WIDTH);
+            securityService.setArmingStatus(ArmingStatus.ARMED_HOME);
+            try (CameraScheduler scheduler = new CameraScheduler(securityService, 2)) {
+                scheduler.register(camera("front", true), Duration.ofMillis(1));
+                scheduler.register(camera("back", false), Duration.ofMillis(1));
+
+                awaitTrue(() -> scheduler.getFramesAnalysed("front") > 0 && scheduler.getFramesAnalysed("back") > 5);
+                assertEquals(AlarmStatus.ALARM, repository.getAlarmStatus());
+
+                assertTrue(scheduler.unregister("front"));
+                assertEquals(AlarmStatus.NO_ALARM, repository.getAlarmStatus());
+                assertEquals(-1, scheduler.getFramesAnalysed("front"));
+            }
+        }
+    }
+
+    private static CameraSource camera(String name, boolean cat) {
+        BufferedImage frame = new BufferedImage(cat ? CAT_WIDTH : 1, 1, BufferedImage.TYPE_INT_RGB);
+        return new CameraSource() {
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            public BufferedImage grabFrame() {
+                return frame;
+            }
+        };
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "timed out");
+            Thread.sleep(1);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.mukhtar.UdaSecurity;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.mukhtar.UdaSecurity.Service.FakeImageService;
+import com.mukhtar.UdaSecurity.Services.ConcurrentSecurityService;
+import com.mukhtar.UdaSecurity.application.CatpointServer;
+import com.mukhtar.UdaSecurity.data.AlarmStatus;
+import com.mukhtar.UdaSecurity.data.ColumnarSecurityRepositoryImpl;
+import com.mukhtar.UdaSecurity.data.WriteAheadLogSecurityRepositoryImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CatpointServerTest {
+
+    @TempDir
+    Path directory;
+
+    private ConcurrentSecurityService securityService;
+    private CatpointServer server;
+
+    @BeforeEach
+    void init() {
+        securityService = new ConcurrentSecurityService(new ColumnarSecurityRepositoryImpl(), new FakeImageService());
+        server = new CatpointServer(securityService, new InetSocketAddress("127.0.0.1", 0));
+        server.start();
+    }
+
+    @AfterEach
+    void close() {
+        server.close();
+    }
+
+    @Test
+    void sensorLifecycle_drivesAlarmStatus() throws IOException {
+        Reply created = request("POST", "/sensors", "{\"name\": \"Front door\", \"sensorType\": \"DOOR\"}");
+        assertEquals(201, created.status);
+        String id = created.json().get("sensorId").getAsString();
+
+        Reply sensors = request("GET", "/sensors", null);
+        JsonArray list = JsonParser.parseString(sensors.body).getAsJsonArray();
+        assertEquals(1, list.size());
+        assertEquals("Front door", list.get(0).getAsJsonObject().get("name").getAsString());
+
+        assertEquals(200, request("PUT", "/arming", "{\"armingStatus\": \"ARMED_AWAY\"}").status);
+        Reply activated = request("PUT", "/sensors/" + id + "/active", "{\"active\": true}");
+        assertEquals(200, activated.status);
+        assertTrue(activated.json().get("active").getAsBoolean());
+        assertEquals(AlarmStatus.PENDING_ALARM, securityService.getAlarmStatus());
+
+        JsonObject status = request("GET", "/status", null).json();
+        assertEquals("PENDING_ALARM", status.get("alarmStatus").getAsString());
+        assertEquals(1, status.get("activeSensorCount").getAsInt());
+
+        assertEquals(204, request("DELETE", "/sensors/" + id, null).status);
+        assertEquals(404, request("GET", "/sensors/" + id, null).status);
+        assertEquals(0, securityService.getSensors().size());
+    }
+
+    @Test
+    void badRequests_getErrorStatus() throws IOException {
+        assertEquals(400, request("PUT", "/arming", "{\"armingStatus\": \"ARMED_MOSTLY\"}").status);
+        assertEquals(400, request("POST", "/sensors", "not json").status);
+        assertEquals(400, request("POST", "/sensors", "{\"name\": \"no type\"}").status);
+        assertEquals(404, request("GET", "/sensors/not-a-uuid", null).status);
+        assertEquals(405, request("DELETE", "/status", null).status);
+        assertEquals(400, request("POST", "/images", "not an image").status);
+    }
+
+    @Test
+    void image_isProcessed() throws IOException {
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB), "png", png);
+        HttpURLConnection connection = open("POST", "/images?camera=garden");
+        connection.setDoOutput(true);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(png.toByteArray());
+        }
+        assertEquals(200, connection.getResponseCode());
+    }
+
+    @Test
+    void events_streamStateChanges() throws IOException {
+        HttpURLConnection connection = open("GET", "/events");
+        connection.setReadTimeout(5_000);
+        assertEquals(200, connection.getResponseCode());
+        assertTrue(connection.getContentType().startsWith("text/event-stream"));
+        try (BufferedReader events = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+            //the stream opens with the current state
+            skipTo(events, "data: {\"armingStatus\":\"DISARMED\"}");
+            assertEquals(200, request("PUT", "/arming", "{\"armingStatus\": \"ARMED_HOME\"}").status);
+            skipTo(events, "data: {\"armingStatus\":\"ARMED_HOME\"}");
+        }
+    }
+
+    /**
+     * Open event streams must not take the threads that answer the other endpoints, even when there
+     * are more of them than the request pool has threads.
+     */
+    @Test
+    void events_manyStreamsDoNotStarveRequests() throws IOException {
+        List<HttpURLConnection> streams = new ArrayList<>();
+        try {
+            for (int i = 0; i < Runtime.getRuntime().availableProcessors() * 4 + 4; i++) {
+                HttpURLConnection stream = open("GET", "/events");
+                stream.setReadTimeout(5_000);
+                assertEquals(200, stream.getResponseCode());
+                streams.add(stream);
+            }
+            HttpURLConnection status = open("GET", "/status");
+            status.setReadTimeout(5_000);
+            assertEquals(200, status.getResponseCode());
+        } finally {
+            streams.forEach(HttpURLConnection::disconnect);
+        }
+    }
+
+    @Test
+    void events_beyondSubscriberLimit_refused() throws IOException {
+        server.close();
+        server = new CatpointServer(securityService, new InetSocketAddress("127.0.0.1", 0), null, 2);
+        server.start();
+        List<HttpURLConnection> streams = new ArrayList<>();
+        try {
+            for (int i = 0; i < 2; i++) {
+                HttpURLConnection stream = open("GET", "/events");
+                assertEquals(200, stream.getResponseCode());
+                streams.add(stream);
+            }
+            assertEquals(503, request("GET", "/events", null).status);
+            assertEquals(200, request("GET", "/status", null).status);
+        } finally {
+            streams.forEach(HttpURLConnection::disconnect);
+        }
+    }
+
+    /**
+     * The headless default repository: sensors posted from many clients at once must all be stored,
+     * far past what the preferences could hold, and still be there after a restart.
+     */
+    @Test
+    void concurrentPosts_allStoredInWriteAheadLog() throws Exception {
+        server.close();
+        int sensors = 400;
+        try (WriteAheadLogSecurityRepositoryImpl repository = new WriteAheadLogSecurityRepositoryImpl(directory)) {
+            securityService = new ConcurrentSecurityService(repository, new FakeImageService());
+            server = new CatpointServer(securityService, new InetSocketAddress("127.0.0.1", 0));
+            server.start();
+            ExecutorService clients = Executors.newFixedThreadPool(8);
+            try {
+                List<Future<Integer>> replies = new ArrayList<>();
+                for (int i = 0; i < sensors; i++) {
+                    String body = "{\"name\": \"sensor " + i + "\", \"sensorType\": \"WINDOW\"}";
+                    replies.add(clients.submit(() -> request("POST", "/sensors", body).status));
+                }
+                for (Future<Integer> reply : replies) {
+                    assertEquals(201, (int) reply.get());
+                }
+            } finally {
+                clients.shutdown();
+            }
+            server.close();
+        }
+        try (WriteAheadLogSecurityRepositoryImpl reopened = new WriteAheadLogSecurityRepositoryImpl(directory)) {
+            assertEquals(sensors, reopened.getSensorCount());
+        }
+    }
+
+    /**
+     * Reads lines until the expected one; the read timeout fails the test if it never comes.
+     */
+    private static void skipTo(BufferedReader events, String expected) throws IOException {
+        String line;
+        do {
+            line = events.readLine();
+            assertNotNull(line);
+        } while (!line.equals(expected));
+    }
+
+    private Reply request(String method, String path, String body) throws IOException {
+        HttpURLConnection connection = open(method, path);
+        if (body != null) {
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        int status = connection.getResponseCode();
+        InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        String text = in == null ? "" : new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        return new Reply(status, text);
+    }
+
+    private HttpURLConnection open(String method, String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + server.getAddress().getPort() + path).openConnection();
+        connection.setRequestMethod(method);
+        return connection;
+    }
+
+    private static final class Reply {
+        private final int status;
+        private final String body;
+
+        private Reply(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        private JsonObject json() {
+            return JsonParser.parseString(body).getAsJsonObject();
+        }
+    }
+}
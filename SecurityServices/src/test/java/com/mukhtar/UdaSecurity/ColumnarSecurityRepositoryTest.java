@@ -0,0 +1,89 @@
+package com.mukhtar.UdaSecurity;
+
+import com.mukhtar.UdaSecurity.data.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ColumnarSecurityRepositoryTest {
+
+    @Test
+    void getSensors_returnsCopiesUntilUpdated() {
+        ColumnarSecurityRepositoryImpl repository = new ColumnarSecurityRepositoryImpl();
+        Sensor door = new Sensor("front door", SensorType.DOOR);
+        repository.addSensor(door);
+
+        Sensor copy = repository.getSensors().iterator().next();
+        assertNotSame(door, copy);
+        assertEquals(door, copy);
+        assertEquals("front door", copy.getName());
+        assertEquals(SensorType.DOOR, copy.getSensorType());
+        assertFalse(copy.getActive());
+
+        copy.setActive(true);
+        assertFalse(repository.anySensorActive());
+        repository.updateSensor(copy);
+        assertTrue(repository.anySensorActive());
+        assertTrue(repository.getSensors().iterator().next().getActive());
+    }
+
+    /**
+     * Enough sensors to span several activation words and index resizes, with removals moving the
+     * last row around; the table must keep matching a plain sorted set.
+     */
+    @Test
+    void randomChanges_matchSortedSetAndCounts() {
+        Random random = new Random(11);
+        List<Sensor> live = new ArrayList<>();
+        ColumnarSecurityRepositoryImpl repository = new ColumnarSecurityRepositoryImpl();
+        for (int i = 0; i < 20_000; i++) {
+            int action = random.nextInt(5);
+            if (action <= 1 || live.isEmpty()) {
+                Sensor sensor = new Sensor("sensor " + random.nextInt(1000), SensorType.values()[random.nextInt(3)]);
+                live.add(sensor);
+                repository.addSensor(sensor);
+            } else if (action == 2) {
+                repository.removeSensor(live.remove(random.nextInt(live.size())));
+            } else if (action == 3) {
+                Sensor sensor = live.get(random.nextInt(live.size()));
+                sensor.setSensorType(SensorType.values()[random.nextInt(3)]);
+                repository.updateSensor(sensor);
+            } else {
+                Sensor sensor = live.get(random.nextInt(live.size()));
+                sensor.setActive(!sensor.getActive());
+                repository.updateSensor(sensor);
+            }
+            if (i % 1000 == 0) {
+                assertMatches(live, repository);
+            }
+        }
+        assertMatches(live, repository);
+    }
+
+    private static void assertMatches(List<Sensor> live, ColumnarSecurityRepositoryImpl repository) {
+        List<Sensor> expected = new ArrayList<>(new TreeSet<>(live));
+        List<Sensor> actual = new ArrayList<>(repository.getSensors());
+        assertEquals(expected, actual);
+        Iterator<Sensor> copies = actual.iterator();
+        for (Sensor sensor : expected) {
+            Sensor copy = copies.next();
+            assertEquals(sensor.getName(), copy.getName());
+            assertEquals(sensor.getSensorType(), copy.getSensorType());
+            assertEquals(sensor.getActive(), copy.getActive());
+        }
+        SensorStatistics statistics = SensorStatistics.of(live);
+        assertEquals(live.size(), repository.getSensorCount());
+        assertEquals(statistics.getActiveCount(), repository.getActiveSensorCount());
+        assertEquals(statistics.getActiveCount() > 0, repository.anySensorActive());
+        for (SensorType type : SensorType.values()) {
+            assertEquals(statistics.getSensorCount(type), repository.getSensorStatistics().getSensorCount(type));
+            assertEquals(statistics.getActiveCount(type), repository.getSensorStatistics().getActiveCount(type));
+        }
+    }
+}
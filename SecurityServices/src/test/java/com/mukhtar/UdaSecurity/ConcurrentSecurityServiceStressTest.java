@@ -0,0 +1,252 @@
+package com.mukhtar.UdaSecurity;
+
+import com.mukhtar.UdaSecurity.Service.FakeImageService;
+import com.mukhtar.UdaSecurity.Services.AlarmEngine;
+import com.mukhtar.UdaSecurity.Services.AlarmEventLog;
+import com.mukhtar.UdaSecurity.Services.ConcurrentSecurityService;
+import com.mukhtar.UdaSecurity.application.StatusListener;
+import com.mukhtar.UdaSecurity.data.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Hammers ConcurrentSecurityService from many threads and checks that no alarm transition is
+ * lost or announced twice.
+ */
+class ConcurrentSecurityServiceStressTest {
+
+    private static final int THREADS = 8;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void simultaneousActivations_raiseAlarmExactlyOnce() throws Exception {
+        for (int round = 0; round < 50; round++) {
+            try (WriteAheadLogSecurityRepositoryImpl repository =
+                         new WriteAheadLogSecurityRepositoryImpl(directory.resolve("round" + round))) {
+                ConcurrentSecurityService securityService = new ConcurrentSecurityService(repository, new FakeImageService());
+                List<Sensor> sensors = addSensors(securityService, THREADS * 4);
+                securityService.setArmingStatus(ArmingStatus.ARMED_AWAY);
+                RecordingListener listener = new RecordingListener();
+                securityService.addStatusListener(listener);
+
+                runConcurrently(thread -> {
+                    for (int i = thread; i < sensors.size(); i += THREADS) {
+                        securityService.changeSensorActivationStatus(sensors.get(i), true);
+                    }
+                });
+
+                assertEquals(List.of(AlarmStatus.PENDING_ALARM, AlarmStatus.ALARM), listener.alarmStatuses);
+                assertEquals(AlarmStatus.ALARM, securityService.getAlarmStatus());
+                assertEquals(AlarmStatus.ALARM, repository.getAlarmStatus());
+                assertTrue(securityService.allSensorsByStatus(true));
+            }
+        }
+    }
+
+    @Test
+    void randomFlips_announceEveryTransitionInOrder() throws Exception {
+        try (WriteAheadLogSecurityRepositoryImpl repository = new WriteAheadLogSecurityRepositoryImpl(directory)) {
+            ConcurrentSecurityService securityService = new ConcurrentSecurityService(repository, new FakeImageService());
+            List<Sensor> sensors = addSensors(securityService, 16);
+            securityService.setArmingStatus(ArmingStatus.ARMED_AWAY);
+            RecordingListener listener = new RecordingListener();
+            securityService.addStatusListener(listener);
+            long startVersion = securityService.getStateVersion();
+
+            runConcurrently(thread -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 2_000; i++) {
+                    securityService.changeSensorActivationStatus(sensors.get(random.nextInt(sensors.size())),
+                            random.nextBoolean());
+                }
+            });
+
+            List<AlarmStatus> announced = listener.alarmStatuses;
+            assertEquals(securityService.getStateVersion() - startVersion, announced.size());
+            AlarmStatus previous = AlarmStatus.NO_ALARM;
+            for (AlarmStatus next : announced) {
+                assertTrue(isLegal(previous, next), previous + " -> " + next);
+                previous = next;
+            }
+            assertEquals(previous, securityService.getAlarmStatus());
+            assertEquals(previous, repository.getAlarmStatus());
+        }
+    }
+
+    /**
+     * Events recorded from many threads at once must be logged in the order they were applied, so
+     * replaying the log makes the same alarm transitions the service announced and ends up where
+     * the service did.
+     */
+    @Test
+    void recordedFromManyThreads_replaysToSameTransitions() throws Exception {
+        BufferedImage noCat = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+        BufferedImage cat = new BufferedImage(2, 1, BufferedImage.TYPE_INT_RGB);
+        RecordingListener listener = new RecordingListener();
+        ArmingStatus finalArmingStatus;
+        long activeSensors;
+
+        try (WriteAheadLogSecurityRepositoryImpl repository = new WriteAheadLogSecurityRepositoryImpl(directory.resolve("repository"));
+             AlarmEventLog log = new AlarmEventLog(directory.resolve("events"), new AlarmEngine())) {
+            ConcurrentSecurityService securityService = new ConcurrentSecurityService(repository,
+                    (image, threshold) -> image.getWidth() > 1);
+            securityService.setAlarmEventLog(log);
+            securityService.addStatusListener(listener);
+            //few sensors, so all of them being inactive is common and cat verdicts depend on them
+            List<Sensor> sensors = addSensors(securityService, 2);
+
+            runConcurrently(thread -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 500; i++) {
+                    int action = random.nextInt(20);
+                    if (action == 0) {
+                        securityService.setArmingStatus(ArmingStatus.values()[random.nextInt(3)]);
+                    } else if (action < 6) {
+                        securityService.processImage("camera " + thread, random.nextBoolean() ? cat : noCat);
+                    } else {
+                        securityService.changeSensorActivationStatus(sensors.get(random.nextInt(sensors.size())),
+                                random.nextBoolean());
+                    }
+                }
+            });
+
+            finalArmingStatus = securityService.getArmingStatus();
+            activeSensors = sensors.stream().filter(Sensor::getActive).count();
+            assertEquals(securityService.getAlarmStatus(), log.getEngine().getAlarmStatus());
+            assertEquals(securityService.isCatDetected(), log.getEngine().isCatDetected());
+        }
+
+        List<AlarmStatus> replayedTransitions = new ArrayList<>();
+        AlarmEngine replayed = new AlarmEngine((sequence, timestamp, previous, next) -> replayedTransitions.add(next));
+        AlarmEventLog.replay(directory.resolve("events"), replayed);
+        assertEquals(listener.alarmStatuses, replayedTransitions);
+        assertEquals(finalArmingStatus, replayed.getArmingStatus());
+        assertEquals(activeSensors, replayed.getActiveSensorCount());
+    }
+
+    /**
+     * A cat verdict given while a sensor change is still on its way to the repository must be
+     * logged after that change, since it was decided with the sensor active.
+     */
+    @Test
+    void catVerdictDuringSensorChange_isLoggedAfterIt() throws Exception {
+        CountDownLatch updating = new CountDownLatch(1);
+        CountDownLatch verdictGiven = new CountDownLatch(1);
+        AtomicBoolean holdUpdates = new AtomicBoolean();
+        try (WriteAheadLogSecurityRepositoryImpl repository = new WriteAheadLogSecurityRepositoryImpl(directory.resolve("repository")) {
+                 @Override
+                 public void updateSensor(Sensor sensor) {
+                     if (holdUpdates.get()) {
+                         updating.countDown();
+                         try {
+                             //the verdict cannot be given while the change is in progress, so stop waiting for it
+                             verdictGiven.await(200, TimeUnit.MILLISECONDS);
+                         } catch (InterruptedException e) {
+                             Thread.currentThread().interrupt();
+                         }
+                     }
+                     super.updateSensor(sensor);
+                 }
+             };
+             AlarmEventLog log = new AlarmEventLog(directory.resolve("events"), new AlarmEngine())) {
+            ConcurrentSecurityService securityService = new ConcurrentSecurityService(repository, (image, threshold) -> false);
+            securityService.setAlarmEventLog(log);
+            Sensor sensor = addSensors(securityService, 1).get(0);
+            securityService.setArmingStatus(ArmingStatus.ARMED_AWAY);
+            holdUpdates.set(true);
+
+            Thread activation = new Thread(() -> securityService.changeSensorActivationStatus(sensor, true));
+            activation.start();
+            assertTrue(updating.await(5, TimeUnit.SECONDS));
+            Thread verdict = new Thread(() -> {
+                securityService.processImage(new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB));
+                verdictGiven.countDown();
+            });
+            verdict.start();
+            activation.join();
+            verdict.join();
+
+            assertEquals(AlarmStatus.PENDING_ALARM, securityService.getAlarmStatus());
+            assertEquals(AlarmStatus.PENDING_ALARM, log.getEngine().getAlarmStatus());
+        }
+    }
+
+    private static boolean isLegal(AlarmStatus from, AlarmStatus to) {
+        return switch (from) {
+            case NO_ALARM -> to == AlarmStatus.PENDING_ALARM;
+            case PENDING_ALARM -> to == AlarmStatus.ALARM || to == AlarmStatus.NO_ALARM;
+            case ALARM -> false;
+        };
+    }
+
+    private static List<Sensor> addSensors(ConcurrentSecurityService securityService, int count) {
+        List<Sensor> sensors = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Sensor sensor = new Sensor("sensor " + i, SensorType.values()[i % SensorType.values().length]);
+            securityService.addSensor(sensor);
+            sensors.add(sensor);
+        }
+        return sensors;
+    }
+
+    private interface ThreadBody {
+        void run(int thread);
+    }
+
+    private static void runConcurrently(ThreadBody body) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    body.run(thread);
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static class RecordingListener implements StatusListener {
+        final List<AlarmStatus> alarmStatuses = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void notify(AlarmStatus status) {
+            alarmStatuses.add(status);
+        }
+
+        @Override
+        public void catDetected(boolean catDetected) {
+        }
+
+        @Override
+        public void sensorStatusChanged() {
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.mukhtar.UdaSecurity;
+
+import com.mukhtar.UdaSecurity.data.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JdbcSecurityRepositoryTest {
+
+    @TempDir
+    Path directory;
+
+    private String url() {
+        return "jdbc:h2:" + directory.resolve("catpoint");
+    }
+
+    @Test
+    void reopenedRepository_keepsSensorsAndStatus() {
+        Sensor door = new Sensor("front door", SensorType.DOOR);
+        Sensor window = new Sensor("kitchen", SensorType.WINDOW);
+        try (JdbcSecurityRepositoryImpl repository = new JdbcSecurityRepositoryImpl(url())) {
+            repository.addSensor(door);
+            repository.addSensor(window);
+            door.setActive(true);
+            repository.updateSensor(door);
+            repository.removeSensor(window);
+            repository.setArmingStatus(ArmingStatus.ARMED_AWAY);
+            repository.setAlarmStatus(AlarmStatus.PENDING_ALARM);
+        }
+
+        try (JdbcSecurityRepositoryImpl reopened = new JdbcSecurityRepositoryImpl(url())) {
+            assertEquals(1, reopened.getSensors().size());
+            Sensor loaded = reopened.getSensor(door.getSensorId());
+            assertEquals("front door", loaded.getName());
+            assertEquals(SensorType.DOOR, loaded.getSensorType());
+            assertTrue(loaded.getActive());
+            assertNull(reopened.getSensor(window.getSensorId()));
+            assertEquals(ArmingStatus.ARMED_AWAY, reopened.getArmingStatus());
+            assertEquals(AlarmStatus.PENDING_ALARM, reopened.getAlarmStatus());
+        }
+    }
+
+    /**
+     * A batch mixing new and known sensors must insert the one and update the other, and the
+     * counts from the database must agree with counting the sensors one by one.
+     */
+    @Test
+    void updateSensors_upsertsBatchAndCountsMatch() {
+        try (JdbcSecurityRepositoryImpl repository = new JdbcSecurityRepositoryImpl(url())) {
+            List<Sensor> sensors = new ArrayList<>();
+            for (int i = 0; i < 1_000; i++) {
+                sensors.add(new Sensor("sensor " + i, SensorType.values()[i % SensorType.values().length]));
+            }
+            repository.updateSensors(sensors.subList(0, 500));
+            for (int i = 0; i < 1_000; i += 3) {
+                sensors.get(i).setActive(true);
+            }
+            repository.updateSensors(sensors);
+
+            assertEquals(new TreeSet<>(sensors), new TreeSet<>(repository.getSensors()));
+            SensorStatistics expected = SensorStatistics.of(sensors);
+            assertEquals(expected.toString(), repository.getSensorStatistics().toString());
+            assertEquals(expected.getSensorCount(), repository.getSensorCount());
+            assertEquals(expected.getActiveCount(), repository.getActiveSensorCount());
+            assertTrue(repository.anySensorActive());
+        }
+    }
+
+    @Test
+    void migrateFrom_copiesLegacyStateOnlyIntoEmptyDatabase() {
+        Sensor motion = new Sensor("hallway", SensorType.MOTION);
+        motion.setActive(true);
+        ColumnarSecurityRepositoryImpl legacy = new ColumnarSecurityRepositoryImpl(List.of(motion));
+        legacy.setArmingStatus(ArmingStatus.ARMED_HOME);
+
+        try (JdbcSecurityRepositoryImpl repository = new JdbcSecurityRepositoryImpl(url())) {
+            assertTrue(repository.migrateFrom(legacy));
+            assertEquals(ArmingStatus.ARMED_HOME, repository.getArmingStatus());
+            assertEquals(1, repository.getActiveSensorCount());
+        }
+
+        legacy.addSensor(new Sensor("porch", SensorType.DOOR));
+        try (JdbcSecurityRepositoryImpl reopened = new JdbcSecurityRepositoryImpl(url())) {
+            assertFalse(reopened.migrateFrom(legacy));
+            assertEquals(1, reopened.getSensorCount());
+            assertEquals(ArmingStatus.ARMED_HOME, reopened.getArmingStatus());
+        }
+    }
+}
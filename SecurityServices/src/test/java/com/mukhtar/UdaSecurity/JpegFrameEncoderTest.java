@@ -0,0 +1,49 @@
+package com.mukhtar.UdaSecurity;
+
+import com.mukhtar.UdaSecurity.Service.JpegFrameEncoder;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JpegFrameEncoderTest {
+
+    @Test
+    void largeTranslucentFrame_scaledDownAndEncoded() throws IOException {
+        JpegFrameEncoder encoder = new JpegFrameEncoder(0.7f, 640);
+        BufferedImage frame = new BufferedImage(1920, 1080, BufferedImage.TYPE_INT_ARGB);
+
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(encoder.encode(frame)));
+
+        assertEquals(640, decoded.getWidth());
+        assertEquals(360, decoded.getHeight());
+    }
+
+    @Test
+    void reusedBuffers_giveSameBytesAsFreshEncoder() throws IOException {
+        JpegFrameEncoder encoder = new JpegFrameEncoder();
+        BufferedImage small = scene(320, 240);
+        BufferedImage large = scene(1280, 960);
+
+        byte[] first = encoder.encode(large);
+        encoder.encode(small);
+        byte[] again = encoder.encode(large);
+
+        assertArrayEquals(first, again);
+        assertArrayEquals(first, new JpegFrameEncoder().encode(large));
+    }
+
+    private static BufferedImage scene(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setPaint(new GradientPaint(0, 0, Color.BLUE, width, height, Color.ORANGE));
+        g.fillRect(0, 0, width, height);
+        g.dispose();
+        return image;
+    }
+}
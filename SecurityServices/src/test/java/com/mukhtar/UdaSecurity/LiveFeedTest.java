@@ -0,0 +1,184 @@
+package com.mukhtar.UdaSecurity;
+
+import com.mukhtar.UdaSecurity.Services.CameraSource;
+import com.mukhtar.UdaSecurity.Services.DirectoryCameraSource;
+import com.mukhtar.UdaSecurity.Services.MjpegFileCameraSource;
+import com.mukhtar.UdaSecurity.application.FrameView;
+import com.mukhtar.UdaSecurity.application.LiveFeed;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LiveFeedTest {
+
+    private static final Color[] COLORS = {Color.RED, Color.GREEN, Color.BLUE};
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Frames must come out in order with junk between them skipped, and a looped file must start
+     * over; a spare of the right size must be decoded into instead of allocating a new frame.
+     */
+    @Test
+    void mjpegFile_framesInOrderLoopedAndDecodedIntoSpare() throws IOException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        for (Color color : COLORS) {
+            stream.write("--frame\r\nContent-Type: image/jpeg\r\n\r\n".getBytes());
+            stream.write(jpeg(color));
+        }
+        Path file = directory.resolve("camera.mjpeg");
+        Files.write(file, stream.toByteArray());
+
+        try (MjpegFileCameraSource source = new MjpegFileCameraSource(file)) {
+            BufferedImage spare = null;
+            for (int i = 0; i < 2 * COLORS.length; i++) {
+                BufferedImage frame = source.grabFrame(spare);
+                assertNotNull(frame);
+                if (spare != null) {
+                    assertSame(spare, frame);
+                }
+                assertColor(COLORS[i % COLORS.length], frame);
+                spare = frame;
+            }
+        }
+        try (MjpegFileCameraSource once = new MjpegFileCameraSource("once", file, false)) {
+            for (int i = 0; i < COLORS.length; i++) {
+                assertNotNull(once.grabFrame());
+            }
+            assertNull(once.grabFrame());
+        }
+    }
+
+    @Test
+    void directory_showsNewestPictureOnce() throws Exception {
+        try (DirectoryCameraSource source = new DirectoryCameraSource(directory)) {
+            assertNull(source.grabFrame());
+            Files.write(directory.resolve("1.jpg"), jpeg(Color.RED));
+            Files.write(directory.resolve("notes.txt"), new byte[]{1, 2, 3});
+            Files.write(directory.resolve("2.jpg"), jpeg(Color.BLUE));
+
+            BufferedImage frame = null;
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (frame == null && System.nanoTime() < deadline) {
+                Thread.sleep(20);
+                frame = source.grabFrame();
+            }
+            assertNotNull(frame);
+            assertColor(Color.BLUE, frame);
+            assertNull(source.grabFrame());
+        }
+    }
+
+    /**
+     * Frames offered faster than the view paints must replace each other rather than queue, and
+     * frames the view is done with must come back as spares.
+     */
+    @Test
+    void frameView_dropsUnpaintedFramesAndHandsThemBack() {
+        FrameView view = new FrameView(40, 30);
+        view.setSize(40, 30);
+        BufferedImage[] frames = new BufferedImage[COLORS.length];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = picture(COLORS[i], 40, 30);
+            view.offer(frames[i]);
+        }
+        assertEquals(2, view.getFramesDropped());
+        assertSame(frames[1], view.takeSpare());
+        assertNull(view.takeSpare());
+
+        BufferedImage screen = paint(view);
+        assertEquals(1, view.getFramesShown());
+        assertEquals(Color.BLUE.getRGB(), screen.getRGB(20, 15));
+
+        //a still is never handed back to be overwritten
+        BufferedImage still = picture(Color.GREEN, 40, 30);
+        view.showStill(still);
+        paint(view);
+        assertSame(frames[2], view.takeSpare());
+        view.offer(frames[0]);
+        paint(view);
+        assertNull(view.takeSpare());
+        assertEquals(Color.RED.getRGB(), view.copyOfShownFrame().getRGB(20, 15));
+    }
+
+    @Test
+    void liveFeed_streamsToViewAndClosesSource() throws InterruptedException {
+        AtomicInteger grabs = new AtomicInteger();
+        AtomicInteger closed = new AtomicInteger();
+        class CountingSource implements CameraSource, AutoCloseable {
+            @Override
+            public String getName() {
+                return "counting";
+            }
+
+            @Override
+            public BufferedImage grabFrame() {
+                grabs.incrementAndGet();
+                return picture(Color.RED, 8, 6);
+            }
+
+            @Override
+            public void close() {
+                closed.incrementAndGet();
+            }
+        }
+        FrameView view = new FrameView(8, 6);
+        LiveFeed feed = new LiveFeed(new CountingSource(), view, 30);
+        Thread.sleep(500);
+        feed.close();
+
+        //about 15 frames in half a second; a burst or a stall would be far off
+        assertTrue(grabs.get() >= 5 && grabs.get() <= 25, "grabs " + grabs.get());
+        assertEquals(grabs.get(), feed.getFramesGrabbed());
+        //nothing paints the view, so every frame but the last was dropped
+        assertEquals(grabs.get() - 1, view.getFramesDropped());
+        assertEquals(1, closed.get());
+        assertThrows(IllegalArgumentException.class, () -> new LiveFeed(new CountingSource(), view, 0));
+    }
+
+    private static BufferedImage paint(FrameView view) {
+        BufferedImage screen = new BufferedImage(view.getWidth(), view.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = screen.createGraphics();
+        try {
+            view.paint(g);
+        } finally {
+            g.dispose();
+        }
+        return screen;
+    }
+
+    private static void assertColor(Color expected, BufferedImage frame) {
+        Color actual = new Color(frame.getRGB(frame.getWidth() / 2, frame.getHeight() / 2));
+        assertTrue(Math.abs(expected.getRed() - actual.getRed()) < 16
+                && Math.abs(expected.getGreen() - actual.getGreen()) < 16
+                && Math.abs(expected.getBlue() - actual.getBlue()) < 16, expected + " but was " + actual);
+    }
+
+    private static byte[] jpeg(Color color) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(picture(color, 64, 48), "jpg", out);
+        return out.toByteArray();
+    }
+
+    private static BufferedImage picture(Color color, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(color);
+        g.fillRect(0, 0, width, height);
+        g.dispose();
+        return image;
+    }
+}
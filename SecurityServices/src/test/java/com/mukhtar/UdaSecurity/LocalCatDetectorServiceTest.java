@@ -0,0 +1,80 @@
+package com.mukhtar.UdaSecurity;
+
+import com.mukhtar.UdaSecurity.Service.CatDetectorModel;
+import com.mukhtar.UdaSecurity.Service.HogDescriptor;
+import com.mukhtar.UdaSecurity.Service.LocalCatDetectorService;
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Uses a hand-made model that fires on vertical edges, standing in for a trained one.
+ */
+class LocalCatDetectorServiceTest {
+
+    private static final int BINS = 9;
+
+    private final CatDetectorModel verticalEdgeModel = verticalEdgeModel();
+
+    @Test
+    void verticalStripes_detected() {
+        LocalCatDetectorService detector = new LocalCatDetectorService(verticalEdgeModel);
+
+        assertTrue(detector.imageContainsCat(stripes(true), 90.0f));
+        assertFalse(detector.imageContainsCat(stripes(false), 10.0f));
+        assertFalse(detector.imageContainsCat(new BufferedImage(320, 240, BufferedImage.TYPE_INT_RGB), 10.0f));
+    }
+
+    @Test
+    void modelSurvivesRoundTrip() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        verticalEdgeModel.write(out);
+        CatDetectorModel read = CatDetectorModel.read(new ByteArrayInputStream(out.toByteArray()));
+
+        BufferedImage image = stripes(true);
+        assertEquals(new LocalCatDetectorService(verticalEdgeModel).catConfidence(image),
+                new LocalCatDetectorService(read).catConfidence(image));
+    }
+
+    @Test
+    void truncatedModel_rejected() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        verticalEdgeModel.write(out);
+        byte[] truncated = java.util.Arrays.copyOf(out.toByteArray(), 100);
+
+        assertThrows(IOException.class, () -> CatDetectorModel.read(new ByteArrayInputStream(truncated)));
+    }
+
+    /**
+     * Vertical edges have horizontal gradients, which land in the first and last direction bins.
+     */
+    private static CatDetectorModel verticalEdgeModel() {
+        float[] weights = new float[HogDescriptor.FEATURE_COUNT];
+        for (int i = 0; i < weights.length; i++) {
+            int bin = i % BINS;
+            weights[i] = bin == 0 || bin == BINS - 1 ? 1 : 0;
+        }
+        return new CatDetectorModel(weights, -5);
+    }
+
+    private static BufferedImage stripes(boolean vertical) {
+        BufferedImage image = new BufferedImage(320, 240, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.WHITE);
+        for (int i = 0; i < 320; i += 16) {
+            if (vertical) {
+                g.fillRect(i, 0, 8, 240);
+            } else {
+                g.fillRect(0, i, 320, 8);
+            }
+        }
+        g.dispose();
+        return image;
+    }
+}
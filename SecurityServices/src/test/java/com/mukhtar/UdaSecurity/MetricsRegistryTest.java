@@ -0,0 +1,92 @@
+package com.mukhtar.UdaSecurity;
+
+import com.mukhtar.UdaSecurity.Service.FakeImageService;
+import com.mukhtar.UdaSecurity.Service.InstrumentedImageService;
+import com.mukhtar.UdaSecurity.Services.ConcurrentSecurityService;
+import com.mukhtar.UdaSecurity.Services.SecurityService;
+import com.mukhtar.UdaSecurity.data.*;
+import com.mukhtar.UdaSecurity.metrics.LatencyHistogram;
+import com.mukhtar.UdaSecurity.metrics.SimpleMetricsRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsRegistryTest {
+
+    /**
+     * Percentiles must stay within the bucket precision over the whole range, from nanoseconds to
+     * minutes.
+     */
+    @Test
+    void histogram_percentilesWithinPrecision() {
+        for (long scale : new long[]{100, 1_000_000, 6_000_000_000L}) {
+            LatencyHistogram histogram = new LatencyHistogram();
+            for (long i = 1; i <= 10_000; i++) {
+                histogram.record(i * scale / 100);
+            }
+            LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+            assertEquals(10_000, snapshot.getCount());
+            for (double quantile : new double[]{0.5, 0.9, 0.99, 0.999}) {
+                double exact = quantile * 10_000 * scale / 100;
+                double reported = snapshot.getValueAtQuantile(quantile);
+                assertTrue(Math.abs(reported - exact) <= exact * 0.02 + 1, scale + " " + quantile + ": " + reported);
+            }
+            assertEquals(100 * scale, snapshot.getMax());
+        }
+    }
+
+    @Test
+    void histogram_clampsOutOfRangeValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        histogram.record(ThreadLocalRandom.current().nextLong(LatencyHistogram.MAX_VALUE));
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(3, snapshot.getCount());
+        assertEquals(0, snapshot.getValueAtQuantile(0.1));
+        assertEquals(LatencyHistogram.MAX_VALUE, snapshot.getValueAtQuantile(1));
+    }
+
+    @Test
+    void scrape_exportsServiceRepositoryAndImageMetrics() {
+        SimpleMetricsRegistry metrics = new SimpleMetricsRegistry();
+        SecurityService securityService = new ConcurrentSecurityService(
+                new InstrumentedSecurityRepository(new ColumnarSecurityRepositoryImpl(), metrics),
+                new InstrumentedImageService(new FakeImageService(), metrics, "fake"));
+        securityService.setMetricsRegistry(metrics);
+
+        Sensor sensor = new Sensor("door", SensorType.DOOR);
+        securityService.addSensor(sensor);
+        securityService.setArmingStatus(ArmingStatus.ARMED_AWAY);
+        securityService.changeSensorActivationStatus(sensor, true);
+        securityService.processImage(new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB));
+
+        String scrape = metrics.scrape();
+        assertTrue(scrape.contains("# TYPE catpoint_alarm_transitions_total counter\n"), scrape);
+        assertTrue(scrape.contains("catpoint_alarm_transitions_total{from=\"NO_ALARM\",to=\"PENDING_ALARM\"} 1\n"), scrape);
+        assertTrue(scrape.contains("catpoint_alarm_transitions_total{from=\"PENDING_ALARM\",to=\"ALARM\"} 0\n"), scrape);
+        assertTrue(scrape.contains("# TYPE catpoint_repository_write_seconds summary\n"), scrape);
+        assertTrue(scrape.contains("catpoint_repository_write_seconds_count{operation=\"addSensor\"} 1\n"), scrape);
+        assertTrue(scrape.contains("catpoint_repository_write_seconds{operation=\"updateSensor\",quantile=\"0.99\"} "), scrape);
+        assertTrue(scrape.contains("catpoint_sensor_change_seconds_count{kind=\"single\"} 1\n"), scrape);
+        assertTrue(scrape.contains("catpoint_image_detection_seconds_count{service=\"fake\"} 1\n"), scrape);
+        assertTrue(scrape.contains("catpoint_image_processing_seconds_count 1\n"), scrape);
+        assertTrue(scrape.contains("catpoint_image_pipeline_queue_depth 0\n"), scrape);
+    }
+
+    @Test
+    void registry_returnsSameInstrumentAndRejectsMismatches() {
+        SimpleMetricsRegistry metrics = new SimpleMetricsRegistry();
+        assertSame(metrics.counter("requests_total", "Requests", "path", "/"),
+                metrics.counter("requests_total", "Requests", "path", "/"));
+        assertNotSame(metrics.counter("requests_total", "Requests", "path", "/"),
+                metrics.counter("requests_total", "Requests", "path", "/x"));
+        assertThrows(IllegalArgumentException.class, () -> metrics.timer("requests_total", "Requests"));
+        assertThrows(IllegalArgumentException.class, () -> metrics.counter("odd_total", "Odd", "path"));
+        metrics.counter("requests_total", "Requests", "path", "/").increment();
+        assertTrue(metrics.scrape().contains("requests_total{path=\"/\"} 1\n"));
+    }
+}
@@ -0,0 +1,100 @@
+package com.mukhtar.UdaSecurity;
+
+import com.mukhtar.UdaSecurity.Service.AsyncImageServicesInterface;
+import com.mukhtar.UdaSecurity.Service.MicroBatchingImageService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MicroBatchingImageServiceTest {
+
+    private final ScheduledExecutorService remote = Executors.newScheduledThreadPool(16);
+
+    @AfterEach
+    void shutDown() {
+        remote.shutdownNow();
+    }
+
+    /**
+     * Many cameras at once must be answered correctly while no more requests than allowed are
+     * ever in flight, and a burst must go out in fewer batches than frames.
+     */
+    @Test
+    void manyCameras_answeredWithinConcurrencyLimit() throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        AsyncImageServicesInterface slowService = (image, confidenceThreshhold) -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            CompletableFuture<Boolean> answer = new CompletableFuture<>();
+            remote.schedule(() -> {
+                inFlight.decrementAndGet();
+                answer.complete(image.getWidth() % 2 == 0);
+            }, 10, TimeUnit.MILLISECONDS);
+            return answer;
+        };
+
+        try (MicroBatchingImageService batching = new MicroBatchingImageService(slowService, 4, 0, Duration.ofMillis(20), 16)) {
+            List<CompletableFuture<Boolean>> answers = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                answers.add(batching.imageContainsCatAsync(new BufferedImage(10 + i, 10, BufferedImage.TYPE_INT_RGB), 50f));
+            }
+            for (int i = 0; i < answers.size(); i++) {
+                assertEquals(i % 2 == 0, answers.get(i).get(5, TimeUnit.SECONDS));
+            }
+            assertTrue(maxInFlight.get() <= 4, "in flight " + maxInFlight.get());
+            assertEquals(200, batching.getFrameCount());
+            assertTrue(batching.getBatchCount() < 200, "batches " + batching.getBatchCount());
+        }
+    }
+
+    @Test
+    void requestsPerSecond_spreadsRequestsOut() throws Exception {
+        AsyncImageServicesInterface instantService = (image, confidenceThreshhold) -> CompletableFuture.completedFuture(true);
+        try (MicroBatchingImageService batching = new MicroBatchingImageService(instantService, 8, 100, Duration.ofMillis(5), 16)) {
+            long start = System.nanoTime();
+            List<CompletableFuture<Boolean>> answers = new ArrayList<>();
+            for (int i = 0; i < 21; i++) {
+                answers.add(batching.imageContainsCatAsync(new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB), 50f));
+            }
+            CompletableFuture.allOf(answers.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+            //21 requests at 100 per second need at least 20 gaps of 10ms
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(195));
+        }
+    }
+
+    /**
+     * A frame cancelled while it waits for a free slot must never be sent.
+     */
+    @Test
+    void cancelledFrame_isNotSent() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<Boolean> blocked = new CompletableFuture<>();
+        AsyncImageServicesInterface service = (image, confidenceThreshhold) -> {
+            calls.incrementAndGet();
+            return image.getWidth() == 1 ? blocked : CompletableFuture.completedFuture(false);
+        };
+        try (MicroBatchingImageService batching = new MicroBatchingImageService(service, 1, 0, Duration.ofMillis(1), 16)) {
+            CompletableFuture<Boolean> first = batching.imageContainsCatAsync(new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB), 50f);
+            CompletableFuture<Boolean> second = batching.imageContainsCatAsync(new BufferedImage(2, 1, BufferedImage.TYPE_INT_RGB), 50f);
+            CompletableFuture<Boolean> third = batching.imageContainsCatAsync(new BufferedImage(3, 1, BufferedImage.TYPE_INT_RGB), 50f);
+            Thread.sleep(50);
+            second.cancel(true);
+            blocked.complete(true);
+
+            assertTrue(first.get(5, TimeUnit.SECONDS));
+            assertFalse(third.get(5, TimeUnit.SECONDS));
+            assertEquals(2, calls.get());
+        }
+    }
+}
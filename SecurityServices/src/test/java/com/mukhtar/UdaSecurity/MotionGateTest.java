@@ -0,0 +1,114 @@
+package com.mukhtar.UdaSecurity;
+
+import com.mukhtar.UdaSecurity.Service.ImageServicesInterface;
+import com.mukhtar.UdaSecurity.Services.MotionGate;
+import com.mukhtar.UdaSecurity.Services.SecurityService;
+import com.mukhtar.UdaSecurity.data.ColumnarSecurityRepositoryImpl;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MotionGateTest {
+
+    private static final int[] IMAGE_TYPES = {BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB,
+            BufferedImage.TYPE_INT_BGR, BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_4BYTE_ABGR,
+            BufferedImage.TYPE_BYTE_GRAY, BufferedImage.TYPE_BYTE_INDEXED, BufferedImage.TYPE_USHORT_565_RGB};
+
+    /**
+     * A static scene with sensor noise must reach the detector only for the first frame and the
+     * periodic refresh, while a cat walking through must reach it every time it moves.
+     */
+    @Test
+    void staticScene_skipsDetectionUntilSomethingMoves() {
+        AtomicInteger detections = new AtomicInteger();
+        ImageServicesInterface detector = (image, confidenceThreshhold) -> {
+            detections.incrementAndGet();
+            return false;
+        };
+        SecurityService securityService = new SecurityService(new ColumnarSecurityRepositoryImpl(), detector);
+        securityService.setMotionGate(new MotionGate(8, 50));
+
+        Random random = new Random(42);
+        for (int i = 0; i < 100; i++) {
+            securityService.processImage("porch", scene(BufferedImage.TYPE_INT_RGB, -1, random));
+        }
+        assertEquals(2, detections.get());
+
+        detections.set(0);
+        for (int i = 0; i < 10; i++) {
+            securityService.processImage("porch", scene(BufferedImage.TYPE_INT_RGB, i * 40, random));
+        }
+        assertEquals(10, detections.get());
+    }
+
+    @Test
+    void everyImageType_seesTheSameMotion() {
+        for (int type : IMAGE_TYPES) {
+            MotionGate gate = new MotionGate();
+            Random random = new Random(7);
+            assertTrue(gate.admit("yard", scene(type, -1, random)), "first frame, type " + type);
+            assertFalse(gate.admit("yard", scene(type, -1, random)), "same scene, type " + type);
+            assertTrue(gate.admit("yard", scene(type, 100, random)), "moved, type " + type);
+            assertEquals(1, gate.getSkippedCount());
+        }
+    }
+
+    /**
+     * A sub-image shares its parent's pixel array at an offset; it must be read from its own origin.
+     */
+    @Test
+    void subImage_readFromItsOwnArea() {
+        BufferedImage parent = new BufferedImage(640, 480, BufferedImage.TYPE_3BYTE_BGR);
+        Graphics2D g = parent.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(320, 0, 320, 480);
+        g.dispose();
+
+        MotionGate gate = new MotionGate();
+        assertTrue(gate.admit("left", parent.getSubimage(0, 0, 320, 480)));
+        assertTrue(gate.admit("left", parent.getSubimage(320, 0, 320, 480)));
+        assertFalse(gate.admit("left", parent.getSubimage(320, 0, 320, 480)));
+    }
+
+    @Test
+    void forget_dropsReference() {
+        MotionGate gate = new MotionGate();
+        Random random = new Random(1);
+        assertTrue(gate.admit("garage", scene(BufferedImage.TYPE_INT_RGB, -1, random)));
+        gate.forget("garage");
+        assertTrue(gate.admit("garage", scene(BufferedImage.TYPE_INT_RGB, -1, random)));
+    }
+
+    /**
+     * A gray room with a little noise on every pixel and, unless catX is negative, a dark square.
+     */
+    private static BufferedImage scene(int type, int catX, Random random) {
+        BufferedImage image = new BufferedImage(640, 480, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                int gray = 128 + (x * 64 / image.getWidth()) + random.nextInt(7) - 3;
+                image.setRGB(x, y, gray << 16 | gray << 8 | gray);
+            }
+        }
+        if (catX >= 0) {
+            Graphics2D g = image.createGraphics();
+            g.setColor(Color.BLACK);
+            g.fillRect(catX, 200, 80, 60);
+            g.dispose();
+        }
+        if (type == BufferedImage.TYPE_INT_RGB) {
+            return image;
+        }
+        BufferedImage converted = new BufferedImage(image.getWidth(), image.getHeight(), type);
+        Graphics2D g = converted.createGraphics();
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return converted;
+    }
+}
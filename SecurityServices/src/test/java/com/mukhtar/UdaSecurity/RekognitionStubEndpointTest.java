@@ -0,0 +1,111 @@
+package com.mukhtar.UdaSecurity;
+
+import com.mukhtar.UdaSecurity.Service.AwsImageService;
+import com.mukhtar.UdaSecurity.Service.MicroBatchingImageService;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.rekognition.RekognitionAsyncClient;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the real Rekognition client against a local endpoint that answers DetectLabels like the
+ * service does.
+ */
+class RekognitionStubEndpointTest {
+
+    private static final String CAT_LABELS = "{\"Labels\":[{\"Name\":\"Cat\",\"Confidence\":97.5}],\"LabelModelVersion\":\"2.0\"}";
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private ExecutorService stubThreads;
+    private HttpServer stub;
+    private RekognitionAsyncClient client;
+
+    @BeforeEach
+    void startStub() throws IOException {
+        stubThreads = Executors.newFixedThreadPool(16);
+        stub = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        stub.setExecutor(stubThreads);
+        stub.createContext("/", exchange -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                exchange.getRequestBody().readAllBytes();
+                requests.incrementAndGet();
+                String target = exchange.getRequestHeaders().getFirst("X-Amz-Target");
+                byte[] body = "RekognitionService.DetectLabels".equals(target)
+                        ? CAT_LABELS.getBytes(StandardCharsets.UTF_8)
+                        : "{\"__type\":\"UnknownOperationException\"}".getBytes(StandardCharsets.UTF_8);
+                Thread.sleep(20);
+                exchange.getResponseHeaders().set("Content-Type", "application/x-amz-json-1.1");
+                exchange.sendResponseHeaders(body.length > 40 ? 200 : 400, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                inFlight.decrementAndGet();
+                exchange.close();
+            }
+        });
+        stub.start();
+        client = RekognitionAsyncClient.builder()
+                .endpointOverride(URI.create("http://localhost:" + stub.getAddress().getPort()))
+                .region(Region.US_EAST_1)
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("test", "test")))
+                .build();
+    }
+
+    @AfterEach
+    void stopStub() {
+        client.close();
+        stub.stop(0);
+        stubThreads.shutdownNow();
+    }
+
+    @Test
+    void batchedFrames_allAnsweredWithinConcurrencyLimit() throws Exception {
+        try (MicroBatchingImageService batching = new MicroBatchingImageService(new AwsImageService(client),
+                4, 0, Duration.ofMillis(20), 16)) {
+            List<CompletableFuture<Boolean>> answers = new ArrayList<>();
+            for (int camera = 0; camera < 32; camera++) {
+                answers.add(batching.imageContainsCatAsync(new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB), 50f));
+            }
+            for (CompletableFuture<Boolean> answer : answers) {
+                assertTrue(answer.get(30, TimeUnit.SECONDS));
+            }
+        }
+        assertEquals(32, requests.get());
+        assertTrue(maxInFlight.get() <= 4, "in flight " + maxInFlight.get());
+        assertTrue(maxInFlight.get() > 1, "requests were not sent concurrently");
+    }
+
+    @Test
+    void blockingCall_answersFromStub() {
+        assertTrue(new AwsImageService(client).imageContainsCat(new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB), 50f));
+        assertEquals(1, requests.get());
+    }
+}
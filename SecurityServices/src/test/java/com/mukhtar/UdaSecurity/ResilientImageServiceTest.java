@@ -0,0 +1,177 @@
+package com.mukhtar.UdaSecurity;
+
+import com.mukhtar.UdaSecurity.Service.ImageServicesInterface;
+import com.mukhtar.UdaSecurity.Service.NoVerdictException;
+import com.mukhtar.UdaSecurity.Service.ResilientImageService;
+import com.mukhtar.UdaSecurity.Services.SecurityService;
+import com.mukhtar.UdaSecurity.data.WriteAheadLogSecurityRepositoryImpl;
+import com.mukhtar.UdaSecurity.metrics.SimpleMetricsRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResilientImageServiceTest {
+
+    private static final BufferedImage IMAGE = new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB);
+    private static final ImageServicesInterface FALLBACK_SEES_CAT = (image, confidenceThreshhold) -> true;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void slowService_timesOutToFallback() {
+        ImageServicesInterface hung = (image, confidenceThreshhold) -> {
+            try {
+                Thread.sleep(5_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return false;
+        };
+        ResilientImageService resilient = new ResilientImageService(hung, FALLBACK_SEES_CAT,
+                Duration.ofMillis(50), 8, 100, Duration.ofSeconds(30));
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 7; i++) {
+            assertTrue(resilient.imageContainsCat(IMAGE, 50f));
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+        assertEquals(1, resilient.getConcurrencyLimit());
+        assertTrue(resilient.getTimeoutCount() >= 1);
+    }
+
+    /**
+     * After a run of failures the service must not be called until the open time has passed, and
+     * one good trial call must close the circuit again.
+     */
+    @Test
+    void failingService_opensCircuitThenRecovers() throws InterruptedException {
+        AtomicInteger calls = new AtomicInteger();
+        AtomicBoolean healthy = new AtomicBoolean(false);
+        ImageServicesInterface flaky = (image, confidenceThreshhold) -> {
+            calls.incrementAndGet();
+            if (!healthy.get()) {
+                throw new IllegalStateException("backend down");
+            }
+            return false;
+        };
+        ResilientImageService resilient = new ResilientImageService(flaky, FALLBACK_SEES_CAT,
+                Duration.ofSeconds(1), 8, 3, Duration.ofMillis(100));
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(resilient.imageContainsCat(IMAGE, 50f));
+        }
+        assertEquals(3, calls.get());
+        assertEquals("OPEN", resilient.getCircuitState());
+        assertEquals(7, resilient.getShedCount());
+
+        Thread.sleep(150);
+        healthy.set(true);
+        assertFalse(resilient.imageContainsCat(IMAGE, 50f));
+        assertEquals("CLOSED", resilient.getCircuitState());
+        assertEquals(4, calls.get());
+    }
+
+    @Test
+    void withoutFallback_givesNoVerdict() {
+        AtomicBoolean down = new AtomicBoolean(false);
+        ImageServicesInterface service = (image, confidenceThreshhold) -> {
+            if (down.get()) {
+                throw new IllegalStateException("backend down");
+            }
+            return true;
+        };
+        ResilientImageService resilient = new ResilientImageService(service, null);
+        assertTrue(resilient.imageContainsCat(IMAGE, 50f));
+        down.set(true);
+        assertThrows(NoVerdictException.class, () -> resilient.imageContainsCat(IMAGE, 50f));
+        assertEquals(1, resilient.getFailureCount());
+    }
+
+    /**
+     * During an outage without a fallback each camera must keep its own last verdict, not take
+     * the one another camera got last.
+     */
+    @Test
+    void outageWithoutFallback_eachCameraKeepsItsVerdict() throws IOException {
+        BufferedImage catImage = new BufferedImage(2, 2, BufferedImage.TYPE_INT_RGB);
+        BufferedImage emptyImage = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+        AtomicBoolean down = new AtomicBoolean(false);
+        ImageServicesInterface service = (image, confidenceThreshhold) -> {
+            if (down.get()) {
+                throw new IllegalStateException("backend down");
+            }
+            return image.getWidth() > 1;
+        };
+        ResilientImageService resilient = new ResilientImageService(service, null,
+                Duration.ofSeconds(1), 8, 100, Duration.ofSeconds(30));
+        try (WriteAheadLogSecurityRepositoryImpl repository = new WriteAheadLogSecurityRepositoryImpl(directory)) {
+            SecurityService securityService = new SecurityService(repository, resilient);
+            securityService.processImage("hall", emptyImage);
+            securityService.processImage("garden", catImage);
+            assertTrue(securityService.isCatDetected());
+
+            down.set(true);
+            securityService.processImage("hall", emptyImage);
+            securityService.processImage("garden", emptyImage);
+            assertTrue(securityService.isCatDetected());
+            assertEquals(2, resilient.getFailureCount());
+
+            //only the garden saw the cat, so once it stops seeing it nobody does
+            down.set(false);
+            securityService.processImage("garden", emptyImage);
+            assertFalse(securityService.isCatDetected());
+        }
+    }
+
+    /**
+     * Calls beyond the concurrency limit must be answered at once instead of queueing behind the
+     * calls in flight, and be counted as shed.
+     */
+    @Test
+    void overload_shedsCallsBeyondLimit() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch entered = new CountDownLatch(2);
+        ImageServicesInterface blocking = (image, confidenceThreshhold) -> {
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return false;
+        };
+        ResilientImageService resilient = new ResilientImageService(blocking, FALLBACK_SEES_CAT,
+                Duration.ofSeconds(10), 2, 100, Duration.ofSeconds(30));
+        Thread[] callers = new Thread[2];
+        for (int i = 0; i < callers.length; i++) {
+            callers[i] = new Thread(() -> resilient.imageContainsCat(IMAGE, 50f));
+            callers[i].start();
+        }
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+        assertTrue(resilient.imageContainsCat(IMAGE, 50f));
+        assertEquals(1, resilient.getShedCount());
+
+        SimpleMetricsRegistry metrics = new SimpleMetricsRegistry();
+        resilient.bindTo(metrics);
+        String scrape = metrics.scrape();
+        assertTrue(scrape.contains("catpoint_image_requests_shed_total{reason=\"concurrency_limit\"} 1\n"), scrape);
+        assertTrue(scrape.contains("catpoint_image_requests_active 2\n"), scrape);
+
+        release.countDown();
+        for (Thread caller : callers) {
+            caller.join();
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.mukhtar.UdaSecurity;
 
 import com.mukhtar.UdaSecurity.Service.ImageServicesInterface;
+import com.mukhtar.UdaSecurity.Service.NoVerdictException;
+import com.mukhtar.UdaSecurity.Services.MotionGate;
 import com.mukhtar.UdaSecurity.Services.SecurityService;
 import com.mukhtar.UdaSecurity.application.StatusListener;
 import com.mukhtar.UdaSecurity.data.*;
@@ -21,6 +23,8 @@ import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -166,6 +170,17 @@ class SecurityServiceTest {
         securityService.setArmingStatus(ArmingStatus.ARMED_HOME);
         verify(SecurityRepository, times(2)).setAlarmStatus(AlarmStatus.ALARM);
     }
+    /**
+     * The asynchronous scan reaches the same verdict as processImage, applied on the callback executor.
+     */
+    @Test
+    void Cat_Identified_Async_while_Armed_Home_AlarmStatusAlarm() throws Exception {
+        when(SecurityRepository.getArmingStatus()).thenReturn(ArmingStatus.ARMED_HOME);
+        when(ImageServices.imageContainsCat(any(), anyFloat())).thenReturn(true);
+        assertTrue(securityService.processImageAsync(new BufferedImage(64, 64, BufferedImage.TYPE_INT_RGB), Runnable::run).get());
+        verify(SecurityRepository).setAlarmStatus(AlarmStatus.ALARM);
+    }
+
     /**
      * *8.If the image service identifies an image that does not contain a cat,
      * * change the status to no alarm as long as the sensors are not active.
@@ -179,6 +194,57 @@ class SecurityServiceTest {
        verify(SecurityRepository).setAlarmStatus(AlarmStatus.NO_ALARM);
     }
 
+    /**
+     * The sensor check is answered by the repository, so an active sensor there must keep the alarm.
+     */
+    @Test
+    void ImageService_Identifies_No_Cat_While_Sensor_Active_Keeps_Alarm(){
+        when(SecurityRepository.getAlarmStatus()).thenReturn(AlarmStatus.ALARM);
+        when(SecurityRepository.anySensorActive()).thenReturn(true);
+        when(ImageServices.imageContainsCat(any(), anyFloat())).thenReturn(false);
+        securityService.processImage(new BufferedImage(600, 400, BufferedImage.TYPE_INT_RGB));
+        verify(SecurityRepository, never()).setAlarmStatus(any(AlarmStatus.class));
+    }
+
+    @Test
+    void ImageService_Identifies_No_Cat_While_All_Sensors_Inactive_AlarmStatusNoAlarm(){
+        when(SecurityRepository.getAlarmStatus()).thenReturn(AlarmStatus.PENDING_ALARM);
+        when(SecurityRepository.anySensorActive()).thenReturn(false);
+        when(ImageServices.imageContainsCat(any(), anyFloat())).thenReturn(false);
+        securityService.processImage(new BufferedImage(600, 400, BufferedImage.TYPE_INT_RGB));
+        verify(SecurityRepository).setAlarmStatus(AlarmStatus.NO_ALARM);
+    }
+
+    /**
+     * A frame that got no verdict must not become the motion gate's reference, or the same scene
+     * would skip detection until something moved.
+     */
+    @Test
+    void ImageService_Without_Verdict_Same_Frame_Analysed_Again(){
+        securityService.setMotionGate(new MotionGate());
+        when(SecurityRepository.getArmingStatus()).thenReturn(ArmingStatus.ARMED_HOME);
+        when(ImageServices.imageContainsCat(any(), anyFloat()))
+                .thenThrow(new NoVerdictException("backend down"))
+                .thenThrow(new IllegalStateException("backend down"))
+                .thenReturn(true);
+        BufferedImage catImage = new BufferedImage(600, 400, BufferedImage.TYPE_INT_RGB);
+        securityService.processImage(catImage);
+        assertThrows(IllegalStateException.class, () -> securityService.processImage(catImage));
+        securityService.processImage(catImage);
+        verify(ImageServices, times(3)).imageContainsCat(any(), anyFloat());
+        verify(SecurityRepository).setAlarmStatus(AlarmStatus.ALARM);
+    }
+
+    @Test
+    void allSensorsByStatus_Answered_From_Repository_Counts(){
+        when(SecurityRepository.anySensorActive()).thenReturn(true);
+        when(SecurityRepository.getSensorCount()).thenReturn(3);
+        when(SecurityRepository.getActiveSensorCount()).thenReturn(2, 3);
+        assertFalse(securityService.allSensorsByStatus(false));
+        assertFalse(securityService.allSensorsByStatus(true));
+        assertTrue(securityService.allSensorsByStatus(true));
+    }
+
     /**
      * *9.If the system is disarmed, set the status to no alarm.
      */
@@ -208,6 +274,23 @@ class SecurityServiceTest {
         securityService.getSensors().forEach(sensor -> {assertFalse(sensor.getActive());});
     }
 
+    /**
+     * Re-arming resets every active sensor with a single group commit and one listener update.
+     */
+    @Test
+    void System_Armed_Resets_Sensors_In_One_Batch(){
+        Set<Sensor> sensors = getAllSensors(3, true);
+        when(SecurityRepository.getAlarmStatus()).thenReturn(AlarmStatus.PENDING_ALARM);
+        when(SecurityRepository.getSensors()).thenReturn(sensors);
+        securityService.addStatusListener(statusListener);
+        securityService.setArmingStatus(ArmingStatus.ARMED_AWAY);
+        verify(SecurityRepository, times(1)).updateSensors(anyCollection());
+        verify(SecurityRepository, never()).updateSensor(any(Sensor.class));
+        verify(SecurityRepository, times(1)).setAlarmStatus(AlarmStatus.NO_ALARM);
+        verify(statusListener, times(1)).notify(AlarmStatus.NO_ALARM);
+        verify(statusListener, times(1)).sensorStatusChanged();
+    }
+
     /**
      * *11. Handle Sensor Deactivated, trying to increase test coverage
      * *when alarm status Pending
@@ -0,0 +1,109 @@
+package com.mukhtar.UdaSecurity;
+
+import com.mukhtar.UdaSecurity.Service.FakeImageService;
+import com.mukhtar.UdaSecurity.Services.SecurityService;
+import com.mukhtar.UdaSecurity.Services.SensorEventRingBuffer;
+import com.mukhtar.UdaSecurity.Services.WaitStrategy;
+import com.mukhtar.UdaSecurity.data.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SensorEventRingBufferTest {
+
+    private static final int PRODUCERS = 4;
+    private static final int EVENTS_PER_PRODUCER = 20_000;
+
+    /**
+     * Every producer flips its own sensors; whatever the wait strategy, every change must arrive, in
+     * order per sensor, and bursts must be handed over in batches.
+     */
+    @Test
+    void concurrentProducers_deliverEveryChangeInOrder() throws Exception {
+        for (WaitStrategy waitStrategy : WaitStrategy.values()) {
+            ColumnarSecurityRepositoryImpl repository = new ColumnarSecurityRepositoryImpl();
+            SecurityService securityService = new SecurityService(repository, new FakeImageService());
+            List<List<Sensor>> sensorsByProducer = new ArrayList<>();
+            for (int p = 0; p < PRODUCERS; p++) {
+                List<Sensor> sensors = new ArrayList<>();
+                for (int i = 0; i < 8; i++) {
+                    Sensor sensor = new Sensor("producer " + p + " sensor " + i, SensorType.DOOR);
+                    securityService.addSensor(sensor);
+                    sensors.add(sensor);
+                }
+                sensorsByProducer.add(sensors);
+            }
+
+            SensorEventRingBuffer ringBuffer = new SensorEventRingBuffer(securityService, 256, waitStrategy);
+            CountDownLatch start = new CountDownLatch(1);
+            List<Thread> producers = new ArrayList<>();
+            for (List<Sensor> sensors : sensorsByProducer) {
+                Thread producer = new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    //the last change to each sensor switches it on when its index is even
+                    for (int i = 0; i < EVENTS_PER_PRODUCER; i++) {
+                        int sensor = i % sensors.size();
+                        boolean active = ((EVENTS_PER_PRODUCER - 1 - i) / sensors.size() + sensor) % 2 == 0;
+                        ringBuffer.publish(sensors.get(sensor), active);
+                    }
+                });
+                producer.start();
+                producers.add(producer);
+            }
+            start.countDown();
+            for (Thread producer : producers) {
+                producer.join();
+            }
+            ringBuffer.close();
+
+            assertEquals((long) PRODUCERS * EVENTS_PER_PRODUCER, ringBuffer.getEventCount(), waitStrategy.name());
+            assertTrue(ringBuffer.getBatchCount() < ringBuffer.getEventCount(), waitStrategy.name());
+            assertEquals(0, ringBuffer.getFailureCount());
+            for (List<Sensor> sensors : sensorsByProducer) {
+                for (int i = 0; i < sensors.size(); i++) {
+                    assertEquals(i % 2 == 0, sensors.get(i).getActive(), waitStrategy + " " + sensors.get(i).getName());
+                }
+            }
+            assertEquals(PRODUCERS * 4, repository.getActiveSensorCount());
+        }
+    }
+
+    @Test
+    void tryPublish_failsWhenFullAndPublishFailsWhenClosed() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        SecurityService securityService = new SecurityService(new ColumnarSecurityRepositoryImpl(), new FakeImageService()) {
+            @Override
+            public void changeSensorActivationStatus(Map<Sensor, Boolean> changes) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.changeSensorActivationStatus(changes);
+            }
+        };
+        Sensor sensor = new Sensor("door", SensorType.DOOR);
+        securityService.addSensor(sensor);
+        SensorEventRingBuffer ringBuffer = new SensorEventRingBuffer(securityService, 4, WaitStrategy.SLEEPING);
+
+        int published = 0;
+        while (ringBuffer.tryPublish(sensor, published % 2 == 0)) {
+            published++;
+        }
+        //slots stay taken until the consumer is done with them
+        assertEquals(4, published);
+        release.countDown();
+        ringBuffer.close();
+        assertEquals(published, ringBuffer.getEventCount());
+        assertThrows(IllegalStateException.class, () -> ringBuffer.publish(sensor, true));
+    }
+}
@@ -0,0 +1,83 @@
+package com.mukhtar.UdaSecurity;
+
+import com.mukhtar.UdaSecurity.application.SensorTableModel;
+import com.mukhtar.UdaSecurity.data.ColumnarSecurityRepositoryImpl;
+import com.mukhtar.UdaSecurity.data.Sensor;
+import com.mukhtar.UdaSecurity.data.SensorType;
+import org.junit.jupiter.api.Test;
+
+import javax.swing.event.TableModelEvent;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SensorTableModelTest {
+
+    private static final int SENSORS = 100_000;
+
+    /**
+     * With a large list on screen, one sensor changing, appearing or going away must touch one row.
+     */
+    @Test
+    void refresh_firesOneEventPerChangedRow() {
+        ColumnarSecurityRepositoryImpl repository = new ColumnarSecurityRepositoryImpl();
+        for (int i = 0; i < SENSORS; i++) {
+            repository.addSensor(new Sensor(String.format("sensor %06d", i), SensorType.WINDOW));
+        }
+        SensorTableModel model = new SensorTableModel();
+        List<TableModelEvent> events = new ArrayList<>();
+        model.addTableModelListener(events::add);
+
+        model.refresh(repository.getSensors());
+        assertEquals(SENSORS, model.getRowCount());
+        assertEquals(1, events.size());
+        events.clear();
+
+        Sensor changed = model.getSensor(500);
+        changed.setActive(true);
+        repository.updateSensor(changed);
+        model.refresh(repository.getSensors());
+        assertEquals(1, events.size());
+        assertEquals(TableModelEvent.UPDATE, events.get(0).getType());
+        assertEquals(500, events.get(0).getFirstRow());
+        assertEquals(500, events.get(0).getLastRow());
+        assertEquals("Active", model.getValueAt(500, SensorTableModel.STATUS_COLUMN));
+        events.clear();
+
+        repository.addSensor(new Sensor("sensor 000010a", SensorType.DOOR));
+        model.refresh(repository.getSensors());
+        assertEquals(1, events.size());
+        assertEquals(TableModelEvent.INSERT, events.get(0).getType());
+        assertEquals(11, events.get(0).getFirstRow());
+        assertEquals("sensor 000010a", model.getValueAt(11, SensorTableModel.NAME_COLUMN));
+        events.clear();
+
+        repository.removeSensor(model.getSensor(0));
+        model.refresh(repository.getSensors());
+        assertEquals(1, events.size());
+        assertEquals(TableModelEvent.DELETE, events.get(0).getType());
+        assertEquals(0, events.get(0).getFirstRow());
+        assertEquals(SENSORS, model.getRowCount());
+        events.clear();
+
+        model.refresh(repository.getSensors());
+        assertEquals(0, events.size());
+    }
+
+    @Test
+    void refresh_showsStateAtRefreshForSensorsChangedInPlace() {
+        Sensor sensor = new Sensor("door", SensorType.DOOR);
+        SensorTableModel model = new SensorTableModel();
+        model.refresh(List.of(sensor));
+
+        //the in-memory repository hands out its own sensors, which the service changes in place
+        sensor.setActive(true);
+        assertEquals("Inactive", model.getValueAt(0, SensorTableModel.STATUS_COLUMN));
+        List<TableModelEvent> events = new ArrayList<>();
+        model.addTableModelListener(events::add);
+        model.refresh(List.of(sensor));
+        assertEquals(1, events.size());
+        assertEquals("Active", model.getValueAt(0, SensorTableModel.STATUS_COLUMN));
+    }
+}
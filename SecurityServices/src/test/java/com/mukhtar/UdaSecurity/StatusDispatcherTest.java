@@ -0,0 +1,111 @@
+package com.mukhtar.UdaSecurity;
+
+import com.mukhtar.UdaSecurity.Service.FakeImageService;
+import com.mukhtar.UdaSecurity.Services.SecurityService;
+import com.mukhtar.UdaSecurity.application.StatusDispatcher;
+import com.mukhtar.UdaSecurity.application.StatusListener;
+import com.mukhtar.UdaSecurity.data.*;
+import org.junit.jupiter.api.Test;
+
+import javax.swing.SwingUtilities;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatusDispatcherTest {
+
+    /**
+     * A listener stuck in a callback must not hold up the service, and what piled up meanwhile
+     * arrives coalesced once it is free again.
+     */
+    @Test
+    void blockedListener_doesNotBlockServiceAndGetsCoalescedUpdates() throws Exception {
+        SecurityService securityService = new SecurityService(new ColumnarSecurityRepositoryImpl(), new FakeImageService());
+        Sensor sensor = new Sensor("front door", SensorType.DOOR);
+        securityService.addSensor(sensor);
+        CountDownLatch unblock = new CountDownLatch(1);
+        RecordingListener listener = new RecordingListener(unblock);
+        try (StatusDispatcher dispatcher = new StatusDispatcher(securityService, Duration.ofMillis(5))) {
+            dispatcher.addStatusListener(listener);
+
+            securityService.setArmingStatus(ArmingStatus.ARMED_AWAY);
+            assertTrue(listener.firstCall.await(5, TimeUnit.SECONDS));
+            //the listener is now stuck in its first callback
+            for (int i = 0; i < 1_000; i++) {
+                securityService.changeSensorActivationStatus(Map.of(sensor, i % 2 == 0));
+            }
+            securityService.changeSensorActivationStatus(Map.of(sensor, true));
+            assertEquals(AlarmStatus.PENDING_ALARM, securityService.getAlarmStatus());
+
+            unblock.countDown();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (!listener.alarmStatuses.contains(AlarmStatus.PENDING_ALARM) && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            Thread.sleep(50);
+        }
+        assertEquals(AlarmStatus.PENDING_ALARM, listener.alarmStatuses.get(listener.alarmStatuses.size() - 1));
+        assertTrue(listener.sensorStatusChanges.get() <= 3, "calls: " + listener.sensorStatusChanges.get());
+    }
+
+    @Test
+    void swingListener_isCalledOnEventDispatchThread() throws Exception {
+        SecurityService securityService = new SecurityService(new ColumnarSecurityRepositoryImpl(), new FakeImageService());
+        CountDownLatch called = new CountDownLatch(1);
+        boolean[] onEdt = new boolean[1];
+        try (StatusDispatcher dispatcher = new StatusDispatcher(securityService)) {
+            dispatcher.addSwingListener(new RecordingListener(null) {
+                @Override
+                public void notify(AlarmStatus status) {
+                    onEdt[0] = SwingUtilities.isEventDispatchThread();
+                    called.countDown();
+                }
+            });
+            securityService.setAlarmStatus(AlarmStatus.PENDING_ALARM);
+            assertTrue(called.await(5, TimeUnit.SECONDS));
+        }
+        assertTrue(onEdt[0]);
+    }
+
+    private static class RecordingListener implements StatusListener {
+        private final CountDownLatch unblock;
+        private final CountDownLatch firstCall = new CountDownLatch(1);
+        private final List<AlarmStatus> alarmStatuses = new CopyOnWriteArrayList<>();
+        private final AtomicInteger sensorStatusChanges = new AtomicInteger();
+
+        RecordingListener(CountDownLatch unblock) {
+            this.unblock = unblock;
+        }
+
+        @Override
+        public void notify(AlarmStatus status) {
+            alarmStatuses.add(status);
+            block();
+        }
+
+        @Override
+        public void catDetected(boolean catDetected) {
+        }
+
+        @Override
+        public void sensorStatusChanged() {
+            sensorStatusChanges.incrementAndGet();
+            block();
+        }
+
+        private void block() {
+            firstCall.countDown();
+            try {
+                unblock.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.mukhtar.UdaSecurity;
+
+import com.mukhtar.UdaSecurity.data.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteAheadLogSecurityRepositoryTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void reopenedRepository_replaysLoggedChanges() throws IOException {
+        Sensor door = new Sensor("front door", SensorType.DOOR);
+        Sensor window = new Sensor("kitchen", SensorType.WINDOW);
+        try (WriteAheadLogSecurityRepositoryImpl repository = new WriteAheadLogSecurityRepositoryImpl(directory)) {
+            repository.addSensor(door);
+            repository.addSensor(window);
+            door.setActive(true);
+            repository.updateSensor(door);
+            repository.removeSensor(window);
+            repository.setArmingStatus(ArmingStatus.ARMED_AWAY);
+            repository.setAlarmStatus(AlarmStatus.PENDING_ALARM);
+        }
+
+        try (WriteAheadLogSecurityRepositoryImpl reopened = new WriteAheadLogSecurityRepositoryImpl(directory)) {
+            assertEquals(1, reopened.getSensors().size());
+            Sensor loaded = reopened.getSensors().iterator().next();
+            assertEquals(door, loaded);
+            assertEquals("front door", loaded.getName());
+            assertEquals(SensorType.DOOR, loaded.getSensorType());
+            assertTrue(loaded.getActive());
+            assertEquals(ArmingStatus.ARMED_AWAY, reopened.getArmingStatus());
+            assertEquals(AlarmStatus.PENDING_ALARM, reopened.getAlarmStatus());
+        }
+    }
+
+    /**
+     * A tiny segment forces many snapshots along the way; the result must match the last state.
+     */
+    @Test
+    void fullSegment_compactsIntoSnapshot() throws IOException {
+        Sensor motion = new Sensor("hallway", SensorType.MOTION);
+        try (WriteAheadLogSecurityRepositoryImpl repository = new WriteAheadLogSecurityRepositoryImpl(directory, 256, 1_000)) {
+            repository.addSensor(motion);
+            for (int i = 0; i < 101; i++) {
+                motion.setActive(i % 2 == 0);
+                repository.updateSensor(motion);
+            }
+        }
+        assertTrue(Files.exists(directory.resolve("sensors.snapshot")));
+
+        try (WriteAheadLogSecurityRepositoryImpl reopened = new WriteAheadLogSecurityRepositoryImpl(directory, 256, 1_000)) {
+            assertEquals(1, reopened.getSensors().size());
+            assertTrue(reopened.getSensors().iterator().next().getActive());
+        }
+    }
+
+    /**
+     * A crash after a snapshot replaces the old one but before the log is emptied leaves the old
+     * log behind. Its changes are older than the snapshot and must not be replayed over it, while
+     * changes logged after reopening must be.
+     */
+    @Test
+    void crashBetweenSnapshotAndLogReset_skipsOldLog() throws IOException {
+        Sensor door = new Sensor("front door", SensorType.DOOR);
+        Path logFile = directory.resolve("sensors.log");
+        byte[] oldLog;
+        try (WriteAheadLogSecurityRepositoryImpl repository = new WriteAheadLogSecurityRepositoryImpl(directory)) {
+            repository.addSensor(door);
+            repository.setArmingStatus(ArmingStatus.ARMED_HOME);
+            oldLog = Files.readAllBytes(logFile);
+
+            door.setActive(true);
+            repository.updateSensor(door);
+            repository.setArmingStatus(ArmingStatus.ARMED_AWAY);
+            repository.compact();
+        }
+        //put back the log as it was before the snapshot, as if the reset never happened
+        Files.write(logFile, oldLog);
+
+        try (WriteAheadLogSecurityRepositoryImpl reopened = new WriteAheadLogSecurityRepositoryImpl(directory)) {
+            assertTrue(reopened.getSensor(door.getSensorId()).getActive());
+            assertEquals(ArmingStatus.ARMED_AWAY, reopened.getArmingStatus());
+            assertEquals(1, reopened.getActiveSensorCount());
+
+            door.setActive(false);
+            reopened.updateSensor(door);
+        }
+        try (WriteAheadLogSecurityRepositoryImpl reopened = new WriteAheadLogSecurityRepositoryImpl(directory)) {
+            assertFalse(reopened.getSensor(door.getSensorId()).getActive());
+            assertEquals(ArmingStatus.ARMED_AWAY, reopened.getArmingStatus());
+        }
+    }
+
+    /**
+     * The GUI copies the sensors saved by earlier versions on first start; far more than the
+     * preferences could hold must come across, and only once.
+     */
+    @Test
+    void migrateFrom_copiesIntoEmptyRepositoryOnly() throws IOException {
+        ColumnarSecurityRepositoryImpl legacy = new ColumnarSecurityRepositoryImpl();
+        for (int i = 0; i < 10_000; i++) {
+            Sensor sensor = new Sensor("sensor " + i, SensorType.values()[i % 3]);
+            sensor.setActive(i % 2 == 0);
+            legacy.addSensor(sensor);
+        }
+        legacy.setArmingStatus(ArmingStatus.ARMED_HOME);
+        try (WriteAheadLogSecurityRepositoryImpl repository = new WriteAheadLogSecurityRepositoryImpl(directory)) {
+            assertTrue(repository.migrateFrom(legacy));
+            assertFalse(repository.migrateFrom(new ColumnarSecurityRepositoryImpl()));
+        }
+        try (WriteAheadLogSecurityRepositoryImpl reopened = new WriteAheadLogSecurityRepositoryImpl(directory)) {
+            assertFalse(reopened.migrateFrom(new ColumnarSecurityRepositoryImpl()));
+            assertEquals(10_000, reopened.getSensorCount());
+            assertEquals(5_000, reopened.getActiveSensorCount());
+            assertEquals(ArmingStatus.ARMED_HOME, reopened.getArmingStatus());
+            assertEquals(new ArrayList<>(legacy.getSensors()), new ArrayList<>(reopened.getSensors()));
+        }
+    }
+
+    @Test
+    void groupCommit_replaysEverySensorInTheBatch() throws IOException {
+        List<Sensor> sensors = List.of(new Sensor("a", SensorType.DOOR), new Sensor("b", SensorType.WINDOW),
+                new Sensor("c", SensorType.MOTION));
+        try (WriteAheadLogSecurityRepositoryImpl repository = new WriteAheadLogSecurityRepositoryImpl(directory)) {
+            sensors.forEach(repository::addSensor);
+            sensors.forEach(sensor -> sensor.setActive(true));
+            repository.updateSensors(sensors);
+        }
+
+        try (WriteAheadLogSecurityRepositoryImpl reopened = new WriteAheadLogSecurityRepositoryImpl(directory)) {
+            assertEquals(3, reopened.getSensors().size());
+            reopened.getSensors().forEach(sensor -> assertTrue(sensor.getActive()));
+        }
+    }
+
+    @Test
+    void sensorCounts_followChangesAndSurviveReopen() throws IOException {
+        Sensor door = new Sensor("front door", SensorType.DOOR);
+        Sensor backDoor = new Sensor("back door", SensorType.DOOR);
+        Sensor window = new Sensor("kitchen", SensorType.WINDOW);
+        try (WriteAheadLogSecurityRepositoryImpl repository = new WriteAheadLogSecurityRepositoryImpl(directory)) {
+            List.of(door, backDoor, window).forEach(repository::addSensor);
+            door.setActive(true);
+            window.setActive(true);
+            repository.updateSensors(List.of(door, window));
+            window.setActive(false);
+            repository.updateSensor(window);
+            repository.updateSensor(window);
+            repository.removeSensor(backDoor);
+
+            assertEquals(2, repository.getSensorCount());
+            assertEquals(1, repository.getActiveSensorCount());
+        }
+
+        try (WriteAheadLogSecurityRepositoryImpl reopened = new WriteAheadLogSecurityRepositoryImpl(directory)) {
+            SensorStatistics statistics = reopened.getSensorStatistics();
+            assertEquals(2, statistics.getSensorCount());
+            assertEquals(1, statistics.getActiveCount());
+            assertEquals(1, statistics.getSensorCount(SensorType.DOOR));
+            assertEquals(1, statistics.getActiveCount(SensorType.DOOR));
+            assertEquals(0, statistics.getActiveCount(SensorType.WINDOW));
+            assertEquals(0, statistics.getSensorCount(SensorType.MOTION));
+        }
+    }
+
+    /**
+     * Random adds, removes, renames and flips must leave the repository holding the same sensors,
+     * in the same order, as a plain sorted set.
+     */
+    @Test
+    void randomChanges_matchSortedSet() throws IOException {
+        Random random = new Random(7);
+        List<Sensor> live = new ArrayList<>();
+        try (WriteAheadLogSecurityRepositoryImpl repository = new WriteAheadLogSecurityRepositoryImpl(directory)) {
+            for (int i = 0; i < 5_000; i++) {
+                int action = random.nextInt(4);
+                if (action == 0 || live.isEmpty()) {
+                    Sensor sensor = new Sensor("sensor " + random.nextInt(500), SensorType.values()[random.nextInt(3)]);
+                    live.add(sensor);
+                    repository.addSensor(sensor);
+                } else if (action == 1) {
+                    repository.removeSensor(live.remove(random.nextInt(live.size())));
+                } else if (action == 2) {
+                    Sensor sensor = live.get(random.nextInt(live.size()));
+                    sensor.setName("renamed " + random.nextInt(500));
+                    repository.updateSensor(sensor);
+                } else {
+                    Sensor sensor = live.get(random.nextInt(live.size()));
+                    sensor.setActive(!sensor.getActive());
+                    repository.updateSensor(sensor);
+                }
+                if (i % 250 == 0) {
+                    assertEquals(new ArrayList<>(new TreeSet<>(live)), new ArrayList<>(repository.getSensors()));
+                }
+            }
+            assertEquals(new ArrayList<>(new TreeSet<>(live)), new ArrayList<>(repository.getSensors()));
+            assertEquals(live.size(), repository.getSensorCount());
+        }
+    }
+}
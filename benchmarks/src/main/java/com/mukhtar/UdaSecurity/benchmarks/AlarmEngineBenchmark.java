@@ -0,0 +1,80 @@
+package com.mukhtar.UdaSecurity.benchmarks;
+
+import com.mukhtar.UdaSecurity.Services.AlarmEngine;
+import com.mukhtar.UdaSecurity.Services.AlarmEvent;
+import com.mukhtar.UdaSecurity.Services.AlarmEventLog;
+import com.mukhtar.UdaSecurity.data.ArmingStatus;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replaying recorded alarm events, from memory and from a log on disk. Each operation is one pass
+ * over {@value #EVENTS} events, so events per second is that many times the reported throughput.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AlarmEngineBenchmark {
+
+    static final int EVENTS = 1_000_000;
+    private static final int SENSORS = 1000;
+
+    private AlarmEvent[] events;
+    private Path directory;
+
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        UUID[] sensors = new UUID[SENSORS];
+        for (int i = 0; i < SENSORS; i++) {
+            sensors[i] = UUID.randomUUID();
+        }
+        events = new AlarmEvent[EVENTS];
+        for (int i = 0; i < EVENTS; i++) {
+            int kind = random.nextInt(100);
+            if (kind == 0) {
+                events[i] = AlarmEvent.armingChanged(ArmingStatus.values()[random.nextInt(3)]);
+            } else if (kind < 5) {
+                events[i] = AlarmEvent.catDetected("camera " + random.nextInt(4), random.nextInt(4) == 0);
+            } else {
+                events[i] = AlarmEvent.sensorChanged(sensors[random.nextInt(SENSORS)], random.nextBoolean());
+            }
+        }
+        directory = Files.createTempDirectory("alarm-events-benchmark");
+        try (AlarmEventLog log = new AlarmEventLog(directory, new AlarmEngine(), Integer.MAX_VALUE)) {
+            for (AlarmEvent event : events) {
+                log.append(event);
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Benchmarks.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    public AlarmEngine applyInMemory() {
+        AlarmEngine engine = new AlarmEngine();
+        for (AlarmEvent event : events) {
+            engine.apply(event);
+        }
+        return engine;
+    }
+
+    @Benchmark
+    public AlarmEngine replayLog() {
+        AlarmEngine engine = new AlarmEngine();
+        AlarmEventLog.replay(directory, engine);
+        return engine;
+    }
+}
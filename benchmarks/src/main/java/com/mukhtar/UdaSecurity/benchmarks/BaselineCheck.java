@@ -0,0 +1,95 @@
+package com.mukhtar.UdaSecurity.benchmarks;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares a JMH JSON result file with a checked-in baseline and exits with status 1 if any
+ * benchmark got slower by more than the tolerance. Benchmarks are matched by name and parameters;
+ * ones missing from either file are listed but do not fail the check.
+ *
+ * Usage: BaselineCheck baseline.json result.json [tolerance percent, default 10]
+ */
+public class BaselineCheck {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BaselineCheck baseline.json result.json [tolerance percent]");
+            System.exit(2);
+        }
+        Map<String, Score> baseline = read(Path.of(args[0]));
+        Map<String, Score> result = read(Path.of(args[1]));
+        double tolerance = args.length > 2 ? Double.parseDouble(args[2]) : 10;
+
+        int regressions = 0;
+        for (Map.Entry<String, Score> entry : result.entrySet()) {
+            Score before = baseline.get(entry.getKey());
+            Score after = entry.getValue();
+            if (before == null) {
+                System.out.printf("NEW   %s %.3f %s%n", entry.getKey(), after.value, after.unit);
+                continue;
+            }
+            if (!before.unit.equals(after.unit)) {
+                System.out.printf("UNIT  %s %s vs %s%n", entry.getKey(), before.unit, after.unit);
+                continue;
+            }
+            //positive when worse, whether lower or higher scores are better
+            double change = (after.value - before.value) / before.value * 100 * (after.higherIsBetter ? -1 : 1);
+            boolean regressed = change > tolerance;
+            if (regressed) {
+                regressions++;
+            }
+            System.out.printf("%s %s %.3f -> %.3f %s (%+.1f%%)%n", regressed ? "SLOWER" : "OK    ",
+                    entry.getKey(), before.value, after.value, after.unit, change);
+        }
+        baseline.keySet().stream()
+                .filter(key -> !result.containsKey(key))
+                .forEach(key -> System.out.println("GONE  " + key));
+        if (regressions > 0) {
+            System.out.println(regressions + " benchmark(s) regressed by more than " + tolerance + "%");
+            System.exit(1);
+        }
+    }
+
+    private static Map<String, Score> read(Path file) throws IOException {
+        Map<String, Score> scores = new TreeMap<>();
+        try (Reader reader = Files.newBufferedReader(file)) {
+            JsonArray runs = JsonParser.parseReader(reader).getAsJsonArray();
+            for (JsonElement element : runs) {
+                JsonObject run = element.getAsJsonObject();
+                StringBuilder key = new StringBuilder(run.get("benchmark").getAsString());
+                if (run.has("params")) {
+                    Map<String, String> params = new TreeMap<>();
+                    run.getAsJsonObject("params").entrySet()
+                            .forEach(param -> params.put(param.getKey(), param.getValue().getAsString()));
+                    params.forEach((name, value) -> key.append(' ').append(name).append('=').append(value));
+                }
+                JsonObject metric = run.getAsJsonObject("primaryMetric");
+                scores.put(key.toString(), new Score(metric.get("score").getAsDouble(),
+                        metric.get("scoreUnit").getAsString(), "thrpt".equals(run.get("mode").getAsString())));
+            }
+        }
+        return scores;
+    }
+
+    private static final class Score {
+        private final double value;
+        private final String unit;
+        private final boolean higherIsBetter;
+
+        Score(double value, String unit, boolean higherIsBetter) {
+            this.value = value;
+            this.unit = unit;
+            this.higherIsBetter = higherIsBetter;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.mukhtar.UdaSecurity.benchmarks;
+
+import com.mukhtar.UdaSecurity.Service.CachingImageService;
+import com.mukhtar.UdaSecurity.Service.CatDetectorModel;
+import com.mukhtar.UdaSecurity.Service.HogDescriptor;
+import com.mukhtar.UdaSecurity.Service.JpegFrameEncoder;
+import com.mukhtar.UdaSecurity.Service.LocalCatDetectorService;
+import org.openjdk.jmh.annotations.*;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-frame work before and instead of a Rekognition call: JPEG encoding the old way and through
+ * the reusable encoder, a perceptual-hash cache hit and the local detector.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ImageBenchmark {
+
+    @Param({"640x480", "1920x1080"})
+    String resolution;
+
+    private BufferedImage frame;
+    private JpegFrameEncoder frameEncoder;
+    private CachingImageService cachingImageService;
+    private LocalCatDetectorService localCatDetectorService;
+
+    @Setup
+    public void setUp() {
+        String[] size = resolution.split("x");
+        frame = new BufferedImage(Integer.parseInt(size[0]), Integer.parseInt(size[1]), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = frame.createGraphics();
+        g.setPaint(new GradientPaint(0, 0, Color.DARK_GRAY, frame.getWidth(), frame.getHeight(), Color.ORANGE));
+        g.fillRect(0, 0, frame.getWidth(), frame.getHeight());
+        g.setColor(Color.BLACK);
+        g.fillOval(frame.getWidth() / 3, frame.getHeight() / 3, frame.getWidth() / 4, frame.getHeight() / 4);
+        g.dispose();
+
+        frameEncoder = new JpegFrameEncoder();
+        cachingImageService = new CachingImageService((image, threshold) -> false);
+        cachingImageService.imageContainsCat(frame, 50.0f);
+        //the weights do not change the amount of work
+        localCatDetectorService = new LocalCatDetectorService(new CatDetectorModel(new float[HogDescriptor.FEATURE_COUNT], 0));
+    }
+
+    /**
+     * What AwsImageService did before the reusable encoder.
+     */
+    @Benchmark
+    public byte[] encode_imageIO() throws IOException {
+        try (ByteArrayOutputStream os = new ByteArrayOutputStream()) {
+            ImageIO.write(frame, "jpg", os);
+            return os.toByteArray();
+        }
+    }
+
+    @Benchmark
+    public byte[] encode_reusableEncoder() throws IOException {
+        return frameEncoder.encode(frame);
+    }
+
+    @Benchmark
+    public boolean detect_cacheHit() {
+        return cachingImageService.imageContainsCat(frame, 50.0f);
+    }
+
+    @Benchmark
+    public float detect_local() {
+        return localCatDetectorService.catConfidence(frame);
+    }
+}
@@ -0,0 +1,60 @@
+package com.mukhtar.UdaSecurity.benchmarks;
+
+import com.mukhtar.UdaSecurity.data.AlarmStatus;
+import com.mukhtar.UdaSecurity.data.ArmingStatus;
+import com.mukhtar.UdaSecurity.data.SecurityRepository;
+import com.mukhtar.UdaSecurity.data.Sensor;
+
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Repository without any persistence, so service benchmarks measure the service and not storage.
+ */
+class InMemorySecurityRepository implements SecurityRepository {
+
+    private final Set<Sensor> sensors = new TreeSet<>();
+    private AlarmStatus alarmStatus = AlarmStatus.NO_ALARM;
+    private ArmingStatus armingStatus = ArmingStatus.DISARMED;
+
+    @Override
+    public void addSensor(Sensor sensor) {
+        sensors.add(sensor);
+    }
+
+    @Override
+    public void removeSensor(Sensor sensor) {
+        sensors.remove(sensor);
+    }
+
+    @Override
+    public void updateSensor(Sensor sensor) {
+        sensors.remove(sensor);
+        sensors.add(sensor);
+    }
+
+    @Override
+    public void setAlarmStatus(AlarmStatus alarmStatus) {
+        this.alarmStatus = alarmStatus;
+    }
+
+    @Override
+    public void setArmingStatus(ArmingStatus armingStatus) {
+        this.armingStatus = armingStatus;
+    }
+
+    @Override
+    public Set<Sensor> getSensors() {
+        return sensors;
+    }
+
+    @Override
+    public AlarmStatus getAlarmStatus() {
+        return alarmStatus;
+    }
+
+    @Override
+    public ArmingStatus getArmingStatus() {
+        return armingStatus;
+    }
+}
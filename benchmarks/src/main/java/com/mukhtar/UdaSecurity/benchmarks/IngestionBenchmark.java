@@ -0,0 +1,74 @@
+package com.mukhtar.UdaSecurity.benchmarks;
+
+import com.mukhtar.UdaSecurity.Service.FakeImageService;
+import com.mukhtar.UdaSecurity.Services.ConcurrentSecurityService;
+import com.mukhtar.UdaSecurity.Services.SecurityService;
+import com.mukhtar.UdaSecurity.Services.SensorEventRingBuffer;
+import com.mukhtar.UdaSecurity.Services.WaitStrategy;
+import com.mukhtar.UdaSecurity.data.ColumnarSecurityRepositoryImpl;
+import com.mukhtar.UdaSecurity.data.Sensor;
+import com.mukhtar.UdaSecurity.data.SensorType;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Four threads firing sensor changes, either straight into a ConcurrentSecurityService or through
+ * the ring buffer in front of a plain SecurityService.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class IngestionBenchmark {
+
+    private static final int SENSORS = 1024;
+
+    @Param({"BUSY_SPIN", "YIELDING", "SLEEPING", "BLOCKING"})
+    WaitStrategy waitStrategy;
+
+    //each path gets its own sensors, because the services change them in place
+    private Sensor[] ringBufferSensors;
+    private Sensor[] directSensors;
+    private ConcurrentSecurityService concurrentSecurityService;
+    private SensorEventRingBuffer ringBuffer;
+
+    @Setup
+    public void setUp() {
+        ringBufferSensors = new Sensor[SENSORS];
+        directSensors = new Sensor[SENSORS];
+        SecurityService securityService = new SecurityService(new ColumnarSecurityRepositoryImpl(), new FakeImageService());
+        concurrentSecurityService = new ConcurrentSecurityService(new ColumnarSecurityRepositoryImpl(), new FakeImageService());
+        for (int i = 0; i < SENSORS; i++) {
+            ringBufferSensors[i] = new Sensor("sensor " + i, SensorType.DOOR);
+            directSensors[i] = new Sensor("sensor " + i, SensorType.DOOR);
+            securityService.addSensor(ringBufferSensors[i]);
+            concurrentSecurityService.addSensor(directSensors[i]);
+        }
+        ringBuffer = new SensorEventRingBuffer(securityService, 8192, waitStrategy);
+    }
+
+    @TearDown
+    public void tearDown() {
+        ringBuffer.close();
+    }
+
+    @Benchmark
+    public void ringBuffer() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        ringBuffer.publish(ringBufferSensors[random.nextInt(SENSORS)], random.nextBoolean());
+    }
+
+    /**
+     * The direct path does not depend on the wait strategy; compare it with any one of them.
+     */
+    @Benchmark
+    public void direct() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        concurrentSecurityService.changeSensorActivationStatus(directSensors[random.nextInt(SENSORS)], random.nextBoolean());
+    }
+}
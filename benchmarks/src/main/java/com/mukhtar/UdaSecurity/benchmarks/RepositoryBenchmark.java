@@ -0,0 +1,89 @@
+package com.mukhtar.UdaSecurity.benchmarks;
+
+import com.mukhtar.UdaSecurity.data.PretendDatabaseSecurityRepositoryImpl;
+import com.mukhtar.UdaSecurity.data.SecurityRepository;
+import com.mukhtar.UdaSecurity.data.Sensor;
+import com.mukhtar.UdaSecurity.data.SensorType;
+import com.mukhtar.UdaSecurity.data.WriteAheadLogSecurityRepositoryImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of persisting sensor changes. The preferences repository shares one preferences node per
+ * user, so the forked JVM points the preferences root at a scratch directory (honoured by the
+ * file based preferences on Linux) and the sensors are removed again afterwards.
+ *
+ * The preferences repository stores every sensor in one preference value, which may not be longer
+ * than 8192 characters, about 75 sensors, so it only runs with a set it can hold and the sizes
+ * are given per repository rather than as a grid.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.util.prefs.userRoot=target/benchmark-prefs")
+public class RepositoryBenchmark {
+
+    //repository/sensor count
+    @Param({"pretend/50", "wal/50", "wal/1000", "wal/10000"})
+    String configuration;
+
+    private SecurityRepository securityRepository;
+    private Path directory;
+    private Sensor[] sensors;
+    private List<Sensor> sensorList;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        String[] parts = configuration.split("/");
+        String repository = parts[0];
+        int sensorCount = Integer.parseInt(parts[1]);
+        if (repository.equals("wal")) {
+            directory = Files.createTempDirectory("wal-benchmark");
+            securityRepository = new WriteAheadLogSecurityRepositoryImpl(directory);
+        } else {
+            securityRepository = new PretendDatabaseSecurityRepositoryImpl();
+        }
+        sensors = new Sensor[sensorCount];
+        for (int i = 0; i < sensorCount; i++) {
+            sensors[i] = new Sensor("sensor " + i, SensorType.values()[i % SensorType.values().length]);
+            securityRepository.addSensor(sensors[i]);
+        }
+        sensorList = Arrays.asList(sensors);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        for (Sensor sensor : sensors) {
+            securityRepository.removeSensor(sensor);
+        }
+        if (securityRepository instanceof WriteAheadLogSecurityRepositoryImpl) {
+            ((WriteAheadLogSecurityRepositoryImpl) securityRepository).close();
+            Benchmarks.deleteDirectory(directory);
+        }
+    }
+
+    @Benchmark
+    public void updateSensor() {
+        Sensor sensor = sensors[next];
+        next = (next + 1) % sensors.length;
+        sensor.setActive(!sensor.getActive());
+        securityRepository.updateSensor(sensor);
+    }
+
+    @Benchmark
+    public void updateSensors_allAtOnce() {
+        for (Sensor sensor : sensors) {
+            sensor.setActive(!sensor.getActive());
+        }
+        securityRepository.updateSensors(sensorList);
+    }
+}
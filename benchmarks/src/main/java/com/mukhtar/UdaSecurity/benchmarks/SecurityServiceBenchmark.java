@@ -0,0 +1,116 @@
+package com.mukhtar.UdaSecurity.benchmarks;
+
+import com.mukhtar.UdaSecurity.Service.FakeImageService;
+import com.mukhtar.UdaSecurity.Services.SecurityService;
+import com.mukhtar.UdaSecurity.data.ArmingStatus;
+import com.mukhtar.UdaSecurity.data.ColumnarSecurityRepositoryImpl;
+import com.mukhtar.UdaSecurity.data.SecurityRepository;
+import com.mukhtar.UdaSecurity.data.Sensor;
+import com.mukhtar.UdaSecurity.data.SensorType;
+import com.mukhtar.UdaSecurity.data.WriteAheadLogSecurityRepositoryImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The SecurityService operations that run on every sensor event or arming change, over sensor
+ * sets from a small home to a large site. The in-memory repository answers sensor counts by
+ * scanning, the write-ahead log repository keeps running totals and the columnar repository counts
+ * activation bits a word at a time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SecurityServiceBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    int sensorCount;
+
+    @Param({"memory", "wal", "columnar"})
+    String repository;
+
+    private SecurityRepository securityRepository;
+    private Path directory;
+    private SecurityService securityService;
+    private Sensor[] sensors;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        if (repository.equals("wal")) {
+            directory = Files.createTempDirectory("wal-benchmark");
+            securityRepository = new WriteAheadLogSecurityRepositoryImpl(directory);
+        } else if (repository.equals("columnar")) {
+            securityRepository = new ColumnarSecurityRepositoryImpl();
+        } else {
+            securityRepository = new InMemorySecurityRepository();
+        }
+        securityService = new SecurityService(securityRepository, new FakeImageService());
+        sensors = new Sensor[sensorCount];
+        for (int i = 0; i < sensorCount; i++) {
+            sensors[i] = new Sensor("sensor " + i, SensorType.values()[i % SensorType.values().length]);
+            securityService.addSensor(sensors[i]);
+        }
+        securityService.setArmingStatus(ArmingStatus.ARMED_AWAY);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        if (securityRepository instanceof WriteAheadLogSecurityRepositoryImpl) {
+            ((WriteAheadLogSecurityRepositoryImpl) securityRepository).close();
+            Benchmarks.deleteDirectory(directory);
+        }
+    }
+
+    @Benchmark
+    public void changeSensorActivationStatus() {
+        Sensor sensor = sensors[next];
+        next = (next + 1) % sensors.length;
+        securityService.changeSensorActivationStatus(sensor, !sensor.getActive());
+    }
+
+    @Benchmark
+    public boolean allSensorsByStatus() {
+        return securityService.allSensorsByStatus(false);
+    }
+
+    /**
+     * Re-arming with every sensor already inactive, which only has to scan the sensors.
+     */
+    @Benchmark
+    public void setArmingStatus_noActiveSensors() {
+        securityService.setArmingStatus(ArmingStatus.ARMED_AWAY);
+    }
+
+    /**
+     * Arming with every sensor active, which has to reset and persist all of them.
+     */
+    @Benchmark
+    public void setArmingStatus_allSensorsActive(ActiveSensors activeSensors) {
+        securityService.setArmingStatus(ArmingStatus.ARMED_AWAY);
+    }
+
+    /**
+     * Activates every sensor before each call, directly on the objects so it costs little next to
+     * the arming it sets up. The columnar repository only holds copies, so it is told as well.
+     */
+    @State(Scope.Thread)
+    public static class ActiveSensors {
+        @Setup(Level.Invocation)
+        public void activate(SecurityServiceBenchmark benchmark) {
+            for (Sensor sensor : benchmark.sensors) {
+                sensor.setActive(true);
+            }
+            if (benchmark.securityRepository instanceof ColumnarSecurityRepositoryImpl) {
+                benchmark.securityRepository.updateSensors(Arrays.asList(benchmark.sensors));
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.mukhtar.UdaSecurity.benchmarks;
+
+import com.mukhtar.UdaSecurity.data.Sensor;
+import com.mukhtar.UdaSecurity.data.SensorType;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sensor ordering, which every sorted sensor set leans on.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SensorBenchmark {
+
+    private static final int SENSORS = 1024;
+
+    private Sensor[] sensors;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        sensors = new Sensor[SENSORS];
+        for (int i = 0; i < SENSORS; i++) {
+            //shared name prefixes make the comparison look past the first few characters
+            sensors[i] = new Sensor("front door sensor " + random.nextInt(SENSORS), SensorType.values()[i % SensorType.values().length]);
+        }
+    }
+
+    @Benchmark
+    public int compareTo() {
+        Sensor a = sensors[next];
+        Sensor b = sensors[(next + 1) & (SENSORS - 1)];
+        next = (next + 1) & (SENSORS - 1);
+        return a.compareTo(b);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public TreeSet<Sensor> buildSortedSet() {
+        TreeSet<Sensor> set = new TreeSet<>();
+        for (Sensor sensor : sensors) {
+            set.add(sensor);
+        }
+        return set;
+    }
+}